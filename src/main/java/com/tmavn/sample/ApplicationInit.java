@@ -25,12 +25,23 @@ import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
-import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
+import com.tmavn.sample.common.AsyncRestClient;
+import com.tmavn.sample.common.BodyBuffer;
 import com.tmavn.sample.common.Constant;
+import com.tmavn.sample.common.HttpClientSettings;
+import com.tmavn.sample.common.InvalidationSettings;
+import com.tmavn.sample.common.JsonSchemaRegistry;
+import com.tmavn.sample.common.JsonValidation;
+import com.tmavn.sample.common.NotifySettings;
+import com.tmavn.sample.common.RestClient;
+import com.tmavn.sample.common.SchemaValidator;
 import com.tmavn.sample.common.Utils;
+import com.tmavn.sample.service.impl.InvalidationBusImpl;
+import com.tmavn.sample.service.impl.StateChangeDispatcherImpl;
+import com.tmavn.sample.service.impl.StateChangeStreamImpl;
 
 /**
  * The Class ApplicationInit.
@@ -75,11 +86,6 @@ public class ApplicationInit extends WebMvcConfigurerAdapter implements ServletC
         return format ;
     }
     
-    @Bean
-    public AsyncRestTemplate asyncRestTemplate() {
-        return new AsyncRestTemplate();
-    }
-    
     /**
      * Transaction manager.
      *
@@ -138,8 +144,45 @@ public class ApplicationInit extends WebMvcConfigurerAdapter implements ServletC
             throw new ExceptionInInitializerError();
         }
 
+        // Batch the inserts and the updates of the outbox, unless set in sample.conf
+        properties.putIfAbsent(Constant.ConfigProperties.HIBERNATE_BATCH_SIZE,
+                Constant.ConfigProperties.DEFAULT_BATCH_SIZE);
+        properties.putIfAbsent(Constant.ConfigProperties.HIBERNATE_ORDER_INSERTS, "true");
+        properties.putIfAbsent(Constant.ConfigProperties.HIBERNATE_ORDER_UPDATES, "true");
         config.setHibProperties(properties);
 
+        JsonValidation.setFailFast(Boolean
+                .parseBoolean(properties.getProperty(Constant.ConfigProperties.JSON_VALIDATION_FAIL_FAST, "false")));
+        JsonValidation.setValidatorName(
+                properties.getProperty(Constant.ConfigProperties.JSON_VALIDATION_VALIDATOR, SchemaValidator.FGE));
+
+        String maxBodySize = properties.getProperty(Constant.ConfigProperties.REQUEST_BODY_MAX_SIZE);
+        if (maxBodySize != null) {
+            try {
+                BodyBuffer.setMaxSize(Integer.parseInt(maxBodySize.trim()));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Invalid {}: {}, use {}", Constant.ConfigProperties.REQUEST_BODY_MAX_SIZE, maxBodySize,
+                        BodyBuffer.getMaxSize());
+            }
+        }
+
+        // Pooled http client of the outgoing requests
+        RestClient.configure(HttpClientSettings.load(properties, Constant.ConfigProperties.REST_CLIENT));
+        AsyncRestClient.configure(HttpClientSettings.load(properties, Constant.ConfigProperties.ASYNC_REST_CLIENT));
+
+        // Outbox and stream of the state change notifications
+        NotifySettings notifySettings = NotifySettings.load(properties);
+        StateChangeDispatcherImpl.configure(notifySettings);
+        StateChangeStreamImpl.configure(notifySettings);
+
+        // Invalidations of the caches of the other nodes
+        InvalidationBusImpl.configure(InvalidationSettings.load(properties));
+
+        // Compile json schemas, the failed ones are compiled again at first use
+        if (!JsonSchemaRegistry.preload()) {
+            logger.warn("Some json schemas can not be compiled at startup");
+        }
+
         logger.debug("OUT - loadConfig()");
     }
 
@@ -165,6 +208,9 @@ public class ApplicationInit extends WebMvcConfigurerAdapter implements ServletC
             }
         }
 
+        RestClient.shutdown();
+        AsyncRestClient.shutdown();
+
         if (config != null) {
             config = null;
         }
@@ -27,7 +27,7 @@ import com.tmavn.sample.model.CheckResult;
 /**
  * The Class FilterImpl.
  */
-@WebFilter(urlPatterns = {"/*"})
+@WebFilter(urlPatterns = {"/*"}, asyncSupported = true)
 public class ContentFilter implements Filter {
 
     /** The logger. */
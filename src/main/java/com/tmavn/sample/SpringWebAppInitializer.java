@@ -54,6 +54,8 @@ public class SpringWebAppInitializer implements WebApplicationInitializer {
         // servletContext.addListener(new ApplicationContextListener());
         ServletRegistration.Dynamic dispatcher = servletContext.addServlet("SpringDispatcher", new DispatcherServlet(appContext));
         dispatcher.setLoadOnStartup(1);
+        // the stream of the state changes holds its responses open
+        dispatcher.setAsyncSupported(true);
         dispatcher.addMapping("/");
     }
 }
@@ -3,13 +3,21 @@
  */
 package com.tmavn.sample;
 
+import java.util.List;
+
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer;
 import org.springframework.web.servlet.config.annotation.PathMatchConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tmavn.sample.common.JsonMapper;
+
 /**
- * Override WebMvcConfigurerAdapter to allow dot(.) in path 
+ * Override WebMvcConfigurerAdapter to allow dot(.) in path and to use the
+ * shared json mapper in the message converters
  */
 @Configuration
 public class WebApplicationConfiguration extends WebMvcConfigurerAdapter {
@@ -24,4 +32,21 @@ public class WebApplicationConfiguration extends WebMvcConfigurerAdapter {
     public void configureContentNegotiation(ContentNegotiationConfigurer configurer) {
         configurer.favorPathExtension(false);
     }
-}
\ No newline at end of file
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // the default jackson converter creates its own mapper
+        JsonMapper.configure(converters);
+    }
+
+    /**
+     * The json mapper shared by the message converters, the rest clients and
+     * the json validation.
+     *
+     * @return the object mapper
+     */
+    @Bean
+    public ObjectMapper objectMapper() {
+        return JsonMapper.getMapper();
+    }
+}
@@ -1,9 +1,13 @@
 package com.tmavn.sample.common;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +19,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
 import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
 import org.springframework.util.concurrent.SettableListenableFuture;
 import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.HttpClientErrorException;
@@ -29,10 +34,31 @@ public class AsyncRestClient {
 
     private static AsyncRestClient instance = null;
 
+    private static AsyncRestTemplate asyncRestTemplate;
+
+    /** The non-blocking http client of the rest template. */
+    private static CloseableHttpAsyncClient httpClient;
+
+    /** The permits of the requests waiting for a response. */
+    private static Semaphore inFlight;
+
+    /** Gives back the permit of a request when its response is received. */
+    private static final ListenableFutureCallback<Object> RELEASE = new ListenableFutureCallback<Object>() {
+
+        @Override
+        public void onSuccess(Object result) {
+            inFlight.release();
+        }
+
+        @Override
+        public void onFailure(Throwable ex) {
+            inFlight.release();
+        }
+    };
+
     static {
-        asyncRestTemplate = new AsyncRestTemplate();
+        configure(new HttpClientSettings());
     }
-    private static AsyncRestTemplate asyncRestTemplate;
 
     /**
      * Instantiates a new rest client.
@@ -41,6 +67,32 @@ public class AsyncRestClient {
         // Exists only to defeat instantiation.
     }
 
+    /**
+     * Build the rest template on a pooled non-blocking http client with the given
+     * settings, the previous http client is closed.
+     *
+     * @param settings the http client settings
+     */
+    public static synchronized void configure(HttpClientSettings settings) {
+        logger.debug("IN - configure()");
+        CloseableHttpAsyncClient previous = httpClient;
+        httpClient = HttpClientFactory.createHttpAsyncClient(settings);
+        AsyncRestTemplate template = new AsyncRestTemplate(new HttpComponentsAsyncClientHttpRequestFactory(httpClient));
+        JsonMapper.configure(template.getMessageConverters());
+        inFlight = new Semaphore(settings.getMaxInFlight());
+        asyncRestTemplate = template;
+        HttpClientFactory.close(previous);
+        logger.debug("OUT - configure()");
+    }
+
+    /**
+     * Close the non-blocking http client.
+     */
+    public static synchronized void shutdown() {
+        HttpClientFactory.close(httpClient);
+        httpClient = null;
+    }
+
     /**
      * Gets the single instance of AsyncRestClient.
      *
@@ -211,7 +263,7 @@ public class AsyncRestClient {
             logger.debug("Header info: UserID = {}, moduleID = {}", UserID, moduleID);
             logger.debug("Request header (full): {}", hd);
 
-            future = asyncRestTemplate.exchange(sendUri, HttpMethod.GET, entity, T);
+            future = exchange(sendUri, HttpMethod.GET, entity, T);
             logger.debug("OUT - sendGetRequest()");
             return future;
         } catch (HttpClientErrorException e) {
@@ -386,7 +438,13 @@ public class AsyncRestClient {
 
             HttpEntity<?> entity = null;
             String jsonData = null;
-            if (bodyData != null) {
+            if (bodyData instanceof byte[]) {
+                // already rendered, i.e. NotifyPayload, sent as is
+                entity = new HttpEntity<>(bodyData, hd);
+                if (logger.isDebugEnabled()) {
+                    jsonData = new String((byte[]) bodyData, StandardCharsets.UTF_8);
+                }
+            } else if (bodyData != null) {
                 jsonData = Utils.parseObjectToJson(bodyData);
                 entity = new HttpEntity<>(jsonData, hd);
             } else {
@@ -411,14 +469,7 @@ public class AsyncRestClient {
             }
 
             logger.debug("doSendRequestWithData with URI: {}", sendUri);
-
-            if (method.equals(HttpMethod.PATCH)) {
-                HttpComponentsAsyncClientHttpRequestFactory requestFactory = new HttpComponentsAsyncClientHttpRequestFactory();
-                AsyncRestTemplate asyncRestTemplatePatch = new AsyncRestTemplate(requestFactory);
-                future = asyncRestTemplatePatch.exchange(sendUri, HttpMethod.PATCH, entity, T);
-                return future;
-            }
-            future = asyncRestTemplate.exchange(sendUri, method, entity, T);
+            future = exchange(sendUri, method, entity, T);
 
         } catch (HttpClientErrorException e) {
             // Handle to return error message to sender
@@ -474,6 +525,35 @@ public class AsyncRestClient {
         return future;
     }
 
+    /**
+     * Send the request when a permit is free, otherwise answer 503 without
+     * sending it. The permit is given back when the response is received.
+     *
+     * @param uri    the uri
+     * @param method the method
+     * @param entity the request entity
+     * @param T      the class of response object
+     * @return the listenable future
+     */
+    @SuppressWarnings("unchecked")
+    private ListenableFuture<?> exchange(URI uri, HttpMethod method, HttpEntity<?> entity, Class<?> T) {
+        if (!inFlight.tryAcquire()) {
+            logger.warn("Too many requests in flight, {} {} is not sent", method, uri);
+            SettableListenableFuture<ResponseEntity<?>> future = new SettableListenableFuture<>();
+            future.set(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many requests in flight"));
+            return future;
+        }
+        ListenableFuture<?> future;
+        try {
+            future = asyncRestTemplate.exchange(uri, method, entity, T);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        ((ListenableFuture<Object>) future).addCallback(RELEASE);
+        return future;
+    }
+
     /**
      * Write debug log for message which have data greater than 64000 bytes.
      *
@@ -0,0 +1,132 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import lombok.Getter;
+
+/**
+ * The Class BodyBuffer.<br>
+ * Holds the bytes of a request body read from its {@link InputStream}, the json
+ * parsers read the bytes so the body is never decoded into a String.<br>
+ * The buffers are taken from a pool and given back when the buffer is closed,
+ * the size of the body is checked while it is read.
+ */
+public class BodyBuffer implements Closeable {
+
+    /** The default maximum size of a request body, in bytes. */
+    public static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+
+    /** The size of the pooled buffers, a larger body grows its own buffer. */
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    /** The maximum number of buffers kept in the pool. */
+    static final int POOL_SIZE = 64;
+
+    /** The pooled buffers, the last released buffer is used first. */
+    private static final BlockingDeque<byte[]> pool = new LinkedBlockingDeque<byte[]>(POOL_SIZE);
+
+    /** The maximum size of a request body, in bytes. */
+    private static volatile int maxSize = DEFAULT_MAX_SIZE;
+
+    /** The bytes of the body, only the first {@link #length} bytes are set. */
+    @Getter
+    private byte[] data;
+
+    /** The length of the body. */
+    @Getter
+    private final int length;
+
+    private BodyBuffer(byte[] data, int length) {
+        this.data = data;
+        this.length = length;
+    }
+
+    /**
+     * Gets the maximum size of a request body.
+     *
+     * @return the maximum size, in bytes
+     */
+    public static int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum size of a request body.
+     *
+     * @param maxSize the maximum size, in bytes
+     */
+    public static void setMaxSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid max size: " + maxSize);
+        }
+        BodyBuffer.maxSize = maxSize;
+    }
+
+    /**
+     * Read a request body into a pooled buffer, the buffer must be closed after
+     * use.
+     *
+     * @param in the body stream
+     * @return the body buffer
+     * @throws IOException                   Signals that the body can not be read.
+     * @throws RequestBodyTooLargeException the body is larger than the maximum
+     *                                       size
+     */
+    public static BodyBuffer read(InputStream in) throws IOException {
+        int limit = maxSize;
+        byte[] data = acquire();
+        int length = 0;
+        try {
+            while (true) {
+                if (length == data.length) {
+                    // one byte more than the limit is enough to detect a too large body
+                    byte[] grown = new byte[Math.min(data.length * 2, limit + 1)];
+                    System.arraycopy(data, 0, grown, 0, length);
+                    release(data);
+                    data = grown;
+                }
+                int count = in.read(data, length, data.length - length);
+                if (count < 0) {
+                    break;
+                }
+                length += count;
+                if (length > limit) {
+                    throw new RequestBodyTooLargeException(limit);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            release(data);
+            throw e;
+        }
+        return new BodyBuffer(data, length);
+    }
+
+    /**
+     * Give the buffer back to the pool.
+     */
+    @Override
+    public void close() {
+        if (data != null) {
+            release(data);
+            data = null;
+        }
+    }
+
+    private static byte[] acquire() {
+        byte[] buffer = pool.pollFirst();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    private static void release(byte[] buffer) {
+        if (buffer.length == BUFFER_SIZE) {
+            pool.offerFirst(buffer);
+        }
+    }
+}
@@ -78,6 +78,33 @@ public class Constant {
         /** The functions/sample */
         public static final String USER_ID = "userId";
 
+        /** Stop the json schema validation at the first error. */
+        public static final String JSON_VALIDATION_FAIL_FAST = "json.validation.failFast";
+
+        /** The json schema validator: fge or streaming. */
+        public static final String JSON_VALIDATION_VALIDATOR = "json.validation.validator";
+
+        /** The maximum size of a request body, in bytes. */
+        public static final String REQUEST_BODY_MAX_SIZE = "request.body.maxSize";
+
+        /** The prefix of the http client settings of RestClient. */
+        public static final String REST_CLIENT = "rest.client.";
+
+        /** The prefix of the http client settings of AsyncRestClient. */
+        public static final String ASYNC_REST_CLIENT = "async.rest.client.";
+
+        /** The number of statements sent in one JDBC batch. */
+        public static final String HIBERNATE_BATCH_SIZE = "hibernate.jdbc.batch_size";
+
+        /** Group the inserts by entity, so that they are batched. */
+        public static final String HIBERNATE_ORDER_INSERTS = "hibernate.order_inserts";
+
+        /** Group the updates by entity, so that they are batched. */
+        public static final String HIBERNATE_ORDER_UPDATES = "hibernate.order_updates";
+
+        /** The default JDBC batch size. */
+        public static final String DEFAULT_BATCH_SIZE = "50";
+
     }
 
     public static final class ModuleResource {
@@ -0,0 +1,142 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.report.LogLevel;
+import com.github.fge.jsonschema.core.report.ProcessingMessage;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.main.JsonSchema;
+import com.tmavn.sample.model.CheckResult;
+import com.tmavn.sample.model.ValidationError;
+
+/**
+ * The Class FgeSchemaValidator.<br>
+ * A {@link SchemaValidator} backed by a {@link JsonSchema} of the fge json
+ * schema library, it supports every keyword of the schema draft.
+ */
+public class FgeSchemaValidator implements SchemaValidator {
+
+    /** The Constant logger. */
+    private final static Logger logger = LoggerFactory.getLogger(FgeSchemaValidator.class);
+
+    /** The fields of a processing message. */
+    private static final String FIELD_DOMAIN = "domain";
+    private static final String FIELD_KEYWORD = "keyword";
+    private static final String FIELD_INSTANCE = "instance";
+    private static final String FIELD_POINTER = "pointer";
+    private static final String FIELD_MESSAGE = "message";
+
+    /** The Constant DOMAIN_VALIDATION. */
+    private static final String DOMAIN_VALIDATION = "validation";
+
+    /** The Constant KEYWORD_ONE_OF. */
+    private static final String KEYWORD_ONE_OF = "oneOf";
+
+    /** The json schema. */
+    private final JsonSchema schema;
+
+    /** True if the json schema stops at the first error. */
+    private final boolean failFast;
+
+    /**
+     * Instantiates a new fge schema validator.
+     *
+     * @param schema   the json schema
+     * @param failFast true if the json schema throws the first validation error
+     */
+    public FgeSchemaValidator(JsonSchema schema, boolean failFast) {
+        this.schema = schema;
+        this.failFast = failFast;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CheckResult validate(JsonNode json) throws ProcessingException {
+        CheckResult result = new CheckResult(true, "");
+        try {
+            ProcessingReport processingReport = schema.validate(json);
+
+            if (!processingReport.isSuccess()) {
+                List<ValidationError> errors = new ArrayList<ValidationError>();
+                for (ProcessingMessage processingMessage : processingReport) {
+                    if (processingMessage.getLogLevel().compareTo(LogLevel.ERROR) >= 0) {
+                        errors.add(toValidationError(processingMessage.asJson()));
+                    }
+                }
+                JsonValidation.setErrors(result, errors);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Check json schema failed \n{}", processingReport);
+                }
+            }
+        } catch (ProcessingException e) {
+            // in fail-fast mode, the first validation error is thrown
+            JsonNode messageJson = e.getProcessingMessage().asJson();
+            if (!failFast || !DOMAIN_VALIDATION.equals(messageJson.path(FIELD_DOMAIN).asText())) {
+                throw e;
+            }
+            JsonValidation.setErrors(result, Collections.singletonList(toValidationError(messageJson)));
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * The json is read to a tree before the validation.
+     */
+    @Override
+    public CheckResult validate(JsonParser parser) throws IOException, ProcessingException {
+        JsonNode json = parser.readValueAsTree();
+        if (json == null) {
+            return new CheckResult(false, CheckResult.MSG_JSON_NG);
+        }
+        return validate(json);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Convert a processing message to a validation error.
+     *
+     * @param messageJson the json of the processing message
+     * @return the validation error
+     */
+    private static ValidationError toValidationError(JsonNode messageJson) {
+        ValidationError error = new ValidationError();
+        error.setKeyword(messageJson.path(FIELD_KEYWORD).asText(null));
+        error.setPointer(messageJson.path(FIELD_INSTANCE).path(FIELD_POINTER).asText(null));
+        error.setMessage(messageJson.path(FIELD_MESSAGE).asText(null));
+        for (String type : JsonValidation.ERROR_TYPE_PRIORITY) {
+            JsonNode detail = messageJson.get(type);
+            if (detail != null) {
+                // "reports" is also used by anyOf and allOf, only oneOf is reported
+                if (ValidationError.TYPE_ONE_OF.equals(type) && !KEYWORD_ONE_OF.equals(error.getKeyword())) {
+                    continue;
+                }
+                error.setType(type);
+                error.setDetail(detail);
+                break;
+            }
+        }
+        return error;
+    }
+}
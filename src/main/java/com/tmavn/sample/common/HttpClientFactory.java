@@ -0,0 +1,135 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class HttpClientFactory.<br>
+ * Builds the pooled, keep-alive http clients of the rest clients.
+ */
+public class HttpClientFactory {
+
+    /** The Constant logger. */
+    private final static Logger logger = LoggerFactory.getLogger(HttpClientFactory.class);
+
+    /** The time after which a pooled connection is checked before it is reused. */
+    static final int VALIDATE_AFTER_INACTIVITY = 2000;
+
+    private HttpClientFactory() {
+        // You shall not instantiate an item of this class
+    }
+
+    /**
+     * Creates a pooled http client. The client closes the expired and the idle
+     * connections in a background thread, it must be closed when it is not used
+     * any more.
+     *
+     * @param settings the settings
+     * @return the http client
+     */
+    public static CloseableHttpClient createHttpClient(HttpClientSettings settings) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(settings.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(settings.getMaxPerRoute());
+        // a connection closed by the server while it was idle is not reused
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+
+        return HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(createRequestConfig(settings))
+                .setKeepAliveStrategy(createKeepAliveStrategy(settings.getKeepAlive()))
+                .evictExpiredConnections()
+                .evictIdleConnections(settings.getIdleTimeout(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Creates a pooled non-blocking http client. All the requests share a few I/O
+     * dispatcher threads instead of one thread per request, the expired
+     * connections are closed when they are leased. The client must be closed when
+     * it is not used any more.
+     *
+     * @param settings the settings
+     * @return the http client
+     */
+    public static CloseableHttpAsyncClient createHttpAsyncClient(HttpClientSettings settings) {
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setConnectTimeout(settings.getConnectTimeout())
+                .setSoTimeout(settings.getReadTimeout())
+                .build();
+
+        return HttpAsyncClientBuilder.create()
+                .setMaxConnTotal(settings.getMaxTotal())
+                .setMaxConnPerRoute(settings.getMaxPerRoute())
+                .setDefaultIOReactorConfig(ioReactorConfig)
+                .setDefaultRequestConfig(createRequestConfig(settings))
+                .setKeepAliveStrategy(createKeepAliveStrategy(settings.getKeepAlive()))
+                .build();
+    }
+
+    /**
+     * Creates the request config of the timeouts.
+     *
+     * @param settings the settings
+     * @return the request config
+     */
+    public static RequestConfig createRequestConfig(HttpClientSettings settings) {
+        return RequestConfig.custom()
+                .setConnectTimeout(settings.getConnectTimeout())
+                .setSocketTimeout(settings.getReadTimeout())
+                .setConnectionRequestTimeout(settings.getConnectionRequestTimeout())
+                .build();
+    }
+
+    /**
+     * Creates a keep-alive strategy which uses the Keep-Alive header of the
+     * response, or the default time when the header is not set.
+     *
+     * @param keepAlive the default keep-alive time
+     * @return the keep-alive strategy
+     */
+    static ConnectionKeepAliveStrategy createKeepAliveStrategy(final long keepAlive) {
+        return new DefaultConnectionKeepAliveStrategy() {
+
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = super.getKeepAliveDuration(response, context);
+                return duration > 0 ? duration : keepAlive;
+            }
+        };
+    }
+
+    /**
+     * Close the http client and its connection pool, a null client is ignored.
+     *
+     * @param httpClient the http client
+     */
+    public static void close(Closeable httpClient) {
+        if (httpClient == null) {
+            return;
+        }
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("Can not close http client: {}", e.getMessage());
+        }
+    }
+}
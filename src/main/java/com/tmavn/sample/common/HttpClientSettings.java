@@ -0,0 +1,122 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The Class HttpClientSettings.<br>
+ * The connection pool limits and the timeouts of an http client, the times are
+ * in milliseconds. The settings are read from sample.conf with a prefix, i.e:
+ * rest.client.maxTotal.
+ */
+@Getter
+@Setter
+public class HttpClientSettings {
+
+    /** The Constant logger. */
+    private final static Logger logger = LoggerFactory.getLogger(HttpClientSettings.class);
+
+    /** The maximum number of connections. */
+    public static final String MAX_TOTAL = "maxTotal";
+
+    /** The maximum number of connections to one host. */
+    public static final String MAX_PER_ROUTE = "maxPerRoute";
+
+    /** The connect timeout. */
+    public static final String CONNECT_TIMEOUT = "connectTimeout";
+
+    /** The read timeout. */
+    public static final String READ_TIMEOUT = "readTimeout";
+
+    /** The time to wait for a connection from the pool. */
+    public static final String CONNECTION_REQUEST_TIMEOUT = "connectionRequestTimeout";
+
+    /** The time to keep a connection alive when the server does not tell it. */
+    public static final String KEEP_ALIVE = "keepAlive";
+
+    /** The time after which an idle connection is closed. */
+    public static final String IDLE_TIMEOUT = "idleTimeout";
+
+    /** The maximum number of requests waiting for a response, asynchronous client only. */
+    public static final String MAX_IN_FLIGHT = "maxInFlight";
+
+    /** The maximum number of connections. */
+    private int maxTotal = 100;
+
+    /** The maximum number of connections to one host. */
+    private int maxPerRoute = 20;
+
+    /** The connect timeout. */
+    private int connectTimeout = 5000;
+
+    /** The read timeout. */
+    private int readTimeout = 30000;
+
+    /** The time to wait for a connection from the pool. */
+    private int connectionRequestTimeout = 5000;
+
+    /** The time to keep a connection alive when the server does not tell it. */
+    private int keepAlive = 30000;
+
+    /** The time after which an idle connection is closed. */
+    private int idleTimeout = 60000;
+
+    /** The maximum number of requests waiting for a response, asynchronous client only. */
+    private int maxInFlight = 500;
+
+    /**
+     * Read the settings from the properties, a missing or invalid property keeps
+     * its default value.
+     *
+     * @param properties the properties
+     * @param prefix     the prefix of the property names
+     * @return the settings
+     */
+    public static HttpClientSettings load(Properties properties, String prefix) {
+        HttpClientSettings settings = new HttpClientSettings();
+        settings.setMaxTotal(getPositiveInt(properties, prefix + MAX_TOTAL, settings.getMaxTotal()));
+        settings.setMaxPerRoute(getPositiveInt(properties, prefix + MAX_PER_ROUTE, settings.getMaxPerRoute()));
+        settings.setConnectTimeout(getPositiveInt(properties, prefix + CONNECT_TIMEOUT, settings.getConnectTimeout()));
+        settings.setReadTimeout(getPositiveInt(properties, prefix + READ_TIMEOUT, settings.getReadTimeout()));
+        settings.setConnectionRequestTimeout(getPositiveInt(properties, prefix + CONNECTION_REQUEST_TIMEOUT,
+                settings.getConnectionRequestTimeout()));
+        settings.setKeepAlive(getPositiveInt(properties, prefix + KEEP_ALIVE, settings.getKeepAlive()));
+        settings.setIdleTimeout(getPositiveInt(properties, prefix + IDLE_TIMEOUT, settings.getIdleTimeout()));
+        settings.setMaxInFlight(getPositiveInt(properties, prefix + MAX_IN_FLIGHT, settings.getMaxInFlight()));
+        return settings;
+    }
+
+    /**
+     * Read a positive number property, shared by the settings classes of this
+     * package.
+     *
+     * @param properties   the properties
+     * @param name         the property name
+     * @param defaultValue the value of a missing or invalid property
+     * @return the number
+     */
+    static int getPositiveInt(Properties properties, String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int number = Integer.parseInt(value.trim());
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // warn below
+        }
+        logger.warn("Invalid {}: {}, use {}", name, value, defaultValue);
+        return defaultValue;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The Class InvalidationSettings.<br>
+ * The settings of the bus which invalidates the caches of the other nodes, the
+ * times are in milliseconds. The settings are read from sample.conf with the
+ * prefix invalidation, i.e: invalidation.transport. The postgres transport
+ * connects with the hibernate connection properties.
+ */
+@Getter
+@Setter
+public class InvalidationSettings {
+
+    /** The Constant logger. */
+    private final static Logger logger = LoggerFactory.getLogger(InvalidationSettings.class);
+
+    /** The prefix of the property names. */
+    public static final String PREFIX = "invalidation.";
+
+    /** The transport of the messages: memory or postgres. */
+    public static final String TRANSPORT = "transport";
+
+    /** The time the invalidations wait to be coalesced and sent in one message. */
+    public static final String FLUSH_INTERVAL = "flushInterval";
+
+    /** The time between two reads of the notifications, postgres transport only. */
+    public static final String POLL_INTERVAL = "pollInterval";
+
+    /** The notification channel, postgres transport only. */
+    public static final String CHANNEL = "channel";
+
+    /** A channel name which needs no quoting. */
+    private static final Pattern CHANNEL_PATTERN = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+
+    /** The transport of the messages. */
+    private String transport = InvalidationTransport.MEMORY;
+
+    /** The time the invalidations wait to be coalesced and sent in one message. */
+    private int flushInterval = 50;
+
+    /** The time between two reads of the notifications. */
+    private int pollInterval = 500;
+
+    /** The notification channel. */
+    private String channel = "sample_invalidation";
+
+    /** The JDBC url of the database. */
+    private String url;
+
+    /** The user of the database. */
+    private String username;
+
+    /** The password of the database. */
+    private String password;
+
+    /**
+     * Read the settings from the properties, a missing or invalid property keeps
+     * its default value.
+     *
+     * @param properties the properties
+     * @return the settings
+     */
+    public static InvalidationSettings load(Properties properties) {
+        InvalidationSettings settings = new InvalidationSettings();
+        String transport = properties.getProperty(PREFIX + TRANSPORT);
+        if (transport != null) {
+            if (InvalidationTransport.MEMORY.equals(transport.trim())
+                    || InvalidationTransport.POSTGRES.equals(transport.trim())) {
+                settings.setTransport(transport.trim());
+            } else {
+                logger.warn("Invalid {}: {}, use {}", PREFIX + TRANSPORT, transport, settings.getTransport());
+            }
+        }
+        settings.setFlushInterval(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + FLUSH_INTERVAL, settings.getFlushInterval()));
+        settings.setPollInterval(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + POLL_INTERVAL, settings.getPollInterval()));
+        String channel = properties.getProperty(PREFIX + CHANNEL);
+        if (channel != null) {
+            if (CHANNEL_PATTERN.matcher(channel.trim()).matches()) {
+                settings.setChannel(channel.trim());
+            } else {
+                logger.warn("Invalid {}: {}, use {}", PREFIX + CHANNEL, channel, settings.getChannel());
+            }
+        }
+        settings.setUrl(properties.getProperty(Utils.HIBERNATE_CONNECTION_URL));
+        settings.setUsername(properties.getProperty(Utils.HIBERNATE_CONNECTION_USERNAME));
+        settings.setPassword(properties.getProperty(Utils.HIBERNATE_CONNECTION_PASSWORD));
+        return settings;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.io.IOException;
+
+/**
+ * The Interface InvalidationTransport.<br>
+ * Carries the invalidation messages between the nodes sharing the database. A
+ * message sent by a node is received by all the started transports, also by
+ * the sender. The transport also numbers the messages: a version is taken
+ * after the writes it invalidates are committed, and is greater than the
+ * versions taken before by all the nodes. The transport is selected by the
+ * invalidation.transport setting.
+ */
+public interface InvalidationTransport {
+
+    /** The name of the transport between the nodes of one JVM. */
+    String MEMORY = "memory";
+
+    /** The name of the transport over Postgres LISTEN/NOTIFY. */
+    String POSTGRES = "postgres";
+
+    /**
+     * Start to receive the messages.
+     *
+     * @param receiver the receiver of the messages
+     */
+    void start(Receiver receiver);
+
+    /**
+     * Take the version of the next message.
+     *
+     * @return the version, greater than the versions taken before by all the nodes
+     * @throws IOException if the version can not be taken
+     */
+    long nextVersion() throws IOException;
+
+    /**
+     * Send a message to all the nodes.
+     *
+     * @param message the message, at most {@link #getMaxMessageSize()} bytes in
+     *                UTF-8
+     * @throws IOException if the message can not be sent
+     */
+    void send(String message) throws IOException;
+
+    /**
+     * Gets the maximum size of a message.
+     *
+     * @return the size in bytes
+     */
+    int getMaxMessageSize();
+
+    /**
+     * Stop to receive the messages.
+     */
+    void stop();
+
+    /**
+     * The receiver of the messages of a transport.
+     */
+    interface Receiver {
+
+        /**
+         * Receive a message.
+         *
+         * @param message the message
+         */
+        void receive(String message);
+
+        /**
+         * Called when messages may have been lost, i.e. after a reconnection: all the
+         * cached entries must be invalidated.
+         */
+        void reset();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.tmavn.sample.dto.OrderDataDTO;
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.entity.Note;
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.entity.StateChangeNotify;
+
+/**
+ * The Class JsonMapper.<br>
+ * Holds the one {@link ObjectMapper} of the application, it is also the
+ * {@link ObjectMapper} bean used by Spring MVC, so the serializers and
+ * deserializers resolved for a type are cached once for all the callers.<br>
+ * The readers and writers of the application types are built at startup,
+ * {@link ObjectReader} and {@link ObjectWriter} are immutable and thread safe.
+ */
+public class JsonMapper {
+
+    private JsonMapper() {
+        // You shall not instantiate an item of this class
+    }
+
+    /** The Constant mapper. */
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /** The Constant NOTE_LIST_TYPE. */
+    public static final TypeReference<List<Note>> NOTE_LIST_TYPE = new TypeReference<List<Note>>() {
+    };
+
+    /** The Constant ORDER_DATA_READER. */
+    public static final ObjectReader ORDER_DATA_READER = mapper.readerFor(OrderData.class);
+
+    /** The Constant ORDER_DATA_WRITER. */
+    public static final ObjectWriter ORDER_DATA_WRITER = mapper.writerFor(OrderData.class);
+
+    /** The Constant ORDER_DATA_DTO_READER. */
+    public static final ObjectReader ORDER_DATA_DTO_READER = mapper.readerFor(OrderDataDTO.class);
+
+    /** The Constant ORDER_DATA_DTO_WRITER. */
+    public static final ObjectWriter ORDER_DATA_DTO_WRITER = mapper.writerFor(OrderDataDTO.class);
+
+    /** The Constant LISTENER_INFO_READER. */
+    public static final ObjectReader LISTENER_INFO_READER = mapper.readerFor(ListenerInfo.class);
+
+    /** The Constant LISTENER_INFO_WRITER. */
+    public static final ObjectWriter LISTENER_INFO_WRITER = mapper.writerFor(ListenerInfo.class);
+
+    /** The Constant STATE_CHANGE_NOTIFY_READER. */
+    public static final ObjectReader STATE_CHANGE_NOTIFY_READER = mapper.readerFor(StateChangeNotify.class);
+
+    /** The Constant STATE_CHANGE_NOTIFY_WRITER. */
+    public static final ObjectWriter STATE_CHANGE_NOTIFY_WRITER = mapper.writerFor(StateChangeNotify.class);
+
+    /** The Constant NOTE_LIST_READER. */
+    public static final ObjectReader NOTE_LIST_READER = mapper.readerFor(NOTE_LIST_TYPE);
+
+    /** The Constant NOTE_LIST_WRITER. */
+    public static final ObjectWriter NOTE_LIST_WRITER = mapper.writerFor(NOTE_LIST_TYPE);
+
+    /** The readers by type. */
+    private static final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    /** The writers by type. */
+    private static final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    static {
+        readers.put(OrderData.class, ORDER_DATA_READER);
+        readers.put(OrderDataDTO.class, ORDER_DATA_DTO_READER);
+        readers.put(ListenerInfo.class, LISTENER_INFO_READER);
+        readers.put(StateChangeNotify.class, STATE_CHANGE_NOTIFY_READER);
+        writers.put(OrderData.class, ORDER_DATA_WRITER);
+        writers.put(OrderDataDTO.class, ORDER_DATA_DTO_WRITER);
+        writers.put(ListenerInfo.class, LISTENER_INFO_WRITER);
+        writers.put(StateChangeNotify.class, STATE_CHANGE_NOTIFY_WRITER);
+    }
+
+    /**
+     * Gets the mapper.
+     *
+     * @return the mapper
+     */
+    public static ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * Gets the reader of a type, the reader is built at first use.
+     *
+     * @param type the type
+     * @return the reader
+     */
+    public static ObjectReader readerFor(Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = mapper.readerFor(type);
+            ObjectReader existing = readers.putIfAbsent(type, reader);
+            if (existing != null) {
+                reader = existing;
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * Gets the writer of a type, the writer is built at first use.
+     *
+     * @param type the type
+     * @return the writer
+     */
+    public static ObjectWriter writerFor(Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        if (writer == null) {
+            writer = mapper.writerFor(type);
+            ObjectWriter existing = writers.putIfAbsent(type, writer);
+            if (existing != null) {
+                writer = existing;
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Bind a json to an object with the reader of its type.
+     *
+     * @param <T> the generic type
+     * @param json the json
+     * @param type the type
+     * @return the object
+     * @throws IOException Signals that the json can not be bound.
+     */
+    public static <T> T readValue(String json, Class<T> type) throws IOException {
+        return readerFor(type).readValue(json);
+    }
+
+    /**
+     * Bind json bytes to an object with the reader of its type.
+     *
+     * @param <T> the generic type
+     * @param data the json bytes
+     * @param length the length of the json
+     * @param type the type
+     * @return the object
+     * @throws IOException Signals that the json can not be bound.
+     */
+    public static <T> T readValue(byte[] data, int length, Class<T> type) throws IOException {
+        return readerFor(type).readValue(data, 0, length);
+    }
+
+    /**
+     * Use the mapper in the jackson converters of a list of message converters,
+     * i.e: the converters of a RestTemplate.
+     *
+     * @param converters the message converters
+     */
+    public static void configure(List<HttpMessageConverter<?>> converters) {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof MappingJackson2HttpMessageConverter) {
+                ((MappingJackson2HttpMessageConverter) converter).setObjectMapper(mapper);
+            }
+        }
+    }
+}
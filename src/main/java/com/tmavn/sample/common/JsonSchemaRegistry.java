@@ -0,0 +1,246 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jackson.JsonLoader;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.report.ListReportProvider;
+import com.github.fge.jsonschema.core.report.LogLevel;
+import com.github.fge.jsonschema.main.JsonSchema;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+
+/**
+ * The Class JsonSchemaRegistry.<br>
+ * Keeps one compiled {@link JsonSchema} per schema file in memory. A schema is
+ * reloaded when the last modified time of its file changes, the file is checked
+ * at most once per {@link #RELOAD_CHECK_INTERVAL_MILLIS}.<br>
+ * Each schema is also compiled in fail-fast mode, its validation throws a
+ * {@link ProcessingException} at the first error instead of collecting all
+ * errors.<br>
+ * The {@link SchemaValidator} of each schema are created with the compiled
+ * schema, the streaming validator is only created if the schema keywords are
+ * supported by {@link StreamingSchemaValidator}.
+ */
+public class JsonSchemaRegistry {
+
+    private JsonSchemaRegistry() {
+        // You shall not instantiate an item of this class
+    }
+
+    /** The Constant logger. */
+    private final static Logger logger = LoggerFactory.getLogger(JsonSchemaRegistry.class);
+
+    /** The Constant RELOAD_CHECK_INTERVAL_MILLIS. */
+    public static final long RELOAD_CHECK_INTERVAL_MILLIS = 1000L;
+
+    /** The schemas used by the controllers, relative to the base directory. */
+    private static final List<String> SCHEMA_FILES = Arrays.asList(Constant.JsonSchema.MODULE_ACCESS,
+            Constant.JsonSchema.ORDER_DATA_POST, Constant.JsonSchema.ORDER_DATA_PUT,
+            Constant.JsonSchema.ORDER_DATA_PATCH, Constant.JsonSchema.LISTENER_INFO_POST,
+            Constant.JsonSchema.LISTENER_INFO_PUT, Constant.JsonSchema.LISTENER_INFO_PATCH);
+
+    /** The Constant factory. */
+    private static final JsonSchemaFactory factory = JsonSchemaFactory.byDefault();
+
+    /** The Constant failFastFactory, stop the validation at the first error. */
+    private static final JsonSchemaFactory failFastFactory = JsonSchemaFactory.newBuilder()
+            .setReportProvider(new ListReportProvider(LogLevel.INFO, LogLevel.ERROR)).freeze();
+
+    /** The compiled schemas, keyed by schema file path. */
+    private static final ConcurrentMap<String, CompiledSchema> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * Load and compile all schemas of {@link Constant.JsonSchema} under the base
+     * directory.
+     *
+     * @return true if all schemas were compiled, false otherwise
+     */
+    public static boolean preload() {
+        logger.debug("IN - preload()");
+        boolean success = true;
+        for (String schemaFile : SCHEMA_FILES) {
+            String path = Utils.getBaseDirectory() + schemaFile;
+            try {
+                getSchema(path);
+            } catch (IOException | ProcessingException e) {
+                logger.warn("Can not compile json schema {}: {}", path, e.getLocalizedMessage());
+                success = false;
+            }
+        }
+        logger.debug("OUT - preload()");
+        return success;
+    }
+
+    /**
+     * Gets the compiled schema of a schema file, compile it if it is not loaded
+     * yet or the file was modified.
+     *
+     * @param schemaFile the schema file
+     * @return the compiled json schema
+     * @throws IOException         if the schema file can not be read
+     * @throws ProcessingException if the schema is not valid
+     */
+    public static JsonSchema getSchema(String schemaFile) throws IOException, ProcessingException {
+        return getSchema(schemaFile, false);
+    }
+
+    /**
+     * Gets the compiled schema of a schema file, compile it if it is not loaded
+     * yet or the file was modified.
+     *
+     * @param schemaFile the schema file
+     * @param failFast   true to get the schema which stops at the first error
+     * @return the compiled json schema
+     * @throws IOException         if the schema file can not be read
+     * @throws ProcessingException if the schema is not valid
+     */
+    public static JsonSchema getSchema(String schemaFile, boolean failFast) throws IOException, ProcessingException {
+        return getCompiled(schemaFile).get(failFast);
+    }
+
+    /**
+     * Gets the validator of a schema file, compile the schema if it is not loaded
+     * yet or the file was modified.
+     *
+     * @param schemaFile    the schema file
+     * @param failFast      true to get the validator which stops at the first error
+     * @param validatorName the name of the validator, the fge validator is
+     *                      returned if the schema is not supported by the
+     *                      streaming validator
+     * @return the validator
+     * @throws IOException         if the schema file can not be read
+     * @throws ProcessingException if the schema is not valid
+     */
+    public static SchemaValidator getValidator(String schemaFile, boolean failFast, String validatorName)
+            throws IOException, ProcessingException {
+        CompiledSchema compiled = getCompiled(schemaFile);
+        if (SchemaValidator.STREAMING.equals(validatorName) && compiled.streamingValidator != null) {
+            return failFast ? compiled.failFastStreamingValidator : compiled.streamingValidator;
+        }
+        return failFast ? compiled.failFastValidator : compiled.validator;
+    }
+
+    /**
+     * Remove all compiled schemas.
+     */
+    public static void clear() {
+        schemas.clear();
+    }
+
+    /**
+     * Gets the compiled schema of a schema file, compile it if it is not loaded
+     * yet or the file was modified.
+     *
+     * @param schemaFile the schema file
+     * @return the compiled schema
+     * @throws IOException         if the schema file can not be read
+     * @throws ProcessingException if the schema is not valid
+     */
+    private static CompiledSchema getCompiled(String schemaFile) throws IOException, ProcessingException {
+        long now = System.currentTimeMillis();
+        CompiledSchema compiled = schemas.get(schemaFile);
+        if (compiled != null) {
+            if (now - compiled.checkedTime < RELOAD_CHECK_INTERVAL_MILLIS) {
+                return compiled;
+            }
+            long lastModified = new File(schemaFile).lastModified();
+            if (lastModified == compiled.lastModified) {
+                compiled.checkedTime = now;
+                return compiled;
+            }
+            logger.info("Json schema {} was modified, reload it", schemaFile);
+        }
+        return compile(schemaFile, now);
+    }
+
+    /**
+     * Read and compile a schema file then put it to the registry.
+     *
+     * @param schemaFile the schema file
+     * @param now        the current time
+     * @return the compiled json schema
+     * @throws IOException         if the schema file can not be read
+     * @throws ProcessingException if the schema is not valid
+     */
+    private static CompiledSchema compile(String schemaFile, long now) throws IOException, ProcessingException {
+        logger.debug("Compile json schema {}", schemaFile);
+        long lastModified = new File(schemaFile).lastModified();
+        JsonNode schemaNode = JsonLoader.fromPath(schemaFile);
+        CompiledSchema compiled = new CompiledSchema(factory.getJsonSchema(schemaNode),
+                failFastFactory.getJsonSchema(schemaNode), lastModified, now);
+        compiled.streamingValidator = StreamingSchemaValidator.compile(schemaNode, false);
+        compiled.failFastStreamingValidator = StreamingSchemaValidator.compile(schemaNode, true);
+        schemas.put(schemaFile, compiled);
+        return compiled;
+    }
+
+    /**
+     * A compiled schema with the modified time of its file.
+     */
+    private static final class CompiledSchema {
+
+        /** The schema. */
+        private final JsonSchema schema;
+
+        /** The fail-fast schema. */
+        private final JsonSchema failFastSchema;
+
+        /** The last modified time of the schema file. */
+        private final long lastModified;
+
+        /** The last time the schema file was checked. */
+        private volatile long checkedTime;
+
+        /** The fge validator. */
+        private final SchemaValidator validator;
+
+        /** The fail-fast fge validator. */
+        private final SchemaValidator failFastValidator;
+
+        /** The streaming validator, null if the schema is not supported. */
+        private SchemaValidator streamingValidator;
+
+        /** The fail-fast streaming validator, null if the schema is not supported. */
+        private SchemaValidator failFastStreamingValidator;
+
+        /**
+         * Instantiates a new compiled schema.
+         *
+         * @param schema         the schema
+         * @param failFastSchema the fail-fast schema
+         * @param lastModified   the last modified
+         * @param checkedTime    the checked time
+         */
+        private CompiledSchema(JsonSchema schema, JsonSchema failFastSchema, long lastModified,
+                long checkedTime) {
+            this.schema = schema;
+            this.failFastSchema = failFastSchema;
+            this.lastModified = lastModified;
+            this.checkedTime = checkedTime;
+            this.validator = new FgeSchemaValidator(schema, false);
+            this.failFastValidator = new FgeSchemaValidator(failFastSchema, true);
+        }
+
+        /**
+         * Gets the schema.
+         *
+         * @param failFast true to get the fail-fast schema
+         * @return the schema
+         */
+        private JsonSchema get(boolean failFast) {
+            return failFast ? failFastSchema : schema;
+        }
+    }
+}
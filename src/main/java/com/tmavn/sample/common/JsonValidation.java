@@ -4,18 +4,22 @@
 package com.tmavn.sample.common;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.github.fge.jackson.JsonLoader;
-import com.github.fge.jsonschema.core.report.ProcessingReport;
-import com.github.fge.jsonschema.main.JsonSchemaFactory;
-import com.github.fge.jsonschema.main.JsonValidator;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.tmavn.sample.model.BindResult;
 import com.tmavn.sample.model.CheckResult;
+import com.tmavn.sample.model.ValidationError;
 
 /**
  * The Class ValidationUtils.
@@ -25,6 +29,19 @@ public class JsonValidation {
     /** The Constant logger. */
     private final static Logger logger = LoggerFactory.getLogger(JsonValidation.class);
 
+    /** The Constant mapper, shared by the application. */
+    private static final ObjectMapper mapper = JsonMapper.getMapper();
+
+    /** The error types, ordered by priority to build the error message. */
+    static final List<String> ERROR_TYPE_PRIORITY = Arrays.asList(ValidationError.TYPE_MISSING,
+            ValidationError.TYPE_EXPECTED, ValidationError.TYPE_ONE_OF, ValidationError.TYPE_UNWANTED);
+
+    /** Stop the validation at the first error. */
+    private static volatile boolean failFast = false;
+
+    /** The name of the {@link SchemaValidator} to use. */
+    private static volatile String validatorName = SchemaValidator.FGE;
+
     /**
      * Check json validation.
      *
@@ -35,65 +52,417 @@ public class JsonValidation {
     public static CheckResult validate(String schemaFile, String json) {
         logger.debug("IN - validate()");
         logger.debug("Validate json with schema file: {}", schemaFile);
+        SchemaValidator validator = getStreamingValidator(schemaFile);
+        if (validator != null) {
+            // check json format and json schema without a tree
+            CheckResult result = validateStream(validator, json);
+            logger.debug("OUT - validate()");
+            return result;
+        }
         // check json format
         CheckResult result = new CheckResult();
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            objectMapper.readTree(json);
-            result.setSuccess(true);
-        } catch (JsonProcessingException jpe) {
-            result.setMessage(jpe.getLocalizedMessage());
-            result.setSuccess(false);
-            return result;
-        } catch (IOException e) {
-            result.setMessage(e.getLocalizedMessage());
-            result.setSuccess(false);
+        JsonNode jsonData = readTree(json, result);
+        if (jsonData == null) {
             return result;
         }
         // check json schema
-        result = new CheckResult(true, CheckResult.MSG_OK);
-        String message = "";
+        result = validate(schemaFile, jsonData);
+        logger.debug("OUT - validate()");
+        return result;
+    }
+
+    /**
+     * Parse the json once, check it with the json schema then bind it to an
+     * object of the given type.
+     *
+     * @param <T>        the type of the bound object
+     * @param schemaFile the schema file
+     * @param json       the json
+     * @param type       the class of the bound object
+     * @return the bind result, contains the bound object if the json is valid
+     */
+    public static <T> BindResult<T> validateAndBind(String schemaFile, String json, Class<T> type) {
+        logger.debug("IN - validateAndBind()");
+        logger.debug("Validate json with schema file: {}", schemaFile);
+        BindResult<T> bindResult = new BindResult<T>();
+        SchemaValidator validator = getStreamingValidator(schemaFile);
+        if (validator != null) {
+            return validateStreamAndBind(validator, json, type);
+        }
+        // check json format
+        JsonNode jsonData = readTree(json, bindResult);
+        if (jsonData == null) {
+            return bindResult;
+        }
+        // check json schema
+        CheckResult result = validate(schemaFile, jsonData);
+        bindResult.setSuccess(result.isSuccess());
+        bindResult.setMessage(result.getMessage());
+        bindResult.setErrors(result.getErrors());
+        if (!result.isSuccess()) {
+            return bindResult;
+        }
+        // bind object from the parsed tree
+        bind(jsonData, type, bindResult);
+        logger.debug("OUT - validateAndBind()");
+        return bindResult;
+    }
+
+    /**
+     * Read a request body, check it with the json schema then bind it to an
+     * object of the given type. The body is read into a pooled buffer and parsed
+     * from the bytes.
+     *
+     * @param <T>        the type of the bound object
+     * @param schemaFile the schema file
+     * @param body       the request body
+     * @param type       the class of the bound object
+     * @return the bind result, contains the bound object if the json is valid
+     * @throws RequestBodyTooLargeException the body is larger than the maximum
+     *                                       size
+     */
+    public static <T> BindResult<T> validateAndBind(String schemaFile, InputStream body, Class<T> type) {
+        logger.debug("IN - validateAndBind()");
+        logger.debug("Validate request body with schema file: {}", schemaFile);
+        try (BodyBuffer buffer = BodyBuffer.read(body)) {
+            return validateAndBind(schemaFile, buffer.getData(), buffer.getLength(), type);
+        } catch (IOException e) {
+            logger.warn("Can not read request body: {}", e.getLocalizedMessage());
+            return new BindResult<T>(false, CheckResult.MSG_JSON_NG, null);
+        }
+    }
+
+    /**
+     * Check json tree with the json schema.
+     *
+     * @param schemaFile the schema file
+     * @param jsonData   the parsed json
+     * @return the check result
+     */
+    public static CheckResult validate(String schemaFile, JsonNode jsonData) {
         try {
-            final JsonNode jsonData = JsonLoader.fromString(json);
-            final JsonNode jsonSchema = JsonLoader.fromPath(schemaFile);
-            final JsonSchemaFactory factory = JsonSchemaFactory.byDefault();
-            JsonValidator validator = factory.getValidator();
-            ProcessingReport processingReport = validator.validate(jsonSchema, jsonData);
+            SchemaValidator validator = JsonSchemaRegistry.getValidator(schemaFile, failFast, validatorName);
+            return validator.validate(jsonData);
+        } catch (Exception e) {
+            logger.error("Exception: ", e);
+            return new CheckResult(false, CheckResult.MSG_JSON_NG);
+        }
+    }
 
-            if (!processingReport.isSuccess()) {
-                result.setSuccess(false);
-                // Parse report.toString() to get mandatory fields name
-                String reportMsg = processingReport.toString();
-
-                if (reportMsg.contains("missing: ")) {
-                    String[] msg = reportMsg.split("missing: ");
-                    message += CheckResult.MSG_MANDATORY_ATT_NG + msg[1].split("\\\n")[0] + ")";
-
-                } else if (reportMsg.contains("expected: ")) {
-                    String[] msg = reportMsg.split("expected: ");
-                    message += CheckResult.MSG_MANDATORY_TYPE_NG + msg[1].split("\\\n")[0] + ")";
-                } else if (reportMsg.contains("oneOf")) {
-                    String[] msg = reportMsg.split("reports:");
-                    message += CheckResult.MSG_INSTANCE_FAILED_NG + msg[1].split("\\\n")[0] + ")";
-                } else if (reportMsg.contains("unwanted")) {
-                    String[] msg = reportMsg.split("unwanted:");
-                    message += CheckResult.MSG_UN_WANTED_NG + msg[1].split("\\\n")[0] + ")";
-                } else {
-                    message += CheckResult.MSG_JSON_NG;
-                }
-
-                logger.warn("Check json schema failed \n{}", reportMsg);
+    /**
+     * Checks if the validation stops at the first error.
+     *
+     * @return true if the validation stops at the first error
+     */
+    public static boolean isFailFast() {
+        return failFast;
+    }
+
+    /**
+     * Sets the validation stops at the first error or not.
+     *
+     * @param failFast true to stop the validation at the first error
+     */
+    public static void setFailFast(boolean failFast) {
+        JsonValidation.failFast = failFast;
+    }
+
+    /**
+     * Gets the name of the {@link SchemaValidator} in use.
+     *
+     * @return the validator name
+     */
+    public static String getValidatorName() {
+        return validatorName;
+    }
+
+    /**
+     * Sets the {@link SchemaValidator} to use: {@link SchemaValidator#FGE} or
+     * {@link SchemaValidator#STREAMING}. The fge validator is used for an unknown
+     * name and for the schemas not supported by the streaming validator.
+     *
+     * @param validatorName the validator name
+     */
+    public static void setValidatorName(String validatorName) {
+        if (!SchemaValidator.FGE.equals(validatorName) && !SchemaValidator.STREAMING.equals(validatorName)) {
+            logger.warn("Unknown json schema validator {}, use {}", validatorName, SchemaValidator.FGE);
+            JsonValidation.validatorName = SchemaValidator.FGE;
+            return;
+        }
+        JsonValidation.validatorName = validatorName;
+    }
+
+    /**
+     * Set validation errors to the result. The message is built from the error
+     * with the highest priority: missing, expected, oneOf then unwanted.
+     *
+     * @param result the result
+     * @param errors the validation errors
+     */
+    static void setErrors(CheckResult result, List<ValidationError> errors) {
+        result.setSuccess(false);
+        result.setErrors(errors);
+
+        ValidationError mainError = null;
+        int mainPriority = ERROR_TYPE_PRIORITY.size();
+        for (ValidationError error : errors) {
+            int priority = error.getType() == null ? ERROR_TYPE_PRIORITY.size()
+                    : ERROR_TYPE_PRIORITY.indexOf(error.getType());
+            if (priority < mainPriority) {
+                mainError = error;
+                mainPriority = priority;
             }
-            logger.debug("OUT - validate()");
+        }
+
+        String message;
+        if (mainError == null) {
+            message = CheckResult.MSG_JSON_NG;
+        } else if (ValidationError.TYPE_MISSING.equals(mainError.getType())) {
+            message = CheckResult.MSG_MANDATORY_ATT_NG + mainError.getDetail() + ")";
+        } else if (ValidationError.TYPE_EXPECTED.equals(mainError.getType())) {
+            message = CheckResult.MSG_MANDATORY_TYPE_NG + mainError.getDetail() + ")";
+        } else if (ValidationError.TYPE_ONE_OF.equals(mainError.getType())) {
+            message = CheckResult.MSG_INSTANCE_FAILED_NG + " " + mainError.getDetail() + ")";
+        } else {
+            message = CheckResult.MSG_UN_WANTED_NG + " " + mainError.getDetail() + ")";
+        }
+        result.setMessage(message);
+        logger.warn("Check json schema failed: {} error(s), {}", errors.size(), message);
+    }
+
+    /**
+     * Gets the streaming validator of a schema file.
+     *
+     * @param schemaFile the schema file
+     * @return the streaming validator, null if the streaming validator is not in
+     *         use, does not support the schema or the schema can not be loaded
+     */
+    private static SchemaValidator getStreamingValidator(String schemaFile) {
+        if (!SchemaValidator.STREAMING.equals(validatorName)) {
+            return null;
+        }
+        try {
+            SchemaValidator validator = JsonSchemaRegistry.getValidator(schemaFile, failFast, validatorName);
+            return validator.isStreaming() ? validator : null;
+        } catch (IOException | ProcessingException e) {
+            // the error is reported by the tree validation
+            return null;
+        }
+    }
+
+    /**
+     * Check json format and json schema with a streaming validator.
+     *
+     * @param validator the streaming validator
+     * @param json      the json
+     * @return the check result
+     */
+    private static CheckResult validateStream(SchemaValidator validator, String json) {
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            return validator.validate(parser);
+        } catch (IOException e) {
+            return new CheckResult(false, e.getLocalizedMessage());
+        } catch (Exception e) {
+            logger.error("Exception: ", e);
+            return new CheckResult(false, CheckResult.MSG_JSON_NG);
+        }
+    }
+
+    /**
+     * Check json with a streaming validator then bind it to an object of the
+     * given type directly from the json tokens.
+     *
+     * @param <T>       the type of the bound object
+     * @param validator the streaming validator
+     * @param json      the json
+     * @param type      the class of the bound object
+     * @return the bind result
+     */
+    private static <T> BindResult<T> validateStreamAndBind(SchemaValidator validator, String json, Class<T> type) {
+        CheckResult result = validateStream(validator, json);
+        BindResult<T> bindResult = new BindResult<T>(result.isSuccess(), result.getMessage(), null);
+        bindResult.setErrors(result.getErrors());
+        if (!result.isSuccess()) {
+            return bindResult;
+        }
+        try {
+            bindResult.setData(JsonMapper.readValue(json, type));
+        } catch (IOException e) {
+            logger.warn("Can not bind json to {}: {}", type.getSimpleName(), e.getLocalizedMessage());
+            bindResult.setSuccess(false);
+            bindResult.setMessage(CheckResult.MSG_JSON_NG);
+        }
+        logger.debug("OUT - validateAndBind()");
+        return bindResult;
+    }
+
+    /**
+     * Check the json bytes with the json schema then bind them to an object of
+     * the given type.
+     *
+     * @param <T>        the type of the bound object
+     * @param schemaFile the schema file
+     * @param data       the json bytes
+     * @param length     the length of the json
+     * @param type       the class of the bound object
+     * @return the bind result
+     */
+    private static <T> BindResult<T> validateAndBind(String schemaFile, byte[] data, int length, Class<T> type) {
+        SchemaValidator validator = getStreamingValidator(schemaFile);
+        if (validator != null) {
+            CheckResult result = validateStream(validator, data, length);
+            BindResult<T> bindResult = new BindResult<T>(result.isSuccess(), result.getMessage(), null);
+            bindResult.setErrors(result.getErrors());
+            if (result.isSuccess()) {
+                bind(data, length, type, bindResult);
+            }
+            logger.debug("OUT - validateAndBind()");
+            return bindResult;
+        }
+        // check json format
+        BindResult<T> bindResult = new BindResult<T>();
+        JsonNode jsonData = readTree(data, length, bindResult);
+        if (jsonData == null) {
+            return bindResult;
+        }
+        // check json schema
+        CheckResult result = validate(schemaFile, jsonData);
+        bindResult.setSuccess(result.isSuccess());
+        bindResult.setMessage(result.getMessage());
+        bindResult.setErrors(result.getErrors());
+        if (result.isSuccess()) {
+            // bind object from the parsed tree, the bytes are not parsed again
+            bind(jsonData, type, bindResult);
+        }
+        logger.debug("OUT - validateAndBind()");
+        return bindResult;
+    }
+
+    /**
+     * Check json bytes with a streaming validator.
+     *
+     * @param validator the streaming validator
+     * @param data      the json bytes
+     * @param length    the length of the json
+     * @return the check result
+     */
+    private static CheckResult validateStream(SchemaValidator validator, byte[] data, int length) {
+        try (JsonParser parser = mapper.getFactory().createParser(data, 0, length)) {
+            return validator.validate(parser);
+        } catch (IOException e) {
+            return new CheckResult(false, getParseMessage(e));
         } catch (Exception e) {
             logger.error("Exception: ", e);
+            return new CheckResult(false, CheckResult.MSG_JSON_NG);
+        }
+    }
+
+    /**
+     * Bind the parsed tree of a valid json to an object, set the error to the
+     * result if the json can not be bound.
+     *
+     * @param <T>        the type of the bound object
+     * @param jsonData   the parsed json
+     * @param type       the class of the bound object
+     * @param bindResult the result to set the object
+     */
+    private static <T> void bind(JsonNode jsonData, Class<T> type, BindResult<T> bindResult) {
+        try {
+            bindResult.setData(mapper.treeToValue(jsonData, type));
+        } catch (JsonProcessingException e) {
+            logger.warn("Can not bind json to {}: {}", type.getSimpleName(), e.getLocalizedMessage());
+            bindResult.setSuccess(false);
+            bindResult.setMessage(CheckResult.MSG_JSON_NG);
+        }
+    }
+
+    /**
+     * Bind the valid json bytes to an object, set the error to the result if the
+     * json can not be bound. Used by the streaming validation, which has no tree.
+     *
+     * @param <T>        the type of the bound object
+     * @param data       the json bytes
+     * @param length     the length of the json
+     * @param type       the class of the bound object
+     * @param bindResult the result to set the object
+     */
+    private static <T> void bind(byte[] data, int length, Class<T> type, BindResult<T> bindResult) {
+        try {
+            bindResult.setData(JsonMapper.readValue(data, length, type));
+        } catch (IOException e) {
+            logger.warn("Can not bind json to {}: {}", type.getSimpleName(), e.getLocalizedMessage());
+            bindResult.setSuccess(false);
+            bindResult.setMessage(CheckResult.MSG_JSON_NG);
+        }
+    }
+
+    /**
+     * Parse json bytes to tree, set the error to the result if the json is not
+     * valid.
+     *
+     * @param data   the json bytes
+     * @param length the length of the json
+     * @param result the result to set error
+     * @return the json tree, null if the json is not valid
+     */
+    private static JsonNode readTree(byte[] data, int length, CheckResult result) {
+        try {
+            JsonNode jsonData = mapper.readValue(data, 0, length, JsonNode.class);
+            if (jsonData == null) {
+                result.setMessage(CheckResult.MSG_JSON_NG);
+                result.setSuccess(false);
+                return null;
+            }
+            result.setSuccess(true);
+            return jsonData;
+        } catch (IOException e) {
+            result.setMessage(getParseMessage(e));
             result.setSuccess(false);
-            result.setMessage(CheckResult.MSG_JSON_NG);
-            return result;
         }
+        return null;
+    }
+
+    /**
+     * Gets the message of a parse error of json bytes, the source of the error
+     * is the byte array so only its position is kept.
+     *
+     * @param e the parse error
+     * @return the message
+     */
+    private static String getParseMessage(IOException e) {
+        if (e instanceof JsonProcessingException && ((JsonProcessingException) e).getLocation() != null) {
+            JsonLocation location = ((JsonProcessingException) e).getLocation();
+            return ((JsonProcessingException) e).getOriginalMessage() + " at [line: " + location.getLineNr()
+                    + ", column: " + location.getColumnNr() + "]";
+        }
+        return e.getLocalizedMessage();
+    }
 
-        result.setMessage(message);
-        return result;
+    /**
+     * Parse json to tree, set the error to the result if the json is not valid.
+     *
+     * @param json   the json
+     * @param result the result to set error
+     * @return the json tree, null if the json is not valid
+     */
+    private static JsonNode readTree(String json, CheckResult result) {
+        try {
+            JsonNode jsonData = mapper.readTree(json);
+            if (jsonData == null) {
+                result.setMessage(CheckResult.MSG_JSON_NG);
+                result.setSuccess(false);
+                return null;
+            }
+            result.setSuccess(true);
+            return jsonData;
+        } catch (JsonProcessingException jpe) {
+            result.setMessage(jpe.getLocalizedMessage());
+            result.setSuccess(false);
+        } catch (IOException e) {
+            result.setMessage(e.getLocalizedMessage());
+            result.setSuccess(false);
+        }
+        return null;
     }
 
 }
@@ -0,0 +1,118 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.enums.OrderState;
+
+/**
+ * The Class ListenerQuery.<br>
+ * The compiled query of a listener, which selects the state changes notified
+ * to the listener. The query is a list of filters separated by '&amp;', a
+ * filter is a name and a list of values separated by ',':
+ *
+ * <pre>
+ * query  = "" | filter ("&amp;" filter)*
+ * filter = name "=" [value ("," value)*]
+ * </pre>
+ *
+ * i.e: query="state=Scheduled,Processing".<br>
+ * Only the filter "state" is defined; an empty query or an empty value list
+ * selects all the states, and each state value must match exactly. The states
+ * are the key of the listener index, so a new filter must be checked by
+ * {@link #matches(OrderData)} after the index lookup rather than replace it.
+ */
+public final class ListenerQuery {
+
+    /** The filter of the states. */
+    public static final String FILTER_STATE = "state";
+
+    /** The query of all the state changes. */
+    public static final ListenerQuery ALL = new ListenerQuery(EnumSet.allOf(OrderState.class));
+
+    /** The query of no state change. */
+    public static final ListenerQuery NONE = new ListenerQuery(EnumSet.noneOf(OrderState.class));
+
+    /** The selected states. */
+    private final Set<OrderState> states;
+
+    private ListenerQuery(EnumSet<OrderState> states) {
+        this.states = Collections.unmodifiableSet(states);
+    }
+
+    /**
+     * Compile a query.
+     *
+     * @param query the query
+     * @return the compiled query
+     * @throws IllegalArgumentException if the query is not valid
+     */
+    public static ListenerQuery compile(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return ALL;
+        }
+        EnumSet<OrderState> states = EnumSet.allOf(OrderState.class);
+        for (String filter : query.split("&")) {
+            int index = filter.indexOf('=');
+            if (index < 0) {
+                throw new IllegalArgumentException("Invalid filter: " + filter);
+            }
+            String name = filter.substring(0, index).trim();
+            if (!FILTER_STATE.equals(name)) {
+                throw new IllegalArgumentException("Unknown filter: " + name);
+            }
+            // filters of the same name are all applied
+            states.retainAll(parseStates(filter.substring(index + 1)));
+        }
+        return new ListenerQuery(states);
+    }
+
+    private static EnumSet<OrderState> parseStates(String values) {
+        if (values.trim().isEmpty()) {
+            return EnumSet.allOf(OrderState.class);
+        }
+        EnumSet<OrderState> states = EnumSet.noneOf(OrderState.class);
+        for (String value : values.split(",")) {
+            OrderState state = OrderState.fromValue(value.trim());
+            if (state == null) {
+                throw new IllegalArgumentException("Unknown state: " + value);
+            }
+            states.add(state);
+        }
+        return states;
+    }
+
+    /**
+     * Gets the selected states.
+     *
+     * @return the states, read only
+     */
+    public Set<OrderState> getStates() {
+        return states;
+    }
+
+    /**
+     * Check if a state is selected.
+     *
+     * @param state the state
+     * @return true if the state is selected
+     */
+    public boolean matches(OrderState state) {
+        return state != null && states.contains(state);
+    }
+
+    /**
+     * Check if the state change of an order is selected.
+     *
+     * @param orderData the new data of the order
+     * @return true if the state change is selected
+     */
+    public boolean matches(OrderData orderData) {
+        return matches(OrderState.fromValue(orderData.getState()));
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Class MemoryInvalidationTransport.<br>
+ * Delivers the messages to the transports started in the same JVM, in the
+ * thread of the sender. It is the transport of a single node and of the tests,
+ * where several buses stand for several nodes.
+ */
+public class MemoryInvalidationTransport implements InvalidationTransport {
+
+    /** The maximum size of a message, the size of a Postgres notification. */
+    private static final int MAX_MESSAGE_SIZE = 8000;
+
+    /** The started transports. */
+    private static final Set<MemoryInvalidationTransport> STARTED = new CopyOnWriteArraySet<>();
+
+    /** The last version taken in the JVM. */
+    private static final AtomicLong VERSION = new AtomicLong();
+
+    private volatile Receiver receiver;
+
+    @Override
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        STARTED.add(this);
+    }
+
+    @Override
+    public long nextVersion() {
+        return VERSION.incrementAndGet();
+    }
+
+    @Override
+    public void send(String message) {
+        for (MemoryInvalidationTransport transport : STARTED) {
+            Receiver current = transport.receiver;
+            if (current != null) {
+                current.receive(message);
+            }
+        }
+    }
+
+    @Override
+    public int getMaxMessageSize() {
+        return MAX_MESSAGE_SIZE;
+    }
+
+    @Override
+    public void stop() {
+        STARTED.remove(this);
+        receiver = null;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class NotifyJournal.<br>
+ * An append-only journal of records in memory-mapped segment files. A record
+ * is written as its length, its CRC32 and its bytes; a record never spans two
+ * segments, a new segment is started when the current one has no room. The
+ * offset of a record is the base offset of its segment, which is the name of
+ * the file, plus its position in the segment.<br>
+ * The appends are not forced to the disk one by one: {@link #sync(long)}
+ * forces all the records appended so far, so the threads which wait for the
+ * sync together share one force. The consumer checkpoints the offset of the
+ * records it has processed with {@link #commit(long)}, and the segments before
+ * the checkpoint are deleted by {@link #compact()}.<br>
+ * At the opening, the records of the last segment are read until the first
+ * which is missing or corrupted, the next appends start there.
+ */
+public final class NotifyJournal implements Closeable {
+
+    /** The Constant logger. */
+    private static final Logger logger = LoggerFactory.getLogger(NotifyJournal.class);
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private static final String CHECKPOINT = "consumer.offset";
+
+    /** The length and the CRC32 of a record. */
+    private static final int HEADER_SIZE = 8;
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    /** The segments by base offset. */
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<Long, MappedByteBuffer>();
+
+    /** The base offset of the segment of the appends. */
+    private long activeBase;
+
+    /** The position of the next append in the active segment. */
+    private int position;
+
+    private long committedOffset;
+
+    /** Held by the thread which forces the segments. */
+    private final Object syncLock = new Object();
+
+    /** The offset up to which the records are on the disk, read and written under the sync lock. */
+    private long syncedOffset;
+
+    /**
+     * Open the journal of a directory, the directory is created if needed.
+     *
+     * @param directory   the directory of the segments
+     * @param segmentSize the size of a new segment, in bytes
+     * @throws IOException if the segments can not be opened
+     */
+    public NotifyJournal(File directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create the journal directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        committedOffset = readCheckpoint();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(base, map(file, file.length()));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            activeBase = committedOffset;
+            segments.put(activeBase, map(getFile(activeBase), segmentSize));
+        } else {
+            activeBase = segments.lastKey();
+            position = recover(segments.lastEntry().getValue());
+        }
+        syncedOffset = getEndOffset();
+        logger.debug("Opened journal {}, segments: {}, end offset: {}, committed offset: {}", directory,
+                segments.size(), syncedOffset, committedOffset);
+    }
+
+    /**
+     * Append a record, it is on the disk after a sync.
+     *
+     * @param record the bytes of the record
+     * @return the offset after the record
+     * @throws IOException if a new segment can not be created
+     */
+    public synchronized long append(byte[] record) throws IOException {
+        if (record.length > segmentSize - HEADER_SIZE) {
+            throw new IllegalArgumentException("Record too large: " + record.length);
+        }
+        MappedByteBuffer active = segments.get(activeBase);
+        if (active.capacity() - position < HEADER_SIZE + record.length) {
+            // the rest of the segment stays zero, a reader goes on with the next segment
+            activeBase += active.capacity();
+            position = 0;
+            active = map(getFile(activeBase), segmentSize);
+            segments.put(activeBase, active);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        ByteBuffer buffer = active.duplicate();
+        buffer.position(position + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(record);
+        // the length is written last, a reader never sees a partial record
+        buffer.putInt(position, record.length);
+        position += HEADER_SIZE + record.length;
+        return activeBase + position;
+    }
+
+    /**
+     * Force the records to the disk, up to an offset at least.
+     *
+     * @param offset the offset returned by an append
+     */
+    public void sync(long offset) {
+        synchronized (syncLock) {
+            if (syncedOffset >= offset) {
+                // forced by another thread meanwhile
+                return;
+            }
+            List<MappedByteBuffer> dirty = new ArrayList<MappedByteBuffer>();
+            long endOffset;
+            synchronized (this) {
+                endOffset = getEndOffset();
+                for (Map.Entry<Long, MappedByteBuffer> entry : segments.entrySet()) {
+                    if (entry.getKey() + entry.getValue().capacity() > syncedOffset) {
+                        dirty.add(entry.getValue());
+                    }
+                }
+            }
+            for (MappedByteBuffer buffer : dirty) {
+                buffer.force();
+            }
+            syncedOffset = endOffset;
+        }
+    }
+
+    /**
+     * Read the records from an offset.
+     *
+     * @param offset  the offset of the first record
+     * @param max     the maximum number of records
+     * @param records the list which receives the records
+     * @return the offset after the last record read
+     */
+    public synchronized long read(long offset, int max, List<byte[]> records) {
+        long current = offset;
+        int count = 0;
+        while (count < max) {
+            Map.Entry<Long, MappedByteBuffer> entry = segments.floorEntry(current);
+            if (entry == null) {
+                // compacted, go on with the first segment
+                current = segments.firstKey();
+                continue;
+            }
+            MappedByteBuffer segment = entry.getValue();
+            int index = (int) (current - entry.getKey());
+            int length = index + HEADER_SIZE <= segment.capacity() ? segment.getInt(index) : 0;
+            if (length <= 0 || length > segment.capacity() - index - HEADER_SIZE) {
+                Long next = segments.higherKey(entry.getKey());
+                if (next == null) {
+                    break;
+                }
+                current = next;
+                continue;
+            }
+            byte[] record = new byte[length];
+            ByteBuffer buffer = segment.duplicate();
+            buffer.position(index + HEADER_SIZE);
+            buffer.get(record);
+            records.add(record);
+            current += HEADER_SIZE + length;
+            count++;
+        }
+        return current;
+    }
+
+    /**
+     * Gets the offset of the first record not processed by the consumer.
+     *
+     * @return the committed offset
+     */
+    public synchronized long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    /**
+     * Checkpoint the offset of the consumer, the file is replaced at once so a
+     * crash keeps the old or the new offset.
+     *
+     * @param offset the offset after the processed records
+     * @throws IOException if the checkpoint can not be written
+     */
+    public synchronized void commit(long offset) throws IOException {
+        File temp = new File(directory, CHECKPOINT + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+            file.setLength(0);
+            file.writeLong(offset);
+            file.getChannel().force(true);
+        }
+        Files.move(temp.toPath(), new File(directory, CHECKPOINT).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        committedOffset = offset;
+    }
+
+    /**
+     * Delete the segments whose records are all before the committed offset,
+     * the segment of the appends is kept.
+     *
+     * @return the number of deleted segments
+     */
+    public synchronized int compact() {
+        int count = 0;
+        Iterator<Map.Entry<Long, MappedByteBuffer>> iterator = segments.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, MappedByteBuffer> entry = iterator.next();
+            if (entry.getKey() == activeBase || entry.getKey() + entry.getValue().capacity() > committedOffset) {
+                break;
+            }
+            iterator.remove();
+            // the mapping stays valid until it is collected, the file is removed from the directory at once
+            if (!getFile(entry.getKey()).delete()) {
+                logger.warn("Can not delete the journal segment {}", getFile(entry.getKey()));
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the offset of the next append.
+     *
+     * @return the end offset
+     */
+    public synchronized long getEndOffset() {
+        return activeBase + position;
+    }
+
+    /**
+     * Gets the number of segments.
+     *
+     * @return the number of segments
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Force the records and close the journal.
+     */
+    @Override
+    public void close() {
+        sync(Long.MAX_VALUE);
+        synchronized (this) {
+            segments.clear();
+        }
+    }
+
+    private File getFile(long base) {
+        return new File(directory, String.format("%020d", base) + SEGMENT_SUFFIX);
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        File file = new File(directory, CHECKPOINT);
+        if (!file.isFile() || file.length() < 8) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.readLong();
+        }
+    }
+
+    /**
+     * Find the end of the valid records of a segment.
+     *
+     * @param segment the segment
+     * @return the position after the last valid record
+     */
+    private static int recover(MappedByteBuffer segment) {
+        int index = 0;
+        while (index + HEADER_SIZE <= segment.capacity()) {
+            int length = segment.getInt(index);
+            if (length <= 0 || length > segment.capacity() - index - HEADER_SIZE) {
+                break;
+            }
+            byte[] record = new byte[length];
+            ByteBuffer buffer = segment.duplicate();
+            buffer.position(index + HEADER_SIZE);
+            buffer.get(record);
+            CRC32 crc = new CRC32();
+            crc.update(record, 0, length);
+            if ((int) crc.getValue() != segment.getInt(index + 4)) {
+                logger.warn("Corrupted journal record at position {}, the segment is truncated", index);
+                break;
+            }
+            index += HEADER_SIZE + length;
+        }
+        // the bytes after the last valid record are cleared, so that the readers stop there
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position(index);
+        byte[] zeros = new byte[Math.min(4096, buffer.remaining())];
+        while (buffer.hasRemaining()) {
+            buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+        }
+        return index;
+    }
+}
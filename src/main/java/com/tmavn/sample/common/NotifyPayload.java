@@ -0,0 +1,107 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.tmavn.sample.entity.StateChangeNotify;
+
+/**
+ * The Class NotifyPayload.<br>
+ * The body of the state change notifications of one event, rendered once and
+ * shared by the notifications to all the listeners of the event. The
+ * notifications of an event only differ by their trigger id, which is written
+ * in front of the shared bytes when a notification is sent.
+ */
+public final class NotifyPayload {
+
+    /** The Constant logger. */
+    private static final Logger logger = LoggerFactory.getLogger(NotifyPayload.class);
+
+    /** The name of the trigger id field. */
+    private static final String TRIGGER_ID = "triggerId";
+
+    private static final byte[] TRIGGER_ID_START = ("{\"" + TRIGGER_ID + "\":\"").getBytes(StandardCharsets.UTF_8);
+
+    /** The fields of the event without the opening brace, never modified. */
+    private final byte[] event;
+
+    private NotifyPayload(byte[] event) {
+        this.event = event;
+    }
+
+    /**
+     * Render the event of a notification.
+     *
+     * @param stateChangeNotify a notification of the event
+     * @return the payload, or null if the notification can not be serialized
+     */
+    public static NotifyPayload render(StateChangeNotify stateChangeNotify) {
+        try {
+            ObjectNode node = JsonMapper.getMapper().valueToTree(stateChangeNotify);
+            node.remove(TRIGGER_ID);
+            return of(JsonMapper.getMapper().writeValueAsBytes(node));
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            logger.error("Exception: ", e);
+            return null;
+        }
+    }
+
+    /**
+     * Wrap the rendered event of a notification.
+     *
+     * @param json the json object of the event, without the trigger id
+     * @return the payload
+     */
+    static NotifyPayload of(byte[] json) {
+        byte[] event = new byte[json.length - 1];
+        System.arraycopy(json, 1, event, 0, event.length);
+        return new NotifyPayload(event);
+    }
+
+    /**
+     * Gets the body of the notification of a listener.
+     *
+     * @param triggerId the trigger id of the notification
+     * @return the json body, in UTF-8
+     */
+    public byte[] toBytes(String triggerId) {
+        if (triggerId == null) {
+            byte[] body = new byte[event.length + 1];
+            body[0] = '{';
+            System.arraycopy(event, 0, body, 1, event.length);
+            return body;
+        }
+        byte[] id = JsonStringEncoder.getInstance().quoteAsUTF8(triggerId);
+        // no comma before the closing brace of an empty event
+        boolean empty = event.length == 1;
+        byte[] body = new byte[TRIGGER_ID_START.length + id.length + (empty ? 1 : 2) + event.length];
+        int offset = 0;
+        System.arraycopy(TRIGGER_ID_START, 0, body, offset, TRIGGER_ID_START.length);
+        offset += TRIGGER_ID_START.length;
+        System.arraycopy(id, 0, body, offset, id.length);
+        offset += id.length;
+        body[offset++] = '"';
+        if (!empty) {
+            body[offset++] = ',';
+        }
+        System.arraycopy(event, 0, body, offset, event.length);
+        return body;
+    }
+
+    /**
+     * Gets the size of the shared bytes.
+     *
+     * @return the size
+     */
+    public int size() {
+        return event.length;
+    }
+}
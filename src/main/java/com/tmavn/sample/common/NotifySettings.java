@@ -0,0 +1,292 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tmavn.sample.enums.OverflowPolicy;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The Class NotifySettings.<br>
+ * The settings of the dispatcher of the state change notifications, the times
+ * are in milliseconds. The settings are read from sample.conf with the prefix
+ * notify, i.e: notify.batchSize.
+ */
+@Getter
+@Setter
+public class NotifySettings {
+
+    /** The Constant logger. */
+    private final static Logger logger = LoggerFactory.getLogger(NotifySettings.class);
+
+    /** The prefix of the property names. */
+    public static final String PREFIX = "notify.";
+
+    /** The maximum number of notifications read by one poll. */
+    public static final String BATCH_SIZE = "batchSize";
+
+    /** The time between two polls. */
+    public static final String POLL_INTERVAL = "pollInterval";
+
+    /** The number of attempts before a notification is failed. */
+    public static final String MAX_ATTEMPTS = "maxAttempts";
+
+    /** The time before the first retry, doubled at each attempt. */
+    public static final String RETRY_DELAY = "retryDelay";
+
+    /** The random part added to a retry delay, in percent of the delay. */
+    public static final String RETRY_JITTER = "retryJitter";
+
+    /** The duration of a tick of the retry timing wheel. */
+    public static final String RETRY_TICK = "retryTick";
+
+    /** The number of buckets of the retry timing wheel. */
+    public static final String RETRY_WHEEL_SIZE = "retryWheelSize";
+
+    /** The number of delivery lanes, each lane is one thread. */
+    public static final String LANES = "lanes";
+
+    /** The number of notifications waiting in one lane. */
+    public static final String LANE_QUEUE_SIZE = "laneQueueSize";
+
+    /** The maximum time a lane waits for the response of a notification. */
+    public static final String DELIVERY_TIMEOUT = "deliveryTimeout";
+
+    /** The time the notifications of an order wait to be coalesced, 0 to disable. */
+    public static final String COALESCE_WINDOW = "coalesceWindow";
+
+    /** The maximum number of notifications sent in one batch to a callback. */
+    public static final String CALLBACK_BATCH_MAX_SIZE = "callbackBatchMaxSize";
+
+    /** The maximum time a notification waits in the batch of its callback. */
+    public static final String CALLBACK_BATCH_MAX_DELAY = "callbackBatchMaxDelay";
+
+    /** The response time above which the batches of a callback are made smaller. */
+    public static final String CALLBACK_BATCH_TARGET_LATENCY = "callbackBatchTargetLatency";
+
+    /** The number of requests per second to a callback host, 0 for no limit. */
+    public static final String HOST_RATE = "hostRate";
+
+    /** The number of requests sent at once to a callback host before the rate applies. */
+    public static final String HOST_BURST = "hostBurst";
+
+    /** The number of notifications of a callback host waiting in the lanes or in flight. */
+    public static final String HOST_QUEUE_SIZE = "hostQueueSize";
+
+    /** What to do when the queue of a callback host is full: block, dropOldest or spill. */
+    public static final String OVERFLOW_POLICY = "overflowPolicy";
+
+    /** The number of replayed dead letters sent per second. */
+    public static final String REPLAY_RATE = "replayRate";
+
+    /** The lease of the claimed notifications, extended while the node holds them; then the other nodes claim them. */
+    public static final String LEASE_TIMEOUT = "leaseTimeout";
+
+    /** The id of this node in the claims, unique among the nodes sharing the database. */
+    public static final String NODE_ID = "nodeId";
+
+    /** The directory of the journal of the new notifications, the journal is disabled when it is not set. */
+    public static final String JOURNAL_DIR = "journalDir";
+
+    /** The size of a segment file of the journal, in bytes. */
+    public static final String JOURNAL_SEGMENT_SIZE = "journalSegmentSize";
+
+    /** The maximum number of events waiting to be written to a stream connection. */
+    public static final String STREAM_BUFFER_SIZE = "streamBufferSize";
+
+    /** The number of last events kept to resume the streams. */
+    public static final String STREAM_HISTORY_SIZE = "streamHistorySize";
+
+    /** The time after which a stream connection is closed, the client reconnects. */
+    public static final String STREAM_TIMEOUT = "streamTimeout";
+
+    /** The maximum number of notifications read by one poll. */
+    private int batchSize = 100;
+
+    /** The time between two polls. */
+    private int pollInterval = 1000;
+
+    /** The number of attempts before a notification is failed. */
+    private int maxAttempts = 5;
+
+    /** The time before the first retry, doubled at each attempt. */
+    private int retryDelay = 5000;
+
+    /** The random part added to a retry delay, in percent of the delay. */
+    private int retryJitter = 20;
+
+    /** The duration of a tick of the retry timing wheel. */
+    private int retryTick = 100;
+
+    /** The number of buckets of the retry timing wheel. */
+    private int retryWheelSize = 512;
+
+    /** The number of delivery lanes, each lane is one thread. */
+    private int lanes = 4;
+
+    /** The number of notifications waiting in one lane. */
+    private int laneQueueSize = 1000;
+
+    /** The maximum time a lane waits for the response of a notification. */
+    private int deliveryTimeout = 60000;
+
+    /** The time the notifications of an order wait to be coalesced, 0 to disable. */
+    private int coalesceWindow = 0;
+
+    /** The maximum number of notifications sent in one batch to a callback. */
+    private int callbackBatchMaxSize = 100;
+
+    /** The maximum time a notification waits in the batch of its callback. */
+    private int callbackBatchMaxDelay = 200;
+
+    /** The response time above which the batches of a callback are made smaller. */
+    private int callbackBatchTargetLatency = 500;
+
+    /** The number of requests per second to a callback host, 0 for no limit. */
+    private int hostRate = 0;
+
+    /** The number of requests sent at once to a callback host before the rate applies. */
+    private int hostBurst = 10;
+
+    /** The number of notifications of a callback host waiting in the lanes or in flight. */
+    private int hostQueueSize = 1000;
+
+    /** What to do when the queue of a callback host is full. */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    /** The number of replayed dead letters sent per second. */
+    private int replayRate = 500;
+
+    /** The time a node owns the notifications it claimed, then the other nodes can claim them. */
+    private int leaseTimeout = 300000;
+
+    /** The id of this node in the claims, null for the host name. */
+    private String nodeId;
+
+    /** The directory of the journal of the new notifications, null when the journal is disabled. */
+    private String journalDir;
+
+    /** The size of a segment file of the journal, in bytes. */
+    private int journalSegmentSize = 16 * 1024 * 1024;
+
+    /** The maximum number of events waiting to be written to a stream connection. */
+    private int streamBufferSize = 100;
+
+    /** The number of last events kept to resume the streams. */
+    private int streamHistorySize = 1000;
+
+    /** The time after which a stream connection is closed, in milliseconds. */
+    private int streamTimeout = 1800000;
+
+    /**
+     * Read the settings from the properties, a missing or invalid property keeps
+     * its default value.
+     *
+     * @param properties the properties
+     * @return the settings
+     */
+    public static NotifySettings load(Properties properties) {
+        NotifySettings settings = new NotifySettings();
+        settings.setBatchSize(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + BATCH_SIZE, settings.getBatchSize()));
+        settings.setPollInterval(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + POLL_INTERVAL, settings.getPollInterval()));
+        settings.setMaxAttempts(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + MAX_ATTEMPTS, settings.getMaxAttempts()));
+        settings.setRetryDelay(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + RETRY_DELAY, settings.getRetryDelay()));
+        settings.setRetryJitter(Math.min(100,
+                HttpClientSettings.getPositiveInt(properties, PREFIX + RETRY_JITTER, settings.getRetryJitter())));
+        settings.setRetryTick(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + RETRY_TICK, settings.getRetryTick()));
+        settings.setRetryWheelSize(HttpClientSettings.getPositiveInt(properties, PREFIX + RETRY_WHEEL_SIZE,
+                settings.getRetryWheelSize()));
+        settings.setLanes(HttpClientSettings.getPositiveInt(properties, PREFIX + LANES, settings.getLanes()));
+        settings.setLaneQueueSize(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + LANE_QUEUE_SIZE, settings.getLaneQueueSize()));
+        settings.setDeliveryTimeout(HttpClientSettings.getPositiveInt(properties, PREFIX + DELIVERY_TIMEOUT,
+                settings.getDeliveryTimeout()));
+        settings.setCoalesceWindow(HttpClientSettings.getPositiveInt(properties, PREFIX + COALESCE_WINDOW,
+                settings.getCoalesceWindow()));
+        settings.setCallbackBatchMaxSize(HttpClientSettings.getPositiveInt(properties,
+                PREFIX + CALLBACK_BATCH_MAX_SIZE, settings.getCallbackBatchMaxSize()));
+        settings.setCallbackBatchMaxDelay(HttpClientSettings.getPositiveInt(properties,
+                PREFIX + CALLBACK_BATCH_MAX_DELAY, settings.getCallbackBatchMaxDelay()));
+        settings.setCallbackBatchTargetLatency(HttpClientSettings.getPositiveInt(properties,
+                PREFIX + CALLBACK_BATCH_TARGET_LATENCY, settings.getCallbackBatchTargetLatency()));
+        settings.setHostRate(HttpClientSettings.getPositiveInt(properties, PREFIX + HOST_RATE, settings.getHostRate()));
+        settings.setHostBurst(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + HOST_BURST, settings.getHostBurst()));
+        settings.setHostQueueSize(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + HOST_QUEUE_SIZE, settings.getHostQueueSize()));
+        settings.setReplayRate(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + REPLAY_RATE, settings.getReplayRate()));
+        settings.setLeaseTimeout(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + LEASE_TIMEOUT, settings.getLeaseTimeout()));
+        String nodeId = properties.getProperty(PREFIX + NODE_ID);
+        if (nodeId != null && !nodeId.trim().isEmpty()) {
+            settings.setNodeId(nodeId.trim());
+        }
+        String journalDir = properties.getProperty(PREFIX + JOURNAL_DIR);
+        if (journalDir != null && !journalDir.trim().isEmpty()) {
+            settings.setJournalDir(journalDir.trim());
+        }
+        settings.setJournalSegmentSize(HttpClientSettings.getPositiveInt(properties, PREFIX + JOURNAL_SEGMENT_SIZE,
+                settings.getJournalSegmentSize()));
+        settings.setStreamBufferSize(HttpClientSettings.getPositiveInt(properties, PREFIX + STREAM_BUFFER_SIZE,
+                settings.getStreamBufferSize()));
+        settings.setStreamHistorySize(HttpClientSettings.getPositiveInt(properties, PREFIX + STREAM_HISTORY_SIZE,
+                settings.getStreamHistorySize()));
+        settings.setStreamTimeout(
+                HttpClientSettings.getPositiveInt(properties, PREFIX + STREAM_TIMEOUT, settings.getStreamTimeout()));
+        String policy = properties.getProperty(PREFIX + OVERFLOW_POLICY);
+        if (policy != null) {
+            OverflowPolicy overflowPolicy = OverflowPolicy.fromValue(policy.trim());
+            if (overflowPolicy == null) {
+                logger.warn("Invalid {}: {}, use {}", PREFIX + OVERFLOW_POLICY, policy,
+                        settings.getOverflowPolicy().getValue());
+            } else {
+                settings.setOverflowPolicy(overflowPolicy);
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Gets the time before the next attempt of a notification.
+     *
+     * @param attempts the number of attempts done
+     * @return the delay
+     */
+    public long getRetryDelay(int attempts) {
+        // doubled at each attempt, at most 2^10 times the first delay
+        return (long) retryDelay << Math.min(Math.max(attempts - 1, 0), 10);
+    }
+
+    /**
+     * Gets the id of this node, which prefixes the owners of its claims and the
+     * ids of its stream events.
+     *
+     * @return the node id, or the host name when it is not set
+     */
+    public String resolveNodeId() {
+        if (nodeId != null) {
+            return nodeId;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            logger.warn("Unknown host name, set {}: {}", PREFIX + NODE_ID, e.getLocalizedMessage());
+            return "localhost";
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.entity.StateChangeNotify;
+
+/**
+ * The Class PayloadFormat.<br>
+ * The compiled payload of a listener, which selects the fields of the order
+ * sent in the notifications to the listener. The payload is a name or a list
+ * of fields separated by ',':
+ *
+ * <pre>
+ * payload = "full" | "thin" | field ("," field)*
+ * field   = "id" | "description" | "state" | "orderDate" | "modifyDate"
+ * </pre>
+ *
+ * i.e: payload="state,modifyDate".<br>
+ * An empty payload is "full", all the fields of the order; "thin" is the id and
+ * the state, the listener reads the order when it needs the rest. The id is
+ * always sent, and the fields of the notification itself are sent in all the
+ * formats. A payload is compiled once, the compiled formats are cached by
+ * payload.
+ */
+public final class PayloadFormat {
+
+    /** The Constant logger. */
+    private static final Logger logger = LoggerFactory.getLogger(PayloadFormat.class);
+
+    /** The format of all the fields. */
+    public static final PayloadFormat FULL = new PayloadFormat(null);
+
+    /** The format of the id and the state. */
+    public static final PayloadFormat THIN = new PayloadFormat(EnumSet.of(Field.ID, Field.STATE));
+
+    /** The maximum number of cached formats, the other payloads are compiled each time. */
+    private static final int MAX_COMPILED = 1000;
+
+    /** The compiled formats by payload. */
+    private static final ConcurrentHashMap<String, PayloadFormat> COMPILED = new ConcurrentHashMap<>();
+
+    /** The selected fields of the order, null for the full order. */
+    private final EnumSet<Field> fields;
+
+    private PayloadFormat(EnumSet<Field> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Compile a payload.
+     *
+     * @param payload the payload
+     * @return the compiled format
+     * @throws IllegalArgumentException if the payload is not valid
+     */
+    public static PayloadFormat compile(String payload) {
+        if (payload == null || payload.trim().isEmpty()) {
+            return FULL;
+        }
+        PayloadFormat format = COMPILED.get(payload);
+        if (format != null) {
+            return format;
+        }
+        format = parse(payload.trim());
+        if (COMPILED.size() < MAX_COMPILED) {
+            COMPILED.putIfAbsent(payload, format);
+        }
+        return format;
+    }
+
+    private static PayloadFormat parse(String payload) {
+        if (ListenerInfo.PAYLOAD_FULL.equals(payload)) {
+            return FULL;
+        }
+        if (ListenerInfo.PAYLOAD_THIN.equals(payload)) {
+            return THIN;
+        }
+        EnumSet<Field> fields = EnumSet.of(Field.ID);
+        for (String name : payload.split(",")) {
+            fields.add(Field.of(name.trim()));
+        }
+        // all the fields are rendered by the serializer of the notification
+        return fields.size() == Field.values().length ? FULL : new PayloadFormat(fields);
+    }
+
+    /**
+     * Render the event of a notification in this format.
+     *
+     * @param stateChangeNotify a notification of the event
+     * @return the payload, or null if the notification can not be serialized
+     */
+    public NotifyPayload render(StateChangeNotify stateChangeNotify) {
+        if (fields == null) {
+            return NotifyPayload.render(stateChangeNotify);
+        }
+        ByteArrayOutputStream json = new ByteArrayOutputStream(128);
+        // the fields are written in the order of the serializer of the notification
+        try (JsonGenerator generator = JsonMapper.getMapper().getFactory().createGenerator(json)) {
+            generator.writeStartObject();
+            generator.writeObjectField("triggerTime", stateChangeNotify.getTriggerTime());
+            generator.writeStringField("triggerType", stateChangeNotify.getTriggerType());
+            OrderData orderData = stateChangeNotify.getOrderSnapshot();
+            if (orderData == null) {
+                generator.writeNullField("triggerData");
+            } else {
+                generator.writeObjectFieldStart("triggerData");
+                for (Field field : fields) {
+                    generator.writeStringField(field.name, field.get(orderData));
+                }
+                generator.writeEndObject();
+            }
+            generator.writeObjectField("sequence", stateChangeNotify.getSequence());
+            List<String> intermediateStates = stateChangeNotify.getIntermediateStates();
+            if (!intermediateStates.isEmpty()) {
+                generator.writeArrayFieldStart("intermediateStates");
+                for (String state : intermediateStates) {
+                    generator.writeString(state);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            logger.error("Exception: ", e);
+            return null;
+        }
+        return NotifyPayload.of(json.toByteArray());
+    }
+
+    /**
+     * The fields of the order, in the order of its serializer.
+     */
+    private enum Field {
+
+        ID("id") {
+            @Override
+            String get(OrderData orderData) {
+                return orderData.getId();
+            }
+        },
+        DESCRIPTION("description") {
+            @Override
+            String get(OrderData orderData) {
+                return orderData.getDescription();
+            }
+        },
+        STATE("state") {
+            @Override
+            String get(OrderData orderData) {
+                return orderData.getState();
+            }
+        },
+        ORDER_DATE("orderDate") {
+            @Override
+            String get(OrderData orderData) {
+                return orderData.getOrderDate();
+            }
+        },
+        MODIFY_DATE("modifyDate") {
+            @Override
+            String get(OrderData orderData) {
+                return orderData.getModifyDate();
+            }
+        };
+
+        /** The name of the field in the json. */
+        private final String name;
+
+        Field(String name) {
+            this.name = name;
+        }
+
+        abstract String get(OrderData orderData);
+
+        static Field of(String name) {
+            for (Field field : values()) {
+                if (field.name.equals(name)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Unknown field: " + name);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class PostgresInvalidationTransport.<br>
+ * Carries the messages over Postgres LISTEN/NOTIFY on one channel. The
+ * notifications are sent when the sending transaction commits, here at once,
+ * and are read by a listener thread every poll interval: the JDBC driver
+ * receives them with the result of a query. The versions are taken from a
+ * sequence, created at the first connection. The transport holds its own
+ * connection, out of the pool of Hibernate. When the connection is lost the
+ * notifications sent meanwhile are lost too, so the receiver is reset after a
+ * reconnection.
+ */
+public class PostgresInvalidationTransport implements InvalidationTransport {
+
+    /** The Constant logger. */
+    private final static Logger logger = LoggerFactory.getLogger(PostgresInvalidationTransport.class);
+
+    /** The maximum size of a message, the payload of a notification is shorter than 8000 bytes. */
+    private static final int MAX_MESSAGE_SIZE = 7999;
+
+    /** The suffix of the channel name which makes the name of the sequence of the versions. */
+    private static final String SEQUENCE_SUFFIX = "_version";
+
+    /** The SQL state of an object which already exists. */
+    private static final String DUPLICATE_TABLE = "42P07";
+
+    private final InvalidationSettings settings;
+
+    /** Guards the connection, which is shared by the listener thread and the senders. */
+    private final Object lock = new Object();
+
+    private Connection connection;
+
+    private volatile Receiver receiver;
+
+    private volatile boolean stopped;
+
+    private Thread listener;
+
+    /**
+     * Create a transport.
+     *
+     * @param settings the settings, with the connection properties and the
+     *                 channel
+     */
+    public PostgresInvalidationTransport(InvalidationSettings settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public synchronized void start(Receiver receiver) {
+        this.receiver = receiver;
+        stopped = false;
+        synchronized (lock) {
+            try {
+                connect();
+            } catch (SQLException e) {
+                // the listener thread connects again, and resets the receiver
+                logger.warn("Can not listen to {}: {}", settings.getChannel(), e.getMessage());
+            }
+        }
+        listener = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                listen();
+            }
+        }, "invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public long nextVersion() throws IOException {
+        synchronized (lock) {
+            try {
+                boolean reconnected = connection == null;
+                if (reconnected) {
+                    connect();
+                }
+                long version;
+                try (PreparedStatement statement = connection.prepareStatement("SELECT nextval(?)")) {
+                    statement.setString(1, settings.getChannel() + SEQUENCE_SUFFIX);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        resultSet.next();
+                        version = resultSet.getLong(1);
+                    }
+                }
+                if (reconnected) {
+                    reset();
+                }
+                return version;
+            } catch (SQLException e) {
+                close();
+                throw new IOException("Can not take a version of " + settings.getChannel(), e);
+            }
+        }
+    }
+
+    @Override
+    public void send(String message) throws IOException {
+        synchronized (lock) {
+            try {
+                boolean reconnected = connection == null;
+                if (reconnected) {
+                    connect();
+                }
+                try (PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+                    statement.setString(1, settings.getChannel());
+                    statement.setString(2, message);
+                    statement.execute();
+                }
+                if (reconnected) {
+                    reset();
+                }
+            } catch (SQLException e) {
+                close();
+                throw new IOException("Can not notify " + settings.getChannel(), e);
+            }
+        }
+    }
+
+    @Override
+    public int getMaxMessageSize() {
+        return MAX_MESSAGE_SIZE;
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        if (listener != null) {
+            listener.interrupt();
+            listener = null;
+        }
+        synchronized (lock) {
+            close();
+        }
+        receiver = null;
+    }
+
+    /**
+     * Read the notifications until the transport is stopped.
+     */
+    private void listen() {
+        while (!stopped) {
+            PGNotification[] notifications = poll();
+            Receiver current = receiver;
+            if (notifications != null && current != null) {
+                for (PGNotification notification : notifications) {
+                    current.receive(notification.getParameter());
+                }
+            }
+            try {
+                Thread.sleep(settings.getPollInterval());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read the notifications received by the connection, connect again when the
+     * connection is lost.
+     *
+     * @return the notifications, null if none
+     */
+    private PGNotification[] poll() {
+        synchronized (lock) {
+            try {
+                boolean reconnected = connection == null;
+                if (reconnected) {
+                    connect();
+                }
+                try (Statement statement = connection.createStatement()) {
+                    // the driver reads the notifications with the result of a query
+                    statement.execute("SELECT 1");
+                }
+                if (reconnected) {
+                    reset();
+                }
+                return ((PGConnection) connection).getNotifications();
+            } catch (SQLException e) {
+                logger.warn("Can not read the notifications of {}: {}", settings.getChannel(), e.getMessage());
+                close();
+                return null;
+            }
+        }
+    }
+
+    private void connect() throws SQLException {
+        Connection opened = DriverManager.getConnection(settings.getUrl(), settings.getUsername(),
+                settings.getPassword());
+        try (Statement statement = opened.createStatement()) {
+            createSequence(statement);
+            // the channel is checked by the settings, LISTEN does not take a parameter
+            statement.execute("LISTEN " + settings.getChannel());
+        } catch (SQLException e) {
+            opened.close();
+            throw e;
+        }
+        connection = opened;
+        logger.info("Listen to the invalidations of {}", settings.getChannel());
+    }
+
+    private void createSequence(Statement statement) throws SQLException {
+        try {
+            statement.execute("CREATE SEQUENCE " + settings.getChannel() + SEQUENCE_SUFFIX);
+        } catch (SQLException e) {
+            // created by another node, or before
+            if (!DUPLICATE_TABLE.equals(e.getSQLState())) {
+                throw e;
+            }
+        }
+    }
+
+    private void reset() {
+        Receiver current = receiver;
+        if (current != null) {
+            current.reset();
+        }
+    }
+
+    private void close() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.debug("Close the connection: {}", e.getMessage());
+        }
+        connection = null;
+    }
+}
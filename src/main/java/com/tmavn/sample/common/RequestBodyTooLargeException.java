@@ -0,0 +1,30 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import lombok.Getter;
+
+/**
+ * The Class RequestBodyTooLargeException.<br>
+ * Thrown when a request body is larger than the maximum size, it is answered
+ * with 413 Payload Too Large.
+ */
+@Getter
+public class RequestBodyTooLargeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The maximum size of a request body, in bytes. */
+    private final int maxSize;
+
+    /**
+     * Instantiates a new request body too large exception.
+     *
+     * @param maxSize the maximum size of a request body, in bytes
+     */
+    public RequestBodyTooLargeException(int maxSize) {
+        super("Request body is larger than " + maxSize + " bytes");
+        this.maxSize = maxSize;
+    }
+}
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpEntity;
@@ -34,11 +35,14 @@ public class RestClient {
     /** The rest template. */
     private static RestTemplate restTemplate;
 
+    /** The pooled http client of the rest template. */
+    private static CloseableHttpClient httpClient;
+
     /** The instance. */
     private static RestClient instance = null;
 
     static {
-        restTemplate = new RestTemplate();
+        configure(new HttpClientSettings());
     }
 
     /**
@@ -49,6 +53,31 @@ public class RestClient {
 
     }
 
+    /**
+     * Build the rest template on a pooled http client with the given settings,
+     * the previous http client is closed.
+     *
+     * @param settings the http client settings
+     */
+    public static synchronized void configure(HttpClientSettings settings) {
+        logger.debug("IN - configure()");
+        CloseableHttpClient previous = httpClient;
+        httpClient = HttpClientFactory.createHttpClient(settings);
+        RestTemplate template = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        JsonMapper.configure(template.getMessageConverters());
+        restTemplate = template;
+        HttpClientFactory.close(previous);
+        logger.debug("OUT - configure()");
+    }
+
+    /**
+     * Close the pooled http client.
+     */
+    public static synchronized void shutdown() {
+        HttpClientFactory.close(httpClient);
+        httpClient = null;
+    }
+
     /**
      * Gets the single instance of RestClient.
      *
@@ -401,13 +430,6 @@ public class RestClient {
             }
 
             logger.debug("doSendRequestWithData with URI: {}", sendUri);
-            if (method.equals(HttpMethod.PATCH)) {
-                HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory();
-                RestTemplate restTemplatePatch = new RestTemplate(requestFactory);
-                respResult = restTemplatePatch.exchange(sendUri, HttpMethod.PATCH, entity, T);
-                writeLog(Utils.parseObjectToJson(respResult.getBody()), "Response body");
-                return respResult;
-            }
             respResult = restTemplate.exchange(sendUri, method, entity, T);
 
             logger.debug("Response status: {}", respResult.getStatusCode());
@@ -0,0 +1,54 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.tmavn.sample.model.CheckResult;
+
+/**
+ * The Interface SchemaValidator.<br>
+ * Checks a json with one compiled json schema. The implementations are created
+ * by the {@link JsonSchemaRegistry} and selected by {@link JsonValidation}.
+ */
+public interface SchemaValidator {
+
+    /** The name of the validator backed by the fge json schema library. */
+    String FGE = "fge";
+
+    /** The name of the validator which checks the json tokens without a tree. */
+    String STREAMING = "streaming";
+
+    /**
+     * Check a parsed json tree.
+     *
+     * @param json the json tree
+     * @return the check result
+     * @throws IOException         if the json can not be read
+     * @throws ProcessingException if the schema can not be processed
+     */
+    CheckResult validate(JsonNode json) throws IOException, ProcessingException;
+
+    /**
+     * Check the json read from a parser. The parser is positioned before the first
+     * token of the json, only the first json value is read.
+     *
+     * @param parser the json parser
+     * @return the check result
+     * @throws IOException         if the json can not be read or is not valid json
+     * @throws ProcessingException if the schema can not be processed
+     */
+    CheckResult validate(JsonParser parser) throws IOException, ProcessingException;
+
+    /**
+     * Checks if the validator reads the json from the parser without building a
+     * tree.
+     *
+     * @return true if the validator is streaming
+     */
+    boolean isStreaming();
+}
@@ -0,0 +1,788 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.tmavn.sample.model.CheckResult;
+import com.tmavn.sample.model.ValidationError;
+
+/**
+ * The Class StreamingSchemaValidator.<br>
+ * A {@link SchemaValidator} compiled from a json schema which checks the json
+ * tokens of a {@link JsonParser} without building a tree.<br>
+ * Only the keywords used by the schemas of the application are supported:
+ * type, enum of strings, pattern, properties, required, additionalProperties
+ * as a boolean, items as a schema and local $ref. {@link #compile(JsonNode,
+ * boolean)} returns null for a schema with any other keyword, the fge validator
+ * is used for it.<br>
+ * The errors, their order and their messages are the same as the fge
+ * validator: the values are visited by property name and array index, the
+ * keywords of a value are reported in alphabetical order and the content of an
+ * object or an array is only reported if no error was reported before it. The
+ * errors are kept by value while the json is read then reported in this order.
+ * In fail-fast mode, the whole json is still read and only the first error is
+ * reported.
+ */
+public class StreamingSchemaValidator implements SchemaValidator {
+
+    /** The Constant logger. */
+    private final static Logger logger = LoggerFactory.getLogger(StreamingSchemaValidator.class);
+
+    /** The json types, indexed by their bit in {@link Rule#types}. */
+    private static final String[] TYPE_NAMES = { "array", "boolean", "integer", "null", "number", "object",
+            "string" };
+    private static final int TYPE_ARRAY = 0;
+    private static final int TYPE_BOOLEAN = 1;
+    private static final int TYPE_INTEGER = 2;
+    private static final int TYPE_NULL = 3;
+    private static final int TYPE_NUMBER = 4;
+    private static final int TYPE_OBJECT = 5;
+    private static final int TYPE_STRING = 6;
+
+    /** The supported keywords. */
+    private static final String KEYWORD_TYPE = "type";
+    private static final String KEYWORD_ENUM = "enum";
+    private static final String KEYWORD_PATTERN = "pattern";
+    private static final String KEYWORD_PROPERTIES = "properties";
+    private static final String KEYWORD_REQUIRED = "required";
+    private static final String KEYWORD_ADDITIONAL_PROPERTIES = "additionalProperties";
+    private static final String KEYWORD_ITEMS = "items";
+    private static final String KEYWORD_REF = "$ref";
+
+    /** The keywords which do not change the validation. */
+    private static final Set<String> ANNOTATIONS = new HashSet<String>(
+            Arrays.asList("$schema", "title", "description", "definitions", "default"));
+
+    /** The maximum number of required properties of an object. */
+    private static final int MAX_REQUIRED = Long.SIZE;
+
+    /** The Constant nodeFactory. */
+    private static final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+
+    /** The rule of the root value. */
+    private final Rule root;
+
+    /** Report only the first error. */
+    private final boolean failFast;
+
+    /**
+     * Instantiates a new streaming schema validator.
+     *
+     * @param root     the rule of the root value
+     * @param failFast true to report only the first error
+     */
+    private StreamingSchemaValidator(Rule root, boolean failFast) {
+        this.root = root;
+        this.failFast = failFast;
+    }
+
+    /**
+     * Compile a json schema.
+     *
+     * @param schema   the json schema
+     * @param failFast true to report only the first error
+     * @return the validator, null if the schema uses a not supported keyword
+     */
+    public static StreamingSchemaValidator compile(JsonNode schema, boolean failFast) {
+        try {
+            return new StreamingSchemaValidator(compileRule(schema, schema, new HashSet<String>()), failFast);
+        } catch (IllegalArgumentException e) {
+            logger.debug("Json schema is not supported by the streaming validator: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CheckResult validate(JsonNode json) throws IOException {
+        return validate(json.traverse());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CheckResult validate(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            // same error as the object mapper
+            throw JsonMappingException.from(parser, "No content to map due to end-of-input");
+        }
+        CheckResult result = new CheckResult(true, "");
+        Result rootResult = validateValue(parser, root, new Path());
+        if (rootResult != null) {
+            List<ValidationError> errors = new ArrayList<ValidationError>();
+            rootResult.collect(errors);
+            JsonValidation.setErrors(result, failFast ? Collections.singletonList(errors.get(0)) : errors);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    /**
+     * Check the current value of the parser, the parser is moved to the last
+     * token of the value.
+     *
+     * @param parser the parser
+     * @param rule   the rule of the value, null if any value is allowed
+     * @param path   the path of the value
+     * @return the result, null if the value is valid
+     * @throws IOException if the json can not be read
+     */
+    private static Result validateValue(JsonParser parser, Rule rule, Path path)
+            throws IOException {
+        if (rule == null) {
+            parser.skipChildren();
+            return null;
+        }
+        int type = typeOf(parser);
+        boolean typeMatched = rule.expected == null || (rule.types & (1 << type)) != 0;
+        if (typeMatched && type == TYPE_OBJECT) {
+            return validateObject(parser, rule, path);
+        }
+        if (typeMatched && type == TYPE_ARRAY) {
+            return validateArray(parser, rule, path);
+        }
+
+        // the keywords of the value are reported in alphabetical order
+        List<ValidationError> errors = null;
+        if (rule.enumValues != null
+                && (type != TYPE_STRING || !rule.enumValues.contains(parser.getText()))) {
+            JsonNode value = readNode(parser);
+            errors = add(errors, newError(KEYWORD_ENUM, path, "instance value (" + value
+                    + ") not found in enum (possible values: " + rule.enumNode + ")", null, null));
+        } else {
+            parser.skipChildren();
+        }
+        if (type == TYPE_STRING && rule.pattern != null) {
+            String text = parser.getText();
+            if (!rule.pattern.matcher(text).find()) {
+                errors = add(errors, newError(KEYWORD_PATTERN, path, "ECMA 262 regex \"" + rule.regex
+                        + "\" does not match input string \"" + text + "\"", null, null));
+            }
+        }
+        if (!typeMatched) {
+            errors = add(errors, newError(KEYWORD_TYPE, path, "instance type (" + TYPE_NAMES[type]
+                    + ") does not match any allowed primitive type (allowed: " + rule.expected + ")",
+                    ValidationError.TYPE_EXPECTED, rule.expected));
+        }
+        return errors == null ? null : new Result(errors, null);
+    }
+
+    /**
+     * Check an object, the results of the properties are kept by name.
+     *
+     * @param parser the parser, at the start of the object
+     * @param rule   the rule of the object
+     * @param path   the path of the object
+     * @return the result, null if the object is valid
+     * @throws IOException if the json can not be read
+     */
+    private static Result validateObject(JsonParser parser, Rule rule, Path path)
+            throws IOException {
+        long seen = 0L;
+        Set<String> unwanted = null;
+        Map<String, Result> propertyResults = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            Rule property = rule.properties.get(name);
+            if (property == null && !rule.additionalProperties) {
+                if (unwanted == null) {
+                    unwanted = new TreeSet<String>();
+                }
+                unwanted.add(name);
+                parser.skipChildren();
+                continue;
+            }
+            Integer requiredIndex = rule.requiredIndexes.get(name);
+            if (requiredIndex != null) {
+                seen |= 1L << requiredIndex;
+            }
+            if (property == null) {
+                parser.skipChildren();
+                continue;
+            }
+            path.push(name);
+            Result result = validateValue(parser, property, path);
+            path.pop();
+            // the last value of a duplicated property wins, as in the json tree
+            if (result != null) {
+                if (propertyResults == null) {
+                    propertyResults = new TreeMap<String, Result>();
+                }
+                propertyResults.put(name, result);
+            } else if (propertyResults != null) {
+                propertyResults.remove(name);
+            }
+        }
+
+        List<ValidationError> errors = null;
+        if (unwanted != null) {
+            ArrayNode detail = toArrayNode(unwanted);
+            errors = add(errors, newError(KEYWORD_ADDITIONAL_PROPERTIES, path,
+                    "object instance has properties which are not allowed by the schema: " + detail,
+                    ValidationError.TYPE_UNWANTED, detail));
+        }
+        if (seen != rule.requiredMask) {
+            ArrayNode detail = nodeFactory.arrayNode();
+            for (int i = 0; i < rule.requiredNames.length; i++) {
+                if ((seen & (1L << i)) == 0) {
+                    detail.add(rule.requiredNames[i]);
+                }
+            }
+            errors = add(errors, newError(KEYWORD_REQUIRED, path,
+                    "object has missing required properties (" + detail + ")", ValidationError.TYPE_MISSING,
+                    detail));
+        }
+        if (errors == null && (propertyResults == null || propertyResults.isEmpty())) {
+            return null;
+        }
+        return new Result(errors, propertyResults == null ? null : new ArrayList<Result>(propertyResults.values()));
+    }
+
+    /**
+     * Check an array, the results of the items are kept by index.
+     *
+     * @param parser the parser, at the start of the array
+     * @param rule   the rule of the array
+     * @param path   the path of the array
+     * @return the result, null if the array is valid
+     * @throws IOException if the json can not be read
+     */
+    private static Result validateArray(JsonParser parser, Rule rule, Path path) throws IOException {
+        List<Result> itemResults = null;
+        int index = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (rule.items == null) {
+                parser.skipChildren();
+            } else {
+                path.push(index);
+                Result result = validateValue(parser, rule.items, path);
+                path.pop();
+                if (result != null) {
+                    if (itemResults == null) {
+                        itemResults = new ArrayList<Result>();
+                    }
+                    itemResults.add(result);
+                }
+            }
+            index++;
+        }
+        return itemResults == null ? null : new Result(null, itemResults);
+    }
+
+    /**
+     * Gets the json type of the current token.
+     *
+     * @param parser the parser
+     * @return the type
+     * @throws IOException if the token is not a json value
+     */
+    private static int typeOf(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == null) {
+            throw new JsonParseException(parser, "Unexpected end of json");
+        }
+        switch (token) {
+        case START_OBJECT:
+            return TYPE_OBJECT;
+        case START_ARRAY:
+            return TYPE_ARRAY;
+        case VALUE_STRING:
+            return TYPE_STRING;
+        case VALUE_NUMBER_INT:
+            return TYPE_INTEGER;
+        case VALUE_NUMBER_FLOAT:
+            return TYPE_NUMBER;
+        case VALUE_TRUE:
+        case VALUE_FALSE:
+            return TYPE_BOOLEAN;
+        case VALUE_NULL:
+            return TYPE_NULL;
+        default:
+            throw new JsonParseException(parser, "Unexpected token " + token);
+        }
+    }
+
+    /**
+     * Read the current value of the parser to a tree, as the object mapper does.
+     * Only used to report an error.
+     *
+     * @param parser the parser
+     * @return the json tree
+     * @throws IOException if the json can not be read
+     */
+    private static JsonNode readNode(JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+        case START_OBJECT:
+            ObjectNode object = nodeFactory.objectNode();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                object.set(name, readNode(parser));
+            }
+            return object;
+        case START_ARRAY:
+            ArrayNode array = nodeFactory.arrayNode();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                array.add(readNode(parser));
+            }
+            return array;
+        case VALUE_STRING:
+            return nodeFactory.textNode(parser.getText());
+        case VALUE_NUMBER_INT:
+            switch (parser.getNumberType()) {
+            case INT:
+                return nodeFactory.numberNode(parser.getIntValue());
+            case LONG:
+                return nodeFactory.numberNode(parser.getLongValue());
+            default:
+                BigInteger value = parser.getBigIntegerValue();
+                return nodeFactory.numberNode(value);
+            }
+        case VALUE_NUMBER_FLOAT:
+            return nodeFactory.numberNode(parser.getDoubleValue());
+        case VALUE_TRUE:
+            return nodeFactory.booleanNode(true);
+        case VALUE_FALSE:
+            return nodeFactory.booleanNode(false);
+        default:
+            return nodeFactory.nullNode();
+        }
+    }
+
+    /**
+     * Add an error to a list, create the list if needed.
+     *
+     * @param errors the errors, may be null
+     * @param error  the error
+     * @return the errors
+     */
+    private static List<ValidationError> add(List<ValidationError> errors, ValidationError error) {
+        if (errors == null) {
+            errors = new ArrayList<ValidationError>();
+        }
+        errors.add(error);
+        return errors;
+    }
+
+    /**
+     * Create a validation error.
+     *
+     * @param keyword the keyword
+     * @param path    the path of the failed value
+     * @param message the message
+     * @param type    the error type
+     * @param detail  the detail of the error type
+     * @return the validation error
+     */
+    private static ValidationError newError(String keyword, Path path, String message, String type,
+            JsonNode detail) {
+        ValidationError error = new ValidationError();
+        error.setKeyword(keyword);
+        error.setPointer(path.toPointer());
+        error.setMessage(message);
+        error.setType(type);
+        error.setDetail(detail);
+        return error;
+    }
+
+    /**
+     * Convert strings to an array node.
+     *
+     * @param values the values
+     * @return the array node
+     */
+    private static ArrayNode toArrayNode(Iterable<String> values) {
+        ArrayNode array = nodeFactory.arrayNode();
+        for (String value : values) {
+            array.add(value);
+        }
+        return array;
+    }
+
+    /**
+     * Compile the rule of a schema.
+     *
+     * @param rootSchema the root schema, to resolve $ref
+     * @param schema     the schema
+     * @param resolving  the $ref being resolved, to detect a loop
+     * @return the rule
+     * @throws IllegalArgumentException if the schema is not supported
+     */
+    private static Rule compileRule(JsonNode rootSchema, JsonNode schema, Set<String> resolving) {
+        if (!schema.isObject()) {
+            throw new IllegalArgumentException("schema is not an object");
+        }
+        JsonNode ref = schema.get(KEYWORD_REF);
+        if (ref != null) {
+            return compileRef(rootSchema, schema, ref, resolving);
+        }
+
+        Rule rule = new Rule();
+        Iterator<Map.Entry<String, JsonNode>> fields = schema.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String keyword = field.getKey();
+            JsonNode value = field.getValue();
+            if (KEYWORD_TYPE.equals(keyword)) {
+                compileType(rule, value);
+            } else if (KEYWORD_ENUM.equals(keyword)) {
+                compileEnum(rule, value);
+            } else if (KEYWORD_PATTERN.equals(keyword)) {
+                if (!value.isTextual()) {
+                    throw new IllegalArgumentException("pattern is not a string");
+                }
+                rule.regex = value.asText();
+                rule.pattern = compilePattern(rule.regex);
+            } else if (KEYWORD_PROPERTIES.equals(keyword)) {
+                if (!value.isObject()) {
+                    throw new IllegalArgumentException("properties is not an object");
+                }
+                Iterator<Map.Entry<String, JsonNode>> properties = value.fields();
+                while (properties.hasNext()) {
+                    Map.Entry<String, JsonNode> property = properties.next();
+                    rule.properties.put(property.getKey(), compileRule(rootSchema, property.getValue(), resolving));
+                }
+            } else if (KEYWORD_REQUIRED.equals(keyword)) {
+                compileRequired(rule, value);
+            } else if (KEYWORD_ADDITIONAL_PROPERTIES.equals(keyword)) {
+                if (!value.isBoolean()) {
+                    throw new IllegalArgumentException("additionalProperties is not a boolean");
+                }
+                rule.additionalProperties = value.asBoolean();
+            } else if (KEYWORD_ITEMS.equals(keyword)) {
+                rule.items = compileRule(rootSchema, value, resolving);
+            } else if (!ANNOTATIONS.contains(keyword)) {
+                throw new IllegalArgumentException("keyword " + keyword + " is not supported");
+            }
+        }
+        // an enum value is reported from the token, it can not be an object or an array
+        if (rule.enumValues != null && (rule.expected == null
+                || (rule.types & ((1 << TYPE_OBJECT) | (1 << TYPE_ARRAY))) != 0)) {
+            throw new IllegalArgumentException("enum must be used with scalar types");
+        }
+        return rule;
+    }
+
+    /**
+     * Compile a local $ref, other keywords of the schema are not allowed.
+     *
+     * @param rootSchema the root schema
+     * @param schema     the schema with the $ref
+     * @param ref        the $ref value
+     * @param resolving  the $ref being resolved
+     * @return the rule of the referenced schema
+     */
+    private static Rule compileRef(JsonNode rootSchema, JsonNode schema, JsonNode ref, Set<String> resolving) {
+        Iterator<String> keywords = schema.fieldNames();
+        while (keywords.hasNext()) {
+            String keyword = keywords.next();
+            if (!KEYWORD_REF.equals(keyword) && !ANNOTATIONS.contains(keyword)) {
+                throw new IllegalArgumentException("keyword " + keyword + " is not supported with $ref");
+            }
+        }
+        String pointer = ref.asText();
+        if (!pointer.startsWith("#")) {
+            throw new IllegalArgumentException("$ref " + pointer + " is not local");
+        }
+        if (!resolving.add(pointer)) {
+            throw new IllegalArgumentException("$ref " + pointer + " is recursive");
+        }
+        JsonNode target;
+        try {
+            target = rootSchema.at(pointer.substring(1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("$ref " + pointer + " is not a json pointer");
+        }
+        if (target.isMissingNode()) {
+            throw new IllegalArgumentException("$ref " + pointer + " is not found");
+        }
+        Rule rule = compileRule(rootSchema, target, resolving);
+        resolving.remove(pointer);
+        return rule;
+    }
+
+    /**
+     * Compile the type keyword.
+     *
+     * @param rule  the rule
+     * @param value the keyword value
+     */
+    private static void compileType(Rule rule, JsonNode value) {
+        List<String> names = new ArrayList<String>();
+        if (value.isTextual()) {
+            names.add(value.asText());
+        } else if (value.isArray() && value.size() > 0) {
+            for (JsonNode name : value) {
+                names.add(name.asText(null));
+            }
+        } else {
+            throw new IllegalArgumentException("type is not a string or an array");
+        }
+        int types = 0;
+        for (String name : names) {
+            int type = Arrays.asList(TYPE_NAMES).indexOf(name);
+            if (type < 0) {
+                throw new IllegalArgumentException("type " + name + " is not known");
+            }
+            types |= 1 << type;
+        }
+        // an integer is a number
+        if ((types & (1 << TYPE_NUMBER)) != 0) {
+            types |= 1 << TYPE_INTEGER;
+        }
+        rule.types = types;
+        rule.expected = nodeFactory.arrayNode();
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            if ((types & (1 << type)) != 0) {
+                rule.expected.add(TYPE_NAMES[type]);
+            }
+        }
+    }
+
+    /**
+     * Compile the enum keyword, only strings are supported.
+     *
+     * @param rule  the rule
+     * @param value the keyword value
+     */
+    private static void compileEnum(Rule rule, JsonNode value) {
+        if (!value.isArray() || value.size() == 0) {
+            throw new IllegalArgumentException("enum is not an array");
+        }
+        Set<String> values = new HashSet<String>();
+        for (JsonNode item : value) {
+            if (!item.isTextual() || !values.add(item.asText())) {
+                throw new IllegalArgumentException("enum values are not unique strings");
+            }
+        }
+        rule.enumValues = values;
+        rule.enumNode = value.deepCopy();
+    }
+
+    /**
+     * Compile the required keyword.
+     *
+     * @param rule  the rule
+     * @param value the keyword value
+     */
+    private static void compileRequired(Rule rule, JsonNode value) {
+        if (!value.isArray() || value.size() == 0 || value.size() > MAX_REQUIRED) {
+            throw new IllegalArgumentException("required is not an array or has too many values");
+        }
+        Set<String> names = new TreeSet<String>();
+        for (JsonNode name : value) {
+            if (!name.isTextual() || !names.add(name.asText())) {
+                throw new IllegalArgumentException("required values are not unique strings");
+            }
+        }
+        rule.requiredNames = names.toArray(new String[names.size()]);
+        rule.requiredIndexes = new HashMap<String, Integer>();
+        for (int i = 0; i < rule.requiredNames.length; i++) {
+            rule.requiredIndexes.put(rule.requiredNames[i], i);
+            rule.requiredMask |= 1L << i;
+        }
+    }
+
+    /**
+     * Translate an ECMA 262 regex to a java pattern. Only literals, groups,
+     * alternatives, quantifiers, anchors and character classes without escapes
+     * are supported, "$" matches only at the end of the input as in ECMA 262.
+     *
+     * @param regex the regex
+     * @return the pattern
+     */
+    private static Pattern compilePattern(String regex) {
+        StringBuilder builder = new StringBuilder(regex.length() + 8);
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\' || (inClass && (c == '[' || c == '&')) || (!inClass && c == '.')
+                    || (c == '(' && i + 1 < regex.length() && regex.charAt(i + 1) == '?')) {
+                throw new IllegalArgumentException("pattern " + regex + " is not supported");
+            }
+            if (inClass) {
+                inClass = c != ']';
+                builder.append(c);
+            } else if (c == '[') {
+                inClass = true;
+                builder.append(c);
+            } else if (c == '$') {
+                builder.append("\\z");
+            } else {
+                builder.append(c);
+            }
+        }
+        try {
+            return Pattern.compile(builder.toString());
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("pattern " + regex + " is not valid");
+        }
+    }
+
+    /**
+     * The compiled keywords of a schema.
+     */
+    private static final class Rule {
+
+        /** The allowed types, one bit per type. */
+        private int types;
+
+        /** The allowed type names, null if the type is not checked. */
+        private ArrayNode expected;
+
+        /** The enum values, null if there is no enum. */
+        private Set<String> enumValues;
+
+        /** The enum keyword value. */
+        private JsonNode enumNode;
+
+        /** The pattern, null if there is no pattern. */
+        private Pattern pattern;
+
+        /** The regex of the pattern. */
+        private String regex;
+
+        /** The rules of the properties. */
+        private final Map<String, Rule> properties = new HashMap<String, Rule>();
+
+        /** False if only the declared properties are allowed. */
+        private boolean additionalProperties = true;
+
+        /** The required property names, sorted. */
+        private String[] requiredNames = new String[0];
+
+        /** The bit of each required property. */
+        private Map<String, Integer> requiredIndexes = Collections.emptyMap();
+
+        /** The bits of all required properties. */
+        private long requiredMask;
+
+        /** The rule of the array items, null if any item is allowed. */
+        private Rule items;
+    }
+
+    /**
+     * The errors of a value and the results of its content, only created when
+     * there is an error.
+     */
+    private static final class Result {
+
+        /** The errors of the value keywords, may be null. */
+        private final List<ValidationError> errors;
+
+        /** The results of the properties or items in report order, may be null. */
+        private final List<Result> children;
+
+        /**
+         * Instantiates a new result.
+         *
+         * @param errors   the errors of the value keywords
+         * @param children the results of the properties or items
+         */
+        private Result(List<ValidationError> errors, List<Result> children) {
+            this.errors = errors;
+            this.children = children;
+        }
+
+        /**
+         * Collect the errors in report order, the content is skipped if an error
+         * was already reported.
+         *
+         * @param reported the reported errors
+         */
+        private void collect(List<ValidationError> reported) {
+            if (errors != null) {
+                reported.addAll(errors);
+            }
+            if (children != null && reported.isEmpty()) {
+                for (Result child : children) {
+                    child.collect(reported);
+                }
+            }
+        }
+    }
+
+    /**
+     * The path from the root to the current value, converted to a json pointer
+     * only when an error is reported.
+     */
+    private static final class Path {
+
+        /** The property names and array indexes. */
+        private Object[] segments = new Object[8];
+
+        /** The size. */
+        private int size;
+
+        /**
+         * Enter a property or an array item.
+         *
+         * @param segment the property name or the array index
+         */
+        private void push(Object segment) {
+            if (size == segments.length) {
+                segments = Arrays.copyOf(segments, size * 2);
+            }
+            segments[size++] = segment;
+        }
+
+        /**
+         * Leave the current property or array item.
+         */
+        private void pop() {
+            segments[--size] = null;
+        }
+
+        /**
+         * Convert the path to a json pointer.
+         *
+         * @return the json pointer
+         */
+        private String toPointer() {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                builder.append('/').append(String.valueOf(segments[i]).replace("~", "~0").replace("/", "~1"));
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The Class TimingWheel.<br>
+ * A hashed timing wheel: the time is cut in ticks, and an item is put in the
+ * bucket of the tick of its deadline, modulo the size of the wheel, with the
+ * number of turns of the wheel before it expires. Adding an item does not
+ * depend on the number of items, and advancing the wheel by one tick only
+ * reads one bucket.<br>
+ * An item expires at the end of the tick of its deadline, never before its
+ * deadline.
+ *
+ * @param <T> the type of the items
+ */
+public final class TimingWheel<T> {
+
+    /** The duration of a tick, in milliseconds. */
+    private final long tickDuration;
+
+    private final List<List<Entry<T>>> buckets;
+
+    /** The time of the tick zero, in milliseconds. */
+    private final long startTime;
+
+    /** The next tick to expire. */
+    private long tick;
+
+    private int size;
+
+    /**
+     * Create an empty wheel.
+     *
+     * @param tickDuration the duration of a tick, in milliseconds
+     * @param wheelSize    the number of buckets
+     * @param now          the current time, in milliseconds
+     */
+    public TimingWheel(long tickDuration, int wheelSize, long now) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+        }
+        this.tickDuration = tickDuration;
+        this.buckets = new ArrayList<List<Entry<T>>>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new ArrayList<Entry<T>>());
+        }
+        this.startTime = now;
+    }
+
+    /**
+     * Add an item, an item whose deadline is passed expires at the next tick.
+     *
+     * @param item     the item
+     * @param deadline the deadline, in milliseconds
+     */
+    public synchronized void add(T item, long deadline) {
+        // the first tick which ends at or after the deadline
+        long deadlineTick = Math.max(tick, (deadline - startTime + tickDuration - 1) / tickDuration);
+        int wheelSize = buckets.size();
+        long rounds = (deadlineTick - tick) / wheelSize;
+        buckets.get((int) (deadlineTick % wheelSize)).add(new Entry<T>(item, rounds));
+        size++;
+    }
+
+    /**
+     * Advance the wheel to the current time.
+     *
+     * @param now the current time, in milliseconds
+     * @return the expired items
+     */
+    public synchronized List<T> advance(long now) {
+        List<T> expired = new ArrayList<T>();
+        int wheelSize = buckets.size();
+        while (startTime + tick * tickDuration <= now) {
+            Iterator<Entry<T>> iterator = buckets.get((int) (tick % wheelSize)).iterator();
+            while (iterator.hasNext()) {
+                Entry<T> entry = iterator.next();
+                if (entry.rounds == 0) {
+                    expired.add(entry.item);
+                    iterator.remove();
+                    size--;
+                } else {
+                    entry.rounds--;
+                }
+            }
+            tick++;
+        }
+        return expired;
+    }
+
+    /**
+     * Gets the number of items not expired.
+     *
+     * @return the size
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private static final class Entry<T> {
+
+        private final T item;
+
+        /** The number of turns of the wheel before the item expires. */
+        private long rounds;
+
+        private Entry(T item, long rounds) {
+            this.item = item;
+            this.rounds = rounds;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Class TokenBucket.<br>
+ * A rate limiter: the bucket is refilled at a fixed rate up to its burst, and
+ * each request takes a token. A request which finds the bucket empty reserves
+ * the next token and waits for it, so the waiting requests are served in the
+ * order they came.
+ */
+public final class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /** The time to refill one token, in nanoseconds. */
+    private final long interval;
+
+    /** The maximum number of tokens. */
+    private final int burst;
+
+    /** The available tokens, negative when tokens are reserved. */
+    private double tokens;
+
+    /** The time of the last refill, in nanoseconds. */
+    private long refillTime;
+
+    /**
+     * Create a full bucket.
+     *
+     * @param rate  the number of tokens per second
+     * @param burst the maximum number of tokens
+     */
+    public TokenBucket(int rate, int burst) {
+        this(rate, burst, System.nanoTime());
+    }
+
+    TokenBucket(int rate, int burst, long now) {
+        if (rate <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.interval = NANOS_PER_SECOND / rate;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refillTime = now;
+    }
+
+    /**
+     * Take a token, wait until it is available.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve(System.nanoTime());
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Take a token.
+     *
+     * @param now the current time, in nanoseconds
+     * @return the time to wait before the token is available, in nanoseconds
+     */
+    synchronized long reserve(long now) {
+        if (now > refillTime) {
+            tokens = Math.min(burst, tokens + (double) (now - refillTime) / interval);
+            refillTime = now;
+        }
+        tokens--;
+        return tokens >= 0 ? 0 : (long) (-tokens * interval);
+    }
+}
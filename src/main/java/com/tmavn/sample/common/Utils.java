@@ -49,8 +49,8 @@ public class Utils {
     /** The base directory. */
     private static String baseDirectory = null;
 
-    /** The Constant mapper. */
-    private static final ObjectMapper mapper = new ObjectMapper();
+    /** The Constant mapper, shared by the application. */
+    private static final ObjectMapper mapper = JsonMapper.getMapper();
 
     /** The fb access list. */
     private static List<ModuleAccess> moduleAccessList = null;
@@ -69,13 +69,13 @@ public class Utils {
     private static final String HIBERNATE_CONNECTION_DRIVER = "hibernate.connection.driver_class";
 
     /** The Constant HIBERNATE_CONNECTION_URL. */
-    private static final String HIBERNATE_CONNECTION_URL = "hibernate.connection.url";
+    static final String HIBERNATE_CONNECTION_URL = "hibernate.connection.url";
 
     /** The Constant HIBERNATE_CONNECTION_USERNAME. */
-    private static final String HIBERNATE_CONNECTION_USERNAME = "hibernate.connection.username";
+    static final String HIBERNATE_CONNECTION_USERNAME = "hibernate.connection.username";
 
     /** The Constant HIBERNATE_CONNECTION_PASSWORD. */
-    private static final String HIBERNATE_CONNECTION_PASSWORD = "hibernate.connection.password";
+    static final String HIBERNATE_CONNECTION_PASSWORD = "hibernate.connection.password";
 
     /** The Constant HIBERNATE_CONNECTION_PASSWORD. */
     private static final String HIBERNATE_SHOW_SQL = "hibernate.show_sql";
@@ -0,0 +1,150 @@
+package com.tmavn.sample.controller;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.tmavn.sample.entity.DeadLetter;
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.model.DeadLetterFilter;
+import com.tmavn.sample.model.ReplayJob;
+import com.tmavn.sample.service.DeadLetterService;
+import com.tmavn.sample.service.ListenerInfoService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Class DeadLetterController.<br>
+ * Lists and replays the notifications which failed after the maximum number of
+ * attempts. The dead letters are filtered by listener, callback host and failed
+ * time, the times are in the format yyyy-MM-dd HH:mm:ss. A replay runs in the
+ * background, its job is read by id.
+ */
+@RestController
+@RequestMapping("/api/v1/deadletter")
+@Slf4j
+public class DeadLetterController {
+
+    /** The format of the time parameters. */
+    private static final String TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    @Autowired
+    private DeadLetterService deadLetterService;
+
+    @Autowired
+    private ListenerInfoService listenerInfoService;
+
+    /**
+     * Get the dead letters, the oldest first.
+     *
+     * @param listenerId the id of the listener, optional.
+     * @param host       the host of the callback, optional.
+     * @param from       the first failed time, optional.
+     * @param to         the last failed time excluded, optional.
+     * @param limit      the maximum number of dead letters.
+     * @return list of dead letters, or status 404 if the listener is not found.
+     */
+    @GetMapping("")
+    public ResponseEntity<?> getDeadLetters(@RequestParam(required = false, value = "listenerId") Long listenerId,
+            @RequestParam(required = false, value = "host") String host,
+            @RequestParam(required = false, value = "from") @DateTimeFormat(pattern = TIME_PATTERN) Date from,
+            @RequestParam(required = false, value = "to") @DateTimeFormat(pattern = TIME_PATTERN) Date to,
+            @RequestParam(required = false, value = "limit", defaultValue = "100") int limit) {
+        log.debug("IN - getDeadLetters");
+        DeadLetterFilter filter = createFilter(listenerId, host, from, to);
+        if (filter == null) {
+            log.debug("GET - Not found listener with id: {}", listenerId);
+            log.debug("OUT - getDeadLetters");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        if (limit <= 0) {
+            log.debug("GET - Invalid limit: {}", limit);
+            log.debug("OUT - getDeadLetters");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        List<DeadLetter> list = deadLetterService.find(filter, limit);
+        log.debug("GET - Get dead letters, size: {}", list.size());
+        log.debug("OUT - getDeadLetters");
+        return ResponseEntity.status(HttpStatus.OK).body(list);
+    }
+
+    /**
+     * Start a replay of the dead letters: their notifications are sent again by
+     * the dispatcher, at the replay rate.
+     *
+     * @param listenerId the id of the listener, optional.
+     * @param host       the host of the callback, optional.
+     * @param from       the first failed time, optional.
+     * @param to         the last failed time excluded, optional.
+     * @return 202-Accepted with the replay job, or status 404 if the listener is
+     *         not found.
+     */
+    @PostMapping("/replay")
+    public ResponseEntity<?> replayDeadLetters(@RequestParam(required = false, value = "listenerId") Long listenerId,
+            @RequestParam(required = false, value = "host") String host,
+            @RequestParam(required = false, value = "from") @DateTimeFormat(pattern = TIME_PATTERN) Date from,
+            @RequestParam(required = false, value = "to") @DateTimeFormat(pattern = TIME_PATTERN) Date to) {
+        log.debug("IN - replayDeadLetters");
+        DeadLetterFilter filter = createFilter(listenerId, host, from, to);
+        if (filter == null) {
+            log.debug("POST - Not found listener with id: {}", listenerId);
+            log.debug("OUT - replayDeadLetters");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        ReplayJob job = deadLetterService.startReplay(filter);
+        log.debug("POST - Started replay {}", job.getId());
+        log.debug("OUT - replayDeadLetters");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    /**
+     * Get a replay job, with the numbers of replayed and skipped dead letters.
+     *
+     * @param id the id of the job.
+     * @return the job, or status 404 if the job is not found.
+     */
+    @GetMapping("/replay/{id}")
+    public ResponseEntity<?> getReplay(@PathVariable(value = "id") String id) {
+        log.debug("IN - getReplay");
+        ReplayJob job = deadLetterService.findReplay(id);
+        if (job == null) {
+            log.debug("GET - Not found replay with id: {}", id);
+            log.debug("OUT - getReplay");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        log.debug("OUT - getReplay");
+        return ResponseEntity.status(HttpStatus.OK).body(job);
+    }
+
+    /**
+     * Create the filter of the parameters.
+     *
+     * @return the filter, or null if the listener is not found.
+     */
+    private DeadLetterFilter createFilter(Long listenerId, String host, Date from, Date to) {
+        DeadLetterFilter filter = new DeadLetterFilter();
+        if (listenerId != null) {
+            ListenerInfo listenerInfo = listenerInfoService.findById(listenerId);
+            if (listenerInfo == null) {
+                return null;
+            }
+            // the notifications of a listener are the ones of its user to its callback
+            filter.setUserId(listenerInfo.getUserId());
+            filter.setCallback(listenerInfo.getCallback());
+        }
+        filter.setHost(host);
+        filter.setFrom(from);
+        filter.setTo(to);
+        return filter;
+    }
+}
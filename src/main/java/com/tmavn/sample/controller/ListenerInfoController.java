@@ -1,5 +1,6 @@
 package com.tmavn.sample.controller;
 
+import java.io.InputStream;
 import java.util.Collection;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,18 +12,21 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.tmavn.sample.common.Constant;
 import com.tmavn.sample.common.JsonValidation;
+import com.tmavn.sample.common.ListenerQuery;
 import com.tmavn.sample.common.Utils;
 import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.model.BindResult;
 import com.tmavn.sample.model.CheckResult;
 import com.tmavn.sample.service.ListenerInfoService;
+import com.tmavn.sample.service.StateChangeStream;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -37,9 +41,15 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class ListenerInfoController {
 
+    /** The header of the id of the last event received by a stream client. */
+    private static final String HEADER_LAST_EVENT_ID = "Last-Event-ID";
+
     @Autowired
     private ListenerInfoService listenerInfoService;
 
+    @Autowired
+    private StateChangeStream stateChangeStream;
+
     /**
      * Get all listener info.
      * 
@@ -54,6 +64,47 @@ public class ListenerInfoController {
         return ResponseEntity.status(HttpStatus.OK).body(list);
     }
 
+    /**
+     * Stream the state changes of the user as server-sent events, for the clients
+     * which can not expose a callback. A client which reconnects sends the id of
+     * the last event it received, and gets the events it missed first.<br>
+     * The stream carries the state changes made on this node only: the requests
+     * of a user must be routed to the same node, i.e: by the user id header. A
+     * client gets a "reset" event when the events it missed are not known, the
+     * id is of another node or older than the history, and reads its orders again.
+     *
+     * @param userId      mandatory header parameter.
+     * @param query       the states to receive, with the syntax of the listener
+     *                    query; all the states if empty.
+     * @param lastEventId the id of the last received event, optional.
+     * @return the event stream, or status 400 if the user id is missing or the
+     *         query invalid.
+     */
+    @GetMapping("/stream")
+    public ResponseEntity<SseEmitter> streamStateChanges(
+            @RequestHeader(required = false, value = Constant.HEADER_USER_ID) String userId,
+            @RequestParam(required = false, value = "query", defaultValue = "") String query,
+            @RequestHeader(required = false, value = HEADER_LAST_EVENT_ID) String lastEventId) {
+        log.debug("IN - streamStateChanges");
+        if (userId == null || userId.isEmpty()) {
+            log.debug("GET - Missing user id");
+            log.debug("OUT - streamStateChanges");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body((SseEmitter) null);
+        }
+        ListenerQuery listenerQuery;
+        try {
+            listenerQuery = ListenerQuery.compile(query);
+        } catch (IllegalArgumentException e) {
+            log.debug("GET - Invalid query: {}", query);
+            log.debug("OUT - streamStateChanges");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body((SseEmitter) null);
+        }
+        SseEmitter emitter = stateChangeStream.subscribe(userId, listenerQuery, lastEventId);
+        log.debug("GET - Stream state changes of {}, query: {}", userId, query);
+        log.debug("OUT - streamStateChanges");
+        return ResponseEntity.status(HttpStatus.OK).body(emitter);
+    }
+
     /**
      * Get specific listener info by id.
      * 
@@ -77,18 +128,18 @@ public class ListenerInfoController {
     /**
      * Add new (register) listener info.
      * 
-     * @param listenerInfo listener info to add new.
+     * @param body         listener info to add new.
      * @param userId       mandatory header parameter.
      * @return registered lister info with status 200, or return status 400 if JSON
      *         invalid.
      */
     @PostMapping("")
-    public ResponseEntity<?> addListenerInfo(@RequestBody String body,
+    public ResponseEntity<?> addListenerInfo(InputStream body,
             @RequestHeader(required = false, value = Constant.HEADER_USER_ID) String userId) {
         log.debug("IN - addListenerInfo");
         // Validate JSON using JSON Schema
-        CheckResult validationResult = JsonValidation
-                .validate(Utils.getBaseDirectory() + Constant.JsonSchema.LISTENER_INFO_POST, body);
+        BindResult<ListenerInfo> validationResult = JsonValidation.validateAndBind(
+                Utils.getBaseDirectory() + Constant.JsonSchema.LISTENER_INFO_POST, body, ListenerInfo.class);
 
         if (!validationResult.isSuccess()) {
             log.debug("POST- Bad request");
@@ -96,8 +147,7 @@ public class ListenerInfoController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(validationResult.getMessage());
         }
 
-        ListenerInfo listenerInfo = (ListenerInfo) Utils.parseJson(body, new TypeReference<ListenerInfo>() {
-        });
+        ListenerInfo listenerInfo = validationResult.getData();
 
         if (null == listenerInfo.getUserId()) {
             log.debug("POST- Set user id to {}", userId);
@@ -113,21 +163,21 @@ public class ListenerInfoController {
     /**
      * Update listener info.
      * 
-     * @param listenerInfo new data for update listener info.
+     * @param body         new data for update listener info.
      * @param userId       mandatory header parameter.
      * @param id           id of listener info to update.
      * @return updated listener info with status 200, or status 400 if JSON invalid.
      */
     @PutMapping("/{id}")
-    public ResponseEntity<?> updateEntireListenerInfo(@RequestBody String body,
+    public ResponseEntity<?> updateEntireListenerInfo(InputStream body,
             @RequestHeader(required = false, value = Constant.HEADER_USER_ID) String userId,
             @PathVariable(value = "id") Long id) {
 
         log.debug("IN - updateEntireListenerInfo");
 
         // Validate JSON using JSON Schema
-        CheckResult validationResult = JsonValidation
-                .validate(Utils.getBaseDirectory() + Constant.JsonSchema.LISTENER_INFO_PUT, body);
+        BindResult<ListenerInfo> validationResult = JsonValidation.validateAndBind(
+                Utils.getBaseDirectory() + Constant.JsonSchema.LISTENER_INFO_PUT, body, ListenerInfo.class);
 
         if (!validationResult.isSuccess()) {
             log.debug("PUT - Validate JSON failed: {}", validationResult.getMessage());
@@ -135,8 +185,7 @@ public class ListenerInfoController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(validationResult.getMessage());
         }
 
-        ListenerInfo listenerInfo = (ListenerInfo) Utils.parseJson(body, new TypeReference<ListenerInfo>() {
-        });
+        ListenerInfo listenerInfo = validationResult.getData();
         // check if id in path and id in body is the same
         if (!listenerInfo.getId().equals(id)) {
             log.debug("PUT - Failed: Id in path param and body must be the same.");
@@ -161,22 +210,22 @@ public class ListenerInfoController {
     /**
      * Partial update listener info.
      * 
-     * @param listenerInfo new data for update listener info.
+     * @param body         new data for update listener info.
      * @param userId       mandatory header parameter.
      * @param id           id of listener info to partial update.
      * @return updated listener info with status 201, or status 400 if JSON invalid,
      *         or status 404 if not found listener info with given id.
      */
     @PatchMapping("/{id}")
-    public ResponseEntity<?> partialUpdateListenerInfo(@RequestBody String body,
+    public ResponseEntity<?> partialUpdateListenerInfo(InputStream body,
             @RequestHeader(required = false, value = Constant.HEADER_USER_ID) String userId,
             @PathVariable(value = "id") Long id) {
 
         log.debug("IN - partialUpdateListenerInfo");
         
         // Validate JSON using JSON Schema
-        CheckResult validationResult = JsonValidation
-                .validate(Utils.getBaseDirectory() + Constant.JsonSchema.LISTENER_INFO_PATCH, body);
+        BindResult<ListenerInfo> validationResult = JsonValidation.validateAndBind(
+                Utils.getBaseDirectory() + Constant.JsonSchema.LISTENER_INFO_PATCH, body, ListenerInfo.class);
 
         if (!validationResult.isSuccess()) {
             log.debug("PATCH - Validate JSON failed: {}", validationResult.getMessage());
@@ -184,8 +233,7 @@ public class ListenerInfoController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(validationResult.getMessage());
         }
 
-        ListenerInfo listenerInfo = (ListenerInfo) Utils.parseJson(body, new TypeReference<ListenerInfo>() {
-        });
+        ListenerInfo listenerInfo = validationResult.getData();
 
         // check for exist
         if (!listenerInfoService.exist(id)) {
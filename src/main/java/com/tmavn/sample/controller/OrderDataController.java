@@ -1,5 +1,6 @@
 package com.tmavn.sample.controller;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,20 +14,18 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.tmavn.sample.common.Constant;
 import com.tmavn.sample.common.JsonValidation;
 import com.tmavn.sample.common.Utils;
 import com.tmavn.sample.dto.OrderDataDTO;
 import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.model.BindResult;
 import com.tmavn.sample.model.CheckResult;
 import com.tmavn.sample.service.OrderDataService;
-import com.tmavn.sample.service.StateChangeService;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -44,9 +43,6 @@ public class OrderDataController {
     @Autowired
     private OrderDataService orderDataService;
 
-    @Autowired
-    private StateChangeService stateChangeService;
-
     /**
      * Get information of all orders.
      * 
@@ -100,21 +96,23 @@ public class OrderDataController {
     }
 
     /**
-     * Add new order. If already exist, do nothing.
+     * Add new order. If already exist, do nothing. The order and its state change
+     * notifications are saved in one transaction by the service, after the body
+     * is read and the OPS module is called.
      * 
-     * @param orderData order to add new.
+     * @param body      order to add new.
      * @param userId    UserId parameter in header. Required = false for avoid make
      *                  exception in filter if not set
      * @return 201-Created - with the order have just added in JSON format, or 400
      *         Bad request with already exist message if order is already exist, or
      */
     @PostMapping("")
-    public ResponseEntity<?> addOrder(@RequestBody String body,
+    public ResponseEntity<?> addOrder(InputStream body,
             @RequestHeader(required = false, value = Constant.HEADER_USER_ID) String userId) {
         log.debug("IN - addOrder");
         // Validate JSON using JSON Schema
-        CheckResult validationResult = JsonValidation
-                .validate(Utils.getBaseDirectory() + Constant.JsonSchema.ORDER_DATA_POST, body);
+        BindResult<OrderData> validationResult = JsonValidation.validateAndBind(
+                Utils.getBaseDirectory() + Constant.JsonSchema.ORDER_DATA_POST, body, OrderData.class);
 
         if (!validationResult.isSuccess()) {
             log.debug("POST - Bad request - JSON not valid by schema");
@@ -122,16 +120,9 @@ public class OrderDataController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(validationResult.getMessage());
         }
 
-        // persist
-        OrderData orderData = (OrderData) Utils.parseJson(body, new TypeReference<OrderData>() {
-        });
-        OrderData createdOrderData = orderDataService.addNewOrderData(orderData);
-
-        // Perform notify state change
-        OrderData newData = createdOrderData;
-        OrderData oldData = null;
-
-        stateChangeService.notifyStateChange(userId, newData, oldData);
+        // persist and notify state change
+        OrderData orderData = orderDataService.prepareNewOrderData(validationResult.getData());
+        OrderData createdOrderData = orderDataService.addNewOrderData(userId, orderData);
 
         // Create DTO for return
         OrderDataDTO orderDataDto = new OrderDataDTO();
@@ -145,7 +136,7 @@ public class OrderDataController {
     /**
      * Update entire order with new order (exclude id)
      * 
-     * @param orderData new order data.
+     * @param body      new order data.
      * @param userId    UserId parameter in header. Required = false for avoid make
      *                  exception in filter if not set
      * @param id        id of the order to update.
@@ -153,13 +144,13 @@ public class OrderDataController {
      *         order with id not exist. 400 Bad request if JSON not valid.
      */
     @PutMapping("/{id}")
-    public ResponseEntity<?> updateEntireOrder(@RequestBody String body,
+    public ResponseEntity<?> updateEntireOrder(InputStream body,
             @RequestHeader(required = false, value = Constant.HEADER_USER_ID) String userId,
             @PathVariable(value = "id") String id) {
         log.debug("IN - updateEntireOrder");
         // Validate JSON using JSON Schema
-        CheckResult validationResult = JsonValidation
-                .validate(Utils.getBaseDirectory() + Constant.JsonSchema.ORDER_DATA_PUT, body);
+        BindResult<OrderData> validationResult = JsonValidation.validateAndBind(
+                Utils.getBaseDirectory() + Constant.JsonSchema.ORDER_DATA_PUT, body, OrderData.class);
 
         if (!validationResult.isSuccess()) {
             log.debug("PUT - Bad request - JSON not valid by schema");
@@ -167,8 +158,7 @@ public class OrderDataController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(validationResult.getMessage());
         }
 
-        OrderData orderData = (OrderData) Utils.parseJson(body, new TypeReference<OrderData>() {
-        });
+        OrderData orderData = validationResult.getData();
 
         // check if id in path and id in body is the same
         if (!orderData.getId().equals(id)) {
@@ -181,12 +171,8 @@ public class OrderDataController {
         if (orderDataService.exist(id)) {
 
             log.debug("PUT - Order data {}", orderData);
-            OrderData oldData = orderDataService.findById(id);
-            OrderData updatedOrderData = orderDataService.putOrderData(id, orderData);
-
-            // Perform notify state change
-            OrderData newData = updatedOrderData;
-            stateChangeService.notifyStateChange(userId, newData, oldData);
+            // update and notify state change
+            OrderData updatedOrderData = orderDataService.putOrderData(userId, id, orderData);
 
             // Create DTO
             OrderDataDTO orderDataDto = new OrderDataDTO();
@@ -204,7 +190,7 @@ public class OrderDataController {
     /**
      * Partial update order data.
      * 
-     * @param orderData new order data with new value to update
+     * @param body      new order data with new value to update
      * @param userId    UserId parameter in header. Required = false for avoid make
      *                  exception in filter if not set
      * @param id        <b>UserId<b> parameter in header.
@@ -212,13 +198,13 @@ public class OrderDataController {
      *         order with id not exist.
      */
     @PatchMapping("/{id}")
-    public ResponseEntity<?> partialUpdateOrder(@RequestBody String body,
+    public ResponseEntity<?> partialUpdateOrder(InputStream body,
             @RequestHeader(required = false, value = Constant.HEADER_USER_ID) String userId,
             @PathVariable(value = "id") String id) {
         log.debug("IN - partialUpdateOrder");
         // Validate JSON using JSON Schema
-        CheckResult validationResult = JsonValidation
-                .validate(Utils.getBaseDirectory() + Constant.JsonSchema.ORDER_DATA_PATCH, body);
+        BindResult<OrderData> validationResult = JsonValidation.validateAndBind(
+                Utils.getBaseDirectory() + Constant.JsonSchema.ORDER_DATA_PATCH, body, OrderData.class);
 
         if (!validationResult.isSuccess()) {
             log.debug("PATCH - Bad request - JSON not valid by schema");
@@ -226,19 +212,11 @@ public class OrderDataController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(validationResult.getMessage());
         }
 
-        OrderData orderData = (OrderData) Utils.parseJson(body, new TypeReference<OrderData>() {
-        });
+        OrderData orderData = validationResult.getData();
 
         if (orderDataService.exist(id)) {
-            // store oldData for later use
-            OrderData oldData = orderDataService.findById(id);
-
-            // Perform patch
-            OrderData updatedOrderData = orderDataService.patchOrderData(id, orderData);
-
-            // Perform notify state change
-            OrderData newData = updatedOrderData;
-            stateChangeService.notifyStateChange(userId, newData, oldData);
+            // Perform patch and notify state change
+            OrderData updatedOrderData = orderDataService.patchOrderData(userId, id, orderData);
 
             // Create DTO for return
             OrderDataDTO orderDataDto = new OrderDataDTO();
@@ -269,15 +247,8 @@ public class OrderDataController {
         log.debug("IN - deleteOrder");
         // check for exist
         if (orderDataService.exist(id)) {
-            // store oldData for later use
-            OrderData oldData = orderDataService.findById(id);
-
-            // Perform delete
-            OrderData deletedData = orderDataService.delete(id);
-
-            // Perform notify state change
-            OrderData newData = deletedData;
-            stateChangeService.notifyStateChange(userId, newData, oldData);
+            // Perform delete and notify state change
+            orderDataService.delete(userId, id);
             log.debug("DELETE - Success: Deleted item id {}", id);
             log.debug("OUT - deleteOrder");
             return ResponseEntity.status(HttpStatus.OK).build();
@@ -0,0 +1,63 @@
+package com.tmavn.sample.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A notification which failed after the maximum number of attempts. The
+ * notification stays in the outbox with the status Failed, and is sent again
+ * when its dead letter is replayed.
+ */
+@Getter
+@Setter
+@Entity
+@ToString
+@Table(name = "dead_letter", indexes = @Index(name = "idx_dead_letter_failed_time", columnList = "failed_time"))
+public class DeadLetter implements Serializable {
+
+    private static final long serialVersionUID = 4410519741328063417L;
+
+    // the trigger id of the notification
+    @Id
+    @Column(name = "trigger_id")
+    private String triggerId;
+
+    @Column(name = "order_id")
+    private String orderId;
+
+    @Column(name = "user_id")
+    private String userId;
+
+    @Column(name = "callback")
+    private String callback;
+
+    // the host and port of the callback, to replay the notifications of a host
+    @Column(name = "host")
+    private String host;
+
+    @Column(name = "attempts")
+    private Integer attempts;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    // the http status of the last response, null when no response was received
+    @Column(name = "http_status")
+    private Integer httpStatus;
+
+    @Column(name = "failed_time")
+    @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date failedTime;
+}
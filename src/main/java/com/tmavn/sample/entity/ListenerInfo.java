@@ -25,6 +25,18 @@ public class ListenerInfo implements Serializable {
      */
     private static final long serialVersionUID = 6600366895460702304L;
 
+    /** Each notification is sent alone, the default. */
+    public static final String DELIVERY_SINGLE = "single";
+
+    /** The notifications are sent in batches, as a json array. */
+    public static final String DELIVERY_BATCH = "batch";
+
+    /** All the fields of the order are sent, the default. */
+    public static final String PAYLOAD_FULL = "full";
+
+    /** Only the id and the state of the order are sent. */
+    public static final String PAYLOAD_THIN = "thin";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -38,4 +50,12 @@ public class ListenerInfo implements Serializable {
     @Column(nullable = false)
     private String query;
 
+    // single or batch, null is single
+    @Column(name = "delivery")
+    private String delivery;
+
+    // full, thin or the list of the fields of the order separated by ',', null is full
+    @Column(name = "payload")
+    private String payload;
+
 }
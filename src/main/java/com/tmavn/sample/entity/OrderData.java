@@ -14,6 +14,7 @@ import javax.persistence.Table;
 import org.hibernate.annotations.GenericGenerator;
 import org.springframework.format.annotation.DateTimeFormat;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import lombok.Getter;
@@ -62,4 +63,9 @@ public class OrderData implements Serializable {
     @OneToMany(mappedBy = "triggerData")
     private Set<StateChangeNotify> stateChangeNotifies;
 
+    // the sequence of the last state change, incremented by the repository only
+    @JsonIgnore
+    @Column(name = "state_sequence", insertable = false, updatable = false)
+    private Long stateSequence;
+
 }
@@ -1,12 +1,16 @@
 package com.tmavn.sample.entity;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -14,6 +18,10 @@ import javax.persistence.Table;
 import org.hibernate.annotations.GenericGenerator;
 import org.springframework.format.annotation.DateTimeFormat;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -22,11 +30,18 @@ import lombok.ToString;
 @Setter
 @Entity
 @ToString(exclude = "triggerData")
-@Table(name = "state_change_notify")
+@Table(name = "state_change_notify", indexes = @Index(name = "idx_state_change_notify_order_sequence",
+        columnList = "order_id, sequence"))
 public class StateChangeNotify implements Serializable{
 
     public static final String TYPE_STATE_CHANGE_NOTIFY = "StateChangeNotify";
-    
+
+    public static final String STATUS_PENDING = "Pending";
+    public static final String STATUS_SENDING = "Sending";
+    public static final String STATUS_SENT = "Sent";
+    public static final String STATUS_FAILED = "Failed";
+    public static final String STATUS_COALESCED = "Coalesced";
+
     /**
      * 
      */
@@ -45,8 +60,136 @@ public class StateChangeNotify implements Serializable{
     @Column(name = "trigger_type")
     private String triggerType;
 
+    // the order row, it holds the current order: the order at the state change is sent
+    @JsonIgnore
     @ManyToOne
     @JoinColumn(name = "order_id")
     private OrderData triggerData;
 
+    // the number of the state change of the order, so that a listener can detect the missing ones
+    @Column(name = "sequence")
+    private Long sequence;
+
+    // the delivery fields of the outbox are not sent to the listener
+    @JsonIgnore
+    @Column(name = "user_id")
+    private String userId;
+
+    @JsonIgnore
+    @Column(name = "callback")
+    private String callback;
+
+    @JsonIgnore
+    @Column(name = "status")
+    private String status;
+
+    @JsonIgnore
+    @Column(name = "attempts")
+    private Integer attempts;
+
+    @JsonIgnore
+    @Column(name = "next_attempt_time")
+    private Date nextAttemptTime;
+
+    @JsonIgnore
+    @Column(name = "last_error")
+    private String lastError;
+
+    // the http status of the last response, null when no response was received
+    @JsonIgnore
+    @Column(name = "last_status")
+    private Integer lastStatus;
+
+    // the claim of the node which sends the notification, and the end of its lease
+    @JsonIgnore
+    @Column(name = "lease_owner")
+    private String leaseOwner;
+
+    @JsonIgnore
+    @Column(name = "lease_until")
+    private Date leaseUntil;
+
+    // the order at the state change: its new state and its other fields
+    @JsonIgnore
+    @Column(name = "state")
+    private String state;
+
+    @JsonIgnore
+    @Column(name = "order_description")
+    private String orderDescription;
+
+    @JsonIgnore
+    @Column(name = "order_date")
+    private String orderDate;
+
+    @JsonIgnore
+    @Column(name = "modify_date")
+    private String modifyDate;
+
+    // the delivery mode of the listener
+    @JsonIgnore
+    @Column(name = "delivery")
+    private String delivery;
+
+    // the payload of the listener
+    @JsonIgnore
+    @Column(name = "payload")
+    private String payload;
+
+    // the states of the coalesced notifications, separated by ','
+    @JsonIgnore
+    @Column(name = "coalesced_states")
+    private String coalescedStates;
+
+    /**
+     * Gets the order as it was at the state change, which is sent as the trigger
+     * data: the order row may have changed since, i.e: when the notification is
+     * retried or coalesced.
+     *
+     * @return the order at the state change, or the order row for the rows
+     *         written without the fields of the order; null if none
+     */
+    @JsonProperty("triggerData")
+    public OrderData getOrderSnapshot() {
+        if (triggerData == null || state == null) {
+            return triggerData;
+        }
+        OrderData snapshot = new OrderData();
+        snapshot.setId(triggerData.getId());
+        snapshot.setDescription(orderDescription);
+        snapshot.setState(state);
+        snapshot.setOrderDate(orderDate);
+        snapshot.setModifyDate(modifyDate);
+        return snapshot;
+    }
+
+    /**
+     * Sets the order of the state change, and keeps its fields as they are now.
+     *
+     * @param orderData the order
+     */
+    @JsonIgnore
+    public void setOrderSnapshot(OrderData orderData) {
+        triggerData = orderData;
+        state = orderData == null ? null : orderData.getState();
+        orderDescription = orderData == null ? null : orderData.getDescription();
+        orderDate = orderData == null ? null : orderData.getOrderDate();
+        modifyDate = orderData == null ? null : orderData.getModifyDate();
+    }
+
+    /**
+     * Gets the states of the notifications coalesced into this one, the oldest
+     * first.
+     *
+     * @return the states, empty if none
+     */
+    @JsonProperty("intermediateStates")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<String> getIntermediateStates() {
+        if (coalescedStates == null || coalescedStates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(coalescedStates.split(","));
+    }
+
 }
@@ -0,0 +1,57 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.enums;
+
+import com.tmavn.sample.entity.OrderData;
+
+/**
+ * The Enum OrderState.<br>
+ * The states of an order, the value is the state stored in
+ * {@link OrderData#getState()}.
+ */
+public enum OrderState {
+
+    /** The scheduled. */
+    SCHEDULED(OrderData.STATE_SCHEDULED),
+
+    /** The processing. */
+    PROCESSING(OrderData.STATE_PROCESSING),
+
+    /** The completed. */
+    COMPLETED(OrderData.STATE_COMPLETED),
+
+    /** The failed. */
+    FAILED(OrderData.STATE_FAILED);
+
+    /** The state value. */
+    private final String value;
+
+    private OrderState(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Gets the state value.
+     *
+     * @return the value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Find the state of a value, the value must match exactly.
+     *
+     * @param value the state value
+     * @return the state, or null if the value is not a state
+     */
+    public static OrderState fromValue(String value) {
+        for (OrderState state : values()) {
+            if (state.value.equals(value)) {
+                return state;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.enums;
+
+/**
+ * The Enum OverflowPolicy.<br>
+ * What the dispatcher does with a notification when the queue of its callback
+ * host is full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Wait for room in the queue on the lane of the notification, it is spilled
+     * when the queue is still full after the delivery timeout.
+     */
+    BLOCK("block"),
+
+    /**
+     * Drop the oldest notification waiting in the queue, it is put back in the
+     * outbox table without counting an attempt.
+     */
+    DROP_OLDEST("dropOldest"),
+
+    /** Put the notification back in the outbox table, it is read again by a later poll. */
+    SPILL("spill");
+
+    /** The value in sample.conf. */
+    private final String value;
+
+    private OverflowPolicy(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Gets the value in sample.conf.
+     *
+     * @return the value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Find the policy of a value, the value must match exactly.
+     *
+     * @param value the value
+     * @return the policy, or null if the value is not a policy
+     */
+    public static OverflowPolicy fromValue(String value) {
+        for (OverflowPolicy policy : values()) {
+            if (policy.value.equals(value)) {
+                return policy;
+            }
+        }
+        return null;
+    }
+}
@@ -8,6 +8,8 @@ import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import com.tmavn.sample.common.RequestBodyTooLargeException;
+
 import lombok.extern.slf4j.Slf4j;
 
 @RestControllerAdvice
@@ -30,6 +32,14 @@ public class RestExceptionHandler {
         return ResponseEntity.status(HttpStatus.METHOD_NOT_ALLOWED).body(e.getMessage());
     }
     
+    @ExceptionHandler(value = { RequestBodyTooLargeException.class })
+    public ResponseEntity<?> requestBodyTooLargeExceptionHandler(RequestBodyTooLargeException e) {
+        log.debug("IN - requestBodyTooLargeExceptionHandler");
+        log.warn(e.getMessage());
+        log.debug("OUT - requestBodyTooLargeExceptionHandler");
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+    }
+
     @ExceptionHandler(value = { Exception.class })
     public ResponseEntity<?> exceptionHandler(Exception e) {
         log.debug("OUT - exceptionHandler");
@@ -0,0 +1,41 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The Class BindResult.<br>
+ * A {@link CheckResult} which also carries the object bound from the validated
+ * json.
+ *
+ * @param <T> the type of the bound object
+ */
+@Getter
+@Setter
+public class BindResult<T> extends CheckResult {
+
+    /** The bound object, null if the validation failed. */
+    private T data;
+
+    /**
+     * Instantiates a new bind result.
+     *
+     * @param success the success
+     * @param message the message
+     * @param data    the data
+     */
+    public BindResult(boolean success, String message, T data) {
+        super(success, message);
+        this.data = data;
+    }
+
+    /**
+     * Instantiates a new bind result.
+     */
+    public BindResult() {
+
+    }
+}
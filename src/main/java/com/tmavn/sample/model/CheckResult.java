@@ -3,6 +3,8 @@
  */
 package com.tmavn.sample.model;
 
+import java.util.List;
+
 import lombok.Getter;
 import lombok.Setter;
 
@@ -53,6 +55,9 @@ public class CheckResult {
     /** The message. */
     private String message;
 
+    /** The json schema validation errors, null if there is no error. */
+    private List<ValidationError> errors;
+
     /**
      * Instantiates a new check result.
      *
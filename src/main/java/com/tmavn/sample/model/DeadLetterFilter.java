@@ -0,0 +1,36 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.model;
+
+import java.util.Date;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The Class DeadLetterFilter.<br>
+ * Selects the dead letters to list or to replay, a null field selects all the
+ * dead letters.
+ */
+@Getter
+@Setter
+@ToString
+public class DeadLetterFilter {
+
+    /** The user id of the listener. */
+    private String userId;
+
+    /** The callback of the listener. */
+    private String callback;
+
+    /** The host of the callback, with the port if the callback has one, i.e: localhost:8080. */
+    private String host;
+
+    /** The first failed time, included. */
+    private Date from;
+
+    /** The last failed time, excluded. */
+    private Date to;
+}
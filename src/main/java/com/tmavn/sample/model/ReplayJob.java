@@ -0,0 +1,52 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.model;
+
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The Class ReplayJob.<br>
+ * A replay of the dead letters, run in the background. The counts are updated
+ * page by page while the job is running.
+ */
+@Getter
+@Setter
+@ToString
+public class ReplayJob {
+
+    public static final String STATUS_RUNNING = "Running";
+    public static final String STATUS_DONE = "Done";
+    public static final String STATUS_FAILED = "Failed";
+
+    /** The id of the job. */
+    private String id;
+
+    /** The dead letters to replay. */
+    @JsonIgnore
+    private DeadLetterFilter filter;
+
+    /** Running, Done or Failed. */
+    private volatile String status;
+
+    /** The number of replayed notifications. */
+    private volatile int replayed;
+
+    /** The number of dead letters deleted without replay, their notification is not in the outbox. */
+    private volatile int skipped;
+
+    /** The start time of the job. */
+    private Date startTime;
+
+    /** The end time of the job, null while it is running. */
+    private volatile Date endTime;
+
+    /** The error of a failed job. */
+    private volatile String error;
+}
@@ -0,0 +1,47 @@
+/*
+ * Demo project
+ */
+package com.tmavn.sample.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The Class ValidationError.<br>
+ * One error of a json schema validation.
+ */
+@Getter
+@Setter
+@ToString
+public class ValidationError {
+
+    /** The Constant TYPE_MISSING, mandatory attributes are missing. */
+    public static final String TYPE_MISSING = "missing";
+
+    /** The Constant TYPE_EXPECTED, an attribute has a wrong type. */
+    public static final String TYPE_EXPECTED = "expected";
+
+    /** The Constant TYPE_ONE_OF, the instance does not match exactly one schema. */
+    public static final String TYPE_ONE_OF = "reports";
+
+    /** The Constant TYPE_UNWANTED, the instance has not allowed attributes. */
+    public static final String TYPE_UNWANTED = "unwanted";
+
+    /** The schema keyword which failed, i.e: required, type, enum. */
+    private String keyword;
+
+    /** The json pointer of the failed instance. */
+    private String pointer;
+
+    /** The message. */
+    private String message;
+
+    /** The error type, one of TYPE_XXX or null if unknown. */
+    private String type;
+
+    /** The detail of the error type, i.e: the list of missing attributes. */
+    private JsonNode detail;
+}
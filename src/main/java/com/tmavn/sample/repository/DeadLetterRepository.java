@@ -0,0 +1,23 @@
+package com.tmavn.sample.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.tmavn.sample.entity.DeadLetter;
+
+@Repository
+public interface DeadLetterRepository extends JpaRepository<DeadLetter, String> {
+
+    @Query("SELECT d FROM DeadLetter d WHERE (:userId IS NULL OR d.userId = :userId)"
+            + " AND (:callback IS NULL OR d.callback = :callback) AND (:host IS NULL OR d.host = :host)"
+            + " AND d.failedTime >= :from AND d.failedTime < :to ORDER BY d.failedTime")
+    List<DeadLetter> findFiltered(@Param(value = "userId") String userId, @Param(value = "callback") String callback,
+            @Param(value = "host") String host, @Param(value = "from") Date from, @Param(value = "to") Date to,
+            Pageable pageable);
+}
@@ -1,11 +1,30 @@
 package com.tmavn.sample.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.tmavn.sample.entity.OrderData;
 
 @Repository
 public interface OrderDataRepository extends JpaRepository<OrderData, String> {
-    
+
+    /**
+     * Increment the state sequence of an order. The row stays locked until the
+     * transaction of the order ends, so the concurrent state changes of the order
+     * get the next numbers. The orders without a sequence continue from their
+     * notifications.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE OrderData o SET o.stateSequence = COALESCE(o.stateSequence,"
+            + " (SELECT MAX(n.sequence) FROM StateChangeNotify n WHERE n.triggerData.id = :id), 0) + 1"
+            + " WHERE o.id = :id")
+    int incrementStateSequence(@Param(value = "id") String id);
+
+    @Query("SELECT o.stateSequence FROM OrderData o WHERE o.id = :id")
+    Long findStateSequence(@Param(value = "id") String id);
 }
@@ -1,11 +1,99 @@
 package com.tmavn.sample.repository;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.tmavn.sample.entity.StateChangeNotify;
 
 @Repository
 public interface StateChangeNotifyRepository extends JpaRepository<StateChangeNotify, String> {
 
+    @Query("SELECT n FROM StateChangeNotify n WHERE n.triggerData.id = :orderId AND n.status = :status"
+            + " AND n.attempts = 0 AND n.nextAttemptTime > :now")
+    List<StateChangeNotify> findWaiting(@Param(value = "orderId") String orderId,
+            @Param(value = "status") String status, @Param(value = "now") Date now);
+
+    @Query("SELECT n.triggerId, n.nextAttemptTime FROM StateChangeNotify n WHERE n.status = :status"
+            + " AND n.nextAttemptTime > :now AND n.nextAttemptTime <= :horizon")
+    List<Object[]> findScheduled(@Param(value = "status") String status, @Param(value = "now") Date now,
+            @Param(value = "horizon") Date horizon);
+
+    /**
+     * Claim the due notifications and the notifications whose lease expired,
+     * the rows locked by the claims of the other nodes are skipped. A
+     * notification waits while an earlier state change of its order to the same
+     * callback is still Pending or Sending, so a failed notification is not
+     * overtaken by the next ones. PostgreSQL only.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE state_change_notify SET status = '" + StateChangeNotify.STATUS_SENDING + "',"
+            + " lease_owner = :owner, lease_until = :leaseUntil WHERE trigger_id IN (SELECT n.trigger_id"
+            + " FROM state_change_notify n WHERE ((n.status = '" + StateChangeNotify.STATUS_PENDING + "'"
+            + " AND n.next_attempt_time <= :now) OR (n.status = '" + StateChangeNotify.STATUS_SENDING + "'"
+            + " AND n.lease_until < :now)) AND NOT EXISTS (SELECT 1 FROM state_change_notify p"
+            + " WHERE p.order_id = n.order_id AND p.callback = n.callback AND p.sequence < n.sequence"
+            + " AND p.status IN ('" + StateChangeNotify.STATUS_PENDING + "', '" + StateChangeNotify.STATUS_SENDING
+            + "')) ORDER BY n.next_attempt_time, n.sequence LIMIT :limit FOR UPDATE OF n SKIP LOCKED)",
+            nativeQuery = true)
+    int claim(@Param(value = "owner") String owner, @Param(value = "now") Date now,
+            @Param(value = "leaseUntil") Date leaseUntil, @Param(value = "limit") int limit);
+
+    /**
+     * Claim the notifications of the given ids whose retry is due, like
+     * {@link #claim}: the locked rows and the rows waiting for an earlier state
+     * change of their order are skipped. The rows are read by primary key, the
+     * outbox is not scanned. PostgreSQL only.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE state_change_notify SET status = '" + StateChangeNotify.STATUS_SENDING + "',"
+            + " lease_owner = :owner, lease_until = :leaseUntil WHERE trigger_id IN (SELECT n.trigger_id"
+            + " FROM state_change_notify n WHERE n.trigger_id IN (:ids) AND n.status = '"
+            + StateChangeNotify.STATUS_PENDING + "' AND n.next_attempt_time <= :now AND NOT EXISTS (SELECT 1"
+            + " FROM state_change_notify p WHERE p.order_id = n.order_id AND p.callback = n.callback"
+            + " AND p.sequence < n.sequence AND p.status IN ('" + StateChangeNotify.STATUS_PENDING + "', '"
+            + StateChangeNotify.STATUS_SENDING + "')) FOR UPDATE OF n SKIP LOCKED)", nativeQuery = true)
+    int claimIds(@Param(value = "owner") String owner, @Param(value = "ids") Collection<String> ids,
+            @Param(value = "now") Date now, @Param(value = "leaseUntil") Date leaseUntil);
+
+    @Query("SELECT n FROM StateChangeNotify n WHERE n.leaseOwner = :owner AND n.status = :status"
+            + " ORDER BY n.nextAttemptTime, n.sequence")
+    List<StateChangeNotify> findClaimed(@Param(value = "owner") String owner, @Param(value = "status") String status);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE StateChangeNotify n SET n.leaseUntil = :leaseUntil WHERE n.status = :status"
+            + " AND n.leaseOwner LIKE :owner")
+    int extendLeases(@Param(value = "owner") String owner, @Param(value = "status") String status,
+            @Param(value = "leaseUntil") Date leaseUntil);
+
+    /**
+     * Write the result of a delivery if the notification is still leased by its
+     * claim: a notification claimed again by another node is not overwritten.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE StateChangeNotify n SET n.status = :status, n.attempts = :attempts, n.lastError = :lastError,"
+            + " n.lastStatus = :lastStatus, n.nextAttemptTime = :nextAttemptTime WHERE n.triggerId = :triggerId"
+            + " AND n.leaseOwner = :owner AND n.status = :leasedStatus")
+    int updateLeased(@Param(value = "triggerId") String triggerId, @Param(value = "owner") String owner,
+            @Param(value = "leasedStatus") String leasedStatus, @Param(value = "status") String status,
+            @Param(value = "attempts") Integer attempts, @Param(value = "lastError") String lastError,
+            @Param(value = "lastStatus") Integer lastStatus, @Param(value = "nextAttemptTime") Date nextAttemptTime);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE StateChangeNotify n SET n.status = :newStatus WHERE n.status = :oldStatus"
+            + " AND n.leaseOwner LIKE :owner")
+    int releaseLeases(@Param(value = "owner") String owner, @Param(value = "oldStatus") String oldStatus,
+            @Param(value = "newStatus") String newStatus);
 }
@@ -0,0 +1,16 @@
+package com.tmavn.sample.service;
+
+import java.util.List;
+
+import com.tmavn.sample.entity.DeadLetter;
+import com.tmavn.sample.model.DeadLetterFilter;
+import com.tmavn.sample.model.ReplayJob;
+
+public interface DeadLetterService {
+
+    List<DeadLetter> find(DeadLetterFilter filter, int limit);
+
+    ReplayJob startReplay(DeadLetterFilter filter);
+
+    ReplayJob findReplay(String id);
+}
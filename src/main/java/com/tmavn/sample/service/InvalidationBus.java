@@ -0,0 +1,21 @@
+package com.tmavn.sample.service;
+
+public interface InvalidationBus {
+
+    /** The region of the listeners, the keys are the listener ids. */
+    String LISTENER_INFO = "L";
+
+    /** The region of the orders, the keys are the order ids. */
+    String ORDER_DATA = "O";
+
+    void invalidate(String region, String key);
+
+    void subscribe(String region, Listener listener);
+
+    interface Listener {
+
+        void invalidate(String key);
+
+        void invalidateAll();
+    }
+}
@@ -10,6 +10,8 @@ public interface ListenerInfoService {
     ListenerInfo findById(Long id);
 
     Iterable<ListenerInfo> findByUserId(String userId);
+
+    Iterable<ListenerInfo> findByUserIdAndState(String userId, String state);
     
     void delete(Long id);
     
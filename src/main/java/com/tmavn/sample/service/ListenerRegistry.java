@@ -0,0 +1,26 @@
+package com.tmavn.sample.service;
+
+import java.util.List;
+
+import com.tmavn.sample.entity.ListenerInfo;
+
+public interface ListenerRegistry {
+
+    void load();
+
+    List<ListenerInfo> findByUserId(String userId);
+
+    List<ListenerInfo> findByUserIdAndState(String userId, String state);
+
+    void put(ListenerInfo listenerInfo);
+
+    void remove(Long id);
+
+    void refresh(Long id);
+
+    int size();
+
+    long getHits();
+
+    long getMisses();
+}
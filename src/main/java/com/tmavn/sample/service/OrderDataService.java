@@ -10,11 +10,13 @@ public interface OrderDataService {
 
     OrderData findById(String id);
 
-    OrderData delete(String id);
+    OrderData delete(String userId, String id);
 
-    OrderData addNewOrderData(OrderData orderData);
+    OrderData prepareNewOrderData(OrderData orderData);
 
-    OrderData putOrderData(String id, OrderData orderData);
+    OrderData addNewOrderData(String userId, OrderData orderData);
 
-    OrderData patchOrderData(String id, OrderData orderData);
+    OrderData putOrderData(String userId, String id, OrderData orderData);
+
+    OrderData patchOrderData(String userId, String id, OrderData orderData);
 }
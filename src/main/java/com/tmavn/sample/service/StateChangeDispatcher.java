@@ -0,0 +1,32 @@
+package com.tmavn.sample.service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import com.tmavn.sample.entity.StateChangeNotify;
+
+public interface StateChangeDispatcher {
+
+    int dispatch();
+
+    void wakeUp();
+
+    void onDelivered(StateChangeNotify stateChangeNotify, String error);
+
+    boolean isJournalEnabled();
+
+    boolean journal(List<StateChangeNotify> notifies);
+
+    Map<String, Date> getJournaledWindows(String orderId, Date now);
+
+    long getCoalesceWindow();
+
+    int getReplayRate();
+
+    Map<String, Integer> getQueueDepths();
+
+    long getDropped();
+
+    long getSpilled();
+}
@@ -0,0 +1,15 @@
+package com.tmavn.sample.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.tmavn.sample.common.ListenerQuery;
+import com.tmavn.sample.entity.StateChangeNotify;
+
+public interface StateChangeStream {
+
+    SseEmitter subscribe(String userId, ListenerQuery query, String lastEventId);
+
+    void publish(StateChangeNotify stateChangeNotify);
+
+    int getConnectionCount();
+}
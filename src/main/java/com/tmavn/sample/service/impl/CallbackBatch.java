@@ -0,0 +1,129 @@
+package com.tmavn.sample.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tmavn.sample.entity.StateChangeNotify;
+
+/**
+ * The notifications buffered for a callback in batch delivery mode, sent
+ * together as a json array.<br>
+ * The size of the batches adapts to the response time of the callback: it is
+ * doubled when a full batch is answered within the target latency, and halved
+ * when a batch is answered slower or fails. The notifications are buffered by
+ * the dispatcher thread only, the size is updated by the threads of the
+ * responses.
+ */
+class CallbackBatch {
+
+    /** The first size of the batches. */
+    static final int INITIAL_SIZE = 8;
+
+    private final String userId;
+
+    private final String callback;
+
+    private final List<StateChangeNotify> notifies = new ArrayList<StateChangeNotify>();
+
+    private final List<byte[]> bodies = new ArrayList<byte[]>();
+
+    /** The number of bytes of the buffered bodies. */
+    private int length;
+
+    /** The current size of the batches. */
+    private volatile int size;
+
+    /** True when a flush of the batch is scheduled. */
+    private boolean flushScheduled;
+
+    CallbackBatch(String userId, String callback, int maxSize) {
+        this.userId = userId;
+        this.callback = callback;
+        this.size = Math.min(INITIAL_SIZE, maxSize);
+    }
+
+    String getUserId() {
+        return userId;
+    }
+
+    String getCallback() {
+        return callback;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return notifies.isEmpty();
+    }
+
+    boolean isFull() {
+        return notifies.size() >= size;
+    }
+
+    boolean isFlushScheduled() {
+        return flushScheduled;
+    }
+
+    void setFlushScheduled(boolean flushScheduled) {
+        this.flushScheduled = flushScheduled;
+    }
+
+    /**
+     * Add a notification.
+     *
+     * @param stateChangeNotify the notification
+     * @param body              the json body of the notification
+     */
+    void add(StateChangeNotify stateChangeNotify, byte[] body) {
+        notifies.add(stateChangeNotify);
+        bodies.add(body);
+        length += body.length;
+    }
+
+    /**
+     * Take the buffered notifications, the batch is empty after.
+     *
+     * @param taken the list which receives the notifications
+     * @return the json array of the bodies of the notifications
+     */
+    byte[] take(List<StateChangeNotify> taken) {
+        byte[] array = new byte[length + bodies.size() + 1 + (bodies.isEmpty() ? 1 : 0)];
+        int offset = 0;
+        array[offset++] = '[';
+        for (int i = 0; i < bodies.size(); i++) {
+            if (i > 0) {
+                array[offset++] = ',';
+            }
+            byte[] body = bodies.get(i);
+            System.arraycopy(body, 0, array, offset, body.length);
+            offset += body.length;
+        }
+        array[offset] = ']';
+        taken.addAll(notifies);
+        notifies.clear();
+        bodies.clear();
+        length = 0;
+        flushScheduled = false;
+        return array;
+    }
+
+    /**
+     * Adapt the size of the batches to the response of a batch.
+     *
+     * @param count         the number of notifications of the batch
+     * @param latency       the response time, in milliseconds
+     * @param success       true if the callback accepted the batch
+     * @param targetLatency the target response time, in milliseconds
+     * @param maxSize       the maximum size of the batches
+     */
+    void onResponse(int count, long latency, boolean success, int targetLatency, int maxSize) {
+        int current = size;
+        if (!success || latency > targetLatency) {
+            size = Math.max(1, current / 2);
+        } else if (count >= current) {
+            size = Math.min(maxSize, current * 2);
+        }
+    }
+}
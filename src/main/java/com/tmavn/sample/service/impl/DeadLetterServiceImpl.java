@@ -0,0 +1,230 @@
+package com.tmavn.sample.service.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tmavn.sample.entity.DeadLetter;
+import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.model.DeadLetterFilter;
+import com.tmavn.sample.model.ReplayJob;
+import com.tmavn.sample.repository.DeadLetterRepository;
+import com.tmavn.sample.repository.StateChangeNotifyRepository;
+import com.tmavn.sample.service.DeadLetterService;
+import com.tmavn.sample.service.StateChangeDispatcher;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lists and replays the dead letters.<br>
+ * A replay reads the dead letters page by page, puts their notifications back
+ * in the outbox as Pending with a first attempt, and deletes them; each page is
+ * replayed in one transaction. The next attempt times of the replayed
+ * notifications are spread at the replay rate, so the dispatcher sends them
+ * through the lanes and the limits of the callback hosts without flooding the
+ * listeners.<br>
+ * The replays requested by the api run one after another on a background
+ * thread, the last jobs are kept to be read by their id.
+ */
+@Service
+@Slf4j
+public class DeadLetterServiceImpl implements DeadLetterService {
+
+    /** The number of dead letters replayed by one read. */
+    static final int PAGE_SIZE = 1000;
+
+    /** The number of replay jobs kept, the oldest are removed. */
+    static final int MAX_JOBS = 100;
+
+    /** The last failed time of an unbounded filter, 9999-12-31 23:59:59 UTC which the databases can store. */
+    private static final Date END_OF_TIME = new Date(253402300799000L);
+
+    @Autowired
+    private DeadLetterRepository deadLetterRepository;
+
+    @Autowired
+    private StateChangeNotifyRepository stateChangeNotifyRepository;
+
+    @Autowired
+    private StateChangeDispatcher stateChangeDispatcher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /** The thread of the replay jobs. */
+    private ThreadPoolExecutor executor;
+
+    /** The replay jobs by id. Guarded by itself. */
+    private final Map<String, ReplayJob> jobs = new LinkedHashMap<String, ReplayJob>() {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ReplayJob> eldest) {
+            return size() > MAX_JOBS;
+        }
+    };
+
+    /**
+     * Start the thread of the replay jobs.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("deadletter-replay-");
+        threadFactory.setDaemon(true);
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                threadFactory);
+    }
+
+    /**
+     * Stop the thread of the replay jobs, the running job stops after its page.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public List<DeadLetter> find(DeadLetterFilter filter, int limit) {
+        log.debug("IN - find");
+        List<DeadLetter> result = findPage(filter, limit);
+        log.debug("Found {} dead letters of {}", result.size(), filter);
+        log.debug("OUT - find");
+        return result;
+    }
+
+    @Override
+    public synchronized ReplayJob startReplay(DeadLetterFilter filter) {
+        log.debug("IN - startReplay");
+        final ReplayJob job = createJob(filter);
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+        }
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                DeadLetterServiceImpl.this.run(job);
+            }
+        });
+        log.debug("Started replay {} of {}", job.getId(), filter);
+        log.debug("OUT - startReplay");
+        return job;
+    }
+
+    @Override
+    public ReplayJob findReplay(String id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    private static ReplayJob createJob(DeadLetterFilter filter) {
+        ReplayJob job = new ReplayJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setFilter(filter);
+        job.setStatus(ReplayJob.STATUS_RUNNING);
+        job.setStartTime(new Date());
+        return job;
+    }
+
+    /**
+     * Replay the dead letters of a job page by page, until none is left.
+     *
+     * @param job the job
+     */
+    private void run(final ReplayJob job) {
+        // the time between two replayed notifications
+        final double spacing = 1000.0 / stateChangeDispatcher.getReplayRate();
+        final long start = System.currentTimeMillis();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // the replayed dead letters are deleted, so the next page is always the first one
+                Integer read = transaction.execute(new TransactionCallback<Integer>() {
+
+                    @Override
+                    public Integer doInTransaction(TransactionStatus status) {
+                        return replayPage(job, start, spacing);
+                    }
+                });
+                if (read == null || read < PAGE_SIZE) {
+                    break;
+                }
+            }
+            job.setStatus(ReplayJob.STATUS_DONE);
+        } catch (RuntimeException e) {
+            log.error("Exception: ", e);
+            job.setError(String.valueOf(e.getLocalizedMessage()));
+            job.setStatus(ReplayJob.STATUS_FAILED);
+        }
+        job.setEndTime(new Date());
+        if (job.getReplayed() > 0) {
+            stateChangeDispatcher.wakeUp();
+        }
+        log.debug("Replayed {} dead letters of {}, skipped {}", job.getReplayed(), job.getFilter(),
+                job.getSkipped());
+    }
+
+    /**
+     * Replay the first page of the dead letters of a job.
+     *
+     * @param job     the job
+     * @param start   the attempt time of the first replayed notification
+     * @param spacing the time between two replayed notifications
+     * @return the number of dead letters read
+     */
+    private int replayPage(ReplayJob job, long start, double spacing) {
+        List<DeadLetter> deadLetters = findPage(job.getFilter(), PAGE_SIZE);
+        if (deadLetters.isEmpty()) {
+            return 0;
+        }
+        List<String> triggerIds = new ArrayList<String>();
+        for (DeadLetter deadLetter : deadLetters) {
+            triggerIds.add(deadLetter.getTriggerId());
+        }
+        // a notification deleted from the outbox is not replayed, its dead letter is counted as skipped
+        List<StateChangeNotify> stateChangeNotifies = stateChangeNotifyRepository.findAll(triggerIds);
+        int replayed = job.getReplayed();
+        for (StateChangeNotify stateChangeNotify : stateChangeNotifies) {
+            stateChangeNotify.setStatus(StateChangeNotify.STATUS_PENDING);
+            stateChangeNotify.setAttempts(0);
+            stateChangeNotify.setLastError(null);
+            stateChangeNotify.setLastStatus(null);
+            stateChangeNotify.setNextAttemptTime(new Date(start + (long) (replayed * spacing)));
+            replayed++;
+        }
+        stateChangeNotifyRepository.save(stateChangeNotifies);
+        deadLetterRepository.delete(deadLetters);
+        job.setReplayed(replayed);
+        job.setSkipped(job.getSkipped() + deadLetters.size() - stateChangeNotifies.size());
+        return deadLetters.size();
+    }
+
+    private List<DeadLetter> findPage(DeadLetterFilter filter, int size) {
+        return deadLetterRepository.findFiltered(filter.getUserId(), filter.getCallback(), filter.getHost(),
+                filter.getFrom() == null ? new Date(0) : filter.getFrom(),
+                filter.getTo() == null ? END_OF_TIME : filter.getTo(), new PageRequest(0, size));
+    }
+}
@@ -0,0 +1,341 @@
+package com.tmavn.sample.service.impl;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.tmavn.sample.common.NotifySettings;
+import com.tmavn.sample.common.TokenBucket;
+import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.enums.OverflowPolicy;
+import com.tmavn.sample.repository.StateChangeNotifyRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The delivery lanes of the dispatcher, and the admission of the deliveries by
+ * the queues of their callback hosts.<br>
+ * The deliveries of a key always go to the same lane, and a lane sends a
+ * delivery when the response of the previous one is received, so the
+ * deliveries of a key are sent in order. When the queue of a lane is full, the
+ * caller waits. A delivery counts in the queue of its callback host until its
+ * response, and waits for the rate limit of the host before it is sent; when
+ * the queue of the host is full, the overflow policy applies. A blocked
+ * delivery waits for room on its lane, never on the dispatcher thread, and is
+ * spilled when the queue is still full after the delivery timeout.
+ */
+@Slf4j
+class DeliveryLanes {
+
+    /** Waits for room in the queue of a lane, so that the order is kept. */
+    private static final RejectedExecutionHandler WAIT_FOR_ROOM = new RejectedExecutionHandler() {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor lane) {
+            if (lane.isShutdown()) {
+                throw new RejectedExecutionException("Lane is stopped");
+            }
+            try {
+                lane.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted", e);
+            }
+        }
+    };
+
+    private final NotifyRecorder recorder;
+
+    private final NotifyRetries retries;
+
+    private volatile NotifySettings settings = new NotifySettings();
+
+    private StateChangeNotifyRepository stateChangeNotifyRepository;
+
+    /** The lanes, one thread each, null when stopped. */
+    private volatile ThreadPoolExecutor[] lanes;
+
+    /** The queues of the deliveries by callback host. */
+    private final ConcurrentHashMap<String, HostQueue> hostQueues = new ConcurrentHashMap<String, HostQueue>();
+
+    DeliveryLanes(NotifyRecorder recorder, NotifyRetries retries) {
+        this.recorder = recorder;
+        this.retries = retries;
+    }
+
+    /**
+     * Start the lanes.
+     *
+     * @param notifySettings   the settings
+     * @param notifyRepository the outbox, where the spilled notifications are
+     *                         put back
+     */
+    void start(NotifySettings notifySettings, StateChangeNotifyRepository notifyRepository) {
+        settings = notifySettings;
+        stateChangeNotifyRepository = notifyRepository;
+        CustomizableThreadFactory laneThreadFactory = new CustomizableThreadFactory("notify-lane-");
+        laneThreadFactory.setDaemon(true);
+        ThreadPoolExecutor[] started = new ThreadPoolExecutor[settings.getLanes()];
+        for (int i = 0; i < started.length; i++) {
+            started[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(settings.getLaneQueueSize()), laneThreadFactory, WAIT_FOR_ROOM);
+        }
+        hostQueues.clear();
+        lanes = started;
+    }
+
+    /**
+     * Stop the lanes, the deliveries not sent yet are sent again at the next
+     * start.
+     */
+    void stop() {
+        ThreadPoolExecutor[] current = lanes;
+        lanes = null;
+        if (current != null) {
+            for (ThreadPoolExecutor lane : current) {
+                lane.shutdownNow();
+            }
+        }
+    }
+
+    boolean isStarted() {
+        return lanes != null;
+    }
+
+    /**
+     * Gets the free room of the queues of the lanes.
+     *
+     * @return the number of deliveries which can be queued without wait,
+     *         {@link Integer#MAX_VALUE} when the lanes are stopped
+     */
+    int getRoom() {
+        ThreadPoolExecutor[] current = lanes;
+        if (current == null) {
+            return Integer.MAX_VALUE;
+        }
+        int room = 0;
+        for (ThreadPoolExecutor lane : current) {
+            room += lane.getQueue().remainingCapacity();
+        }
+        return room;
+    }
+
+    /**
+     * Queue a delivery on a lane.
+     *
+     * @param laneKey  the key of the lane
+     * @param callback the callback url
+     * @param notifies the notifications of the delivery
+     * @param send     sends the delivery and returns the response
+     */
+    void submit(String laneKey, String callback, final List<StateChangeNotify> notifies,
+            final Callable<Future<?>> send) {
+        ThreadPoolExecutor[] current = lanes;
+        if (current == null) {
+            // stopped, still Sending, sent again at the next start
+            return;
+        }
+        final HostQueue hostQueue = getHostQueue(callback);
+        // a blocked delivery waits for room on its lane, the dispatcher goes on claiming
+        boolean blocked = settings.getOverflowPolicy() == OverflowPolicy.BLOCK && !hostQueue.hasRoom();
+        if (!blocked && !admit(hostQueue, notifies)) {
+            return;
+        }
+        final HostQueue.Entry entry = blocked ? null : hostQueue.add(notifies);
+        try {
+            current[Math.floorMod(laneKey.hashCode(), current.length)].execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (entry == null ? !awaitStart(hostQueue, notifies) : !hostQueue.start(entry)) {
+                        return;
+                    }
+                    try {
+                        hostQueue.acquire();
+                        awaitResponse(send.call());
+                    } catch (InterruptedException e) {
+                        // still Sending, sent again at the next start
+                        Thread.currentThread().interrupt();
+                    } catch (Exception e) {
+                        log.error("Exception: ", e);
+                        for (StateChangeNotify stateChangeNotify : notifies) {
+                            recorder.record(stateChangeNotify, String.valueOf(e.getLocalizedMessage()));
+                        }
+                    } finally {
+                        hostQueue.done();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // still Sending, sent again at the next start
+            if (entry != null) {
+                hostQueue.remove(entry);
+            }
+            log.debug("Dispatcher is stopped");
+        }
+    }
+
+    Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new TreeMap<String, Integer>();
+        for (HostQueue hostQueue : hostQueues.values()) {
+            depths.put(hostQueue.getHost(), hostQueue.getDepth());
+        }
+        return depths;
+    }
+
+    long getDropped() {
+        long dropped = 0;
+        for (HostQueue hostQueue : hostQueues.values()) {
+            dropped += hostQueue.getDropped();
+        }
+        return dropped;
+    }
+
+    long getSpilled() {
+        long spilled = 0;
+        for (HostQueue hostQueue : hostQueues.values()) {
+            spilled += hostQueue.getSpilled();
+        }
+        return spilled;
+    }
+
+    /**
+     * Make room for a delivery in the queue of its callback host.
+     *
+     * @param hostQueue the queue of the host
+     * @param notifies  the notifications of the delivery
+     * @return true if the delivery can be queued, false if it was spilled
+     */
+    private boolean admit(HostQueue hostQueue, List<StateChangeNotify> notifies) {
+        if (hostQueue.hasRoom()) {
+            return true;
+        }
+        switch (settings.getOverflowPolicy()) {
+        case DROP_OLDEST:
+            HostQueue.Entry oldest = hostQueue.evictOldest();
+            if (oldest != null) {
+                log.warn("Queue of {} is full, drop {} notifications", hostQueue.getHost(),
+                        oldest.getNotifies().size());
+                // the dropped notifications were not sent, the drop is not an attempt
+                for (StateChangeNotify stateChangeNotify : oldest.getNotifies()) {
+                    stateChangeNotify.setLastError(StateChangeDispatcherImpl.ERROR_DROPPED);
+                }
+                putBack(oldest.getNotifies());
+                return true;
+            }
+            // all the deliveries are in flight
+            break;
+        default:
+            break;
+        }
+        spill(hostQueue, notifies);
+        return false;
+    }
+
+    /**
+     * Wait on the lane for room in the queue of the host, and start the
+     * delivery. The delivery is spilled when the queue is still full after the
+     * delivery timeout.
+     *
+     * @param hostQueue the queue of the host
+     * @param notifies  the notifications of the delivery
+     * @return true if the delivery is started
+     */
+    private boolean awaitStart(HostQueue hostQueue, List<StateChangeNotify> notifies) {
+        try {
+            if (hostQueue.awaitStart(settings.getDeliveryTimeout())) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            // still Sending, sent again at the next start
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        log.warn("Queue of {} is still full after {} ms", hostQueue.getHost(), settings.getDeliveryTimeout());
+        try {
+            spill(hostQueue, notifies);
+        } catch (RuntimeException e) {
+            // still Sending, sent again at the next start
+            log.error("Exception: ", e);
+        }
+        return false;
+    }
+
+    /**
+     * Put notifications back in the outbox table, they are read again by a later
+     * poll. The attempt is not counted.
+     *
+     * @param hostQueue the queue of their callback host
+     * @param notifies  the notifications
+     */
+    private void spill(HostQueue hostQueue, List<StateChangeNotify> notifies) {
+        log.debug("Queue of {} is full, spill {} notifications", hostQueue.getHost(), notifies.size());
+        hostQueue.spilled(notifies.size());
+        putBack(notifies);
+    }
+
+    /**
+     * Put notifications which were not sent back in the outbox table, Pending
+     * until the next poll. Their attempts are kept.
+     *
+     * @param notifies the notifications
+     */
+    private void putBack(List<StateChangeNotify> notifies) {
+        Date nextAttemptTime = new Date(System.currentTimeMillis() + settings.getPollInterval());
+        for (StateChangeNotify stateChangeNotify : notifies) {
+            stateChangeNotify.setStatus(StateChangeNotify.STATUS_PENDING);
+            stateChangeNotify.setNextAttemptTime(nextAttemptTime);
+        }
+        stateChangeNotifyRepository.save(notifies);
+        for (StateChangeNotify stateChangeNotify : notifies) {
+            retries.schedule(stateChangeNotify);
+        }
+    }
+
+    private HostQueue getHostQueue(String callback) {
+        String host = HostQueue.getHost(callback);
+        HostQueue hostQueue = hostQueues.get(host);
+        if (hostQueue == null) {
+            TokenBucket tokenBucket = settings.getHostRate() > 0
+                    ? new TokenBucket(settings.getHostRate(), settings.getHostBurst())
+                    : null;
+            HostQueue created = new HostQueue(host, settings.getHostQueueSize(), tokenBucket);
+            hostQueue = hostQueues.putIfAbsent(host, created);
+            if (hostQueue == null) {
+                hostQueue = created;
+            }
+        }
+        return hostQueue;
+    }
+
+    /**
+     * Wait for the response of a delivery before the lane sends the next one.
+     * The result is recorded by the callback of the delivery.
+     *
+     * @param future the response
+     */
+    private void awaitResponse(Future<?> future) {
+        try {
+            future.get(settings.getDeliveryTimeout(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            log.debug("POST - Failure: {}", e.getLocalizedMessage());
+        } catch (TimeoutException e) {
+            log.warn("No response after {} ms, the lane sends the next notification", settings.getDeliveryTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.tmavn.sample.service.impl;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.tmavn.sample.common.TokenBucket;
+import com.tmavn.sample.entity.StateChangeNotify;
+
+/**
+ * The deliveries of a callback host which are accepted by the lanes and not
+ * answered yet, and the rate limit of the host.<br>
+ * A delivery waits in the queue until a lane starts it, then is in flight until
+ * its response or the delivery timeout. The number of waiting and in flight
+ * deliveries is bounded, so a slow host does not hold an unbounded number of
+ * requests in the http client.
+ */
+class HostQueue {
+
+    private final String host;
+
+    private final int capacity;
+
+    /** The rate limit, null when the host is not limited. */
+    private final TokenBucket tokenBucket;
+
+    /** The deliveries not started yet, oldest first. */
+    private final ArrayDeque<Entry> waiting = new ArrayDeque<Entry>();
+
+    private int inFlight;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder spilled = new LongAdder();
+
+    HostQueue(String host, int capacity, TokenBucket tokenBucket) {
+        this.host = host;
+        this.capacity = capacity;
+        this.tokenBucket = tokenBucket;
+    }
+
+    /**
+     * Gets the host of a callback url.
+     *
+     * @param url the callback url
+     * @return the host and the port, or the url if it can not be parsed
+     */
+    static String getHost(String url) {
+        if (url == null) {
+            return String.valueOf(url);
+        }
+        try {
+            URI uri = new URI(url);
+            if (uri.getHost() != null) {
+                return uri.getPort() < 0 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+            }
+        } catch (URISyntaxException e) {
+            // one queue for the url
+        }
+        return url;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    synchronized boolean hasRoom() {
+        return waiting.size() + inFlight < capacity;
+    }
+
+    /**
+     * Wait until the queue has room.
+     *
+     * @param timeout the maximum wait, in milliseconds
+     * @return true if the queue has room
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    synchronized boolean awaitRoom(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (!hasRoom()) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Wait until the queue has room, then start a delivery which was not added
+     * to the queue: the delivery waited on its lane.
+     *
+     * @param timeout the maximum wait, in milliseconds
+     * @return true if the delivery is started, false if the queue is still full
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    synchronized boolean awaitStart(long timeout) throws InterruptedException {
+        if (!awaitRoom(timeout)) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Add a delivery to the queue, the caller checks the room first.
+     *
+     * @param notifies the notifications of the delivery
+     * @return the entry of the delivery
+     */
+    synchronized Entry add(List<StateChangeNotify> notifies) {
+        Entry entry = new Entry(notifies);
+        waiting.add(entry);
+        return entry;
+    }
+
+    /**
+     * Remove the oldest delivery which is not started, a lane does not start it.
+     *
+     * @return the entry of the delivery, or null if all the deliveries are in
+     *         flight
+     */
+    synchronized Entry evictOldest() {
+        Entry entry = waiting.poll();
+        if (entry != null) {
+            entry.cancelled = true;
+            dropped.add(entry.notifies.size());
+        }
+        return entry;
+    }
+
+    /**
+     * Remove a delivery which is not started, i.e: rejected by a stopped lane.
+     *
+     * @param entry the entry of the delivery
+     */
+    synchronized void remove(Entry entry) {
+        entry.cancelled = true;
+        waiting.remove(entry);
+    }
+
+    /**
+     * Start a delivery on a lane.
+     *
+     * @param entry the entry of the delivery
+     * @return false if the delivery was removed and must not be sent
+     */
+    synchronized boolean start(Entry entry) {
+        if (entry.cancelled) {
+            return false;
+        }
+        waiting.remove(entry);
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * End a started delivery, when its response is received or timed out.
+     */
+    synchronized void done() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Take a token of the rate limit, wait until it is available.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void acquire() throws InterruptedException {
+        if (tokenBucket != null) {
+            tokenBucket.acquire();
+        }
+    }
+
+    void spilled(int count) {
+        spilled.add(count);
+    }
+
+    synchronized int getDepth() {
+        return waiting.size() + inFlight;
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    long getSpilled() {
+        return spilled.sum();
+    }
+
+    /**
+     * A delivery of the queue: one notification, or a batch.
+     */
+    static final class Entry {
+
+        private final List<StateChangeNotify> notifies;
+
+        /** Written and read under the lock of the queue. */
+        private boolean cancelled;
+
+        private Entry(List<StateChangeNotify> notifies) {
+            this.notifies = notifies;
+        }
+
+        List<StateChangeNotify> getNotifies() {
+            return notifies;
+        }
+    }
+}
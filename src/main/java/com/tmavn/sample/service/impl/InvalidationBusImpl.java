@@ -0,0 +1,317 @@
+package com.tmavn.sample.service.impl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.tmavn.sample.common.InvalidationSettings;
+import com.tmavn.sample.common.InvalidationTransport;
+import com.tmavn.sample.common.MemoryInvalidationTransport;
+import com.tmavn.sample.common.PostgresInvalidationTransport;
+import com.tmavn.sample.service.InvalidationBus;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tells the other nodes which cached entries a write of this node made stale,
+ * so that they read them again from the database.<br>
+ * The invalidations are sent after the commit of the write, and wait a flush
+ * interval: the invalidations of one key are coalesced, and the keys are sent
+ * together in compact messages, one line by key after a header with the origin
+ * and the version of the message. The version is taken from the transport
+ * after the commits, so a node which receives a version of a key lower than the
+ * last one it applied has read the key after that write already: the late
+ * invalidation is ignored. The messages of this node are ignored too, its
+ * caches are updated by the writes.
+ */
+@Service
+@Slf4j
+public class InvalidationBusImpl implements InvalidationBus {
+
+    /** The settings, read from sample.conf by ApplicationInit. */
+    private static volatile InvalidationSettings settings = new InvalidationSettings();
+
+    /** The number of keys whose last applied version is kept. */
+    private static final int VERSIONS = 10000;
+
+    /** The id of this node in the messages. */
+    private final String origin = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE,
+            Character.MAX_RADIX);
+
+    /** The listeners by region. */
+    private final ConcurrentHashMap<String, List<Listener>> listeners = new ConcurrentHashMap<>();
+
+    /** The invalidations waiting to be sent, as message lines, guarded by itself. */
+    private final Set<String> pending = new LinkedHashSet<>();
+
+    /**
+     * The last applied version by message line, the oldest keys are removed: a
+     * late invalidation of a removed key is applied again. Guarded by itself.
+     */
+    private final Map<String, Long> versions = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > VERSIONS;
+        }
+    };
+
+    private final InvalidationTransport.Receiver receiver = new InvalidationTransport.Receiver() {
+
+        @Override
+        public void receive(String message) {
+            InvalidationBusImpl.this.receive(message);
+        }
+
+        @Override
+        public void reset() {
+            InvalidationBusImpl.this.reset();
+        }
+    };
+
+    private volatile InvalidationTransport transport;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    /**
+     * Sets the settings.
+     *
+     * @param invalidationSettings the settings
+     */
+    public static void configure(InvalidationSettings invalidationSettings) {
+        settings = invalidationSettings;
+    }
+
+    /**
+     * Start the transport and the flushes.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        log.debug("IN - start");
+        transport = InvalidationTransport.POSTGRES.equals(settings.getTransport())
+                ? new PostgresInvalidationTransport(settings)
+                : new MemoryInvalidationTransport();
+        transport.start(receiver);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("invalidation-flush-");
+        threadFactory.setDaemon(true);
+        executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                flush();
+            }
+        }, settings.getFlushInterval(), settings.getFlushInterval(), TimeUnit.MILLISECONDS);
+        log.info("Invalidation bus {} started with the {} transport", origin, settings.getTransport());
+        log.debug("OUT - start");
+    }
+
+    /**
+     * Send the waiting invalidations and stop the transport.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        log.debug("IN - stop");
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if (transport != null) {
+            flush();
+            transport.stop();
+            transport = null;
+        }
+        log.debug("OUT - stop");
+    }
+
+    @Override
+    public void invalidate(String region, String key) {
+        log.debug("IN - invalidate");
+        if (key == null || key.indexOf('\n') >= 0) {
+            log.warn("Invalid key of {}: {}", region, key);
+            log.debug("OUT - invalidate");
+            return;
+        }
+        final String line = region + ' ' + key;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(line);
+            log.debug("OUT - invalidate");
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCommit() {
+                enqueue(line);
+            }
+        });
+        log.debug("OUT - invalidate");
+    }
+
+    @Override
+    public void subscribe(String region, Listener listener) {
+        List<Listener> regionListeners = listeners.get(region);
+        if (regionListeners == null) {
+            listeners.putIfAbsent(region, new CopyOnWriteArrayList<Listener>());
+            regionListeners = listeners.get(region);
+        }
+        regionListeners.add(listener);
+    }
+
+    private void enqueue(String line) {
+        synchronized (pending) {
+            pending.add(line);
+        }
+    }
+
+    /**
+     * Send the waiting invalidations, they wait for the next flush when they can
+     * not be sent.
+     */
+    private void flush() {
+        List<String> lines;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            lines = new ArrayList<>(pending);
+            pending.clear();
+        }
+        InvalidationTransport current = transport;
+        if (current == null) {
+            return;
+        }
+        try {
+            long version = current.nextVersion();
+            for (String message : encode(version, lines, current.getMaxMessageSize())) {
+                current.send(message);
+            }
+            log.debug("Sent {} invalidations, version {}", lines.size(), version);
+        } catch (IOException e) {
+            log.warn("Can not send {} invalidations: {}", lines.size(), e.getMessage());
+            synchronized (pending) {
+                pending.addAll(lines);
+            }
+        }
+    }
+
+    /**
+     * Split the invalidations into messages.
+     *
+     * @param version the version of the messages
+     * @param lines   the invalidations
+     * @param maxSize the maximum size of a message in bytes
+     * @return the messages
+     */
+    private List<String> encode(long version, List<String> lines, int maxSize) {
+        String header = origin + ' ' + Long.toString(version, Character.MAX_RADIX);
+        int headerSize = header.getBytes(StandardCharsets.UTF_8).length;
+        List<String> messages = new ArrayList<>();
+        StringBuilder message = new StringBuilder(header);
+        int size = headerSize;
+        for (String line : lines) {
+            int lineSize = line.getBytes(StandardCharsets.UTF_8).length + 1;
+            if (headerSize + lineSize > maxSize) {
+                log.warn("Invalidation too long, not sent: {}", line);
+                continue;
+            }
+            if (size + lineSize > maxSize) {
+                messages.add(message.toString());
+                message = new StringBuilder(header);
+                size = headerSize;
+            }
+            message.append('\n').append(line);
+            size += lineSize;
+        }
+        if (size > headerSize) {
+            messages.add(message.toString());
+        }
+        return messages;
+    }
+
+    /**
+     * Apply the invalidations of a message, unless they are late or of this node.
+     *
+     * @param message the message
+     */
+    private void receive(String message) {
+        String[] lines = message.split("\n");
+        String[] header = lines[0].split(" ");
+        long version;
+        try {
+            version = Long.parseLong(header[1], Character.MAX_RADIX);
+        } catch (RuntimeException e) {
+            log.warn("Invalid invalidation message: {}", lines[0]);
+            return;
+        }
+        if (origin.equals(header[0])) {
+            return;
+        }
+        for (int i = 1; i < lines.length; i++) {
+            int space = lines[i].indexOf(' ');
+            if (space < 0) {
+                continue;
+            }
+            synchronized (versions) {
+                Long applied = versions.get(lines[i]);
+                if (applied != null && applied >= version) {
+                    log.debug("Late invalidation {} ignored, version {} after {}", lines[i], version, applied);
+                    continue;
+                }
+                versions.put(lines[i], version);
+            }
+            String region = lines[i].substring(0, space);
+            String key = lines[i].substring(space + 1);
+            List<Listener> regionListeners = listeners.get(region);
+            if (regionListeners == null) {
+                continue;
+            }
+            for (Listener listener : regionListeners) {
+                try {
+                    listener.invalidate(key);
+                } catch (RuntimeException e) {
+                    log.error("Exception: ", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidate all the entries, some invalidations may have been lost.
+     */
+    private void reset() {
+        log.info("Invalidation bus {} reset", origin);
+        synchronized (versions) {
+            versions.clear();
+        }
+        for (List<Listener> regionListeners : listeners.values()) {
+            for (Listener listener : regionListeners) {
+                try {
+                    listener.invalidateAll();
+                } catch (RuntimeException e) {
+                    log.error("Exception: ", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.tmavn.sample.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.tmavn.sample.common.NotifyJournal;
+import com.tmavn.sample.common.NotifySettings;
+import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.repository.StateChangeNotifyRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The local journal of the new notifications, and its drain to the outbox
+ * table.<br>
+ * The new notifications are appended to the journal rather than inserted one
+ * state change at a time; the dispatcher writes them to the table in batches
+ * before it sends them. Until then, the coalescing windows of the journaled
+ * notifications are kept here, so the next state changes of their orders join
+ * them.
+ */
+@Slf4j
+class JournalDrain {
+
+    /** The number of orders whose journaled coalescing windows are kept. */
+    private static final int JOURNALED_ORDERS = 10000;
+
+    private final NotifyRetries retries;
+
+    private volatile NotifySettings settings = new NotifySettings();
+
+    private StateChangeNotifyRepository stateChangeNotifyRepository;
+
+    /** The journal, null when it is disabled. */
+    private volatile NotifyJournal journal;
+
+    /**
+     * The end of the coalescing windows of the journaled notifications by order
+     * id and callback, the oldest orders are removed. Guarded by itself.
+     */
+    private final Map<String, Map<String, Date>> journaledWindows = new LinkedHashMap<String, Map<String, Date>>(16,
+            0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Map<String, Date>> eldest) {
+            return size() > JOURNALED_ORDERS;
+        }
+    };
+
+    JournalDrain(NotifyRetries retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * Open the journal of the settings, it stays disabled when it is not set or
+     * can not be opened.
+     *
+     * @param notifySettings   the settings
+     * @param notifyRepository the outbox, where the journal is drained
+     */
+    void start(NotifySettings notifySettings, StateChangeNotifyRepository notifyRepository) {
+        settings = notifySettings;
+        stateChangeNotifyRepository = notifyRepository;
+        if (settings.getJournalDir() == null) {
+            return;
+        }
+        try {
+            journal = new NotifyJournal(new File(settings.getJournalDir()), settings.getJournalSegmentSize());
+        } catch (IOException | RuntimeException e) {
+            log.error("The journal is disabled, can not open {}: ", settings.getJournalDir(), e);
+        }
+    }
+
+    void stop() {
+        NotifyJournal current = journal;
+        journal = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    boolean isEnabled() {
+        return journal != null;
+    }
+
+    /**
+     * Append new notifications to the journal, and force it to the disk.
+     *
+     * @param notifies the notifications
+     * @return false if the journal is disabled or can not be written
+     */
+    boolean append(List<StateChangeNotify> notifies) {
+        NotifyJournal current = journal;
+        if (current == null || notifies.isEmpty()) {
+            return false;
+        }
+        long offset = 0;
+        try {
+            for (StateChangeNotify stateChangeNotify : notifies) {
+                offset = current.append(NotifyRecord.encode(stateChangeNotify));
+            }
+            addJournaledWindows(notifies);
+            // the threads which append meanwhile wait for the same force
+            current.sync(offset);
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Exception: ", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the coalescing windows of the journaled notifications of an order.
+     *
+     * @param orderId the id of the order
+     * @param now     the current time
+     * @return the end of the windows open at now, by callback
+     */
+    Map<String, Date> getJournaledWindows(String orderId, Date now) {
+        Map<String, Date> windows = new HashMap<String, Date>();
+        synchronized (journaledWindows) {
+            Map<String, Date> journaled = journaledWindows.get(orderId);
+            if (journaled != null) {
+                for (Map.Entry<String, Date> window : journaled.entrySet()) {
+                    if (window.getValue().after(now)) {
+                        windows.put(window.getKey(), window.getValue());
+                    }
+                }
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * Keep the coalescing windows of the journaled notifications: they are not in
+     * the table until the journal is drained, the next state changes of the order
+     * join them there.
+     *
+     * @param notifies the journaled notifications
+     */
+    private void addJournaledWindows(List<StateChangeNotify> notifies) {
+        synchronized (journaledWindows) {
+            for (StateChangeNotify stateChangeNotify : notifies) {
+                if (stateChangeNotify.getTriggerData() == null || stateChangeNotify.getTriggerData().getId() == null
+                        || stateChangeNotify.getNextAttemptTime() == null) {
+                    continue;
+                }
+                String orderId = stateChangeNotify.getTriggerData().getId();
+                Map<String, Date> windows = journaledWindows.get(orderId);
+                if (windows == null) {
+                    windows = new HashMap<String, Date>();
+                    journaledWindows.put(orderId, windows);
+                }
+                windows.put(stateChangeNotify.getCallback(), stateChangeNotify.getNextAttemptTime());
+            }
+        }
+    }
+
+    /**
+     * Write the next journaled notifications to the table in one batch, then
+     * checkpoint the journal. The notifications are inserted Pending and the due
+     * ones are claimed by the next claim, which keeps them behind the earlier
+     * notifications of their orders. A crash between the insert and the
+     * checkpoint inserts the notifications again.
+     *
+     * @return the number of journaled notifications written
+     */
+    int drain() {
+        NotifyJournal current = journal;
+        if (current == null) {
+            return 0;
+        }
+        List<byte[]> records = new ArrayList<byte[]>();
+        long offset = current.read(current.getCommittedOffset(), settings.getBatchSize(), records);
+        if (records.isEmpty()) {
+            return 0;
+        }
+        List<StateChangeNotify> notifies = new ArrayList<StateChangeNotify>(records.size());
+        for (byte[] record : records) {
+            try {
+                notifies.add(NotifyRecord.decode(record));
+            } catch (IOException e) {
+                log.error("Skip invalid journal record: {}", e.getLocalizedMessage());
+            }
+        }
+        try {
+            stateChangeNotifyRepository.save(notifies);
+        } catch (RuntimeException e) {
+            // one invalid notification, i.e: of a deleted order, must not block the journal
+            log.error("Exception: ", e);
+            for (StateChangeNotify stateChangeNotify : notifies) {
+                stateChangeNotify.setTriggerId(null);
+                try {
+                    stateChangeNotifyRepository.save(stateChangeNotify);
+                } catch (RuntimeException saveError) {
+                    log.error("Skip journaled notification to {}: {}", stateChangeNotify.getCallback(),
+                            saveError.getLocalizedMessage());
+                }
+            }
+        }
+        try {
+            current.commit(offset);
+            current.compact();
+        } catch (IOException e) {
+            log.error("Exception: ", e);
+        }
+        long now = System.currentTimeMillis();
+        for (StateChangeNotify stateChangeNotify : notifies) {
+            if (stateChangeNotify.getTriggerId() != null && stateChangeNotify.getNextAttemptTime() != null
+                    && stateChangeNotify.getNextAttemptTime().getTime() > now) {
+                retries.schedule(stateChangeNotify);
+            }
+        }
+        log.debug("Wrote {} journaled notifications", notifies.size());
+        return notifies.size();
+    }
+}
@@ -8,7 +8,9 @@ import org.springframework.stereotype.Service;
 import com.tmavn.sample.common.NonNullAwareBeanUtils;
 import com.tmavn.sample.entity.ListenerInfo;
 import com.tmavn.sample.repository.ListenerInfoRepository;
+import com.tmavn.sample.service.InvalidationBus;
 import com.tmavn.sample.service.ListenerInfoService;
+import com.tmavn.sample.service.ListenerRegistry;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -19,6 +21,12 @@ public class ListenerInfoServiceImpl implements ListenerInfoService {
     @Autowired
     private ListenerInfoRepository listenerInfoRepository;
 
+    @Autowired
+    private ListenerRegistry listenerRegistry;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
     @Override
     public Iterable<ListenerInfo> findAll() {
         log.debug("IN - findAll");
@@ -49,29 +57,47 @@ public class ListenerInfoServiceImpl implements ListenerInfoService {
         log.debug("IN - delete");
         log.debug("OUT - delete");
         listenerInfoRepository.delete(id);
+        listenerRegistry.remove(id);
+        invalidationBus.invalidate(InvalidationBus.LISTENER_INFO, String.valueOf(id));
     }
 
     @Override
     public Iterable<ListenerInfo> findByUserId(String userId) {
         log.debug("IN - findByUserId");
-        Iterable<ListenerInfo> result = listenerInfoRepository.findByUserId(userId);
+        // read from the registry, updated by the writes below
+        Iterable<ListenerInfo> result = listenerRegistry.findByUserId(userId);
         log.debug("Get by user id: {}",result);
         log.debug("OUT - findByUserId");
         return result;
     }
 
+    @Override
+    public Iterable<ListenerInfo> findByUserIdAndState(String userId, String state) {
+        log.debug("IN - findByUserIdAndState");
+        Iterable<ListenerInfo> result = listenerRegistry.findByUserIdAndState(userId, state);
+        log.debug("Get by user id and state {}: {}", state, result);
+        log.debug("OUT - findByUserIdAndState");
+        return result;
+    }
+
     @Override
     public ListenerInfo addNewListenerInfo(ListenerInfo listenerInfo) {
         log.debug("IN - addNewListenerInfo");
+        ListenerInfo createdListenerInfo = listenerInfoRepository.save(listenerInfo);
+        listenerRegistry.put(createdListenerInfo);
+        invalidate(createdListenerInfo);
         log.debug("OUT - addNewListenerInfo");
-        return listenerInfoRepository.save(listenerInfo);
+        return createdListenerInfo;
     }
 
     @Override
     public ListenerInfo updateListenerInfo(ListenerInfo listenerInfo) {
         log.debug("IN - updateListenerInfo");
+        ListenerInfo updatedListenerInfo = listenerInfoRepository.save(listenerInfo);
+        listenerRegistry.put(updatedListenerInfo);
+        invalidate(updatedListenerInfo);
         log.debug("OUT - updateListenerInfo");
-        return listenerInfoRepository.save(listenerInfo);
+        return updatedListenerInfo;
     }
 
     @Override
@@ -86,7 +112,19 @@ public class ListenerInfoServiceImpl implements ListenerInfoService {
 
         log.debug("PATCH - patched with new data {}: ", oldData);
         ListenerInfo patchedListenerInfo = listenerInfoRepository.save(oldData);
+        listenerRegistry.put(patchedListenerInfo);
+        invalidate(patchedListenerInfo);
         return patchedListenerInfo;
     }
 
+    /**
+     * Tell the other nodes to read a saved listener again.
+     *
+     * @param listenerInfo the saved listener
+     */
+    private void invalidate(ListenerInfo listenerInfo) {
+        if (listenerInfo != null && listenerInfo.getId() != null) {
+            invalidationBus.invalidate(InvalidationBus.LISTENER_INFO, String.valueOf(listenerInfo.getId()));
+        }
+    }
 }
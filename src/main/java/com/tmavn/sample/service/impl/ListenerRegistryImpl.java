@@ -0,0 +1,447 @@
+package com.tmavn.sample.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.tmavn.sample.common.ListenerQuery;
+import com.tmavn.sample.common.PayloadFormat;
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.enums.OrderState;
+import com.tmavn.sample.repository.ListenerInfoRepository;
+import com.tmavn.sample.service.InvalidationBus;
+import com.tmavn.sample.service.ListenerRegistry;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory registry of the listeners, keyed by user id.<br>
+ * The registry is loaded from the database at startup and updated by
+ * {@link ListenerInfoServiceImpl} after each write, so that the lookups of the
+ * state changes do not query the database. The query and the payload of a
+ * listener are compiled once when the listener is registered, and the listeners
+ * of a user are indexed by the states they select. The writes of the other
+ * nodes are received from the {@link InvalidationBus}, the listeners they
+ * changed are read again.<br>
+ * The listeners of a user are kept in arrays which are replaced, never
+ * modified: the lookups read them without lock and the writes are serialized.
+ * A load builds new maps and replaces the old ones at once, the lookups see
+ * either all the old listeners or all the new ones. When the database can not
+ * be read, the lookups query it and the registry is loaded again after a delay
+ * which doubles at each failure.<br>
+ * The registry keeps its own copies of the listeners and the lookups return
+ * copies, the callers can not change the registered listeners.
+ */
+@Service
+@Slf4j
+public class ListenerRegistryImpl implements ListenerRegistry {
+
+    /** The delay of the first reload after a failed read, in milliseconds. */
+    private static final long MIN_RELOAD_DELAY = 1000;
+
+    /** The maximum delay of the reloads, in milliseconds. */
+    private static final long MAX_RELOAD_DELAY = 60000;
+
+    @Autowired
+    private ListenerInfoRepository listenerInfoRepository;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    /** The listeners by user id, replaced by a load. */
+    private volatile ConcurrentHashMap<String, UserListeners> listenersByUser = new ConcurrentHashMap<>();
+
+    /** The user id by listener id, to find the old entry of an updated listener. Guarded by this. */
+    private Map<Long, String> userByListener = new HashMap<>();
+
+    /** True when the registry holds all the listeners. */
+    private volatile boolean loaded;
+
+    /** The delay of the next reload. Guarded by this. */
+    private long reloadDelay = MIN_RELOAD_DELAY;
+
+    /** True while a reload is scheduled. Guarded by this. */
+    private boolean reloadScheduled;
+
+    /** The thread of the reloads, created at the first failed read. Guarded by this. */
+    private ScheduledExecutorService reloader;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Subscribe to the invalidations of the listeners and load them.
+     */
+    @PostConstruct
+    public void init() {
+        invalidationBus.subscribe(InvalidationBus.LISTENER_INFO, new InvalidationBus.Listener() {
+
+            @Override
+            public void invalidate(String key) {
+                try {
+                    refresh(Long.valueOf(key));
+                } catch (NumberFormatException e) {
+                    log.warn("Invalid listener id: {}", key);
+                }
+            }
+
+            @Override
+            public void invalidateAll() {
+                load();
+            }
+        });
+        load();
+    }
+
+    /**
+     * Stop the reloads.
+     */
+    @PreDestroy
+    public synchronized void destroy() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+            reloader = null;
+        }
+        reloadScheduled = false;
+    }
+
+    /**
+     * Load all the listeners from the database. When the database can not be
+     * read, the lookups query it until the next load, which is scheduled with a
+     * backoff.
+     */
+    @Override
+    public synchronized void load() {
+        log.debug("IN - load");
+        Iterable<ListenerInfo> listenerInfos;
+        try {
+            listenerInfos = toList(listenerInfoRepository.findAll());
+        } catch (RuntimeException e) {
+            log.error("Exception: ", e);
+            loaded = false;
+            scheduleReload();
+            log.debug("OUT - load");
+            return;
+        }
+
+        ConcurrentHashMap<String, UserListeners> loadedListeners = new ConcurrentHashMap<>();
+        Map<Long, String> loadedUsers = new HashMap<>();
+        for (ListenerInfo listenerInfo : listenerInfos) {
+            putEntry(loadedListeners, loadedUsers, listenerInfo);
+        }
+        listenersByUser = loadedListeners;
+        userByListener = loadedUsers;
+        loaded = true;
+        reloadDelay = MIN_RELOAD_DELAY;
+        log.debug("Loaded {} listeners of {} users", loadedUsers.size(), loadedListeners.size());
+        log.debug("OUT - load");
+    }
+
+    @Override
+    public List<ListenerInfo> findByUserId(String userId) {
+        if (!loaded) {
+            misses.increment();
+            return toList(listenerInfoRepository.findByUserId(userId));
+        }
+        hits.increment();
+        UserListeners userListeners = userId == null ? null : listenersByUser.get(userId);
+        if (userListeners == null) {
+            return Collections.emptyList();
+        }
+        return copyOf(userListeners.listeners);
+    }
+
+    @Override
+    public List<ListenerInfo> findByUserIdAndState(String userId, String state) {
+        OrderState orderState = OrderState.fromValue(state);
+        if (!loaded) {
+            misses.increment();
+            List<ListenerInfo> result = new ArrayList<>();
+            for (ListenerInfo listenerInfo : toList(listenerInfoRepository.findByUserId(userId))) {
+                if (compile(listenerInfo).matches(orderState)) {
+                    result.add(listenerInfo);
+                }
+            }
+            return result;
+        }
+        hits.increment();
+        UserListeners userListeners = userId == null ? null : listenersByUser.get(userId);
+        if (userListeners == null || orderState == null) {
+            return Collections.emptyList();
+        }
+        return copyOf(userListeners.byState[orderState.ordinal()]);
+    }
+
+    @Override
+    public synchronized void put(ListenerInfo listenerInfo) {
+        putEntry(listenersByUser, userByListener, listenerInfo);
+    }
+
+    @Override
+    public synchronized void remove(Long id) {
+        if (id != null) {
+            removeEntry(id);
+        }
+    }
+
+    /**
+     * Read a listener again from the database. The listener is read under the
+     * lock of the writes: a write of this node saved after the read is put after
+     * it.
+     *
+     * @param id the listener id
+     */
+    @Override
+    public synchronized void refresh(Long id) {
+        if (id == null || !loaded) {
+            return;
+        }
+        ListenerInfo listenerInfo;
+        try {
+            listenerInfo = listenerInfoRepository.findOne(id);
+        } catch (RuntimeException e) {
+            // the registry may be stale, the lookups query the database until the next load
+            log.error("Exception: ", e);
+            loaded = false;
+            scheduleReload();
+            return;
+        }
+        if (listenerInfo == null) {
+            removeEntry(id);
+        } else {
+            put(listenerInfo);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return userByListener.size();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private void removeEntry(Long id) {
+        removeEntry(listenersByUser, userByListener, id);
+    }
+
+    /**
+     * Schedule a load after a failed read, unless one is already scheduled. The
+     * delay doubles at each failure, up to {@link #MAX_RELOAD_DELAY}.
+     */
+    private synchronized void scheduleReload() {
+        if (reloadScheduled) {
+            return;
+        }
+        if (reloader == null) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("listener-reload-");
+            threadFactory.setDaemon(true);
+            reloader = new ScheduledThreadPoolExecutor(1, threadFactory);
+        }
+        long delay = reloadDelay;
+        reloadDelay = Math.min(delay * 2, MAX_RELOAD_DELAY);
+        try {
+            reloader.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    reload();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            reloadScheduled = true;
+            log.info("Listeners are loaded again in {} ms", delay);
+        } catch (RejectedExecutionException e) {
+            log.debug("Registry is stopped");
+        }
+    }
+
+    private synchronized void reload() {
+        reloadScheduled = false;
+        load();
+    }
+
+    /**
+     * Put a listener in the maps of a registry, replacing its old entry.
+     *
+     * @param listeners    the listeners by user id
+     * @param users        the user id by listener id
+     * @param listenerInfo the listener
+     */
+    private static void putEntry(Map<String, UserListeners> listeners, Map<Long, String> users,
+            ListenerInfo listenerInfo) {
+        if (listenerInfo == null || listenerInfo.getId() == null || listenerInfo.getUserId() == null) {
+            return;
+        }
+        removeEntry(listeners, users, listenerInfo.getId());
+        UserListeners userListeners = listeners.get(listenerInfo.getUserId());
+        if (userListeners == null) {
+            userListeners = UserListeners.EMPTY;
+        }
+        ListenerInfo registered = copy(listenerInfo);
+        listeners.put(registered.getUserId(), userListeners.add(registered, compile(registered)));
+        users.put(listenerInfo.getId(), listenerInfo.getUserId());
+        compilePayload(registered);
+    }
+
+    private static void removeEntry(Map<String, UserListeners> listeners, Map<Long, String> users, Long id) {
+        String userId = users.remove(id);
+        if (userId == null) {
+            return;
+        }
+        UserListeners userListeners = listeners.get(userId);
+        if (userListeners == null) {
+            return;
+        }
+        UserListeners removed = userListeners.remove(id);
+        if (removed.listeners.length == 0) {
+            listeners.remove(userId);
+        } else {
+            listeners.put(userId, removed);
+        }
+    }
+
+    /**
+     * Compile the query of a listener, an invalid query selects no state.
+     *
+     * @param listenerInfo the listener
+     * @return the compiled query
+     */
+    private static ListenerQuery compile(ListenerInfo listenerInfo) {
+        try {
+            return ListenerQuery.compile(listenerInfo.getQuery());
+        } catch (IllegalArgumentException e) {
+            log.warn("Listener {} is not notified, invalid query {}: {}", listenerInfo.getId(),
+                    listenerInfo.getQuery(), e.getMessage());
+            return ListenerQuery.NONE;
+        }
+    }
+
+    /**
+     * Compile the payload of a listener, so that its format is cached before
+     * its first notification. An invalid payload is sent full.
+     *
+     * @param listenerInfo the listener
+     */
+    private static void compilePayload(ListenerInfo listenerInfo) {
+        try {
+            PayloadFormat.compile(listenerInfo.getPayload());
+        } catch (IllegalArgumentException e) {
+            log.warn("Listener {} is sent the full payload, invalid payload {}: {}", listenerInfo.getId(),
+                    listenerInfo.getPayload(), e.getMessage());
+        }
+    }
+
+    /**
+     * Copy a listener, so that the registered listeners are not shared with the
+     * callers.
+     *
+     * @param listenerInfo the listener
+     * @return the copy
+     */
+    private static ListenerInfo copy(ListenerInfo listenerInfo) {
+        ListenerInfo copy = new ListenerInfo();
+        copy.setId(listenerInfo.getId());
+        copy.setUserId(listenerInfo.getUserId());
+        copy.setCallback(listenerInfo.getCallback());
+        copy.setQuery(listenerInfo.getQuery());
+        copy.setDelivery(listenerInfo.getDelivery());
+        copy.setPayload(listenerInfo.getPayload());
+        return copy;
+    }
+
+    private static List<ListenerInfo> copyOf(ListenerInfo[] listenerInfos) {
+        List<ListenerInfo> copies = new ArrayList<>(listenerInfos.length);
+        for (ListenerInfo listenerInfo : listenerInfos) {
+            copies.add(copy(listenerInfo));
+        }
+        return Collections.unmodifiableList(copies);
+    }
+
+    private static List<ListenerInfo> toList(Iterable<ListenerInfo> listenerInfos) {
+        List<ListenerInfo> list = new ArrayList<>();
+        if (listenerInfos == null) {
+            return list;
+        }
+        for (ListenerInfo listenerInfo : listenerInfos) {
+            list.add(listenerInfo);
+        }
+        return list;
+    }
+
+    /**
+     * The listeners of a user with their compiled queries, and the index of the
+     * listeners by state. An instance is never modified.
+     */
+    private static final class UserListeners {
+
+        private static final UserListeners EMPTY = new UserListeners(new ListenerInfo[0], new ListenerQuery[0]);
+
+        private final ListenerInfo[] listeners;
+
+        private final ListenerQuery[] queries;
+
+        /** The listeners by state ordinal. */
+        private final ListenerInfo[][] byState;
+
+        private UserListeners(ListenerInfo[] listeners, ListenerQuery[] queries) {
+            this.listeners = listeners;
+            this.queries = queries;
+            OrderState[] states = OrderState.values();
+            byState = new ListenerInfo[states.length][];
+            for (OrderState state : states) {
+                List<ListenerInfo> selected = new ArrayList<>();
+                for (int i = 0; i < listeners.length; i++) {
+                    if (queries[i].matches(state)) {
+                        selected.add(listeners[i]);
+                    }
+                }
+                byState[state.ordinal()] = selected.toArray(new ListenerInfo[selected.size()]);
+            }
+        }
+
+        private UserListeners add(ListenerInfo listenerInfo, ListenerQuery query) {
+            ListenerInfo[] addedListeners = Arrays.copyOf(listeners, listeners.length + 1);
+            addedListeners[listeners.length] = listenerInfo;
+            ListenerQuery[] addedQueries = Arrays.copyOf(queries, queries.length + 1);
+            addedQueries[queries.length] = query;
+            return new UserListeners(addedListeners, addedQueries);
+        }
+
+        private UserListeners remove(Long id) {
+            List<ListenerInfo> keptListeners = new ArrayList<>();
+            List<ListenerQuery> keptQueries = new ArrayList<>();
+            for (int i = 0; i < listeners.length; i++) {
+                if (!id.equals(listeners[i].getId())) {
+                    keptListeners.add(listeners[i]);
+                    keptQueries.add(queries[i]);
+                }
+            }
+            return new UserListeners(keptListeners.toArray(new ListenerInfo[keptListeners.size()]),
+                    keptQueries.toArray(new ListenerQuery[keptQueries.size()]));
+        }
+    }
+}
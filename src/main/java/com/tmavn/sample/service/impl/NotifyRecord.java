@@ -0,0 +1,127 @@
+package com.tmavn.sample.service.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.entity.StateChangeNotify;
+
+/**
+ * The record of a new notification in the journal: the fields of the
+ * notification which are set when it is created, with the id of its order and
+ * the fields of the order at the state change. The trigger id is given when the
+ * record is written to the table.
+ */
+final class NotifyRecord {
+
+    /** The version of the format, the first byte of a record. */
+    private static final byte VERSION = 1;
+
+    private NotifyRecord() {
+    }
+
+    /**
+     * Serialize a notification.
+     *
+     * @param stateChangeNotify the notification
+     * @return the bytes of the record
+     */
+    static byte[] encode(StateChangeNotify stateChangeNotify) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeDate(out, stateChangeNotify.getTriggerTime());
+            writeString(out, stateChangeNotify.getTriggerType());
+            OrderData orderData = stateChangeNotify.getTriggerData();
+            writeString(out, orderData == null ? null : orderData.getId());
+            writeString(out, stateChangeNotify.getOrderDescription());
+            writeString(out, stateChangeNotify.getOrderDate());
+            writeString(out, stateChangeNotify.getModifyDate());
+            out.writeLong(stateChangeNotify.getSequence() == null ? -1 : stateChangeNotify.getSequence());
+            writeString(out, stateChangeNotify.getUserId());
+            writeString(out, stateChangeNotify.getCallback());
+            writeString(out, stateChangeNotify.getDelivery());
+            writeString(out, stateChangeNotify.getPayload());
+            writeString(out, stateChangeNotify.getState());
+            writeDate(out, stateChangeNotify.getNextAttemptTime());
+        } catch (IOException e) {
+            // not thrown by a byte array
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserialize a notification, pending with no attempt.
+     *
+     * @param record the bytes of the record
+     * @return the notification
+     * @throws IOException if the record is not valid
+     */
+    static StateChangeNotify decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown record version: " + version);
+        }
+        StateChangeNotify stateChangeNotify = new StateChangeNotify();
+        stateChangeNotify.setTriggerTime(readDate(in));
+        stateChangeNotify.setTriggerType(readString(in));
+        String orderId = readString(in);
+        if (orderId != null) {
+            OrderData orderData = new OrderData();
+            orderData.setId(orderId);
+            stateChangeNotify.setTriggerData(orderData);
+        }
+        stateChangeNotify.setOrderDescription(readString(in));
+        stateChangeNotify.setOrderDate(readString(in));
+        stateChangeNotify.setModifyDate(readString(in));
+        long sequence = in.readLong();
+        stateChangeNotify.setSequence(sequence < 0 ? null : sequence);
+        stateChangeNotify.setUserId(readString(in));
+        stateChangeNotify.setCallback(readString(in));
+        stateChangeNotify.setDelivery(readString(in));
+        stateChangeNotify.setPayload(readString(in));
+        stateChangeNotify.setState(readString(in));
+        stateChangeNotify.setNextAttemptTime(readDate(in));
+        stateChangeNotify.setStatus(StateChangeNotify.STATUS_PENDING);
+        stateChangeNotify.setAttempts(0);
+        return stateChangeNotify;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDate(DataOutputStream out, Date value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.getTime());
+        }
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new Date(in.readLong()) : null;
+    }
+}
@@ -0,0 +1,118 @@
+package com.tmavn.sample.service.impl;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.tmavn.sample.common.NotifySettings;
+import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.service.StateChangeDispatcher;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Records the results of the deliveries with
+ * {@link StateChangeDispatcher#onDelivered}, on its own thread: the I/O threads
+ * of the http client and the lanes do not wait for the database, and the polls
+ * do not delay the results.<br>
+ * A result which can not be written, i.e: while the database is down, is
+ * written again after the retry delay of its tries; the notification stays
+ * Sending and its lease is extended meanwhile. When the recorder is stopped the
+ * result is written by the calling thread.
+ */
+@Slf4j
+class NotifyRecorder {
+
+    private final StateChangeDispatcher dispatcher;
+
+    private volatile NotifySettings settings = new NotifySettings();
+
+    /** The thread of the results, null when stopped. */
+    private volatile ScheduledExecutorService executor;
+
+    NotifyRecorder(StateChangeDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    void start(NotifySettings notifySettings) {
+        settings = notifySettings;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("notify-record-");
+        threadFactory.setDaemon(true);
+        executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+    }
+
+    /**
+     * Stop the thread, the results not written yet are lost: their notifications
+     * are sent again at the next start.
+     */
+    void stop() {
+        ScheduledExecutorService current = executor;
+        executor = null;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+
+    /**
+     * Record the result of a delivery.
+     *
+     * @param stateChangeNotify the notification
+     * @param error             the error, null when delivered
+     */
+    void record(StateChangeNotify stateChangeNotify, String error) {
+        ScheduledExecutorService current = executor;
+        if (current == null) {
+            write(stateChangeNotify, error, stateChangeNotify.getAttempts(), 1);
+            return;
+        }
+        submit(current, stateChangeNotify, error, stateChangeNotify.getAttempts(), 1, 0);
+    }
+
+    private void submit(ScheduledExecutorService current, final StateChangeNotify stateChangeNotify,
+            final String error, final Integer attempts, final int tries, long delay) {
+        try {
+            current.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (write(stateChangeNotify, error, attempts, tries)) {
+                        return;
+                    }
+                    ScheduledExecutorService running = executor;
+                    if (running != null) {
+                        submit(running, stateChangeNotify, error, attempts, tries + 1,
+                                settings.getRetryDelay(tries));
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // still Sending, sent again at the next start
+            log.debug("Recorder is stopped");
+        }
+    }
+
+    /**
+     * Write a result.
+     *
+     * @param stateChangeNotify the notification
+     * @param error             the error, null when delivered
+     * @param attempts          the attempts of the notification before this
+     *                          delivery, counted again by each try
+     * @param tries             the number of the try
+     * @return false if the result could not be written
+     */
+    private boolean write(StateChangeNotify stateChangeNotify, String error, Integer attempts, int tries) {
+        stateChangeNotify.setAttempts(attempts);
+        try {
+            dispatcher.onDelivered(stateChangeNotify, error);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Can not record the result of notification {}, try {}: ", stateChangeNotify.getTriggerId(),
+                    tries, e);
+            return false;
+        }
+    }
+}
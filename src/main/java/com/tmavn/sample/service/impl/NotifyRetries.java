@@ -0,0 +1,95 @@
+package com.tmavn.sample.service.impl;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.tmavn.sample.common.NotifySettings;
+import com.tmavn.sample.common.TimingWheel;
+import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.repository.StateChangeNotifyRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The retries of the failed notifications: the backoff of their next attempt,
+ * and the timing wheel of their next attempt times, which gives the dispatcher
+ * the ids of the retries when they are due, so it claims them by id rather than
+ * at the next poll interval.<br>
+ * The wheel holds the retries of one revolution, the later ones are claimed by
+ * the polls when they are due.
+ */
+@Slf4j
+class NotifyRetries {
+
+    /** The ids of the notifications waiting for their next attempt, null when stopped. */
+    private volatile TimingWheel<String> wheel;
+
+    /**
+     * Build the wheel from the notifications of the table which wait for their
+     * next attempt within one revolution of the wheel.
+     *
+     * @param settings                    the settings
+     * @param stateChangeNotifyRepository the outbox
+     */
+    void start(NotifySettings settings, StateChangeNotifyRepository stateChangeNotifyRepository) {
+        long now = System.currentTimeMillis();
+        TimingWheel<String> loaded = new TimingWheel<String>(settings.getRetryTick(), settings.getRetryWheelSize(),
+                now);
+        try {
+            long horizon = now + (long) settings.getRetryTick() * settings.getRetryWheelSize();
+            List<Object[]> scheduled = stateChangeNotifyRepository.findScheduled(StateChangeNotify.STATUS_PENDING,
+                    new Date(now), new Date(horizon));
+            for (Object[] row : scheduled) {
+                loaded.add((String) row[0], ((Date) row[1]).getTime());
+            }
+        } catch (RuntimeException e) {
+            // the poll still reads them
+            log.error("Exception: ", e);
+        }
+        log.debug("Retries scheduled: {}", loaded.size());
+        wheel = loaded;
+    }
+
+    void stop() {
+        wheel = null;
+    }
+
+    /**
+     * Put a notification in the wheel, it is claimed at its next attempt time.
+     *
+     * @param stateChangeNotify the notification
+     */
+    void schedule(StateChangeNotify stateChangeNotify) {
+        TimingWheel<String> current = wheel;
+        if (current != null && stateChangeNotify.getNextAttemptTime() != null) {
+            current.add(stateChangeNotify.getTriggerId(), stateChangeNotify.getNextAttemptTime().getTime());
+        }
+    }
+
+    /**
+     * Advance the wheel.
+     *
+     * @param now the current time, in milliseconds
+     * @return the ids of the notifications which are due, empty when stopped
+     */
+    List<String> advance(long now) {
+        TimingWheel<String> current = wheel;
+        return current == null ? Collections.<String>emptyList() : current.advance(now);
+    }
+
+    /**
+     * Gets the time before the next attempt of a notification: the backoff delay
+     * plus a random part, so that the notifications which failed together are
+     * not retried together.
+     *
+     * @param settings the settings
+     * @param attempts the number of attempts done
+     * @return the delay, in milliseconds
+     */
+    static long getDelay(NotifySettings settings, int attempts) {
+        long delay = settings.getRetryDelay(attempts);
+        return delay + (long) (delay * settings.getRetryJitter() / 100.0 * ThreadLocalRandom.current().nextDouble());
+    }
+}
@@ -0,0 +1,159 @@
+package com.tmavn.sample.service.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.web.client.RestClientResponseException;
+
+import com.tmavn.sample.common.AsyncRestClient;
+import com.tmavn.sample.common.Constant;
+import com.tmavn.sample.common.NotifyPayload;
+import com.tmavn.sample.common.NotifySettings;
+import com.tmavn.sample.entity.StateChangeNotify;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sends the notifications to the callbacks with {@link AsyncRestClient}, one
+ * by one or as a batch. The result of each notification is given to the
+ * recorder when the response is received, with the http status of the
+ * response.
+ */
+@Slf4j
+class NotifySender {
+
+    private final NotifyRecorder recorder;
+
+    NotifySender(NotifyRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Send a notification.
+     *
+     * @param stateChangeNotify info to notify.
+     * @param payload           the rendered event, null to serialize the
+     *                          notification
+     * @return the response
+     */
+    @SuppressWarnings("unchecked")
+    ListenableFuture<ResponseEntity<Object>> sendNotify(final StateChangeNotify stateChangeNotify,
+            NotifyPayload payload) {
+        log.debug("IN - sendNotify");
+        String url = stateChangeNotify.getCallback();
+
+        log.debug("POST - Trigger state change {}", stateChangeNotify);
+        Map<String, String> header = new HashMap<String, String>();
+        header.put(Constant.HEADER_USER_ID, stateChangeNotify.getUserId());
+        header.put(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_UTF8_VALUE);
+
+        Object body = payload == null ? stateChangeNotify : payload.toBytes(stateChangeNotify.getTriggerId());
+        ListenableFuture<ResponseEntity<Object>> future = (ListenableFuture<ResponseEntity<Object>>) AsyncRestClient
+                .getInstance().sendPostRequestOutside(url, header, null, null, body, Object.class);
+
+        ListenableFutureCallback<ResponseEntity<Object>> callback = new ListenableFutureCallback<ResponseEntity<Object>>() {
+
+            @Override
+            public void onSuccess(ResponseEntity<Object> result) {
+                log.debug("POST - status {}. Received response to {}", result.getStatusCode(), url);
+                stateChangeNotify.setLastStatus(result.getStatusCodeValue());
+                if (result.getStatusCode().is2xxSuccessful()) {
+                    recorder.record(stateChangeNotify, null);
+                } else {
+                    recorder.record(stateChangeNotify, "Status " + result.getStatusCode());
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable ex) {
+                log.debug("POST - Failure: {}", ex.getLocalizedMessage());
+                stateChangeNotify.setLastStatus(getStatus(ex));
+                recorder.record(stateChangeNotify, String.valueOf(ex.getLocalizedMessage()));
+            }
+
+        };
+        future.addCallback(callback);
+        log.debug("OUT - sendNotify");
+        return future;
+    }
+
+    /**
+     * Send a batch of notifications as a json array, the result is recorded for
+     * each notification and adapts the size of the batches of the callback.
+     *
+     * @param batch    the batch
+     * @param taken    the notifications of the batch
+     * @param body     the json array
+     * @param settings the settings of the batch sizes
+     * @return the response
+     */
+    @SuppressWarnings("unchecked")
+    ListenableFuture<ResponseEntity<Object>> sendBatch(final CallbackBatch batch, final List<StateChangeNotify> taken,
+            byte[] body, final NotifySettings settings) {
+        log.debug("IN - sendBatch");
+        final String url = batch.getCallback();
+
+        log.debug("POST - Trigger {} state changes to {}", taken.size(), url);
+        Map<String, String> header = new HashMap<String, String>();
+        header.put(Constant.HEADER_USER_ID, batch.getUserId());
+        header.put(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_UTF8_VALUE);
+
+        final long start = System.currentTimeMillis();
+        ListenableFuture<ResponseEntity<Object>> future = (ListenableFuture<ResponseEntity<Object>>) AsyncRestClient
+                .getInstance().sendPostRequestOutside(url, header, null, null, body, Object.class);
+
+        ListenableFutureCallback<ResponseEntity<Object>> callback = new ListenableFutureCallback<ResponseEntity<Object>>() {
+
+            @Override
+            public void onSuccess(ResponseEntity<Object> result) {
+                log.debug("POST - status {}. Received response to {}", result.getStatusCode(), url);
+                boolean success = result.getStatusCode().is2xxSuccessful();
+                onBatchResponse(batch, taken, start, result.getStatusCodeValue(),
+                        success ? null : "Status " + result.getStatusCode(), settings);
+            }
+
+            @Override
+            public void onFailure(Throwable ex) {
+                log.debug("POST - Failure: {}", ex.getLocalizedMessage());
+                onBatchResponse(batch, taken, start, getStatus(ex), String.valueOf(ex.getLocalizedMessage()),
+                        settings);
+            }
+
+        };
+        future.addCallback(callback);
+        log.debug("OUT - sendBatch");
+        return future;
+    }
+
+    private void onBatchResponse(CallbackBatch batch, List<StateChangeNotify> taken, long start, Integer status,
+            String error, NotifySettings settings) {
+        batch.onResponse(taken.size(), System.currentTimeMillis() - start, error == null,
+                settings.getCallbackBatchTargetLatency(), settings.getCallbackBatchMaxSize());
+        for (StateChangeNotify stateChangeNotify : taken) {
+            stateChangeNotify.setLastStatus(status);
+            recorder.record(stateChangeNotify, error);
+        }
+    }
+
+    /**
+     * Gets the http status of a failed delivery: the error responses are thrown
+     * by the rest template.
+     *
+     * @param ex the failure
+     * @return the status of the response, or null if there is no response
+     */
+    private static Integer getStatus(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RestClientResponseException) {
+                return ((RestClientResponseException) cause).getRawStatusCode();
+            }
+        }
+        return null;
+    }
+}
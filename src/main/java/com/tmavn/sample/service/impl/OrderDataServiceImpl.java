@@ -10,9 +10,10 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.tmavn.sample.common.Constant;
+import com.tmavn.sample.common.JsonMapper;
 import com.tmavn.sample.common.NonNullAwareBeanUtils;
 import com.tmavn.sample.common.RestClient;
 import com.tmavn.sample.common.Utils;
@@ -20,7 +21,9 @@ import com.tmavn.sample.dto.OrderDataDTO;
 import com.tmavn.sample.entity.Note;
 import com.tmavn.sample.entity.OrderData;
 import com.tmavn.sample.repository.OrderDataRepository;
+import com.tmavn.sample.service.InvalidationBus;
 import com.tmavn.sample.service.OrderDataService;
+import com.tmavn.sample.service.StateChangeService;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -34,6 +37,12 @@ public class OrderDataServiceImpl implements OrderDataService {
     @Autowired
     private SimpleDateFormat dateFormat;
 
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    @Autowired
+    private StateChangeService stateChangeService;
+
     @Override
     public Iterable<OrderData> findAll() {
         log.debug("IN - findAll");
@@ -61,23 +70,36 @@ public class OrderDataServiceImpl implements OrderDataService {
         return result;
     }
 
+    /**
+     * Set the state of an order to {@link OrderData#STATE_FAILED}, the order and
+     * its state change notifications are saved in one transaction.
+     */
     @Override
-    public OrderData delete(String id) {
+    @Transactional
+    public OrderData delete(String userId, String id) {
         log.debug("IN - delete");
 
         // find and change state - not delete
         OrderData order = orderDataRepository.findOne(id);
+        OrderData oldData = copyOf(order);
         order.setState(OrderData.STATE_FAILED);
         log.debug("Update item: {}", order);
 
+        OrderData deletedOrderData = orderDataRepository.save(order);
+        invalidate(deletedOrderData);
+        stateChangeService.notifyStateChange(userId, deletedOrderData, oldData);
         log.debug("OUT - delete");
-        return orderDataRepository.save(order);
+        return deletedOrderData;
     }
 
+    /**
+     * Set the dates of a new order and its notes from the OPS module. No
+     * transaction is open during the call to the module.
+     */
     @SuppressWarnings("unchecked")
     @Override
-    public OrderData addNewOrderData(OrderData orderData) {
-        log.debug("IN - addNewOrderData");
+    public OrderData prepareNewOrderData(OrderData orderData) {
+        log.debug("IN - prepareNewOrderData");
         String now = dateFormat.format(new Date());
         orderData.setOrderDate(now);
         orderData.setModifyDate(now);
@@ -98,22 +120,41 @@ public class OrderDataServiceImpl implements OrderDataService {
                 bodyData, String.class);
 
         List<Note> notes = (List<Note>) Utils.parseJson(String.valueOf(response.getBody()),
-                new TypeReference<List<Note>>() {
-                });
+                JsonMapper.NOTE_LIST_TYPE);
         log.debug("parse JSON: {}",response.getBody());
         for (Note note : notes) {
             note.setOrderData(orderData);
         }
         orderData.setNotes(new HashSet<>(notes));
+        log.debug("OUT - prepareNewOrderData");
+        return orderData;
+    }
+
+    /**
+     * Save a new order prepared by {@link #prepareNewOrderData(OrderData)}, the
+     * order and its state change notifications are saved in one transaction.
+     */
+    @Override
+    @Transactional
+    public OrderData addNewOrderData(String userId, OrderData orderData) {
+        log.debug("IN - addNewOrderData");
         OrderData createdOrderData = orderDataRepository.save(orderData);
+        invalidate(createdOrderData);
+        stateChangeService.notifyStateChange(userId, createdOrderData, null);
         log.debug("OUT - addNewOrderData");
         return createdOrderData;
     }
 
+    /**
+     * Update an order, the order and its state change notifications are saved in
+     * one transaction.
+     */
     @Override
-    public OrderData putOrderData(String id, OrderData orderData) {
+    @Transactional
+    public OrderData putOrderData(String userId, String id, OrderData orderData) {
         log.debug("IN - putOrderData");
         OrderData oldData = orderDataRepository.findOne(orderData.getId());
+        OrderData previousData = copyOf(oldData);
 
         String now = dateFormat.format(new Date());
         orderData.setId(id);
@@ -121,14 +162,21 @@ public class OrderDataServiceImpl implements OrderDataService {
 
         BeanUtils.copyProperties(orderData, oldData, "orderDate", "modifyDate", "id");
         OrderData updatedOrderData = orderDataRepository.save(oldData);
+        invalidate(updatedOrderData);
+        stateChangeService.notifyStateChange(userId, updatedOrderData, previousData);
 
         log.debug("PUT - updated {}", updatedOrderData);
         log.debug("OUT - putOrderData");
         return updatedOrderData;
     }
 
+    /**
+     * Patch an order, the order and its state change notifications are saved in
+     * one transaction.
+     */
     @Override
-    public OrderData patchOrderData(String id, OrderData patchData) {
+    @Transactional
+    public OrderData patchOrderData(String userId, String id, OrderData patchData) {
         log.debug("IN - patchOrderData");
         String now = dateFormat.format(new Date());
 
@@ -140,6 +188,7 @@ public class OrderDataServiceImpl implements OrderDataService {
 
         // get old data for patching
         OrderData oldData = orderDataRepository.findOne(id);
+        OrderData previousData = copyOf(oldData);
 
         // apply patch
         log.debug("Copying {} to {}", patchDTO, oldData);
@@ -150,8 +199,33 @@ public class OrderDataServiceImpl implements OrderDataService {
         oldData.setModifyDate(now);
 
         OrderData patchedOrderData = orderDataRepository.save(oldData);
+        invalidate(patchedOrderData);
+        stateChangeService.notifyStateChange(userId, patchedOrderData, previousData);
         log.debug("OUT - patchOrderData");
         return patchedOrderData;
     }
 
+    /**
+     * Copy the fields of an order before it is modified: the order read in the
+     * transaction is the one which is modified.
+     *
+     * @param orderData the order
+     * @return the copy
+     */
+    private static OrderData copyOf(OrderData orderData) {
+        OrderData copy = new OrderData();
+        BeanUtils.copyProperties(orderData, copy, "notes", "stateChangeNotifies");
+        return copy;
+    }
+
+    /**
+     * Tell the other nodes to read a saved order again.
+     *
+     * @param orderData the saved order
+     */
+    private void invalidate(OrderData orderData) {
+        if (orderData != null && orderData.getId() != null) {
+            invalidationBus.invalidate(InvalidationBus.ORDER_DATA, orderData.getId());
+        }
+    }
 }
@@ -0,0 +1,673 @@
+package com.tmavn.sample.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.tmavn.sample.common.AsyncRestClient;
+import com.tmavn.sample.common.NotifyPayload;
+import com.tmavn.sample.common.NotifySettings;
+import com.tmavn.sample.common.PayloadFormat;
+import com.tmavn.sample.entity.DeadLetter;
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.repository.DeadLetterRepository;
+import com.tmavn.sample.repository.StateChangeNotifyRepository;
+import com.tmavn.sample.service.StateChangeDispatcher;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Delivers the state change notifications of the outbox table.<br>
+ * A background thread claims the pending notifications in batches, and the
+ * delivery lanes send them with {@link AsyncRestClient}. The notifications of
+ * an order always go to the same lane, and a lane sends a notification when the
+ * response of the previous one is received, so the listeners receive the state
+ * changes of an order in order. A notification is not claimed while an earlier
+ * one of its order to the same callback is Pending or Sending, so a failed
+ * notification is retried before the next ones are sent; the dispatcher wakes
+ * up when a notification is sent or failed for good. The lanes of different
+ * orders run in parallel.
+ * When the queue of a lane is full, the polling thread waits.<br>
+ * When the coalescing is enabled, the notifications of an order to a listener
+ * which are due together are sent as one: the latest one, with the states of
+ * the others.<br>
+ * The notifications to the listeners in batch delivery mode are buffered by
+ * callback and sent as a json array when the batch is full or after the
+ * maximum delay. The size of the batches of a callback adapts to its response
+ * time, and the batches of a callback go to the same lane.<br>
+ * The deliveries of a callback host are bounded by the queue of the host and
+ * sent at the rate of the host, the overflow policy applies when the queue is
+ * full.<br>
+ * The status and the attempts of each notification are written back to the
+ * table, a failed notification is sent again later until the maximum number of
+ * attempts is reached, then it is recorded in the dead letter table. The next
+ * attempt times are kept in a timing wheel, and the retries are claimed by
+ * their ids when they are due rather than at the next poll interval.<br>
+ * Several nodes can share the outbox: a claim locks the rows with SKIP LOCKED,
+ * so the nodes claim different rows, and gives them a lease. A claim takes no
+ * more rows than the free room of the lanes, and the leases of the rows held by
+ * this node are extended until their result is written. The rows of a node
+ * which stopped are claimed again by any node when their lease expires; the
+ * result of a delivery is written only while its claim holds the lease.<br>
+ * When the journal is enabled, the new notifications are appended to a local
+ * journal rather than inserted one state change at a time, and the dispatcher
+ * writes them to the table in batches before it sends them.<br>
+ * The stages of the delivery are collaborators of the dispatcher: the journal
+ * ({@link JournalDrain}), the lanes and the queues of the hosts
+ * ({@link DeliveryLanes}), the http requests ({@link NotifySender}), the
+ * results ({@link NotifyRecorder}) and the retries ({@link NotifyRetries}). The
+ * dispatcher claims the notifications, coalesces them, renders their payloads
+ * and buffers the batches.
+ */
+@Service
+@Slf4j
+public class StateChangeDispatcherImpl implements StateChangeDispatcher {
+
+    /** The settings, read from sample.conf by ApplicationInit. */
+    private static volatile NotifySettings settings = new NotifySettings();
+
+    /** The error of a notification dropped from the queue of its callback host. */
+    public static final String ERROR_DROPPED = "Dropped, the queue of the host is full";
+
+    @Autowired
+    private StateChangeNotifyRepository stateChangeNotifyRepository;
+
+    @Autowired
+    private DeadLetterRepository deadLetterRepository;
+
+    /** The thread of the polls and of the flushes of the batches. */
+    private ScheduledExecutorService executor;
+
+    /** The thread which extends the leases, it does not wait for the polls. */
+    private ScheduledExecutorService leaseExecutor;
+
+    /** The id of this node, resolved at the first claim. */
+    private volatile String nodeId;
+
+    /** The number of claims of this node, to name the owner of each claim. */
+    private final AtomicLong claims = new AtomicLong();
+
+    private final NotifyRetries retries = new NotifyRetries();
+
+    private final NotifyRecorder recorder = new NotifyRecorder(this);
+
+    private final NotifySender sender = new NotifySender(recorder);
+
+    private final DeliveryLanes lanes = new DeliveryLanes(recorder, retries);
+
+    private final JournalDrain journal = new JournalDrain(retries);
+
+    /** The batches by user id and callback, used on the dispatcher thread only. */
+    private final Map<String, CallbackBatch> batches = new HashMap<String, CallbackBatch>();
+
+    /** Polls the outbox, then schedules the next poll. */
+    private final Runnable pollTask = new Runnable() {
+
+        @Override
+        public void run() {
+            int count = 0;
+            try {
+                count = dispatch();
+            } catch (RuntimeException e) {
+                log.error("Exception: ", e);
+            }
+            // a full batch means more notifications are waiting
+            schedule(this, count >= settings.getBatchSize() ? 0 : settings.getPollInterval());
+        }
+    };
+
+    /** True while a wake up is queued, the wake ups of a burst of state changes run one poll. */
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    /** Polls the outbox once, without scheduling the next poll. */
+    private final Runnable wakeUpTask = new Runnable() {
+
+        @Override
+        public void run() {
+            // the state changes committed from now on are claimed by another wake up
+            wakeUpPending.set(false);
+            try {
+                dispatch();
+            } catch (RuntimeException e) {
+                log.error("Exception: ", e);
+            }
+        }
+    };
+
+    /** Extends the leases of the notifications held by this node. */
+    private final Runnable leaseTask = new Runnable() {
+
+        @Override
+        public void run() {
+            try {
+                Date leaseUntil = new Date(System.currentTimeMillis() + settings.getLeaseTimeout());
+                int count = stateChangeNotifyRepository.extendLeases(getNodeId() + "/%",
+                        StateChangeNotify.STATUS_SENDING, leaseUntil);
+                log.debug("Leases extended: {}", count);
+            } catch (RuntimeException e) {
+                log.error("Exception: ", e);
+            }
+        }
+    };
+
+    /** Advances the retry wheel, and claims the retries which are due. */
+    private final Runnable tickTask = new Runnable() {
+
+        @Override
+        public void run() {
+            try {
+                List<String> due = retries.advance(System.currentTimeMillis());
+                if (!due.isEmpty()) {
+                    log.debug("Retries due: {}", due.size());
+                    dispatchDue(due);
+                }
+            } catch (RuntimeException e) {
+                log.error("Exception: ", e);
+            }
+        }
+    };
+
+    /**
+     * Sets the settings.
+     *
+     * @param notifySettings the settings
+     */
+    public static void configure(NotifySettings notifySettings) {
+        settings = notifySettings;
+    }
+
+    /**
+     * Start the polls. The notifications which this node was sending when the
+     * process stopped are sent again, and the retry wheel is rebuilt from the
+     * notifications waiting for their next attempt.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        log.debug("IN - start");
+        try {
+            // the leases of the other nodes are reclaimed when they expire
+            int count = stateChangeNotifyRepository.releaseLeases(getNodeId() + "/%", StateChangeNotify.STATUS_SENDING,
+                    StateChangeNotify.STATUS_PENDING);
+            log.debug("Notifications to send again: {}", count);
+        } catch (RuntimeException e) {
+            log.error("Exception: ", e);
+        }
+        wakeUpPending.set(false);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("notify-dispatcher-");
+        threadFactory.setDaemon(true);
+        executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+        recorder.start(settings);
+        lanes.start(settings, stateChangeNotifyRepository);
+        journal.start(settings, stateChangeNotifyRepository);
+        retries.start(settings, stateChangeNotifyRepository);
+        executor.scheduleWithFixedDelay(tickTask, settings.getRetryTick(), settings.getRetryTick(),
+                TimeUnit.MILLISECONDS);
+        CustomizableThreadFactory leaseThreadFactory = new CustomizableThreadFactory("notify-lease-");
+        leaseThreadFactory.setDaemon(true);
+        leaseExecutor = new ScheduledThreadPoolExecutor(1, leaseThreadFactory);
+        // a lease is extended twice before it expires
+        long leaseRenewal = Math.max(1, settings.getLeaseTimeout() / 3);
+        leaseExecutor.scheduleWithFixedDelay(leaseTask, leaseRenewal, leaseRenewal, TimeUnit.MILLISECONDS);
+        schedule(pollTask, 0);
+        log.debug("OUT - start");
+    }
+
+    /**
+     * Stop the polls.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        log.debug("IN - stop");
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if (leaseExecutor != null) {
+            leaseExecutor.shutdownNow();
+            leaseExecutor = null;
+        }
+        // the notifications not sent yet are sent again at the next start
+        lanes.stop();
+        recorder.stop();
+        retries.stop();
+        journal.stop();
+        log.debug("OUT - stop");
+    }
+
+    @Override
+    public void wakeUp() {
+        ScheduledExecutorService current = executor;
+        if (current == null || !wakeUpPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            current.execute(wakeUpTask);
+        } catch (RejectedExecutionException e) {
+            wakeUpPending.set(false);
+            log.debug("Dispatcher is stopped");
+        }
+    }
+
+    @Override
+    public int dispatch() {
+        log.debug("IN - dispatch");
+        // claim a batch with a lease, the other nodes skip the claimed rows until the lease expires
+        String owner = nextOwner();
+        long now = System.currentTimeMillis();
+        Date leaseUntil = new Date(now + settings.getLeaseTimeout());
+        // the journaled notifications are written first, the claim takes the due ones in order
+        int drained = journal.drain();
+        // the claimed rows wait in the lanes, a claim takes no more than their room
+        int limit = Math.min(settings.getBatchSize(), lanes.getRoom());
+        int claimed = limit <= 0 ? 0 : stateChangeNotifyRepository.claim(owner, new Date(now), leaseUntil, limit);
+        List<StateChangeNotify> notifies = claimed == 0 ? Collections.<StateChangeNotify>emptyList()
+                : stateChangeNotifyRepository.findClaimed(owner, StateChangeNotify.STATUS_SENDING);
+        int sent = send(notifies);
+        log.debug("OUT - dispatch");
+        return Math.max(sent, drained);
+    }
+
+    /**
+     * Claim the notifications whose retry is due by their ids, and send them.
+     * The ids which are not claimed, i.e: waiting for an earlier notification of
+     * their order, or beyond the room of the lanes, are claimed by a later poll.
+     *
+     * @param due the ids of the notifications whose retry is due
+     */
+    private void dispatchDue(List<String> due) {
+        int from = 0;
+        while (from < due.size()) {
+            int limit = Math.min(settings.getBatchSize(), lanes.getRoom());
+            if (limit <= 0) {
+                log.debug("Lanes are full, {} retries are claimed by a later poll", due.size() - from);
+                return;
+            }
+            List<String> ids = due.subList(from, Math.min(due.size(), from + limit));
+            from += ids.size();
+            String owner = nextOwner();
+            long now = System.currentTimeMillis();
+            Date leaseUntil = new Date(now + settings.getLeaseTimeout());
+            if (stateChangeNotifyRepository.claimIds(owner, ids, new Date(now), leaseUntil) > 0) {
+                send(stateChangeNotifyRepository.findClaimed(owner, StateChangeNotify.STATUS_SENDING));
+            }
+        }
+    }
+
+    /**
+     * Coalesce the claimed notifications, render their payloads and queue them
+     * on the lanes or in the batches.
+     *
+     * @param notifies the claimed notifications, by next attempt time
+     * @return the number of claimed notifications
+     */
+    private int send(List<StateChangeNotify> notifies) {
+        if (notifies.isEmpty()) {
+            return 0;
+        }
+        List<StateChangeNotify> deliveries = notifies;
+        if (settings.getCoalesceWindow() > 0) {
+            deliveries = coalesce(notifies);
+            stateChangeNotifyRepository.save(notifies);
+        }
+
+        // the body of an event is rendered once for all its listeners of the same payload
+        Map<String, NotifyPayload> payloads = new HashMap<String, NotifyPayload>();
+        for (StateChangeNotify stateChangeNotify : deliveries) {
+            String payloadKey = getEventKey(stateChangeNotify) + "@" + stateChangeNotify.getPayload();
+            NotifyPayload payload = payloads.get(payloadKey);
+            if (payload == null) {
+                payload = getPayloadFormat(stateChangeNotify).render(stateChangeNotify);
+                if (payload != null) {
+                    payloads.put(payloadKey, payload);
+                }
+            }
+            if (payload != null && ListenerInfo.DELIVERY_BATCH.equals(stateChangeNotify.getDelivery())) {
+                addToBatch(stateChangeNotify, payload);
+            } else {
+                deliver(stateChangeNotify, payload);
+            }
+        }
+        scheduleBatches();
+        log.debug("Dispatched {} notifications, {} coalesced", deliveries.size(), notifies.size() - deliveries.size());
+        return notifies.size();
+    }
+
+    @Override
+    public void onDelivered(StateChangeNotify stateChangeNotify, String error) {
+        log.debug("IN - onDelivered");
+        int attempts = stateChangeNotify.getAttempts() == null ? 1 : stateChangeNotify.getAttempts() + 1;
+        stateChangeNotify.setAttempts(attempts);
+        stateChangeNotify.setLastError(error);
+        if (error == null) {
+            stateChangeNotify.setStatus(StateChangeNotify.STATUS_SENT);
+            stateChangeNotify.setNextAttemptTime(null);
+        } else if (attempts >= settings.getMaxAttempts()) {
+            log.warn("Notification {} failed after {} attempts: {}", stateChangeNotify.getTriggerId(), attempts,
+                    error);
+            stateChangeNotify.setStatus(StateChangeNotify.STATUS_FAILED);
+            stateChangeNotify.setNextAttemptTime(null);
+        } else {
+            stateChangeNotify.setStatus(StateChangeNotify.STATUS_PENDING);
+            stateChangeNotify.setNextAttemptTime(
+                    new Date(System.currentTimeMillis() + NotifyRetries.getDelay(settings, attempts)));
+        }
+        int updated = stateChangeNotifyRepository.updateLeased(stateChangeNotify.getTriggerId(),
+                stateChangeNotify.getLeaseOwner(), StateChangeNotify.STATUS_SENDING, stateChangeNotify.getStatus(),
+                attempts, error, stateChangeNotify.getLastStatus(), stateChangeNotify.getNextAttemptTime());
+        if (updated == 0) {
+            // the lease expired and another claim owns the notification, it records its own result
+            log.warn("Lease of notification {} is lost, its result is not written", stateChangeNotify.getTriggerId());
+            log.debug("OUT - onDelivered");
+            return;
+        }
+        if (StateChangeNotify.STATUS_PENDING.equals(stateChangeNotify.getStatus())) {
+            retries.schedule(stateChangeNotify);
+            log.debug("OUT - onDelivered");
+            return;
+        }
+        if (StateChangeNotify.STATUS_FAILED.equals(stateChangeNotify.getStatus())) {
+            deadLetterRepository.save(toDeadLetter(stateChangeNotify));
+        }
+        // the next notification of the order to the callback waited for this one
+        wakeUp();
+        log.debug("OUT - onDelivered");
+    }
+
+    @Override
+    public boolean isJournalEnabled() {
+        return journal.isEnabled();
+    }
+
+    @Override
+    public boolean journal(List<StateChangeNotify> notifies) {
+        return journal.append(notifies);
+    }
+
+    @Override
+    public Map<String, Date> getJournaledWindows(String orderId, Date now) {
+        return journal.getJournaledWindows(orderId, now);
+    }
+
+    @Override
+    public long getCoalesceWindow() {
+        return settings.getCoalesceWindow();
+    }
+
+    @Override
+    public int getReplayRate() {
+        return settings.getReplayRate();
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        return lanes.getQueueDepths();
+    }
+
+    @Override
+    public long getDropped() {
+        return lanes.getDropped();
+    }
+
+    @Override
+    public long getSpilled() {
+        return lanes.getSpilled();
+    }
+
+    /**
+     * Gets the owner of a new claim.
+     *
+     * @return the node id and the number of the claim
+     */
+    private String nextOwner() {
+        return getNodeId() + "/" + claims.incrementAndGet();
+    }
+
+    /**
+     * Gets the id of this node, the prefix of the owners of its claims.
+     *
+     * @return the node id of the settings, or the host name
+     */
+    private String getNodeId() {
+        if (nodeId == null) {
+            nodeId = settings.resolveNodeId();
+        }
+        return nodeId;
+    }
+
+    /**
+     * Create the dead letter of a failed notification.
+     *
+     * @param stateChangeNotify the notification
+     * @return the dead letter
+     */
+    private static DeadLetter toDeadLetter(StateChangeNotify stateChangeNotify) {
+        DeadLetter deadLetter = new DeadLetter();
+        deadLetter.setTriggerId(stateChangeNotify.getTriggerId());
+        deadLetter.setOrderId(
+                stateChangeNotify.getTriggerData() == null ? null : stateChangeNotify.getTriggerData().getId());
+        deadLetter.setUserId(stateChangeNotify.getUserId());
+        deadLetter.setCallback(stateChangeNotify.getCallback());
+        deadLetter.setHost(HostQueue.getHost(stateChangeNotify.getCallback()));
+        deadLetter.setAttempts(stateChangeNotify.getAttempts());
+        deadLetter.setLastError(stateChangeNotify.getLastError());
+        deadLetter.setHttpStatus(stateChangeNotify.getLastStatus());
+        deadLetter.setFailedTime(new Date());
+        return deadLetter;
+    }
+
+    /**
+     * Coalesce the notifications of an order to a listener: the latest one is
+     * sent with the states of the others, which are not sent.
+     *
+     * @param notifies the claimed notifications, by next attempt time
+     * @return the notifications to send
+     */
+    private static List<StateChangeNotify> coalesce(List<StateChangeNotify> notifies) {
+        Map<String, StateChangeNotify> latest = new LinkedHashMap<String, StateChangeNotify>();
+        for (StateChangeNotify stateChangeNotify : notifies) {
+            String orderId = stateChangeNotify.getTriggerData() == null ? null
+                    : stateChangeNotify.getTriggerData().getId();
+            String key = orderId == null ? stateChangeNotify.getTriggerId()
+                    : orderId + "@" + stateChangeNotify.getUserId() + "@" + stateChangeNotify.getCallback();
+            StateChangeNotify previous = latest.get(key);
+            if (previous == null) {
+                latest.put(key, stateChangeNotify);
+                continue;
+            }
+            StateChangeNotify older = previous;
+            StateChangeNotify newer = stateChangeNotify;
+            if (getSequence(older) > getSequence(newer)) {
+                older = stateChangeNotify;
+                newer = previous;
+            }
+            newer.setCoalescedStates(joinStates(older.getCoalescedStates(), older.getState(),
+                    newer.getCoalescedStates()));
+            older.setStatus(StateChangeNotify.STATUS_COALESCED);
+            older.setNextAttemptTime(null);
+            latest.put(key, newer);
+        }
+        return new ArrayList<StateChangeNotify>(latest.values());
+    }
+
+    private static long getSequence(StateChangeNotify stateChangeNotify) {
+        return stateChangeNotify.getSequence() == null ? 0L : stateChangeNotify.getSequence();
+    }
+
+    private static String joinStates(String... states) {
+        StringBuilder joined = new StringBuilder();
+        for (String state : states) {
+            if (state == null || state.isEmpty()) {
+                continue;
+            }
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(state);
+        }
+        return joined.length() == 0 ? null : joined.toString();
+    }
+
+    /**
+     * Gets the key of the event of a notification: the notifications of one state
+     * change have the same order and the same trigger time.
+     *
+     * @param stateChangeNotify the notification
+     * @return the key
+     */
+    private static String getEventKey(StateChangeNotify stateChangeNotify) {
+        if (stateChangeNotify.getTriggerData() == null || stateChangeNotify.getTriggerData().getId() == null
+                || stateChangeNotify.getTriggerTime() == null) {
+            return stateChangeNotify.getTriggerId();
+        }
+        return stateChangeNotify.getTriggerData().getId() + "@" + stateChangeNotify.getTriggerTime().getTime() + "@"
+                + stateChangeNotify.getTriggerType() + "@" + stateChangeNotify.getCoalescedStates();
+    }
+
+    /**
+     * Gets the payload format of the listener of a notification, an invalid
+     * payload is the full payload.
+     *
+     * @param stateChangeNotify the notification
+     * @return the compiled format
+     */
+    private static PayloadFormat getPayloadFormat(StateChangeNotify stateChangeNotify) {
+        try {
+            return PayloadFormat.compile(stateChangeNotify.getPayload());
+        } catch (IllegalArgumentException e) {
+            return PayloadFormat.FULL;
+        }
+    }
+
+    /**
+     * Send a notification on the lane of its order, or at once when the
+     * dispatcher is stopped.
+     *
+     * @param stateChangeNotify info to notify.
+     * @param payload           the rendered event, null to serialize the
+     *                          notification
+     */
+    private void deliver(final StateChangeNotify stateChangeNotify, final NotifyPayload payload) {
+        if (!lanes.isStarted()) {
+            sender.sendNotify(stateChangeNotify, payload);
+            return;
+        }
+        String orderId = stateChangeNotify.getTriggerData() == null ? null
+                : stateChangeNotify.getTriggerData().getId();
+        String laneKey = orderId == null ? String.valueOf(stateChangeNotify.getTriggerId()) : orderId;
+        lanes.submit(laneKey, stateChangeNotify.getCallback(), Collections.singletonList(stateChangeNotify),
+                new Callable<Future<?>>() {
+
+                    @Override
+                    public Future<?> call() {
+                        return sender.sendNotify(stateChangeNotify, payload);
+                    }
+                });
+    }
+
+    /**
+     * Buffer a notification in the batch of its callback, the batch is sent when
+     * it is full.
+     *
+     * @param stateChangeNotify the notification
+     * @param payload           the rendered event
+     */
+    private void addToBatch(StateChangeNotify stateChangeNotify, NotifyPayload payload) {
+        String key = stateChangeNotify.getUserId() + "@" + stateChangeNotify.getCallback();
+        CallbackBatch batch = batches.get(key);
+        if (batch == null) {
+            batch = new CallbackBatch(stateChangeNotify.getUserId(), stateChangeNotify.getCallback(),
+                    settings.getCallbackBatchMaxSize());
+            batches.put(key, batch);
+        }
+        batch.add(stateChangeNotify, payload.toBytes(stateChangeNotify.getTriggerId()));
+        if (batch.isFull()) {
+            flush(batch);
+        }
+    }
+
+    /**
+     * Schedule the flush of the batches which are not full, or flush them at once
+     * when the dispatcher is stopped.
+     */
+    private void scheduleBatches() {
+        for (final CallbackBatch batch : batches.values()) {
+            if (batch.isEmpty() || batch.isFlushScheduled()) {
+                continue;
+            }
+            if (executor == null) {
+                flush(batch);
+                continue;
+            }
+            batch.setFlushScheduled(true);
+            schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        flush(batch);
+                    } catch (RuntimeException e) {
+                        log.error("Exception: ", e);
+                    }
+                }
+            }, settings.getCallbackBatchMaxDelay());
+        }
+    }
+
+    /**
+     * Send the buffered notifications of a callback on the lane of the callback,
+     * or at once when the dispatcher is stopped.
+     *
+     * @param batch the batch
+     */
+    private void flush(final CallbackBatch batch) {
+        if (batch.isEmpty()) {
+            batch.setFlushScheduled(false);
+            return;
+        }
+        final List<StateChangeNotify> taken = new ArrayList<StateChangeNotify>();
+        final byte[] body = batch.take(taken);
+        if (!lanes.isStarted()) {
+            sender.sendBatch(batch, taken, body, settings);
+            return;
+        }
+        lanes.submit(batch.getCallback(), batch.getCallback(), taken, new Callable<Future<?>>() {
+
+            @Override
+            public Future<?> call() {
+                return sender.sendBatch(batch, taken, body, settings);
+            }
+        });
+    }
+
+    private void schedule(Runnable task, long delay) {
+        ScheduledExecutorService current = executor;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Dispatcher is stopped");
+        }
+    }
+}
@@ -1,29 +1,30 @@
 package com.tmavn.sample.service.impl;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StringUtils;
-import org.springframework.util.concurrent.ListenableFuture;
-import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import com.tmavn.sample.common.AsyncRestClient;
-import com.tmavn.sample.common.Constant;
-import com.tmavn.sample.common.Utils;
 import com.tmavn.sample.entity.ListenerInfo;
 import com.tmavn.sample.entity.OrderData;
 import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.repository.OrderDataRepository;
 import com.tmavn.sample.repository.StateChangeNotifyRepository;
 import com.tmavn.sample.service.ListenerInfoService;
+import com.tmavn.sample.service.StateChangeDispatcher;
 import com.tmavn.sample.service.StateChangeService;
+import com.tmavn.sample.service.StateChangeStream;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -37,44 +38,17 @@ public class StateChangeServiceImpl implements StateChangeService {
     @Autowired
     private StateChangeNotifyRepository stateChangeNotifyRepository;
 
-    /**
-     * Send notification asynchronously using AsyncRestTemplate.
-     * 
-     * @param listenerInfo      listener with registered callback to notify.
-     * @param stateChangeNotify info to notify.
-     */
-    @SuppressWarnings("unchecked")
-    private void sendNotify(ListenerInfo listenerInfo, StateChangeNotify stateChangeNotify) {
-        log.debug("IN - sendNotify");
-        String url = listenerInfo.getCallback();
-
-        log.debug("POST - Trigger state change {}", stateChangeNotify);
-        Map<String, String> header = new HashMap<String, String>();
-        header.put(Constant.HEADER_USER_ID, listenerInfo.getUserId());
-        header.put(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_UTF8_VALUE);
-        log.debug("POST with to {} with body: {}", url, Utils.parseObjectToJson(stateChangeNotify));
-
-        ListenableFuture<ResponseEntity<Object>> future = (ListenableFuture<ResponseEntity<Object>>) AsyncRestClient
-                .getInstance().sendPostRequestOutside(url, header, null, null, stateChangeNotify, Object.class);
-
-
-        ListenableFutureCallback<ResponseEntity<Object>> callback = new ListenableFutureCallback<ResponseEntity<Object>>() {
+    @Autowired
+    private OrderDataRepository orderDataRepository;
 
-            @Override
-            public void onSuccess(ResponseEntity<Object> result) {
-                log.debug("POST - status {}. Success received response: {}", result.getStatusCode(),
-                        Utils.parseObjectToJson(result.getBody()));
-            }
+    @Autowired
+    private StateChangeDispatcher stateChangeDispatcher;
 
-            @Override
-            public void onFailure(Throwable ex) {
-                log.debug("POST - Failure: {}", ex.getLocalizedMessage());
-            }
+    @Autowired
+    private StateChangeStream stateChangeStream;
 
-        };
-        future.addCallback(callback);
-        log.debug("OUT - sendNotify");
-    }
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     @Override
     public void notifyStateChange(String userId, OrderData newData, OrderData oldData) {
@@ -86,25 +60,206 @@ public class StateChangeServiceImpl implements StateChangeService {
             return;
         }
 
-        // Find all user's register listeners
-        Iterable<ListenerInfo> listenerInfos = listenerInfoService.findByUserId(userId);
+        // Find the user's listeners whose query selects the new state
+        Iterable<ListenerInfo> listenerInfos = listenerInfoService.findByUserIdAndState(userId,
+                newData.getState());
 
+        // every state change is numbered, the stream counts the ones without listener too
+        Date now = new Date();
+        long sequence = getNextSequence(newData);
+
+        // one row per listener, inserted in one batch
+        Map<String, Date> windows = null;
+        List<StateChangeNotify> stateChangeNotifies = new ArrayList<StateChangeNotify>();
         for (ListenerInfo listenerInfo : listenerInfos) {
-            // check if the state of order is suitable for notify
-            if (isValidForNotifyStateChange(listenerInfo, newData)) {
-
-                // notify state change
-                StateChangeNotify stateChangeNotify = new StateChangeNotify();
-                stateChangeNotify.setTriggerTime(new Date());
-                stateChangeNotify.setTriggerType(StateChangeNotify.TYPE_STATE_CHANGE_NOTIFY);
-                stateChangeNotify.setTriggerData(newData);
-                StateChangeNotify createdStateChange = stateChangeNotifyRepository.save(stateChangeNotify);
-                sendNotify(listenerInfo, createdStateChange);
+            // write the notification to the outbox, the dispatcher sends it
+            StateChangeNotify stateChangeNotify = new StateChangeNotify();
+            stateChangeNotify.setTriggerTime(now);
+            stateChangeNotify.setTriggerType(StateChangeNotify.TYPE_STATE_CHANGE_NOTIFY);
+            stateChangeNotify.setOrderSnapshot(newData);
+            stateChangeNotify.setUserId(listenerInfo.getUserId());
+            stateChangeNotify.setCallback(listenerInfo.getCallback());
+            stateChangeNotify.setDelivery(listenerInfo.getDelivery());
+            stateChangeNotify.setPayload(listenerInfo.getPayload());
+            stateChangeNotify.setStatus(StateChangeNotify.STATUS_PENDING);
+            stateChangeNotify.setAttempts(0);
+            stateChangeNotify.setNextAttemptTime(now);
+            if (stateChangeNotifies.isEmpty()) {
+                windows = getCoalesceWindows(newData, now);
+            }
+            stateChangeNotify.setSequence(sequence);
+            if (windows != null) {
+                Date windowEnd = windows.get(listenerInfo.getCallback());
+                stateChangeNotify.setNextAttemptTime(windowEnd != null ? windowEnd : windows.get(null));
+            }
+            stateChangeNotifies.add(stateChangeNotify);
+        }
+        if (!stateChangeNotifies.isEmpty()) {
+            if (stateChangeDispatcher.isJournalEnabled()) {
+                journal(stateChangeNotifies);
+            } else {
+                stateChangeNotifyRepository.save(stateChangeNotifies);
+                log.debug("Saved {} notifications", stateChangeNotifies.size());
+                wakeUpDispatcher();
             }
         }
+        publishToStream(userId, newData, now, sequence);
         log.debug("OUT - notifyStateChange");
     }
 
+    /**
+     * Gets the sequence number of the next state change of an order. The
+     * sequence is incremented on the row of the order, which stays locked until
+     * the transaction of the order ends: the concurrent state changes of an order
+     * are numbered one after another, the journaled ones too.
+     *
+     * @param orderData the order
+     * @return the sequence number, from 1
+     */
+    private long getNextSequence(OrderData orderData) {
+        if (orderData.getId() == null || orderDataRepository.incrementStateSequence(orderData.getId()) == 0) {
+            return 1L;
+        }
+        Long sequence = orderDataRepository.findStateSequence(orderData.getId());
+        return sequence == null ? 1L : sequence;
+    }
+
+    /**
+     * Gets the end of the coalescing windows of an order: a notification waits
+     * until the end of the window of its listener, so that the dispatcher sends
+     * it with the other notifications of the window as one.
+     *
+     * @param orderData the order
+     * @param now       the time of the state change
+     * @return the end of the window by callback, the end of a new window with
+     *         the key null; or null if the coalescing is disabled. The windows
+     *         of the journaled notifications not written to the table yet are
+     *         included.
+     */
+    private Map<String, Date> getCoalesceWindows(OrderData orderData, Date now) {
+        long window = stateChangeDispatcher.getCoalesceWindow();
+        if (window <= 0) {
+            return null;
+        }
+        Map<String, Date> windows = new HashMap<String, Date>();
+        windows.put(null, new Date(now.getTime() + window));
+        if (orderData.getId() != null) {
+            for (StateChangeNotify waiting : stateChangeNotifyRepository.findWaiting(orderData.getId(),
+                    StateChangeNotify.STATUS_PENDING, now)) {
+                windows.put(waiting.getCallback(), waiting.getNextAttemptTime());
+            }
+            if (stateChangeDispatcher.isJournalEnabled()) {
+                for (Map.Entry<String, Date> journaled : stateChangeDispatcher
+                        .getJournaledWindows(orderData.getId(), now).entrySet()) {
+                    if (!windows.containsKey(journaled.getKey())) {
+                        windows.put(journaled.getKey(), journaled.getValue());
+                    }
+                }
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * Append the notifications to the journal of the dispatcher when the
+     * transaction of the order is committed, or at once without transaction: the
+     * journal is not rolled back with the order.
+     *
+     * @param stateChangeNotifies the notifications of the state change
+     */
+    private void journal(final List<StateChangeNotify> stateChangeNotifies) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            appendToJournal(stateChangeNotifies);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCommit() {
+                appendToJournal(stateChangeNotifies);
+            }
+        });
+    }
+
+    /**
+     * Append the notifications to the journal, or insert them in a new
+     * transaction when the journal write fails: the transaction of the order is
+     * already committed.
+     *
+     * @param stateChangeNotifies the notifications of the state change
+     */
+    private void appendToJournal(final List<StateChangeNotify> stateChangeNotifies) {
+        if (stateChangeDispatcher.journal(stateChangeNotifies)) {
+            log.debug("Journaled {} notifications", stateChangeNotifies.size());
+        } else {
+            log.warn("The journal write failed, insert {} notifications of order {}", stateChangeNotifies.size(),
+                    stateChangeNotifies.get(0).getTriggerData().getId());
+            try {
+                TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+                transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+                transaction.execute(new TransactionCallbackWithoutResult() {
+
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        stateChangeNotifyRepository.save(stateChangeNotifies);
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.error("Lost {} notifications of order {}: ", stateChangeNotifies.size(),
+                        stateChangeNotifies.get(0).getTriggerData().getId(), e);
+                return;
+            }
+        }
+        stateChangeDispatcher.wakeUp();
+    }
+
+    /**
+     * Publish the state change to the stream when the transaction of the order is
+     * committed, or at once without transaction.
+     *
+     * @param userId   the user of the order
+     * @param newData  the order
+     * @param now      the time of the state change
+     * @param sequence the sequence of the state change
+     */
+    private void publishToStream(String userId, OrderData newData, Date now, long sequence) {
+        final StateChangeNotify event = new StateChangeNotify();
+        event.setTriggerTime(now);
+        event.setTriggerType(StateChangeNotify.TYPE_STATE_CHANGE_NOTIFY);
+        event.setOrderSnapshot(newData);
+        event.setSequence(sequence);
+        event.setUserId(userId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            stateChangeStream.publish(event);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCommit() {
+                stateChangeStream.publish(event);
+            }
+        });
+    }
+
+    /**
+     * Wake up the dispatcher when the transaction of the notifications is
+     * committed, or at once without transaction.
+     */
+    private void wakeUpDispatcher() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            stateChangeDispatcher.wakeUp();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCommit() {
+                stateChangeDispatcher.wakeUp();
+            }
+        });
+    }
+
     /**
      * Check if state is changed.
      * 
@@ -134,67 +289,4 @@ public class StateChangeServiceImpl implements StateChangeService {
         log.debug("OUT - isStateChanged");
         return true;
     }
-
-    /**
-     * Check if the new state of order match with state that user want to receive
-     * notification (in <b>query</b>).<br>
-     * <b>Query</b> will have pattern:
-     * 
-     * <pre>
-     * query = "state=&lt;statusValue&gt;,&lt;statusValue&gt;"
-     * </pre>
-     * 
-     * i.e: query="Scheduled,Processing".<br>
-     * The following conditions will return <i>true</i> to make notify:<br>
-     * - The query of @param listenerInfo have empty value. Ex: query=""<br>
-     * - The query of @param listenerInfo have value but have no status value. Ex:
-     * query="status="<br>
-     * - The query of @param listenerInfo contains status value that user want to
-     * receive notification (match with new state).<br>
-     * 
-     * @param listenerInfo user registered listener info
-     * @param newData      new order data after it's state was changed.
-     * @return true if valid for perform notify state change, else false.
-     */
-    private boolean isValidForNotifyStateChange(ListenerInfo listenerInfo, OrderData newData) {
-        log.debug("IN - isValidForNotifyStateChange");
-        String newState = newData.getState();
-        log.debug("Check state - query: {}, new status: {}", listenerInfo.getQuery(), newData.getState());
-        // check if have "state" key
-        String query = listenerInfo.getQuery();
-        if (query.contains("state=")) {
-
-            String regex = "^(state=)(.*)$";
-            Pattern pattern = Pattern.compile(regex);
-            Matcher matcher = pattern.matcher(query);
-            matcher.find();
-            if (!StringUtils.isEmpty(matcher.group(2))) {
-                String foundString = matcher.group(2);
-                log.debug("Regex found: {}", foundString);
-                // check if new state match with state which user want to receive notification
-                // foundString was validated with JSON schema for legal status only
-                if (foundString.contains(newState)) {
-                    log.debug("Check state - TRUE - Valid to notify");
-                    log.debug("OUT - isValidForNotifyStateChange");
-                    return true;
-                } else {
-                    // have status values but not contain state that user want to receive
-                    // notification
-                    log.debug("Check state - FALSE - No status matched");
-                    log.debug("OUT - isValidForNotifyStateChange");
-                    return false;
-                }
-            } else {
-                // notify no matter what the state is
-                log.debug("Check state - TRUE - Notify for all status - 'state' with no 'status'");
-                log.debug("OUT - isValidForNotifyStateChange");
-                return true;
-            }
-        } else {
-            // notify no matter what the state is
-            log.debug("Check state - TRUE - Notify for all status - no 'state' detected");
-            log.debug("OUT - isValidForNotifyStateChange");
-            return true;
-        }
-    }
 }
@@ -0,0 +1,259 @@
+package com.tmavn.sample.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.tmavn.sample.common.ListenerQuery;
+import com.tmavn.sample.common.NotifyPayload;
+import com.tmavn.sample.common.NotifySettings;
+import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.service.StateChangeStream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pushes the state changes to the clients connected to the stream endpoint, as
+ * server-sent events, for the clients which can not expose a callback.<br>
+ * Each event has an id made of the node id and a number greater than the
+ * numbers of the previous events, also of the previous runs, and the last
+ * events are kept in a history: a client which reconnects with the id of the
+ * last event it received gets the events it missed, as long as they are in the
+ * history. The events of a connection wait in a bounded buffer and are written
+ * by the stream threads; a connection whose buffer is full is closed, and its
+ * client resumes from its last event id.<br>
+ * The stream is local to the node: it carries the state changes made on this
+ * node only, and the history and the event ids are those of this node. The
+ * requests of a user, the changes of its orders and its stream, must be routed
+ * to the same node, i.e: by the UserID header. A client which reconnects with
+ * an event id of another node, or older than the history, can not know which
+ * events it missed: it gets a reset event first, and reads its orders again.
+ */
+@Service
+@Slf4j
+public class StateChangeStreamImpl implements StateChangeStream {
+
+    /** The settings, read from sample.conf by ApplicationInit. */
+    private static volatile NotifySettings settings = new NotifySettings();
+
+    /** The number of threads which write the events to the connections. */
+    private static final int WRITER_THREADS = 2;
+
+    /** The reason of the reset event of an event id which is not of this node. */
+    static final String RESET_UNKNOWN_ID = "unknownId";
+
+    /** The reason of the reset event of an event id older than the history. */
+    static final String RESET_EXPIRED_ID = "expiredId";
+
+    /** The last events, oldest first, guarded by itself with the id of the next event. */
+    private final ArrayDeque<StreamConnection.Event> history = new ArrayDeque<StreamConnection.Event>();
+
+    /** The id of the next event, above the ids of the previous runs. */
+    private long nextId = System.currentTimeMillis() * 1000;
+
+    /** The node id and ':', the prefix of the event ids. */
+    private volatile String idPrefix;
+
+    private final Set<StreamConnection> connections = ConcurrentHashMap.newKeySet();
+
+    private ThreadPoolExecutor writers;
+
+    /**
+     * Sets the settings.
+     *
+     * @param notifySettings the settings
+     */
+    public static void configure(NotifySettings notifySettings) {
+        settings = notifySettings;
+    }
+
+    /**
+     * Start the stream threads.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("notify-stream-");
+        threadFactory.setDaemon(true);
+        writers = new ThreadPoolExecutor(WRITER_THREADS, WRITER_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+    }
+
+    /**
+     * Stop the stream threads and close the connections.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (writers != null) {
+            writers.shutdownNow();
+            writers = null;
+        }
+        for (StreamConnection connection : connections) {
+            close(connection);
+        }
+    }
+
+    @Override
+    public SseEmitter subscribe(String userId, ListenerQuery query, String lastEventId) {
+        log.debug("IN - subscribe");
+        final SseEmitter emitter = new SseEmitter((long) settings.getStreamTimeout());
+        final StreamConnection connection;
+        synchronized (history) {
+            // the events are published under the same lock, none is missed or sent twice
+            List<StreamConnection.Event> replay = new ArrayList<StreamConnection.Event>();
+            if (lastEventId != null && !lastEventId.trim().isEmpty()) {
+                Long lastId = parseEventId(lastEventId);
+                // the events after the last one received are all in the history
+                long firstId = history.isEmpty() ? nextId : history.peekFirst().getId();
+                if (lastId == null) {
+                    replay.add(StreamConnection.Event.reset(RESET_UNKNOWN_ID));
+                } else if (lastId < firstId - 1) {
+                    replay.add(StreamConnection.Event.reset(RESET_EXPIRED_ID));
+                } else {
+                    for (StreamConnection.Event event : history) {
+                        if (event.getId() > lastId && StreamConnection.matches(userId, query, event)) {
+                            replay.add(event);
+                        }
+                    }
+                }
+            }
+            connection = new StreamConnection(getIdPrefix(), userId, query, emitter, settings.getStreamBufferSize(),
+                    replay);
+            connections.add(connection);
+            log.debug("Stream of {} resumed after {}, {} events to replay", userId, lastEventId, replay.size());
+        }
+        Runnable remove = new Runnable() {
+
+            @Override
+            public void run() {
+                connection.close();
+                connections.remove(connection);
+            }
+        };
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        scheduleWrite(connection);
+        log.debug("OUT - subscribe");
+        return emitter;
+    }
+
+    @Override
+    public void publish(StateChangeNotify stateChangeNotify) {
+        log.debug("IN - publish");
+        NotifyPayload payload = NotifyPayload.render(stateChangeNotify);
+        if (payload == null) {
+            log.debug("OUT - publish");
+            return;
+        }
+        String data = new String(payload.toBytes(null), StandardCharsets.UTF_8);
+        List<StreamConnection> ready = new ArrayList<StreamConnection>();
+        synchronized (history) {
+            StreamConnection.Event event = new StreamConnection.Event(nextId++, stateChangeNotify.getUserId(),
+                    stateChangeNotify.getState(), data);
+            history.add(event);
+            while (history.size() > settings.getStreamHistorySize()) {
+                history.poll();
+            }
+            for (StreamConnection connection : connections) {
+                if (!connection.matches(event)) {
+                    continue;
+                }
+                if (connection.offer(event)) {
+                    ready.add(connection);
+                } else {
+                    log.debug("Stream buffer of {} is full, close the connection", stateChangeNotify.getUserId());
+                    close(connection);
+                }
+            }
+        }
+        for (StreamConnection connection : ready) {
+            scheduleWrite(connection);
+        }
+        log.debug("OUT - publish");
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Write the buffer of a connection on a stream thread, unless a stream
+     * thread writes it already.
+     *
+     * @param connection the connection
+     */
+    private void scheduleWrite(final StreamConnection connection) {
+        ThreadPoolExecutor current = writers;
+        if (current == null || !connection.startWrite()) {
+            return;
+        }
+        try {
+            current.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (!connection.write()) {
+                        connections.remove(connection);
+                    } else {
+                        // an event buffered after the end of the write
+                        scheduleWrite(connection);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Stream is stopped");
+        }
+    }
+
+    private void close(StreamConnection connection) {
+        connection.close();
+        connections.remove(connection);
+        connection.getEmitter().complete();
+    }
+
+    /**
+     * Gets the prefix of the event ids.
+     *
+     * @return the node id and ':'
+     */
+    private String getIdPrefix() {
+        if (idPrefix == null) {
+            idPrefix = settings.resolveNodeId() + ":";
+        }
+        return idPrefix;
+    }
+
+    /**
+     * Parse the id of the last event received by a client.
+     *
+     * @param lastEventId the Last-Event-ID header
+     * @return the number of the event, or null if the id is not an id of this
+     *         node
+     */
+    private Long parseEventId(String lastEventId) {
+        String id = lastEventId.trim();
+        String prefix = getIdPrefix();
+        if (!id.startsWith(prefix)) {
+            return null;
+        }
+        try {
+            return Long.valueOf(id.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
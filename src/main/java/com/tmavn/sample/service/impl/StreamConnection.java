@@ -0,0 +1,208 @@
+package com.tmavn.sample.service.impl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.tmavn.sample.common.ListenerQuery;
+import com.tmavn.sample.enums.OrderState;
+
+/**
+ * A client connected to the stream of the state changes, and the events
+ * waiting to be written to it.<br>
+ * The events are buffered by the publishing threads and written by one stream
+ * thread at a time, so a slow client does not block the state changes. When
+ * the buffer is full the connection is closed, and the client resumes from the
+ * id of the last event it received.
+ */
+class StreamConnection {
+
+    /** The name of the state change events. */
+    static final String EVENT_NAME = "stateChange";
+
+    /** The name of the event which tells the client to read its orders again, it missed events. */
+    static final String EVENT_RESET = "reset";
+
+    /** The node id and ':', the prefix of the event ids. */
+    private final String idPrefix;
+
+    private final String userId;
+
+    private final ListenerQuery query;
+
+    private final SseEmitter emitter;
+
+    private final int capacity;
+
+    private final ArrayDeque<Event> buffer = new ArrayDeque<Event>();
+
+    /** True while a stream thread writes the buffer. */
+    private boolean writing;
+
+    private boolean closed;
+
+    /**
+     * Create a connection.
+     *
+     * @param idPrefix the prefix of the event ids
+     * @param userId   the user of the client
+     * @param query    the query of the client
+     * @param emitter  the emitter of the response
+     * @param capacity the maximum number of buffered events
+     * @param replay   the events missed by the client, buffered whatever the
+     *                 capacity
+     */
+    StreamConnection(String idPrefix, String userId, ListenerQuery query, SseEmitter emitter, int capacity,
+            List<Event> replay) {
+        this.idPrefix = idPrefix;
+        this.userId = userId;
+        this.query = query;
+        this.emitter = emitter;
+        this.capacity = capacity;
+        buffer.addAll(replay);
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    /**
+     * Check if the client receives an event.
+     *
+     * @param event the event
+     * @return true if the event is of the user and selected by the query
+     */
+    boolean matches(Event event) {
+        return matches(userId, query, event);
+    }
+
+    /**
+     * Check if a client receives an event.
+     *
+     * @param userId the user of the client
+     * @param query  the query of the client
+     * @param event  the event
+     * @return true if the event is of the user and selected by the query
+     */
+    static boolean matches(String userId, ListenerQuery query, Event event) {
+        return userId.equals(event.userId) && query.matches(OrderState.fromValue(event.state));
+    }
+
+    /**
+     * Buffer an event.
+     *
+     * @param event the event
+     * @return false if the buffer is full or the connection is closed
+     */
+    synchronized boolean offer(Event event) {
+        if (closed || buffer.size() >= capacity) {
+            return false;
+        }
+        buffer.add(event);
+        return true;
+    }
+
+    /**
+     * Start to write the buffer, when no other thread writes it.
+     *
+     * @return true if the caller must call {@link #write()}
+     */
+    synchronized boolean startWrite() {
+        if (writing || closed || buffer.isEmpty()) {
+            return false;
+        }
+        writing = true;
+        return true;
+    }
+
+    /**
+     * Write the buffered events, until the buffer is empty.
+     *
+     * @return false if the client is gone
+     */
+    boolean write() {
+        while (true) {
+            Event event;
+            synchronized (this) {
+                event = buffer.poll();
+                if (event == null || closed) {
+                    writing = false;
+                    return !closed;
+                }
+            }
+            try {
+                SseEmitter.SseEventBuilder builder = SseEmitter.event();
+                if (event.id >= 0) {
+                    builder.id(idPrefix + event.id);
+                }
+                emitter.send(builder.name(event.name).data(event.data, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                // the client closed the connection, or the emitter completed
+                close();
+                synchronized (this) {
+                    writing = false;
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Close the connection, the buffered events are dropped.
+     */
+    synchronized void close() {
+        closed = true;
+        buffer.clear();
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * A state change sent to the stream.
+     */
+    static final class Event {
+
+        /** The id of the event, -1 for a reset event which keeps the last id of the client. */
+        private final long id;
+
+        private final String name;
+
+        private final String userId;
+
+        private final String state;
+
+        /** The json of the event, the body of a notification. */
+        private final String data;
+
+        Event(long id, String userId, String state, String data) {
+            this(id, EVENT_NAME, userId, state, data);
+        }
+
+        private Event(long id, String name, String userId, String state, String data) {
+            this.id = id;
+            this.name = name;
+            this.userId = userId;
+            this.state = state;
+            this.data = data;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        /**
+         * Create the reset event of a client whose missed events are not known.
+         *
+         * @param reason why the events are not known
+         * @return the event
+         */
+        static Event reset(String reason) {
+            return new Event(-1, EVENT_RESET, null, null, "{\"reason\":\"" + reason + "\"}");
+        }
+    }
+}
@@ -215,14 +215,6 @@ public class ApplicationInitTest {
     	assertEquals(test.toPattern(), "yyyy-MM-dd HH:mm:ss");
     }
 
-    @Test
-    public void testAsyncRestTemplate_success() {
-    	// Execute
-    	applicationInit.asyncRestTemplate();
-    	// Verifying
-    	// ...
-    }
-
     @Test
     public void testTransactionManager_success() throws Exception {
     	// Given
@@ -1,5 +1,10 @@
 package com.tmavn.sample;
 
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -7,10 +12,14 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer;
 import org.springframework.web.servlet.config.annotation.PathMatchConfigurer;
 
 import com.tmavn.sample.WebApplicationConfiguration;
+import com.tmavn.sample.common.JsonMapper;
 
 @PrepareForTest({ WebApplicationConfiguration.class, PathMatchConfigurer.class, ContentNegotiationConfigurer.class })
 public class WebApplicationConfigurationTest {
@@ -39,4 +48,17 @@ public class WebApplicationConfigurationTest {
         PowerMockito.when(configurer.favorPathExtension(Mockito.anyBoolean())).thenReturn(abc);
         webApplicationConfiguration.configureContentNegotiation(configurer);
     }
+
+    @Test
+    public void testExtendMessageConverters_success() {
+        MappingJackson2HttpMessageConverter jsonConverter = new MappingJackson2HttpMessageConverter();
+        List<HttpMessageConverter<?>> converters = new ArrayList<HttpMessageConverter<?>>();
+        converters.add(new StringHttpMessageConverter());
+        converters.add(jsonConverter);
+
+        webApplicationConfiguration.extendMessageConverters(converters);
+
+        assertSame(JsonMapper.getMapper(), jsonConverter.getObjectMapper());
+        assertSame(JsonMapper.getMapper(), webApplicationConfiguration.objectMapper());
+    }
 }
@@ -1,6 +1,9 @@
 package com.tmavn.sample.common;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
@@ -20,11 +23,15 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -34,11 +41,13 @@ import org.powermock.modules.agent.PowerMockAgent;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 import org.powermock.reflect.Whitebox;
 import org.slf4j.Logger;
+import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
 import org.springframework.util.concurrent.SettableListenableFuture;
 import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.HttpClientErrorException;
@@ -70,6 +79,7 @@ public class AsyncRestClientTest {
     public void init() throws Exception {
         MockitoAnnotations.initMocks(this);
         Whitebox.setInternalState(AsyncRestClient.class, "asyncRestTemplate", asyncRestTemplate);
+        Whitebox.setInternalState(AsyncRestClient.class, "inFlight", new Semaphore(1));
         asyncRestClient = AsyncRestClient.getInstance();
         asyncRestClientSpy = PowerMockito.spy(asyncRestClient);
         Whitebox.setInternalState(AsyncRestClient.class, "logger", loggerSpy);
@@ -1238,7 +1248,6 @@ public class AsyncRestClientTest {
 
         // init mock method
         ResponseEntity<Object> respEntity = new ResponseEntity<Object>(HttpStatus.OK);
-        PowerMockito.whenNew(AsyncRestTemplate.class).withAnyArguments().thenReturn(asyncRestTemplate);
         SettableListenableFuture<ResponseEntity<?>> futureMock = new SettableListenableFuture<>();
         futureMock.set(respEntity);
         PowerMockito.doReturn(futureMock).when(asyncRestTemplate).exchange(any(), any(), any(), eq(Object.class));
@@ -1522,4 +1531,94 @@ public class AsyncRestClientTest {
 
         verify(loggerSpy, times(1)).error(Mockito.anyString(), any(Throwable.class));
     }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testDoSendRequestWithDataReleasePermitOnResponse() throws Exception {
+        // init mock data
+        String url = "http://localhost/mockUrl";
+        HttpHeaders headers = new HttpHeaders();
+
+        // init mock method
+        SettableListenableFuture<ResponseEntity<?>> futureMock = new SettableListenableFuture<>();
+        PowerMockito.doReturn(futureMock).when(asyncRestTemplate).exchange(any(), any(), any(), eq(Object.class));
+
+        // execute test method
+        Whitebox.invokeMethod(asyncRestClient, "doSendRequestWithDataAsync", url, HttpMethod.POST, headers, null,
+                null, null, Object.class);
+        Semaphore inFlight = Whitebox.getInternalState(AsyncRestClient.class, "inFlight");
+        int waiting = inFlight.availablePermits();
+        futureMock.set(new ResponseEntity<Object>(HttpStatus.OK));
+
+        // verification
+        assertEquals(0, waiting);
+        assertEquals(1, inFlight.availablePermits());
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void testDoSendRequestWithDataBytesSentAsIs() throws Exception {
+        // init mock data
+        String url = "http://localhost/mockUrl";
+        byte[] bodyData = "{\"triggerId\":\"t1\"}".getBytes(StandardCharsets.UTF_8);
+
+        // init mock method
+        SettableListenableFuture<ResponseEntity<?>> futureMock = new SettableListenableFuture<>();
+        futureMock.set(new ResponseEntity<Object>(HttpStatus.OK));
+        PowerMockito.doReturn(futureMock).when(asyncRestTemplate).exchange(any(), any(), any(), eq(Object.class));
+
+        // execute test method
+        asyncRestClient.sendPostRequestOutside(url, null, null, null, bodyData, Object.class);
+
+        // verification
+        ArgumentCaptor<HttpEntity<?>> captor = ArgumentCaptor.forClass((Class) HttpEntity.class);
+        verify(asyncRestTemplate, times(1)).exchange(any(), eq(HttpMethod.POST), captor.capture(), eq(Object.class));
+        assertSame(bodyData, captor.getValue().getBody());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testDoSendRequestWithDataTooManyInFlightReturn503() throws Exception {
+        // init mock data
+        String url = "http://localhost/mockUrl";
+        HttpHeaders headers = new HttpHeaders();
+        Whitebox.setInternalState(AsyncRestClient.class, "inFlight", new Semaphore(0));
+
+        // execute test method
+        SettableListenableFuture<ResponseEntity<?>> future = Whitebox.invokeMethod(asyncRestClient,
+                "doSendRequestWithDataAsync", url, HttpMethod.POST, headers, null, null, null, Object.class);
+
+        // verification
+        ResponseEntity<Object> response = (ResponseEntity<Object>) future.get();
+        verifyNoMoreInteractions(asyncRestTemplate);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+    }
+
+    @Test
+    public void testConfigure() throws Exception {
+        HttpClientSettings settings = new HttpClientSettings();
+        settings.setMaxInFlight(5);
+        // the shared client of the other tests is kept open and restored
+        CloseableHttpAsyncClient original = Whitebox.getInternalState(AsyncRestClient.class, "httpClient");
+        AsyncRestTemplate originalTemplate = Whitebox.getInternalState(AsyncRestClient.class, "asyncRestTemplate");
+        Semaphore originalInFlight = Whitebox.getInternalState(AsyncRestClient.class, "inFlight");
+        Whitebox.setInternalState(AsyncRestClient.class, "httpClient", (CloseableHttpAsyncClient) null);
+        try {
+            AsyncRestClient.configure(settings);
+            CloseableHttpAsyncClient first = Whitebox.getInternalState(AsyncRestClient.class, "httpClient");
+            AsyncRestTemplate template = Whitebox.getInternalState(AsyncRestClient.class, "asyncRestTemplate");
+            AsyncRestClient.configure(settings);
+            Semaphore inFlight = Whitebox.getInternalState(AsyncRestClient.class, "inFlight");
+
+            assertTrue(template.getAsyncRequestFactory() instanceof HttpComponentsAsyncClientHttpRequestFactory);
+            assertNotSame(first, Whitebox.getInternalState(AsyncRestClient.class, "httpClient"));
+            assertEquals(5, inFlight.availablePermits());
+        } finally {
+            // the first client was closed by the second configure
+            AsyncRestClient.shutdown();
+            Whitebox.setInternalState(AsyncRestClient.class, "httpClient", original);
+            Whitebox.setInternalState(AsyncRestClient.class, "asyncRestTemplate", originalTemplate);
+            Whitebox.setInternalState(AsyncRestClient.class, "inFlight", originalInFlight);
+        }
+    }
 }
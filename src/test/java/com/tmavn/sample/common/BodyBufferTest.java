@@ -0,0 +1,93 @@
+/*
+ * Copyright©2017 NTT corp． All Rights Reserved．
+ */
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class BodyBufferTest {
+
+    @After
+    public void tearDown() {
+        BodyBuffer.setMaxSize(BodyBuffer.DEFAULT_MAX_SIZE);
+    }
+
+    @Test
+    public void testRead_small() throws Exception {
+        byte[] body = "{\"state\":\"Scheduled\"}".getBytes("UTF-8");
+
+        try (BodyBuffer buffer = BodyBuffer.read(new ByteArrayInputStream(body))) {
+            assertEquals(body.length, buffer.getLength());
+            assertEquals(BodyBuffer.BUFFER_SIZE, buffer.getData().length);
+            assertArrayEquals(body, Arrays.copyOf(buffer.getData(), buffer.getLength()));
+        }
+    }
+
+    @Test
+    public void testRead_larger() throws Exception {
+        byte[] body = new byte[BodyBuffer.BUFFER_SIZE * 3 + 1];
+        Arrays.fill(body, (byte) 'a');
+
+        try (BodyBuffer buffer = BodyBuffer.read(new ByteArrayInputStream(body))) {
+            assertEquals(body.length, buffer.getLength());
+            assertArrayEquals(body, Arrays.copyOf(buffer.getData(), buffer.getLength()));
+        }
+    }
+
+    @Test
+    public void testRead_empty() throws Exception {
+        try (BodyBuffer buffer = BodyBuffer.read(new ByteArrayInputStream(new byte[0]))) {
+            assertEquals(0, buffer.getLength());
+        }
+    }
+
+    @Test
+    public void testRead_maxSize() throws Exception {
+        BodyBuffer.setMaxSize(100);
+
+        try (BodyBuffer buffer = BodyBuffer.read(new ByteArrayInputStream(new byte[100]))) {
+            assertEquals(100, buffer.getLength());
+        }
+    }
+
+    @Test(expected = RequestBodyTooLargeException.class)
+    public void testRead_tooLarge() throws Exception {
+        BodyBuffer.setMaxSize(100);
+
+        BodyBuffer.read(new ByteArrayInputStream(new byte[101]));
+    }
+
+    @Test(expected = RequestBodyTooLargeException.class)
+    public void testRead_tooLargeGrown() throws Exception {
+        BodyBuffer.setMaxSize(BodyBuffer.BUFFER_SIZE * 2);
+
+        BodyBuffer.read(new ByteArrayInputStream(new byte[BodyBuffer.BUFFER_SIZE * 2 + 1]));
+    }
+
+    @Test
+    public void testClose_reuseBuffer() throws Exception {
+        BodyBuffer first = BodyBuffer.read(new ByteArrayInputStream(new byte[10]));
+        byte[] data = first.getData();
+        first.close();
+        first.close();
+
+        assertNull(first.getData());
+        try (BodyBuffer second = BodyBuffer.read(new ByteArrayInputStream(new byte[10]))) {
+            assertSame(data, second.getData());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetMaxSize_invalid() {
+        BodyBuffer.setMaxSize(0);
+    }
+}
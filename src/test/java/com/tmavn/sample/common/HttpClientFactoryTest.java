@@ -0,0 +1,92 @@
+/*
+ * Copyright©2017 NTT corp． All Rights Reserved．
+ */
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.Test;
+
+public class HttpClientFactoryTest {
+
+    @Test
+    public void testCreateHttpClient_success() throws Exception {
+        try (CloseableHttpClient httpClient = HttpClientFactory.createHttpClient(new HttpClientSettings())) {
+            assertNotNull(httpClient);
+        }
+    }
+
+    @Test
+    public void testCreateHttpAsyncClient_success() throws Exception {
+        try (CloseableHttpAsyncClient httpClient = HttpClientFactory.createHttpAsyncClient(new HttpClientSettings())) {
+            assertNotNull(httpClient);
+        }
+    }
+
+    @Test
+    public void testCreateRequestConfig_success() {
+        HttpClientSettings settings = new HttpClientSettings();
+        settings.setConnectTimeout(1000);
+        settings.setReadTimeout(2000);
+        settings.setConnectionRequestTimeout(3000);
+
+        RequestConfig requestConfig = HttpClientFactory.createRequestConfig(settings);
+
+        assertEquals(1000, requestConfig.getConnectTimeout());
+        assertEquals(2000, requestConfig.getSocketTimeout());
+        assertEquals(3000, requestConfig.getConnectionRequestTimeout());
+    }
+
+    @Test
+    public void testKeepAliveStrategy_header() {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.addHeader("Keep-Alive", "timeout=5, max=100");
+
+        ConnectionKeepAliveStrategy strategy = HttpClientFactory.createKeepAliveStrategy(30000);
+
+        assertEquals(5000, strategy.getKeepAliveDuration(response, new BasicHttpContext()));
+    }
+
+    @Test
+    public void testKeepAliveStrategy_default() {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+
+        ConnectionKeepAliveStrategy strategy = HttpClientFactory.createKeepAliveStrategy(30000);
+
+        assertEquals(30000, strategy.getKeepAliveDuration(response, new BasicHttpContext()));
+    }
+
+    @Test
+    public void testClose_success() throws Exception {
+        CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+
+        HttpClientFactory.close(httpClient);
+        HttpClientFactory.close(null);
+
+        verify(httpClient).close();
+    }
+
+    @Test
+    public void testClose_IOException() throws Exception {
+        CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+        doThrow(new IOException("closed")).when(httpClient).close();
+
+        HttpClientFactory.close(httpClient);
+
+        verify(httpClient).close();
+    }
+}
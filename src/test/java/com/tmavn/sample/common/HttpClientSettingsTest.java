@@ -0,0 +1,66 @@
+/*
+ * Copyright©2017 NTT corp． All Rights Reserved．
+ */
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class HttpClientSettingsTest {
+
+    @Test
+    public void testLoad_default() {
+        HttpClientSettings settings = HttpClientSettings.load(new Properties(), "rest.client.");
+
+        assertEquals(100, settings.getMaxTotal());
+        assertEquals(20, settings.getMaxPerRoute());
+        assertEquals(5000, settings.getConnectTimeout());
+        assertEquals(30000, settings.getReadTimeout());
+        assertEquals(5000, settings.getConnectionRequestTimeout());
+        assertEquals(30000, settings.getKeepAlive());
+        assertEquals(60000, settings.getIdleTimeout());
+        assertEquals(500, settings.getMaxInFlight());
+    }
+
+    @Test
+    public void testLoad_success() {
+        Properties properties = new Properties();
+        properties.setProperty("rest.client.maxTotal", "10");
+        properties.setProperty("rest.client.maxPerRoute", "5");
+        properties.setProperty("rest.client.connectTimeout", "1000");
+        properties.setProperty("rest.client.readTimeout", " 2000 ");
+        properties.setProperty("rest.client.connectionRequestTimeout", "3000");
+        properties.setProperty("rest.client.keepAlive", "4000");
+        properties.setProperty("rest.client.idleTimeout", "5000");
+        properties.setProperty("rest.client.maxInFlight", "6000");
+        properties.setProperty("other.maxTotal", "1");
+
+        HttpClientSettings settings = HttpClientSettings.load(properties, "rest.client.");
+
+        assertEquals(10, settings.getMaxTotal());
+        assertEquals(5, settings.getMaxPerRoute());
+        assertEquals(1000, settings.getConnectTimeout());
+        assertEquals(2000, settings.getReadTimeout());
+        assertEquals(3000, settings.getConnectionRequestTimeout());
+        assertEquals(4000, settings.getKeepAlive());
+        assertEquals(5000, settings.getIdleTimeout());
+        assertEquals(6000, settings.getMaxInFlight());
+    }
+
+    @Test
+    public void testLoad_invalid() {
+        Properties properties = new Properties();
+        properties.setProperty("rest.client.maxTotal", "many");
+        properties.setProperty("rest.client.maxPerRoute", "0");
+        properties.setProperty("rest.client.readTimeout", "-1");
+
+        HttpClientSettings settings = HttpClientSettings.load(properties, "rest.client.");
+
+        assertEquals(100, settings.getMaxTotal());
+        assertEquals(20, settings.getMaxPerRoute());
+        assertEquals(30000, settings.getReadTimeout());
+    }
+}
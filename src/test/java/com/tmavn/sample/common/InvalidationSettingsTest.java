@@ -0,0 +1,56 @@
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class InvalidationSettingsTest {
+
+    @Test
+    public void testLoad_default() {
+        InvalidationSettings settings = InvalidationSettings.load(new Properties());
+
+        assertEquals(InvalidationTransport.MEMORY, settings.getTransport());
+        assertEquals(50, settings.getFlushInterval());
+        assertEquals(500, settings.getPollInterval());
+        assertEquals("sample_invalidation", settings.getChannel());
+        assertNull(settings.getUrl());
+    }
+
+    @Test
+    public void testLoad_success() {
+        Properties properties = new Properties();
+        properties.setProperty("invalidation.transport", " postgres ");
+        properties.setProperty("invalidation.flushInterval", "20");
+        properties.setProperty("invalidation.pollInterval", "0");
+        properties.setProperty("invalidation.channel", "orders_cache");
+        properties.setProperty("hibernate.connection.url", "jdbc:postgresql://localhost:5432/Sample");
+        properties.setProperty("hibernate.connection.username", "postgres");
+        properties.setProperty("hibernate.connection.password", "secret");
+
+        InvalidationSettings settings = InvalidationSettings.load(properties);
+
+        assertEquals(InvalidationTransport.POSTGRES, settings.getTransport());
+        assertEquals(20, settings.getFlushInterval());
+        assertEquals(500, settings.getPollInterval());
+        assertEquals("orders_cache", settings.getChannel());
+        assertEquals("jdbc:postgresql://localhost:5432/Sample", settings.getUrl());
+        assertEquals("postgres", settings.getUsername());
+        assertEquals("secret", settings.getPassword());
+    }
+
+    @Test
+    public void testLoadInvalidValuesKeepDefault() {
+        Properties properties = new Properties();
+        properties.setProperty("invalidation.transport", "redis");
+        properties.setProperty("invalidation.channel", "cache; DROP TABLE order_data");
+
+        InvalidationSettings settings = InvalidationSettings.load(properties);
+
+        assertEquals(InvalidationTransport.MEMORY, settings.getTransport());
+        assertEquals("sample_invalidation", settings.getChannel());
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright©2017 NTT corp． All Rights Reserved．
+ */
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.entity.Note;
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.model.ModuleAccess;
+
+public class JsonMapperTest {
+
+    @Test
+    public void testReaderFor_prebuilt() {
+        assertSame(JsonMapper.ORDER_DATA_READER, JsonMapper.readerFor(OrderData.class));
+        assertSame(JsonMapper.LISTENER_INFO_WRITER, JsonMapper.writerFor(ListenerInfo.class));
+    }
+
+    @Test
+    public void testReaderFor_builtOnce() {
+        assertSame(JsonMapper.readerFor(ModuleAccess.class), JsonMapper.readerFor(ModuleAccess.class));
+        assertSame(JsonMapper.writerFor(ModuleAccess.class), JsonMapper.writerFor(ModuleAccess.class));
+    }
+
+    @Test
+    public void testReadWrite_noteList() throws Exception {
+        String json = "[{\"id\":1,\"author\":\"user1\",\"date\":\"2017-01-01\",\"text\":\"note\"}]";
+
+        List<Note> notes = JsonMapper.NOTE_LIST_READER.readValue(json);
+
+        assertEquals(1, notes.size());
+        assertEquals("user1", notes.get(0).getAuthor());
+        assertEquals(Utils.parseObjectToJson(notes), JsonMapper.NOTE_LIST_WRITER.writeValueAsString(notes));
+    }
+
+    @Test
+    public void testReadWrite_listenerInfo() throws Exception {
+        String json = "{\"id\":1,\"userId\":\"user1\",\"callback\":\"http://localhost\",\"query\":\"state=\"}";
+
+        ListenerInfo listenerInfo = JsonMapper.LISTENER_INFO_READER.readValue(json);
+
+        assertEquals("user1", listenerInfo.getUserId());
+        assertEquals(Utils.parseObjectToJson(listenerInfo), JsonMapper.LISTENER_INFO_WRITER.writeValueAsString(listenerInfo));
+    }
+
+    @Test
+    public void testConfigure() {
+        MappingJackson2HttpMessageConverter jsonConverter = new MappingJackson2HttpMessageConverter();
+        List<HttpMessageConverter<?>> converters = new ArrayList<HttpMessageConverter<?>>();
+        converters.add(new StringHttpMessageConverter());
+        converters.add(jsonConverter);
+
+        JsonMapper.configure(converters);
+
+        assertSame(JsonMapper.getMapper(), jsonConverter.getObjectMapper());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright©2017 NTT corp． All Rights Reserved．
+ */
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jackson.JsonLoader;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.main.JsonSchema;
+
+public class JsonSchemaRegistryTest {
+
+    /** The schema file used for testing. */
+    private static final String SCHEMA_FILE = "src/test/resources/jsonschema-test/jsonschematest.json";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        JsonSchemaRegistry.clear();
+    }
+
+    @After
+    public void tearDown() {
+        JsonSchemaRegistry.clear();
+    }
+
+    @Test
+    public void testGetSchema_returnSameInstance() throws Exception {
+        JsonSchema first = JsonSchemaRegistry.getSchema(SCHEMA_FILE);
+        JsonSchema second = JsonSchemaRegistry.getSchema(SCHEMA_FILE);
+
+        assertSame(first, second);
+    }
+
+    @Test
+    public void testGetSchema_reloadWhenFileModified() throws Exception {
+        File schemaFile = folder.newFile("schema.json");
+        Files.copy(Paths.get(SCHEMA_FILE), schemaFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        JsonSchema first = JsonSchemaRegistry.getSchema(schemaFile.getPath());
+
+        // replace schema with a schema without required properties
+        Files.write(schemaFile.toPath(), "{\"type\":\"object\"}".getBytes("UTF-8"));
+        assertTrue(schemaFile.setLastModified(schemaFile.lastModified() + 10000L));
+        Thread.sleep(JsonSchemaRegistry.RELOAD_CHECK_INTERVAL_MILLIS + 100L);
+
+        JsonSchema second = JsonSchemaRegistry.getSchema(schemaFile.getPath());
+        JsonNode json = JsonLoader.fromString("{\"callback\":\"http://localhost\"}");
+
+        assertNotSame(first, second);
+        assertTrue(!first.validate(json).isSuccess());
+        assertTrue(second.validate(json).isSuccess());
+    }
+
+    @Test(expected = IOException.class)
+    public void testGetSchema_fileNotFound() throws Exception {
+        JsonSchemaRegistry.getSchema("D://tmp.json");
+    }
+
+    @Test(expected = ProcessingException.class)
+    public void testGetSchema_invalidSchema() throws Exception {
+        File schemaFile = folder.newFile("invalid.json");
+        Files.write(schemaFile.toPath(), "{\"type\":\"unknown\"}".getBytes("UTF-8"));
+        JsonSchemaRegistry.getSchema(schemaFile.getPath()).validate(JsonLoader.fromString("{}"));
+    }
+}
@@ -5,9 +5,12 @@ package com.tmavn.sample.common;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -23,7 +26,10 @@ import org.powermock.modules.junit4.rule.PowerMockRule;
 import org.slf4j.Logger;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.model.BindResult;
 import com.tmavn.sample.model.CheckResult;
+import com.tmavn.sample.model.ValidationError;
 
 public class JsonValidationTest {
 
@@ -170,11 +176,16 @@ public class JsonValidationTest {
 
         // mock method
         ObjectMapper mockObjectMapper = Mockito.mock(ObjectMapper.class);
-        PowerMockito.whenNew(ObjectMapper.class).withAnyArguments().thenReturn(mockObjectMapper);
+        org.powermock.reflect.Whitebox.setInternalState(JsonValidation.class, "mapper", mockObjectMapper);
         PowerMockito.doThrow(new IOException()).when(mockObjectMapper).readTree(Mockito.anyString());
 
         // execute
-        CheckResult result = jsonValidation.validate("src/test/resources/jsonschema-test/jsonschematest.json", json);
+        CheckResult result;
+        try {
+            result = jsonValidation.validate("src/test/resources/jsonschema-test/jsonschematest.json", json);
+        } finally {
+            org.powermock.reflect.Whitebox.setInternalState(JsonValidation.class, "mapper", new ObjectMapper());
+        }
 
         // verify
         assertFalse(result.isSuccess());
@@ -208,4 +219,228 @@ public class JsonValidationTest {
         assertFalse(result.isSuccess());
         assertEquals(result.getMessage(), "ERROR(JSON format NG)");
     }
+
+    /**
+     * Test validate and bind success.
+     */
+    @Test
+    public void testValidateAndBind_successful() {
+        String json = "{\"callback\":\"http://localhost:8081/ListenerProject/api/v1/listener\",\"query\":\"state=Processing\"}";
+
+        BindResult<ListenerInfo> result = JsonValidation
+                .validateAndBind("src/test/resources/jsonschema-test/jsonschematest.json", json, ListenerInfo.class);
+
+        // verify
+        assertTrue(result.isSuccess());
+        assertEquals("", result.getMessage());
+        assertEquals("http://localhost:8081/ListenerProject/api/v1/listener", result.getData().getCallback());
+        assertEquals("state=Processing", result.getData().getQuery());
+    }
+
+    /**
+     * Test validate and bind unsuccessful case miss properties.
+     */
+    @Test
+    public void testValidateAndBind_unsuccessful_missing() {
+        String json = "{\"callback\":\"http://localhost:8081/ListenerProject/api/v1/listener\"}";
+
+        BindResult<ListenerInfo> result = JsonValidation
+                .validateAndBind("src/test/resources/jsonschema-test/jsonschematest.json", json, ListenerInfo.class);
+
+        // verify
+        assertFalse(result.isSuccess());
+        assertEquals("Mandatory Attribute NG: [\"query\"])", result.getMessage());
+        assertNull(result.getData());
+    }
+
+    /**
+     * Test validate and bind unsuccessful case json format error.
+     */
+    @Test
+    public void testValidateAndBind_unsuccessful_format() {
+        String json = "{{\"callback\":\"http://localhost:8081/ListenerProject/api/v1/listener\"}";
+
+        BindResult<ListenerInfo> result = JsonValidation
+                .validateAndBind("src/test/resources/jsonschema-test/jsonschematest.json", json, ListenerInfo.class);
+
+        // verify
+        assertFalse(result.isSuccess());
+        assertNull(result.getData());
+    }
+
+    /**
+     * Test validate and bind unsuccessful case json is valid but can not be bound.
+     */
+    @Test
+    public void testValidateAndBind_unsuccessful_bind() {
+        String json = "{\"callback\":\"http://localhost\",\"query\":\"state=Processing\",\"unknown\":1}";
+
+        BindResult<ListenerInfo> result = JsonValidation
+                .validateAndBind("src/test/resources/jsonschema-test/jsonschematest.json", json, ListenerInfo.class);
+
+        // verify
+        assertFalse(result.isSuccess());
+        assertEquals(CheckResult.MSG_JSON_NG, result.getMessage());
+        assertNull(result.getData());
+    }
+
+    /**
+     * Test json validation collects all errors.
+     */
+    @Test
+    public void testJsonValidation_unsuccessful_allErrors() {
+        String json = "{\"callback\":123,\"query\":456}";
+
+        CheckResult result = JsonValidation.validate("src/test/resources/jsonschema-test/jsonschematest.json", json);
+
+        // verify
+        assertFalse(result.isSuccess());
+        assertEquals("Mandatory Type NG: [\"string\"])", result.getMessage());
+        assertEquals(2, result.getErrors().size());
+        assertEquals("type", result.getErrors().get(0).getKeyword());
+        assertEquals("/callback", result.getErrors().get(0).getPointer());
+        assertEquals(ValidationError.TYPE_EXPECTED, result.getErrors().get(0).getType());
+        assertEquals("/query", result.getErrors().get(1).getPointer());
+    }
+
+    /**
+     * Test json validation stops at the first error in fail-fast mode.
+     */
+    @Test
+    public void testJsonValidation_failFast() {
+        String json = "{\"callback\":123,\"query\":456}";
+
+        JsonValidation.setFailFast(true);
+        CheckResult result;
+        try {
+            result = JsonValidation.validate("src/test/resources/jsonschema-test/jsonschematest.json", json);
+        } finally {
+            JsonValidation.setFailFast(false);
+        }
+
+        // verify
+        assertFalse(result.isSuccess());
+        assertEquals("Mandatory Type NG: [\"string\"])", result.getMessage());
+        assertEquals(1, result.getErrors().size());
+        assertEquals("/callback", result.getErrors().get(0).getPointer());
+    }
+
+    /**
+     * Test json validation with an invalid schema in fail-fast mode.
+     */
+    @Test
+    public void testJsonValidation_failFast_schemaError() {
+        String json = "{\"callback\":\"http://localhost:8081/ListenerProject/api/v1/listener\"}";
+
+        JsonValidation.setFailFast(true);
+        CheckResult result;
+        try {
+            result = JsonValidation.validate("D://tmp.json", json);
+        } finally {
+            JsonValidation.setFailFast(false);
+        }
+
+        // verify
+        assertFalse(result.isSuccess());
+        assertEquals(CheckResult.MSG_JSON_NG, result.getMessage());
+    }
+
+    /**
+     * Test validate and bind a request body.
+     */
+    @Test
+    public void testValidateAndBind_body_successful() throws IOException {
+        String json = "{\"callback\":\"http://localhost:8081/ListenerProject/api/v1/listener\",\"query\":\"state=Processing\"}";
+
+        BindResult<ListenerInfo> result = JsonValidation.validateAndBind(
+                "src/test/resources/jsonschema-test/jsonschematest.json", toStream(json), ListenerInfo.class);
+
+        // verify
+        assertTrue(result.isSuccess());
+        assertEquals("", result.getMessage());
+        assertEquals("http://localhost:8081/ListenerProject/api/v1/listener", result.getData().getCallback());
+        assertEquals("state=Processing", result.getData().getQuery());
+    }
+
+    /**
+     * Test validate and bind a request body with the streaming validator.
+     */
+    @Test
+    public void testValidateAndBind_body_streaming() throws IOException {
+        String json = "{\"callback\":\"http://localhost:8081/ListenerProject/api/v1/listener\"}";
+
+        JsonValidation.setValidatorName(SchemaValidator.STREAMING);
+        BindResult<ListenerInfo> result;
+        BindResult<ListenerInfo> valid;
+        try {
+            result = JsonValidation.validateAndBind("src/test/resources/jsonschema-test/jsonschematest.json",
+                    toStream(json), ListenerInfo.class);
+            valid = JsonValidation.validateAndBind("src/test/resources/jsonschema-test/jsonschematest.json",
+                    toStream("{\"callback\":\"x\",\"query\":\"state=Failed\"}"), ListenerInfo.class);
+        } finally {
+            JsonValidation.setValidatorName(SchemaValidator.FGE);
+        }
+
+        // verify
+        assertFalse(result.isSuccess());
+        assertEquals("Mandatory Attribute NG: [\"query\"])", result.getMessage());
+        assertNull(result.getData());
+        assertTrue(valid.isSuccess());
+        assertEquals("state=Failed", valid.getData().getQuery());
+    }
+
+    /**
+     * Test validate and bind a request body case json format error, the message
+     * gives the position of the error.
+     */
+    @Test
+    public void testValidateAndBind_body_unsuccessful_format() throws IOException {
+        String json = "{{\"callback\":\"http://localhost:8081/ListenerProject/api/v1/listener\"}";
+
+        BindResult<ListenerInfo> result = JsonValidation.validateAndBind(
+                "src/test/resources/jsonschema-test/jsonschematest.json", toStream(json), ListenerInfo.class);
+
+        // verify
+        assertFalse(result.isSuccess());
+        assertTrue(result.getMessage(), result.getMessage().endsWith(" at [line: 1, column: 3]"));
+        assertNull(result.getData());
+    }
+
+    /**
+     * Test validate and bind a request body which can not be read.
+     */
+    @Test
+    public void testValidateAndBind_body_IOException() throws IOException {
+        InputStream body = Mockito.mock(InputStream.class);
+        Mockito.when(body.read(Mockito.any(byte[].class), Mockito.anyInt(), Mockito.anyInt()))
+                .thenThrow(new IOException("Connection reset"));
+
+        BindResult<ListenerInfo> result = JsonValidation
+                .validateAndBind("src/test/resources/jsonschema-test/jsonschematest.json", body, ListenerInfo.class);
+
+        // verify
+        assertFalse(result.isSuccess());
+        assertEquals(CheckResult.MSG_JSON_NG, result.getMessage());
+        assertNull(result.getData());
+    }
+
+    /**
+     * Test validate and bind a request body larger than the maximum size.
+     */
+    @Test(expected = RequestBodyTooLargeException.class)
+    public void testValidateAndBind_body_tooLarge() throws IOException {
+        String json = "{\"callback\":\"http://localhost:8081/ListenerProject/api/v1/listener\",\"query\":\"state=Processing\"}";
+
+        BodyBuffer.setMaxSize(json.length() - 1);
+        try {
+            JsonValidation.validateAndBind("src/test/resources/jsonschema-test/jsonschematest.json", toStream(json),
+                    ListenerInfo.class);
+        } finally {
+            BodyBuffer.setMaxSize(BodyBuffer.DEFAULT_MAX_SIZE);
+        }
+    }
+
+    private static InputStream toStream(String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright©2017 NTT corp． All Rights Reserved．
+ */
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.enums.OrderState;
+
+public class ListenerQueryTest {
+
+    @Test
+    public void testCompile_empty() {
+        assertSame(ListenerQuery.ALL, ListenerQuery.compile(null));
+        assertSame(ListenerQuery.ALL, ListenerQuery.compile(""));
+        assertEquals(EnumSet.allOf(OrderState.class), ListenerQuery.compile("state=").getStates());
+    }
+
+    @Test
+    public void testCompile_states() {
+        ListenerQuery query = ListenerQuery.compile("state=Scheduled,Processing");
+
+        assertEquals(EnumSet.of(OrderState.SCHEDULED, OrderState.PROCESSING), query.getStates());
+        assertTrue(query.matches(OrderState.PROCESSING));
+        assertFalse(query.matches(OrderState.COMPLETED));
+        assertFalse(query.matches((OrderState) null));
+    }
+
+    @Test
+    public void testCompile_intersection() {
+        ListenerQuery query = ListenerQuery.compile("state=Scheduled,Processing&state=Processing,Failed");
+
+        assertEquals(EnumSet.of(OrderState.PROCESSING), query.getStates());
+    }
+
+    @Test
+    public void testMatches_exact() {
+        OrderData orderData = new OrderData();
+        orderData.setState("Process");
+
+        assertFalse(ListenerQuery.compile("state=Processing").matches(orderData));
+
+        orderData.setState("Processing");
+
+        assertTrue(ListenerQuery.compile("state=Processing").matches(orderData));
+        assertFalse(ListenerQuery.NONE.matches(orderData));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompile_unknownState() {
+        ListenerQuery.compile("state=Process");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompile_unknownFilter() {
+        ListenerQuery.compile("status=Processing");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompile_invalidFilter() {
+        ListenerQuery.compile("Processing");
+    }
+}
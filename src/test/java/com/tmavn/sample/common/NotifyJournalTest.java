@@ -0,0 +1,139 @@
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NotifyJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendAndReadRecords() throws IOException {
+        try (NotifyJournal journal = new NotifyJournal(folder.getRoot(), 1024)) {
+            long first = journal.append(bytes("first"));
+            long second = journal.append(bytes("second"));
+            journal.sync(second);
+
+            List<byte[]> records = new ArrayList<byte[]>();
+            assertEquals(second, journal.read(0, 10, records));
+            assertEquals(2, records.size());
+            assertArrayEquals(bytes("first"), records.get(0));
+            assertArrayEquals(bytes("second"), records.get(1));
+
+            records.clear();
+            assertEquals(second, journal.read(first, 10, records));
+            assertEquals(1, records.size());
+            assertArrayEquals(bytes("second"), records.get(0));
+        }
+    }
+
+    @Test
+    public void testAppendRotateSegment() throws IOException {
+        try (NotifyJournal journal = new NotifyJournal(folder.getRoot(), 64)) {
+            // 8 bytes of header and 21 bytes of record, two records per segment
+            for (int i = 0; i < 5; i++) {
+                journal.append(bytes("record-0000000000000" + i));
+            }
+            assertEquals(3, journal.getSegmentCount());
+
+            List<byte[]> records = new ArrayList<byte[]>();
+            long offset = journal.read(0, 3, records);
+            assertEquals(3, records.size());
+            offset = journal.read(offset, 10, records);
+            assertEquals(5, records.size());
+            assertEquals(journal.getEndOffset(), offset);
+            assertArrayEquals(bytes("record-00000000000004"), records.get(4));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAppendTooLargeThrowException() throws IOException {
+        try (NotifyJournal journal = new NotifyJournal(folder.getRoot(), 64)) {
+            journal.append(new byte[57]);
+        }
+    }
+
+    @Test
+    public void testReopenRecoverEndAndCheckpoint() throws IOException {
+        long end;
+        try (NotifyJournal journal = new NotifyJournal(folder.getRoot(), 1024)) {
+            long first = journal.append(bytes("first"));
+            end = journal.append(bytes("second"));
+            journal.commit(first);
+        }
+
+        try (NotifyJournal journal = new NotifyJournal(folder.getRoot(), 1024)) {
+            assertEquals(end, journal.getEndOffset());
+            List<byte[]> records = new ArrayList<byte[]>();
+            journal.read(journal.getCommittedOffset(), 10, records);
+            assertEquals(1, records.size());
+            assertArrayEquals(bytes("second"), records.get(0));
+
+            assertEquals(end + 13, journal.append(bytes("third")));
+        }
+    }
+
+    @Test
+    public void testReopenTruncateCorruptedRecord() throws IOException {
+        long first;
+        try (NotifyJournal journal = new NotifyJournal(folder.getRoot(), 1024)) {
+            first = journal.append(bytes("first"));
+            journal.append(bytes("second"));
+        }
+        // a byte of the second record is lost
+        try (RandomAccessFile file = new RandomAccessFile(new File(folder.getRoot(), String.format("%020d", 0)
+                + ".journal"), "rw")) {
+            file.seek(first + 8);
+            file.write('S');
+        }
+
+        try (NotifyJournal journal = new NotifyJournal(folder.getRoot(), 1024)) {
+            assertEquals(first, journal.getEndOffset());
+            List<byte[]> records = new ArrayList<byte[]>();
+            assertEquals(first, journal.read(0, 10, records));
+            assertEquals(1, records.size());
+        }
+    }
+
+    @Test
+    public void testCompactDeleteSegmentsBeforeCheckpoint() throws IOException {
+        try (NotifyJournal journal = new NotifyJournal(folder.getRoot(), 64)) {
+            long offset = 0;
+            for (int i = 0; i < 5; i++) {
+                offset = journal.append(bytes("record-0000000000000" + i));
+                if (i == 2) {
+                    // the first record of the second segment
+                    journal.commit(offset - 29);
+                }
+            }
+            assertEquals(1, journal.compact());
+            assertEquals(2, journal.getSegmentCount());
+            assertEquals(2, folder.getRoot().list().length - 1);
+
+            List<byte[]> records = new ArrayList<byte[]>();
+            assertEquals(offset, journal.read(journal.getCommittedOffset(), 10, records));
+            assertEquals(3, records.size());
+            assertArrayEquals(bytes("record-00000000000002"), records.get(0));
+
+            journal.commit(offset);
+            assertEquals(1, journal.compact());
+            assertEquals(offset, journal.read(offset, 10, new ArrayList<byte[]>()));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright©2017 NTT corp． All Rights Reserved．
+ */
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.entity.StateChangeNotify;
+
+public class NotifyPayloadTest {
+
+    @Test
+    public void testToBytes_sameAsSerialized() throws Exception {
+        StateChangeNotify stateChangeNotify = createNotify("trigger1");
+
+        NotifyPayload payload = NotifyPayload.render(createNotify("other"));
+        byte[] body = payload.toBytes("trigger1");
+
+        JsonNode expected = JsonMapper.getMapper().readTree(Utils.parseObjectToJson(stateChangeNotify));
+        assertEquals(expected, JsonMapper.getMapper().readTree(body));
+        assertEquals("{\"triggerId\":\"trigger1\",", new String(body, "UTF-8").substring(0, 24));
+    }
+
+    @Test
+    public void testToBytes_escaped() throws Exception {
+        NotifyPayload payload = NotifyPayload.render(createNotify(null));
+
+        JsonNode actual = JsonMapper.getMapper().readTree(payload.toBytes("a\"b"));
+
+        assertEquals("a\"b", actual.get("triggerId").asText());
+        assertEquals("Processing", actual.get("triggerData").get("state").asText());
+    }
+
+    @Test
+    public void testToBytes_nullTriggerId() throws Exception {
+        NotifyPayload payload = NotifyPayload.render(createNotify("trigger1"));
+
+        JsonNode actual = JsonMapper.getMapper().readTree(payload.toBytes(null));
+
+        assertEquals(null, actual.get("triggerId"));
+        assertEquals(StateChangeNotify.TYPE_STATE_CHANGE_NOTIFY, actual.get("triggerType").asText());
+    }
+
+    @Test
+    public void testRender_orderAtStateChange() throws Exception {
+        StateChangeNotify stateChangeNotify = createNotify("trigger1");
+        // the order is completed before the notification is sent
+        stateChangeNotify.getTriggerData().setState(OrderData.STATE_COMPLETED);
+        stateChangeNotify.getTriggerData().setModifyDate("2017-01-01 11:00:00");
+
+        byte[] body = NotifyPayload.render(stateChangeNotify).toBytes("trigger1");
+
+        String json = new String(body, "UTF-8");
+        assertEquals(json.indexOf("\"triggerData\""), json.lastIndexOf("\"triggerData\""));
+        JsonNode actual = JsonMapper.getMapper().readTree(body);
+        assertEquals("order1", actual.get("triggerData").get("id").asText());
+        assertEquals(OrderData.STATE_PROCESSING, actual.get("triggerData").get("state").asText());
+        assertEquals("2017-01-01 10:00:00", actual.get("triggerData").get("modifyDate").asText());
+    }
+
+    private static StateChangeNotify createNotify(String triggerId) {
+        OrderData orderData = new OrderData();
+        orderData.setId("order1");
+        orderData.setState(OrderData.STATE_PROCESSING);
+        orderData.setOrderDate("2017-01-01 10:00:00");
+        orderData.setModifyDate("2017-01-01 10:00:00");
+        StateChangeNotify stateChangeNotify = new StateChangeNotify();
+        stateChangeNotify.setTriggerId(triggerId);
+        stateChangeNotify.setTriggerTime(new Date(1500000000000L));
+        stateChangeNotify.setTriggerType(StateChangeNotify.TYPE_STATE_CHANGE_NOTIFY);
+        stateChangeNotify.setOrderSnapshot(orderData);
+        stateChangeNotify.setUserId("userA");
+        stateChangeNotify.setCallback("http://localhost:8080/successUrl");
+        return stateChangeNotify;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright©2017 NTT corp． All Rights Reserved．
+ */
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.tmavn.sample.enums.OverflowPolicy;
+
+public class NotifySettingsTest {
+
+    @Test
+    public void testLoad_default() {
+        NotifySettings settings = NotifySettings.load(new Properties());
+
+        assertEquals(100, settings.getBatchSize());
+        assertEquals(1000, settings.getPollInterval());
+        assertEquals(5, settings.getMaxAttempts());
+        assertEquals(5000, settings.getRetryDelay());
+        assertEquals(20, settings.getRetryJitter());
+        assertEquals(100, settings.getRetryTick());
+        assertEquals(512, settings.getRetryWheelSize());
+        assertEquals(4, settings.getLanes());
+        assertEquals(1000, settings.getLaneQueueSize());
+        assertEquals(60000, settings.getDeliveryTimeout());
+        assertEquals(0, settings.getCoalesceWindow());
+        assertEquals(100, settings.getCallbackBatchMaxSize());
+        assertEquals(200, settings.getCallbackBatchMaxDelay());
+        assertEquals(500, settings.getCallbackBatchTargetLatency());
+        assertEquals(0, settings.getHostRate());
+        assertEquals(10, settings.getHostBurst());
+        assertEquals(1000, settings.getHostQueueSize());
+        assertEquals(OverflowPolicy.BLOCK, settings.getOverflowPolicy());
+        assertEquals(500, settings.getReplayRate());
+        assertEquals(300000, settings.getLeaseTimeout());
+        assertNull(settings.getNodeId());
+        assertNull(settings.getJournalDir());
+        assertEquals(16777216, settings.getJournalSegmentSize());
+        assertEquals(100, settings.getStreamBufferSize());
+        assertEquals(1000, settings.getStreamHistorySize());
+        assertEquals(1800000, settings.getStreamTimeout());
+    }
+
+    @Test
+    public void testLoad_success() {
+        Properties properties = new Properties();
+        properties.setProperty("notify.batchSize", "10");
+        properties.setProperty("notify.pollInterval", "200");
+        properties.setProperty("notify.maxAttempts", "3");
+        properties.setProperty("notify.retryDelay", "many");
+        properties.setProperty("notify.retryJitter", "150");
+        properties.setProperty("notify.retryTick", "50");
+        properties.setProperty("notify.lanes", "8");
+        properties.setProperty("notify.laneQueueSize", "0");
+        properties.setProperty("notify.deliveryTimeout", "3000");
+        properties.setProperty("notify.coalesceWindow", "200");
+        properties.setProperty("notify.callbackBatchMaxSize", "50");
+        properties.setProperty("notify.callbackBatchTargetLatency", "-1");
+        properties.setProperty("notify.hostRate", "50");
+        properties.setProperty("notify.hostQueueSize", "20");
+        properties.setProperty("notify.overflowPolicy", "dropOldest");
+        properties.setProperty("notify.leaseTimeout", "60000");
+        properties.setProperty("notify.nodeId", " node1 ");
+        properties.setProperty("notify.journalDir", "/tmp/journal");
+        properties.setProperty("notify.journalSegmentSize", "1048576");
+        properties.setProperty("notify.streamBufferSize", "10");
+        properties.setProperty("notify.streamHistorySize", "0");
+
+        NotifySettings settings = NotifySettings.load(properties);
+
+        assertEquals(10, settings.getBatchSize());
+        assertEquals(200, settings.getPollInterval());
+        assertEquals(3, settings.getMaxAttempts());
+        assertEquals(5000, settings.getRetryDelay());
+        assertEquals(100, settings.getRetryJitter());
+        assertEquals(50, settings.getRetryTick());
+        assertEquals(512, settings.getRetryWheelSize());
+        assertEquals(8, settings.getLanes());
+        assertEquals(1000, settings.getLaneQueueSize());
+        assertEquals(3000, settings.getDeliveryTimeout());
+        assertEquals(200, settings.getCoalesceWindow());
+        assertEquals(50, settings.getCallbackBatchMaxSize());
+        assertEquals(500, settings.getCallbackBatchTargetLatency());
+        assertEquals(50, settings.getHostRate());
+        assertEquals(10, settings.getHostBurst());
+        assertEquals(20, settings.getHostQueueSize());
+        assertEquals(OverflowPolicy.DROP_OLDEST, settings.getOverflowPolicy());
+        assertEquals(60000, settings.getLeaseTimeout());
+        assertEquals("node1", settings.getNodeId());
+        assertEquals("/tmp/journal", settings.getJournalDir());
+        assertEquals(1048576, settings.getJournalSegmentSize());
+        assertEquals(10, settings.getStreamBufferSize());
+        assertEquals(1000, settings.getStreamHistorySize());
+    }
+
+    @Test
+    public void testLoadInvalidOverflowPolicyKeepDefault() {
+        Properties properties = new Properties();
+        properties.setProperty("notify.overflowPolicy", "DROP");
+
+        NotifySettings settings = NotifySettings.load(properties);
+
+        assertEquals(OverflowPolicy.BLOCK, settings.getOverflowPolicy());
+    }
+
+    @Test
+    public void testGetRetryDelay_doubled() {
+        NotifySettings settings = new NotifySettings();
+        settings.setRetryDelay(1000);
+
+        assertEquals(1000, settings.getRetryDelay(1));
+        assertEquals(2000, settings.getRetryDelay(2));
+        assertEquals(4000, settings.getRetryDelay(3));
+        assertEquals(1024000, settings.getRetryDelay(50));
+    }
+}
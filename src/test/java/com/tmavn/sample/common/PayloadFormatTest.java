@@ -0,0 +1,113 @@
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.entity.StateChangeNotify;
+
+public class PayloadFormatTest {
+
+    @Test
+    public void testCompile_full() {
+        assertSame(PayloadFormat.FULL, PayloadFormat.compile(null));
+        assertSame(PayloadFormat.FULL, PayloadFormat.compile(" "));
+        assertSame(PayloadFormat.FULL, PayloadFormat.compile(ListenerInfo.PAYLOAD_FULL));
+        assertSame(PayloadFormat.FULL, PayloadFormat.compile("description,state,orderDate,modifyDate"));
+        assertSame(PayloadFormat.THIN, PayloadFormat.compile(ListenerInfo.PAYLOAD_THIN));
+    }
+
+    @Test
+    public void testCompileCachedByPayload() {
+        assertSame(PayloadFormat.compile("state, modifyDate"), PayloadFormat.compile("state, modifyDate"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompileUnknownFieldThrowException() {
+        PayloadFormat.compile("state,notes");
+    }
+
+    @Test
+    public void testRender_fullSameAsSerialized() throws Exception {
+        StateChangeNotify stateChangeNotify = createNotify();
+
+        byte[] body = PayloadFormat.compile(null).render(stateChangeNotify).toBytes("trigger1");
+
+        JsonNode expected = JsonMapper.getMapper().readTree(Utils.parseObjectToJson(stateChangeNotify));
+        assertEquals(expected, JsonMapper.getMapper().readTree(body));
+    }
+
+    @Test
+    public void testRender_thin() throws Exception {
+        StateChangeNotify stateChangeNotify = createNotify();
+        stateChangeNotify.setCoalescedStates(OrderData.STATE_SCHEDULED);
+
+        byte[] body = PayloadFormat.THIN.render(stateChangeNotify).toBytes("trigger1");
+
+        assertEquals("{\"triggerId\":\"trigger1\",\"triggerTime\":1500000000000,"
+                + "\"triggerType\":\"StateChangeNotify\",\"triggerData\":{\"id\":\"order1\",\"state\":\"Processing\"},"
+                + "\"sequence\":2,\"intermediateStates\":[\"Scheduled\"]}", new String(body, "UTF-8"));
+    }
+
+    @Test
+    public void testRender_selectedFieldsWithId() throws Exception {
+        StateChangeNotify stateChangeNotify = createNotify();
+        stateChangeNotify.setSequence(null);
+
+        JsonNode actual = JsonMapper.getMapper().readTree(
+                PayloadFormat.compile("orderDate").render(stateChangeNotify).toBytes("trigger1"));
+
+        assertEquals("order1", actual.get("triggerData").get("id").asText());
+        assertEquals("2017-01-01 10:00:00", actual.get("triggerData").get("orderDate").asText());
+        assertFalse(actual.get("triggerData").has("state"));
+        assertFalse(actual.get("triggerData").has("description"));
+        assertTrue(actual.get("sequence").isNull());
+        assertNull(actual.get("intermediateStates"));
+    }
+
+    @Test
+    public void testRender_thinOrderAtStateChange() throws Exception {
+        StateChangeNotify stateChangeNotify = createNotify();
+        stateChangeNotify.getTriggerData().setState(OrderData.STATE_COMPLETED);
+
+        JsonNode actual = JsonMapper.getMapper().readTree(PayloadFormat.THIN.render(stateChangeNotify).toBytes(null));
+
+        assertEquals(OrderData.STATE_PROCESSING, actual.get("triggerData").get("state").asText());
+    }
+
+    @Test
+    public void testRender_nullTriggerData() throws Exception {
+        StateChangeNotify stateChangeNotify = createNotify();
+        stateChangeNotify.setOrderSnapshot(null);
+
+        JsonNode actual = JsonMapper.getMapper().readTree(PayloadFormat.THIN.render(stateChangeNotify).toBytes(null));
+
+        assertTrue(actual.get("triggerData").isNull());
+    }
+
+    private static StateChangeNotify createNotify() {
+        OrderData orderData = new OrderData();
+        orderData.setId("order1");
+        orderData.setDescription("Order 1");
+        orderData.setState(OrderData.STATE_PROCESSING);
+        orderData.setOrderDate("2017-01-01 10:00:00");
+        StateChangeNotify stateChangeNotify = new StateChangeNotify();
+        stateChangeNotify.setTriggerId("trigger1");
+        stateChangeNotify.setTriggerTime(new Date(1500000000000L));
+        stateChangeNotify.setTriggerType(StateChangeNotify.TYPE_STATE_CHANGE_NOTIFY);
+        stateChangeNotify.setOrderSnapshot(orderData);
+        stateChangeNotify.setSequence(2L);
+        stateChangeNotify.setUserId("userA");
+        stateChangeNotify.setPayload(ListenerInfo.PAYLOAD_THIN);
+        return stateChangeNotify;
+    }
+}
@@ -0,0 +1,115 @@
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Send the invalidations between two transports on the database of
+ * src/test/resources/config/sample.conf. The tests are skipped when the
+ * database is not reachable. The sequence of the channel is created in its own
+ * schema, which is dropped after each test.
+ */
+public class PostgresInvalidationTransportTest {
+
+    private static final String CONFIG = "src/test/resources/config/sample.conf";
+
+    private static final String SCHEMA = "invalidation_test";
+
+    private Properties properties;
+
+    private PostgresInvalidationTransport first;
+
+    private PostgresInvalidationTransport second;
+
+    private InvalidationTransport.Receiver firstReceiver;
+
+    private InvalidationTransport.Receiver secondReceiver;
+
+    @Before
+    public void setUp() throws IOException {
+        properties = new Properties();
+        try (InputStream in = new FileInputStream(CONFIG)) {
+            properties.load(in);
+        }
+        Assume.assumeTrue("PostgreSQL is not reachable", isReachable(properties));
+        executeSql(properties, "CREATE SCHEMA IF NOT EXISTS " + SCHEMA);
+
+        InvalidationSettings settings = InvalidationSettings.load(properties);
+        String url = settings.getUrl();
+        settings.setUrl(url + (url.contains("?") ? "&" : "?") + "currentSchema=" + SCHEMA);
+        settings.setChannel("invalidation_test");
+        settings.setPollInterval(20);
+        first = new PostgresInvalidationTransport(settings);
+        second = new PostgresInvalidationTransport(settings);
+        firstReceiver = mock(InvalidationTransport.Receiver.class);
+        secondReceiver = mock(InvalidationTransport.Receiver.class);
+        first.start(firstReceiver);
+        second.start(secondReceiver);
+    }
+
+    @After
+    public void tearDown() {
+        if (first != null) {
+            first.stop();
+            second.stop();
+            executeSql(properties, "DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        }
+    }
+
+    @Test
+    public void testSendReceivedByAllTransports() throws IOException {
+        first.send("node1 a\nL 1");
+
+        verify(firstReceiver, timeout(2000)).receive("node1 a\nL 1");
+        verify(secondReceiver, timeout(2000)).receive("node1 a\nL 1");
+        verify(secondReceiver, never()).reset();
+    }
+
+    @Test
+    public void testNextVersionIncreaseAcrossTransports() throws IOException {
+        long version = first.nextVersion();
+
+        assertTrue(second.nextVersion() > version);
+        assertTrue(first.nextVersion() > version + 1);
+    }
+
+    private static void executeSql(Properties properties, String sql) {
+        try (Connection connection = DriverManager.getConnection(
+                properties.getProperty("hibernate.connection.url"),
+                properties.getProperty("hibernate.connection.username"),
+                properties.getProperty("hibernate.connection.password"));
+                Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isReachable(Properties properties) {
+        try (Connection connection = DriverManager.getConnection(
+                properties.getProperty("hibernate.connection.url"),
+                properties.getProperty("hibernate.connection.username"),
+                properties.getProperty("hibernate.connection.password"))) {
+            return connection.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+}
@@ -4,6 +4,8 @@
 package com.tmavn.sample.common;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
@@ -24,6 +26,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -43,6 +46,7 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
@@ -693,7 +697,6 @@ public class RestClientTest {
         Class<Object> clazz = Object.class;
 
         ResponseEntity<Object> respEntity = new ResponseEntity<Object>(HttpStatus.OK);
-        PowerMockito.whenNew(RestTemplate.class).withAnyArguments().thenReturn(restTemplate);
         PowerMockito.when(restTemplate.exchange(any(), any(), any(), eq(Object.class))).thenReturn(respEntity);
 
         ResponseEntity<?> response = Whitebox.invokeMethod(restClient, "doSendRequestWithData", url, method, headers,
@@ -1283,4 +1286,27 @@ public class RestClientTest {
 
         verify(loggerSpy, times(1)).error(Mockito.anyString(), any(Throwable.class));
     }
+
+    @Test
+    public void testConfigure() throws Exception {
+        HttpClientSettings settings = new HttpClientSettings();
+        // the shared client of the other tests is kept open and restored
+        CloseableHttpClient original = Whitebox.getInternalState(RestClient.class, "httpClient");
+        RestTemplate originalTemplate = Whitebox.getInternalState(RestClient.class, "restTemplate");
+        Whitebox.setInternalState(RestClient.class, "httpClient", (CloseableHttpClient) null);
+        try {
+            RestClient.configure(settings);
+            CloseableHttpClient first = Whitebox.getInternalState(RestClient.class, "httpClient");
+            RestTemplate template = Whitebox.getInternalState(RestClient.class, "restTemplate");
+            RestClient.configure(settings);
+
+            assertTrue(template.getRequestFactory() instanceof HttpComponentsClientHttpRequestFactory);
+            assertNotSame(first, Whitebox.getInternalState(RestClient.class, "httpClient"));
+        } finally {
+            // the first client was closed by the second configure
+            RestClient.shutdown();
+            Whitebox.setInternalState(RestClient.class, "httpClient", original);
+            Whitebox.setInternalState(RestClient.class, "restTemplate", originalTemplate);
+        }
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ * Copyright©2017 NTT corp． All Rights Reserved．
+ */
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.model.BindResult;
+import com.tmavn.sample.model.CheckResult;
+import com.tmavn.sample.model.ValidationError;
+
+/**
+ * Check the streaming validator and the fge validator give the same results.
+ */
+public class SchemaValidatorAgreementTest {
+
+    /** The schemas supported by the streaming validator. */
+    private static final List<String> STREAMING_SCHEMAS = Arrays.asList(
+            "src/test/resources/jsonschema-test/jsonschematest.json",
+            "src/test/resources/jsonschema-test/jsonschematest2.json",
+            "src/main/resources/config/jsonSchema/module_access.json",
+            "src/main/resources/config/jsonSchema/order_data_post.json",
+            "src/main/resources/config/jsonSchema/order_data_put.json",
+            "src/main/resources/config/jsonSchema/order_data_patch.json",
+            "src/main/resources/config/jsonSchema/listener_info_post.json",
+            "src/main/resources/config/jsonSchema/listener_info_put.json",
+            "src/main/resources/config/jsonSchema/listener_info_patch.json",
+            "src/test/resources/config/jsonSchema/module_access.json",
+            "src/test/resources/config/jsonSchema/order_data_post.json",
+            "src/test/resources/config/jsonSchema/order_data_put.json",
+            "src/test/resources/config/jsonSchema/order_data_patch.json");
+
+    /** The schemas not supported by the streaming validator. */
+    private static final List<String> FGE_SCHEMAS = Arrays.asList(
+            "src/test/resources/jsonschema-test/jsonschematest3.json",
+            "src/test/resources/jsonschema-test/jsonschematest4.json");
+
+    /** The json of JsonValidationTest and the controller tests, and edge cases. */
+    private static final List<String> JSONS = Arrays.asList(
+            "{\"callback\":\"http://localhost:8081/ListenerProject/api/v1/listener\",\"query\":\"state=Processing\"}",
+            "{\"callback\":\"http://localhost:8081/ListenerProject/api/v1/listener\"}",
+            "{\"callback\":123,\"query\":\"state=Processing\"}",
+            "{  \r\n   \"iddd\":123,\r\n   \"userId\":\"user1\",\r\n"
+                    + "   \"callback\":\"http://localhost:8081/ListenerProject/api/v1/listener\",\r\n"
+                    + "   \"query\":\"state=Processing\"\r\n}",
+            "{{\"callback\":\"http://localhost:8081/ListenerProject/api/v1/listener\",\"query\":\"state=Processing\"}",
+            "{\r\n   \"street_address\": \"1600 Pennsylvania Avenue NW\",\r\n   \"city\": \"Washington\",\r\n"
+                    + "   \"state\": \"DC\",\r\n   \"type\": \"residentiall\"\r\n}",
+            "{\"callback\":\"http://localhost\",\"query\":\"state=Processing\",\"unknown\":1}",
+            "{\"callback\":123,\"query\":456}",
+            "{\"id\":1,\"userId\":\"user1\",\"callback\":\"http://localhost\",\"query\":\"state=Scheduled,Failed\"}",
+            "{\"id\":\"x\",\"callback\":\"x\",\"query\":\"\"}",
+            "{\"callback\":\"x\",\"query\":\"state=Failed\\n\"}",
+            "{\"callback\":\"x\",\"query\":\"state=\"}",
+            "{\"callback\":null,\"query\":[],\"userId\":true,\"id\":1.5}",
+            "{\"iddd\":1,\"zz\":2,\"callback\":5}",
+            "{\"id\":null,\"query\":null}",
+            "{\"id\":\"a0b1\",\"description\":\"desc\",\"state\":\"Scheduled\","
+                    + "\"notes\":[{\"author\":\"a\",\"text\":\"t\",\"date\":null}]}",
+            "{\"state\":\"Unknown\"}",
+            "{\"state\":5,\"notes\":[{\"author\":1},3,{\"text\":{}}]}",
+            "{\"state\":\"X\\\"y\",\"id\":1}",
+            "{\"state\":{\"a\":[1,2.0]},\"id\":[]}",
+            "{\"state\":1.50,\"id\":1.0}",
+            "{\"state\":\"Failed\",\"state\":1}",
+            "{\"state\":1,\"state\":\"Failed\"}",
+            "{\"notes\":[{\"author\":1}],\"a/b~c\":1}",
+            "{\"notes\":\"text\",\"state\":\"Completed\"}",
+            "{\"state\":\"Failed\"} trailing",
+            "[{\"moduleName\":\"listener\",\"resourceName\":\"r\",\"url\":\"/u\"}]",
+            "[{\"moduleName\":\"x\"},5]",
+            "[]",
+            "[1]",
+            "\"text\"",
+            "12345678901234567890",
+            "null",
+            "",
+            "   ",
+            "{\"callback\":\"x\"");
+
+    /** The loggers turned off during the test, the corpus logs thousands of lines. */
+    private static final List<Class<?>> QUIET_CLASSES = Arrays.<Class<?>> asList(JsonValidation.class,
+            FgeSchemaValidator.class, StreamingSchemaValidator.class, JsonSchemaRegistry.class);
+
+    private final List<Level> levels = new ArrayList<Level>();
+
+    @Before
+    public void setUp() {
+        // other tests replace the logger of JsonValidation
+        Whitebox.setInternalState(JsonValidation.class, "logger", LoggerFactory.getLogger(JsonValidation.class));
+        for (Class<?> type : QUIET_CLASSES) {
+            Logger logger = (Logger) LoggerFactory.getLogger(type);
+            levels.add(logger.getLevel());
+            logger.setLevel(Level.OFF);
+        }
+        JsonSchemaRegistry.clear();
+    }
+
+    @After
+    public void tearDown() {
+        JsonValidation.setValidatorName(SchemaValidator.FGE);
+        JsonValidation.setFailFast(false);
+        JsonSchemaRegistry.clear();
+        for (int i = 0; i < QUIET_CLASSES.size(); i++) {
+            ((Logger) LoggerFactory.getLogger(QUIET_CLASSES.get(i))).setLevel(levels.get(i));
+        }
+    }
+
+    /**
+     * Test the validator of each schema.
+     */
+    @Test
+    public void testGetValidator() throws Exception {
+        for (String schema : STREAMING_SCHEMAS) {
+            assertTrue(schema, JsonSchemaRegistry.getValidator(schema, false, SchemaValidator.STREAMING).isStreaming());
+            assertTrue(schema, JsonSchemaRegistry.getValidator(schema, true, SchemaValidator.STREAMING).isStreaming());
+            assertFalse(schema, JsonSchemaRegistry.getValidator(schema, false, SchemaValidator.FGE).isStreaming());
+        }
+        for (String schema : FGE_SCHEMAS) {
+            assertFalse(schema, JsonSchemaRegistry.getValidator(schema, false, SchemaValidator.STREAMING).isStreaming());
+        }
+    }
+
+    /**
+     * Test the validators agree on every json.
+     */
+    @Test
+    public void testValidate_agreement() {
+        for (boolean failFast : new boolean[] { false, true }) {
+            JsonValidation.setFailFast(failFast);
+            for (String schema : concat(STREAMING_SCHEMAS, FGE_SCHEMAS)) {
+                for (String json : JSONS) {
+                    JsonValidation.setValidatorName(SchemaValidator.FGE);
+                    CheckResult expected = JsonValidation.validate(schema, json);
+                    JsonValidation.setValidatorName(SchemaValidator.STREAMING);
+                    CheckResult actual = JsonValidation.validate(schema, json);
+
+                    assertSameResult(schema + " " + json + " failFast=" + failFast, expected, actual);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test the validators agree when binding the json.
+     */
+    @Test
+    public void testValidateAndBind_agreement() {
+        String schema = "src/main/resources/config/jsonSchema/order_data_post.json";
+        for (String json : JSONS) {
+            JsonValidation.setValidatorName(SchemaValidator.FGE);
+            BindResult<OrderData> expected = JsonValidation.validateAndBind(schema, json, OrderData.class);
+            JsonValidation.setValidatorName(SchemaValidator.STREAMING);
+            BindResult<OrderData> actual = JsonValidation.validateAndBind(schema, json, OrderData.class);
+
+            assertSameResult(json, expected, actual);
+            assertEquals(json, expected.getData() == null, actual.getData() == null);
+            if (expected.getData() != null) {
+                assertEquals(json, expected.getData().getState(), actual.getData().getState());
+                assertEquals(json, expected.getData().getNotes(), actual.getData().getNotes());
+            }
+        }
+
+        schema = "src/main/resources/config/jsonSchema/listener_info_post.json";
+        for (String json : JSONS) {
+            JsonValidation.setValidatorName(SchemaValidator.FGE);
+            BindResult<ListenerInfo> expected = JsonValidation.validateAndBind(schema, json, ListenerInfo.class);
+            JsonValidation.setValidatorName(SchemaValidator.STREAMING);
+            BindResult<ListenerInfo> actual = JsonValidation.validateAndBind(schema, json, ListenerInfo.class);
+
+            assertSameResult(json, expected, actual);
+            assertEquals(json, expected.getData() == null, actual.getData() == null);
+        }
+    }
+
+    /**
+     * Test the streaming validator is not used for a schema file which can not be
+     * read.
+     */
+    @Test
+    public void testValidate_schemaFileError() {
+        JsonValidation.setValidatorName(SchemaValidator.STREAMING);
+        CheckResult result = JsonValidation.validate("D://tmp.json", JSONS.get(0));
+
+        assertFalse(result.isSuccess());
+        assertEquals(CheckResult.MSG_JSON_NG, result.getMessage());
+    }
+
+    /**
+     * Test an unknown validator name falls back to fge.
+     */
+    @Test
+    public void testSetValidatorName_unknown() {
+        JsonValidation.setValidatorName("unknown");
+
+        assertEquals(SchemaValidator.FGE, JsonValidation.getValidatorName());
+    }
+
+    private static void assertSameResult(String label, CheckResult expected, CheckResult actual) {
+        assertEquals(label, expected.isSuccess(), actual.isSuccess());
+        assertEquals(label, expected.getMessage(), actual.getMessage());
+        List<ValidationError> expectedErrors = expected.getErrors();
+        List<ValidationError> actualErrors = actual.getErrors();
+        assertEquals(label, expectedErrors == null, actualErrors == null);
+        if (expectedErrors == null) {
+            return;
+        }
+        assertEquals(label, expectedErrors.size(), actualErrors.size());
+        for (int i = 0; i < expectedErrors.size(); i++) {
+            ValidationError expectedError = expectedErrors.get(i);
+            ValidationError actualError = actualErrors.get(i);
+            assertEquals(label, expectedError.getKeyword(), actualError.getKeyword());
+            assertEquals(label, expectedError.getPointer(), actualError.getPointer());
+            assertEquals(label, expectedError.getMessage(), actualError.getMessage());
+            assertEquals(label, expectedError.getType(), actualError.getType());
+            assertEquals(label, expectedError.getDetail(), actualError.getDetail());
+        }
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> all = new ArrayList<String>(first);
+        all.addAll(second);
+        return all;
+    }
+}
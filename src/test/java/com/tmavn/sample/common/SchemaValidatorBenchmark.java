@@ -0,0 +1,60 @@
+package com.tmavn.sample.common;
+
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.entity.OrderData;
+
+/**
+ * Compare the fge validator and the streaming validator on the order and
+ * listener schemas. Run it as a java application.
+ */
+public class SchemaValidatorBenchmark {
+
+    private static final String ORDER_SCHEMA = "src/main/resources/config/jsonSchema/order_data_post.json";
+
+    private static final String LISTENER_SCHEMA = "src/main/resources/config/jsonSchema/listener_info_post.json";
+
+    private static final String ORDER_JSON = "{\"description\":\"Order of user1\",\"state\":\"Scheduled\","
+            + "\"orderDate\":\"2017-01-01 10:00:00\",\"notes\":[{\"author\":\"user1\",\"text\":\"first note\","
+            + "\"date\":\"2017-01-01 10:00:00\"},{\"author\":\"user2\",\"text\":\"second note\",\"date\":null}]}";
+
+    private static final String ORDER_JSON_NG = "{\"description\":\"Order of user1\",\"state\":\"Unknown\"}";
+
+    private static final String LISTENER_JSON = "{\"userId\":\"user1\",\"callback\":"
+            + "\"http://localhost:8081/ListenerProject/api/v1/listener\",\"query\":\"state=Scheduled,Completed\"}";
+
+    private static final int WARM_UP = 20000;
+
+    private static final int ITERATIONS = 100000;
+
+    public static void main(String[] args) {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.ERROR);
+        System.out.println("Start schema validator benchmark, " + ITERATIONS + " iterations");
+
+        for (String validatorName : new String[] { SchemaValidator.FGE, SchemaValidator.STREAMING }) {
+            JsonValidation.setValidatorName(validatorName);
+            run(validatorName, "order valid", ORDER_SCHEMA, ORDER_JSON, OrderData.class);
+            run(validatorName, "order invalid", ORDER_SCHEMA, ORDER_JSON_NG, OrderData.class);
+            run(validatorName, "listener valid", LISTENER_SCHEMA, LISTENER_JSON, ListenerInfo.class);
+        }
+        JsonValidation.setValidatorName(SchemaValidator.FGE);
+        System.out.println("End schema validator benchmark");
+    }
+
+    private static void run(String validatorName, String name, String schema, String json, Class<?> type) {
+        for (int i = 0; i < WARM_UP; i++) {
+            JsonValidation.validateAndBind(schema, json, type);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            JsonValidation.validateAndBind(schema, json, type);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("%-10s %-15s %8.2f us/op", validatorName, name,
+                elapsed / 1000.0 / ITERATIONS));
+    }
+}
@@ -0,0 +1,49 @@
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testAdvanceExpireAtEndOfTick() {
+        TimingWheel<String> wheel = new TimingWheel<String>(100, 8, 1000);
+        wheel.add("a", 1150);
+        wheel.add("b", 1200);
+
+        assertTrue(wheel.advance(1199).isEmpty());
+        assertEquals(Arrays.asList("a", "b"), wheel.advance(1200));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testAdvanceExpireAfterTurnsOfWheel() {
+        TimingWheel<String> wheel = new TimingWheel<String>(100, 8, 0);
+        // the same bucket as 300, two turns later
+        wheel.add("late", 1900);
+        wheel.add("early", 300);
+
+        assertEquals(Arrays.asList("early"), wheel.advance(300));
+        assertTrue(wheel.advance(1899).isEmpty());
+        assertEquals(1, wheel.size());
+        assertEquals(Arrays.asList("late"), wheel.advance(1900));
+    }
+
+    @Test
+    public void testAddPastDeadlineExpireAtNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<String>(100, 8, 0);
+        wheel.advance(500);
+        wheel.add("past", 100);
+
+        assertEquals(Arrays.asList("past"), wheel.advance(600));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateZeroTickThrowException() {
+        new TimingWheel<String>(0, 8, 0);
+    }
+}
@@ -0,0 +1,42 @@
+package com.tmavn.sample.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testReserveBurstThenWaitForRate() {
+        // 10 per second: one token each 100 ms
+        TokenBucket tokenBucket = new TokenBucket(10, 2, 0);
+
+        assertEquals(0, tokenBucket.reserve(0));
+        assertEquals(0, tokenBucket.reserve(0));
+        assertEquals(100 * MILLIS, tokenBucket.reserve(0));
+        // the waiting requests are served in order
+        assertEquals(200 * MILLIS, tokenBucket.reserve(0));
+    }
+
+    @Test
+    public void testReserveRefillUpToBurst() {
+        TokenBucket tokenBucket = new TokenBucket(10, 2, 0);
+        tokenBucket.reserve(0);
+        tokenBucket.reserve(0);
+
+        assertEquals(0, tokenBucket.reserve(100 * MILLIS));
+        // a long idle time refills the burst only
+        assertEquals(0, tokenBucket.reserve(10000 * MILLIS));
+        assertEquals(0, tokenBucket.reserve(10000 * MILLIS));
+        assertEquals(100 * MILLIS, tokenBucket.reserve(10000 * MILLIS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateZeroRateThrowException() {
+        new TokenBucket(0, 1);
+    }
+}
@@ -0,0 +1,135 @@
+package com.tmavn.sample.controller;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.tmavn.sample.entity.DeadLetter;
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.model.DeadLetterFilter;
+import com.tmavn.sample.model.ReplayJob;
+import com.tmavn.sample.service.DeadLetterService;
+import com.tmavn.sample.service.ListenerInfoService;
+
+public class DeadLetterControllerTest {
+
+    @InjectMocks
+    private DeadLetterController deadLetterController;
+
+    @Mock
+    private DeadLetterService deadLetterService;
+
+    @Mock
+    private ListenerInfoService listenerInfoService;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        mockMvc = MockMvcBuilders.standaloneSetup(deadLetterController).build();
+    }
+
+    @Test
+    public void testGetDeadLettersFilterByListener() throws Exception {
+        ListenerInfo listenerInfo = new ListenerInfo();
+        listenerInfo.setId(1L);
+        listenerInfo.setUserId("userA");
+        listenerInfo.setCallback("http://localhost:8080/successUrl");
+        when(listenerInfoService.findById(1L)).thenReturn(listenerInfo);
+        List<DeadLetter> deadLetters = new ArrayList<DeadLetter>();
+        DeadLetter deadLetter = new DeadLetter();
+        deadLetter.setTriggerId("trigger0");
+        deadLetter.setHttpStatus(503);
+        deadLetters.add(deadLetter);
+        when(deadLetterService.find(any(DeadLetterFilter.class), eq(10))).thenReturn(deadLetters);
+
+        mockMvc.perform(get("/api/v1/deadletter").param("listenerId", "1").param("limit", "10")
+                .param("from", "2017-01-01 10:00:00")).andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1))).andExpect(jsonPath("$[0].triggerId", is("trigger0")))
+                .andExpect(jsonPath("$[0].httpStatus", is(503)));
+
+        ArgumentCaptor<DeadLetterFilter> captor = ArgumentCaptor.forClass(DeadLetterFilter.class);
+        verify(deadLetterService).find(captor.capture(), eq(10));
+        assertEquals("userA", captor.getValue().getUserId());
+        assertEquals("http://localhost:8080/successUrl", captor.getValue().getCallback());
+        assertEquals(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse("2017-01-01 10:00:00"),
+                captor.getValue().getFrom());
+        assertNull(captor.getValue().getTo());
+    }
+
+    @Test
+    public void testGetDeadLettersListenerNotFound() throws Exception {
+        when(listenerInfoService.findById(2L)).thenReturn(null);
+
+        mockMvc.perform(get("/api/v1/deadletter").param("listenerId", "2")).andExpect(status().isNotFound());
+        verify(deadLetterService, never()).find(any(), any(Integer.class));
+    }
+
+    @Test
+    public void testGetDeadLettersInvalidLimit() throws Exception {
+        mockMvc.perform(get("/api/v1/deadletter").param("limit", "0")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testReplayDeadLettersByHost() throws Exception {
+        ReplayJob job = new ReplayJob();
+        job.setId("job1");
+        job.setStatus(ReplayJob.STATUS_RUNNING);
+        when(deadLetterService.startReplay(any(DeadLetterFilter.class))).thenReturn(job);
+
+        mockMvc.perform(post("/api/v1/deadletter/replay").param("host", "localhost:8080"))
+                .andExpect(status().isAccepted()).andExpect(jsonPath("$.id", is("job1")))
+                .andExpect(jsonPath("$.status", is(ReplayJob.STATUS_RUNNING)));
+
+        ArgumentCaptor<DeadLetterFilter> captor = ArgumentCaptor.forClass(DeadLetterFilter.class);
+        verify(deadLetterService).startReplay(captor.capture());
+        assertEquals("localhost:8080", captor.getValue().getHost());
+        assertNull(captor.getValue().getUserId());
+    }
+
+    @Test
+    public void testReplayDeadLettersInvalidTime() throws Exception {
+        mockMvc.perform(post("/api/v1/deadletter/replay").param("from", "yesterday"))
+                .andExpect(status().isBadRequest());
+        verify(deadLetterService, never()).startReplay(any());
+    }
+
+    @Test
+    public void testGetReplayCounts() throws Exception {
+        ReplayJob job = new ReplayJob();
+        job.setId("job1");
+        job.setStatus(ReplayJob.STATUS_DONE);
+        job.setReplayed(3);
+        job.setSkipped(1);
+        when(deadLetterService.findReplay("job1")).thenReturn(job);
+
+        mockMvc.perform(get("/api/v1/deadletter/replay/job1")).andExpect(status().isOk())
+                .andExpect(jsonPath("$.status", is(ReplayJob.STATUS_DONE))).andExpect(jsonPath("$.replayed", is(3)))
+                .andExpect(jsonPath("$.skipped", is(1)));
+        mockMvc.perform(get("/api/v1/deadletter/replay/job2")).andExpect(status().isNotFound());
+    }
+}
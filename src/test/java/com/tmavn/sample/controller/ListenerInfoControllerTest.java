@@ -2,6 +2,7 @@ package com.tmavn.sample.controller;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
@@ -17,9 +18,12 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 
 import org.junit.After;
@@ -27,6 +31,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -42,13 +47,17 @@ import org.powermock.reflect.Whitebox;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tmavn.sample.common.JsonValidation;
+import com.tmavn.sample.common.ListenerQuery;
 import com.tmavn.sample.common.Utils;
 import com.tmavn.sample.entity.ListenerInfo;
-import com.tmavn.sample.model.CheckResult;
+import com.tmavn.sample.enums.OrderState;
+import com.tmavn.sample.model.BindResult;
 import com.tmavn.sample.service.ListenerInfoService;
+import com.tmavn.sample.service.StateChangeStream;
 
 
 @RunWith(MockitoJUnitRunner.class)
@@ -69,6 +78,9 @@ public class ListenerInfoControllerTest {
     @Mock
     private ListenerInfoService listenerInfoService;
 
+    @Mock
+    private StateChangeStream stateChangeStream;
+
     private MockMvc mockMvc;
 
     @Before
@@ -77,6 +89,7 @@ public class ListenerInfoControllerTest {
         PowerMockito.mockStatic(Utils.class);
         PowerMockito.mockStatic(JsonValidation.class);
         Whitebox.setInternalState(listenerInfoControler, "listenerInfoService", listenerInfoService);
+        Whitebox.setInternalState(listenerInfoControler, "stateChangeStream", stateChangeStream);
         mockMvc = MockMvcBuilders.standaloneSetup(listenerInfoControler).build();
     }
 
@@ -109,6 +122,34 @@ public class ListenerInfoControllerTest {
         verifyNoMoreInteractions(listenerInfoService);
     }
 
+    @Test
+    public void testStreamStateChangesSubscribe() throws Exception {
+        when(stateChangeStream.subscribe(eq("userA"), any(ListenerQuery.class), eq("41")))
+                .thenReturn(new SseEmitter());
+
+        mockMvc.perform(get("/api/v1/listener/stream").header("UserID", "userA").header("Last-Event-ID", "41")
+                .param("query", "state=Processing,Completed")).andExpect(status().isOk())
+                .andExpect(request().asyncStarted());
+
+        ArgumentCaptor<ListenerQuery> query = ArgumentCaptor.forClass(ListenerQuery.class);
+        verify(stateChangeStream, times(1)).subscribe(eq("userA"), query.capture(), eq("41"));
+        assertEquals(EnumSet.of(OrderState.PROCESSING, OrderState.COMPLETED), query.getValue().getStates());
+        verifyNoMoreInteractions(listenerInfoService);
+    }
+
+    @Test
+    public void testStreamStateChangesNoUserIdReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/v1/listener/stream")).andExpect(status().isBadRequest());
+        verifyNoMoreInteractions(stateChangeStream);
+    }
+
+    @Test
+    public void testStreamStateChangesInvalidQueryReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/v1/listener/stream").header("UserID", "userA").param("query", "color=red"))
+                .andExpect(status().isBadRequest());
+        verifyNoMoreInteractions(stateChangeStream);
+    }
+
     @Test
     public void testGetListenerInfoByIdGetOneSuccessful() throws Exception {
 
@@ -147,8 +188,6 @@ public class ListenerInfoControllerTest {
 
         ObjectMapper mapper = new ObjectMapper();
         String jsonToTest = mapper.writeValueAsString(listenerInfo);
-
-        when(Utils.parseJson(any(), any())).thenReturn(listenerInfo);
         doAnswer(new Answer<ListenerInfo>() {
             @Override
             public ListenerInfo answer(InvocationOnMock invocation) throws Throwable {
@@ -157,8 +196,8 @@ public class ListenerInfoControllerTest {
             }
         }).when(listenerInfoService).addNewListenerInfo(any(ListenerInfo.class));
 
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<ListenerInfo> mockCheckValue = new BindResult<ListenerInfo>(true, "mock success validation", listenerInfo);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(ListenerInfo.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(post("/api/v1/listener").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
                 .andExpect(status().isCreated()).andExpect(jsonPath("$.query", is("state=Processing")))
@@ -178,8 +217,6 @@ public class ListenerInfoControllerTest {
 
         ObjectMapper mapper = new ObjectMapper();
         String jsonToTest = mapper.writeValueAsString(listenerInfo);
-
-        when(Utils.parseJson(any(), any())).thenReturn(listenerInfo);
         doAnswer(new Answer<ListenerInfo>() {
             @Override
             public ListenerInfo answer(InvocationOnMock invocation) throws Throwable {
@@ -188,8 +225,8 @@ public class ListenerInfoControllerTest {
             }
         }).when(listenerInfoService).addNewListenerInfo(any(ListenerInfo.class));
 
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<ListenerInfo> mockCheckValue = new BindResult<ListenerInfo>(true, "mock success validation", listenerInfo);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(ListenerInfo.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(post("/api/v1/listener").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
                 .andExpect(status().isCreated()).andExpect(jsonPath("$.query", is("state=Processing")))
@@ -209,8 +246,8 @@ public class ListenerInfoControllerTest {
         String jsonToTest = mapper.writeValueAsString(listenerInfo);
 
         //mock check result invalid json
-        CheckResult mockCheckValue = new CheckResult(false, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<ListenerInfo> mockCheckValue = new BindResult<ListenerInfo>(false, "mock success validation", null);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(ListenerInfo.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(post("/api/v1/listener").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
                 .andExpect(status().isBadRequest());
@@ -229,8 +266,6 @@ public class ListenerInfoControllerTest {
         ObjectMapper mapper = new ObjectMapper();
         String jsonToTest = mapper.writeValueAsString(testUpdateToListener);
 
-        when(Utils.parseJson(any(), any())).thenReturn(testUpdateToListener);
-
         doAnswer(new Answer<ListenerInfo>() {
             @Override
             public ListenerInfo answer(InvocationOnMock invocation) throws Throwable {
@@ -241,8 +276,8 @@ public class ListenerInfoControllerTest {
 
         when(listenerInfoService.exist(1L)).thenReturn(true);
 
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<ListenerInfo> mockCheckValue = new BindResult<ListenerInfo>(true, "mock success validation", testUpdateToListener);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(ListenerInfo.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(
                 put("/api/v1/listener/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
@@ -267,12 +302,10 @@ public class ListenerInfoControllerTest {
         ObjectMapper mapper = new ObjectMapper();
         String jsonToTest = mapper.writeValueAsString(testUpdateToListener);
 
-        when(Utils.parseJson(any(), any())).thenReturn(testUpdateToListener);
-
         when(listenerInfoService.exist(1L)).thenReturn(false); // mock id not exist
 
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<ListenerInfo> mockCheckValue = new BindResult<ListenerInfo>(true, "mock success validation", testUpdateToListener);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(ListenerInfo.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(
                 put("/api/v1/listener/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
@@ -295,8 +328,8 @@ public class ListenerInfoControllerTest {
         String jsonToTest = mapper.writeValueAsString(testUpdateToListener);
 
         // mock check result invalid json
-        CheckResult mockCheckValue = new CheckResult(false, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<ListenerInfo> mockCheckValue = new BindResult<ListenerInfo>(false, "mock success validation", null);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(ListenerInfo.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(
                 put("/api/v1/listener/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
@@ -318,10 +351,8 @@ public class ListenerInfoControllerTest {
         ObjectMapper mapper = new ObjectMapper();
         String jsonToTest = mapper.writeValueAsString(testUpdateToListener);
 
-        when(Utils.parseJson(any(), any())).thenReturn(testUpdateToListener);
-
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<ListenerInfo> mockCheckValue = new BindResult<ListenerInfo>(true, "mock success validation", testUpdateToListener);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(ListenerInfo.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(
                 // mock path id = 2 to cause 400 bad request
@@ -352,10 +383,8 @@ public class ListenerInfoControllerTest {
 
         when(listenerInfoService.patchListenerInfo(eq(1L), any(ListenerInfo.class))).thenReturn(patchedObject);
 
-        when(Utils.parseJson(any(), any())).thenReturn(patchedObject);
-
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<ListenerInfo> mockCheckValue = new BindResult<ListenerInfo>(true, "mock success validation", patchedObject);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(ListenerInfo.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(
                 patch("/api/v1/listener/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
@@ -380,10 +409,8 @@ public class ListenerInfoControllerTest {
         // mock object not exist
         when(listenerInfoService.exist(eq(1L))).thenReturn(false);
 
-        when(Utils.parseJson(any(), any())).thenReturn(testPatchToListener);
-
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<ListenerInfo> mockCheckValue = new BindResult<ListenerInfo>(true, "mock success validation", testPatchToListener);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(ListenerInfo.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(
                 patch("/api/v1/listener/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
@@ -402,8 +429,8 @@ public class ListenerInfoControllerTest {
         String jsonToTest = mapper.writeValueAsString(testPatchToListener);
 
         // mock check result invalid json
-        CheckResult mockCheckValue = new CheckResult(false, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<ListenerInfo> mockCheckValue = new BindResult<ListenerInfo>(false, "mock success validation", null);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(ListenerInfo.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(
                 patch("/api/v1/listener/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
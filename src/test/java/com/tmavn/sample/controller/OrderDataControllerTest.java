@@ -17,6 +17,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -48,9 +49,8 @@ import com.tmavn.sample.common.JsonValidation;
 import com.tmavn.sample.common.Utils;
 import com.tmavn.sample.controller.OrderDataController;
 import com.tmavn.sample.entity.OrderData;
-import com.tmavn.sample.model.CheckResult;
+import com.tmavn.sample.model.BindResult;
 import com.tmavn.sample.service.OrderDataService;
-import com.tmavn.sample.service.StateChangeService;
 
 @RunWith(MockitoJUnitRunner.class)
 @PowerMockIgnore({ "org.mockito.*" })
@@ -70,9 +70,6 @@ public class OrderDataControllerTest {
     @Mock
     private OrderDataService orderDataService;
 
-    @Mock
-    private StateChangeService stateChangeService;
-
     private MockMvc mockMvc;
 
     @Before
@@ -181,15 +178,16 @@ public class OrderDataControllerTest {
         createdOrder.setModifyDate(now);
         createdOrder.setOrderDate(now);
 
-        when(orderDataService.addNewOrderData(any(OrderData.class))).thenReturn(createdOrder);
-        when(Utils.parseJson(any(), any())).thenReturn(order1);
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        when(orderDataService.prepareNewOrderData(any(OrderData.class))).thenReturn(createdOrder);
+        when(orderDataService.addNewOrderData(any(), any(OrderData.class))).thenReturn(createdOrder);
+        BindResult<OrderData> mockCheckValue = new BindResult<OrderData>(true, "mock success validation", order1);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(OrderData.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(post("/api/v1/order").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
                 .andExpect(status().isCreated());
 
-        verify(orderDataService, times(1)).addNewOrderData(any(OrderData.class));
+        verify(orderDataService, times(1)).prepareNewOrderData(any(OrderData.class)); // call OPS
+        verify(orderDataService, times(1)).addNewOrderData(any(), eq(createdOrder)); // save and notify
 
         verifyNoMoreInteractions(orderDataService);
     }
@@ -203,8 +201,8 @@ public class OrderDataControllerTest {
         ObjectMapper mapper = new ObjectMapper();
         String jsonToTest = mapper.writeValueAsString(withoutStateObj);
 
-        CheckResult mockCheckValue = new CheckResult(false, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<OrderData> mockCheckValue = new BindResult<OrderData>(false, "mock success validation", null);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(OrderData.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(post("/api/v1/order").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
                 .andExpect(status().isBadRequest());
@@ -224,17 +222,15 @@ public class OrderDataControllerTest {
         String jsonToTest = mapper.writeValueAsString(orderData);
 
         when(orderDataService.exist("1")).thenReturn(true);
-        when(orderDataService.putOrderData(eq("1"), any(OrderData.class))).thenReturn(orderData);
-        when(Utils.parseJson(any(), any())).thenReturn(orderData);
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        when(orderDataService.putOrderData(any(), eq("1"), any(OrderData.class))).thenReturn(orderData);
+        BindResult<OrderData> mockCheckValue = new BindResult<OrderData>(true, "mock success validation", orderData);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(OrderData.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(put("/api/v1/order/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
                 .andExpect(status().isCreated());
 
         verify(orderDataService, times(1)).exist("1"); // check exist
-        verify(orderDataService, times(1)).findById("1"); // store old data for notify
-        verify(orderDataService, times(1)).putOrderData(eq("1"), any(OrderData.class)); // update new data
+        verify(orderDataService, times(1)).putOrderData(any(), eq("1"), any(OrderData.class)); // update and notify
 
         verifyNoMoreInteractions(orderDataService);
     }
@@ -249,8 +245,8 @@ public class OrderDataControllerTest {
         ObjectMapper mapper = new ObjectMapper();
         String jsonToTest = mapper.writeValueAsString(withoutStateObj);
 
-        CheckResult mockCheckValue = new CheckResult(false, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<OrderData> mockCheckValue = new BindResult<OrderData>(false, "mock success validation", null);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(OrderData.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(put("/api/v1/order/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
                 .andExpect(status().isBadRequest());
@@ -267,10 +263,8 @@ public class OrderDataControllerTest {
         withoutStateObj.setState("Scheduled");
         ObjectMapper mapper = new ObjectMapper();
         String jsonToTest = mapper.writeValueAsString(withoutStateObj);
-
-        when(Utils.parseJson(any(), any())).thenReturn(withoutStateObj);
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<OrderData> mockCheckValue = new BindResult<OrderData>(true, "mock success validation", withoutStateObj);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(OrderData.class))).thenReturn(mockCheckValue);
         mockMvc.perform(put("/api/v1/order/2").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
                 .andExpect(status().isBadRequest());
 
@@ -288,10 +282,8 @@ public class OrderDataControllerTest {
         ObjectMapper mapper = new ObjectMapper();
         String jsonToTest = mapper.writeValueAsString(putObj);
 
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
-
-        when(Utils.parseJson(any(), any())).thenReturn(putObj);
+        BindResult<OrderData> mockCheckValue = new BindResult<OrderData>(true, "mock success validation", putObj);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(OrderData.class))).thenReturn(mockCheckValue);
         when(orderDataService.exist("1")).thenReturn(false); // mock not exist in database
 
         mockMvc.perform(put("/api/v1/order/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
@@ -311,18 +303,16 @@ public class OrderDataControllerTest {
         patchObj.setState("Scheduled");
         ObjectMapper mapper = new ObjectMapper();
         String jsonToTest = mapper.writeValueAsString(patchObj);
-        when(Utils.parseJson(any(), any())).thenReturn(patchObj);
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<OrderData> mockCheckValue = new BindResult<OrderData>(true, "mock success validation", patchObj);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(OrderData.class))).thenReturn(mockCheckValue);
         when(orderDataService.exist("1")).thenReturn(true);
-        when(orderDataService.patchOrderData(eq("1"), any(OrderData.class))).thenReturn(patchObj);
+        when(orderDataService.patchOrderData(any(), eq("1"), any(OrderData.class))).thenReturn(patchObj);
 
         mockMvc.perform(patch("/api/v1/order/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
                 .andExpect(status().isCreated());
 
         verify(orderDataService, times(1)).exist("1"); // check exist
-        verify(orderDataService, times(1)).findById("1"); // store old data for notify
-        verify(orderDataService, times(1)).patchOrderData(eq("1"), any(OrderData.class)); // patching
+        verify(orderDataService, times(1)).patchOrderData(any(), eq("1"), any(OrderData.class)); // patching
 
         verifyNoMoreInteractions(orderDataService);
     }
@@ -337,9 +327,8 @@ public class OrderDataControllerTest {
         String jsonToTest = mapper.writeValueAsString(patchObj);
 
         when(orderDataService.exist("1")).thenReturn(false); // mock not exist in database
-        CheckResult mockCheckValue = new CheckResult(true, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
-        when(Utils.parseJson(any(), any())).thenReturn(patchObj);
+        BindResult<OrderData> mockCheckValue = new BindResult<OrderData>(true, "mock success validation", patchObj);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(OrderData.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(patch("/api/v1/order/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
                 .andExpect(status().isNotFound());
@@ -358,8 +347,8 @@ public class OrderDataControllerTest {
         String jsonToTest = mapper.writeValueAsString(badObject);
 
         // mock check result invalid json
-        CheckResult mockCheckValue = new CheckResult(false, "mock success validation");
-        when(JsonValidation.validate(any(), any())).thenReturn(mockCheckValue);
+        BindResult<OrderData> mockCheckValue = new BindResult<OrderData>(false, "mock success validation", null);
+        when(JsonValidation.validateAndBind(any(), any(InputStream.class), eq(OrderData.class))).thenReturn(mockCheckValue);
 
         mockMvc.perform(patch("/api/v1/order/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content(jsonToTest))
                 .andExpect(status().isBadRequest());
@@ -372,13 +361,12 @@ public class OrderDataControllerTest {
     public void testDeleteOrderDeleteOneSuccessful() throws Exception {
 
         when(orderDataService.exist("1")).thenReturn(true);
-        when(orderDataService.delete(eq("1"))).thenReturn(any(OrderData.class));
+        when(orderDataService.delete(any(), eq("1"))).thenReturn(new OrderData());
         mockMvc.perform(delete("/api/v1/order/1").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
                 .andExpect(status().isOk());
 
         verify(orderDataService, times(1)).exist("1"); // check exist
-        verify(orderDataService, times(1)).findById("1"); // find id to udpate state
-        verify(orderDataService, times(1)).delete("1"); // deleting
+        verify(orderDataService, times(1)).delete(any(), eq("1")); // deleting
 
         verifyNoMoreInteractions(orderDataService);
     }
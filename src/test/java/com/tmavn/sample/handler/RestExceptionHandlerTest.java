@@ -11,6 +11,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
 
+import com.tmavn.sample.common.RequestBodyTooLargeException;
 import com.tmavn.sample.handler.RestExceptionHandler;
 
 public class RestExceptionHandlerTest {
@@ -39,6 +40,17 @@ public class RestExceptionHandlerTest {
         assertEquals(expectResponse, resultResponse);
     }
 
+    @Test
+    public void testRequestBodyTooLargeExceptionHandler_success() {
+        RequestBodyTooLargeException e = new RequestBodyTooLargeException(1024);
+        RestExceptionHandler restExceptionHandler = new RestExceptionHandler();
+
+        ResponseEntity<?> resultResponse = restExceptionHandler.requestBodyTooLargeExceptionHandler(e);
+        ResponseEntity<?> expectResponse = ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+
+        assertEquals(expectResponse, resultResponse);
+    }
+
     @Test
     public void testExceptionHandler_success() {
         Exception e = mock(Exception.class);
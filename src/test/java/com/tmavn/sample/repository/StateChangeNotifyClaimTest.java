@@ -0,0 +1,313 @@
+package com.tmavn.sample.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.entity.StateChangeNotify;
+
+/**
+ * Claim the notifications from two nodes on the database of
+ * src/test/resources/config/sample.conf. The claim query is PostgreSQL only,
+ * the tests are skipped when the database is not reachable. The tables are
+ * created in their own schema, which is dropped after each test: the rows of
+ * the other schemas are not read nor deleted.
+ */
+public class StateChangeNotifyClaimTest {
+
+    private static final String CONFIG = "src/test/resources/config/sample.conf";
+
+    private static final String SCHEMA = "claim_test";
+
+    private static final String USER_ID = "claimTest";
+
+    private static final int ROWS = 10;
+
+    private static final String ORDERED_CALLBACK = "http://localhost:8081/ordered";
+
+    private LocalContainerEntityManagerFactoryBean factory;
+
+    private EntityManager first;
+
+    private EntityManager second;
+
+    private OrderData orderData;
+
+    @Before
+    public void setUp() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(CONFIG)) {
+            properties.load(in);
+        }
+        Assume.assumeTrue("PostgreSQL is not reachable", isReachable(properties));
+        executeSql(properties, "CREATE SCHEMA IF NOT EXISTS " + SCHEMA);
+        properties.setProperty("hibernate.connection.url", getSchemaUrl(properties));
+        // the schema update reads the tables of the test schema only
+        properties.setProperty("hibernate.default_schema", SCHEMA);
+
+        factory = new LocalContainerEntityManagerFactoryBean();
+        HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
+        vendorAdapter.setGenerateDdl(true);
+        factory.setJpaVendorAdapter(vendorAdapter);
+        factory.setPackagesToScan("com.tmavn.sample.entity");
+        factory.setJpaProperties(properties);
+        factory.afterPropertiesSet();
+        first = factory.getNativeEntityManagerFactory().createEntityManager();
+        second = factory.getNativeEntityManagerFactory().createEntityManager();
+        createRows();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (factory == null) {
+            return;
+        }
+        first.close();
+        second.close();
+        factory.destroy();
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(CONFIG)) {
+            properties.load(in);
+        }
+        executeSql(properties, "DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+    }
+
+    @Test
+    public void testConcurrentClaimsGetDisjointRows() {
+        StateChangeNotifyRepository firstRepo = new JpaRepositoryFactory(first)
+                .getRepository(StateChangeNotifyRepository.class);
+        StateChangeNotifyRepository secondRepo = new JpaRepositoryFactory(second)
+                .getRepository(StateChangeNotifyRepository.class);
+        Date now = new Date();
+        Date leaseUntil = new Date(now.getTime() + 60000);
+
+        // the first claim holds its row locks until its commit
+        first.getTransaction().begin();
+        int firstCount = firstRepo.claim("node1/1", now, leaseUntil, 6);
+        second.getTransaction().begin();
+        int secondCount = secondRepo.claim("node2/1", now, leaseUntil, 6);
+        second.getTransaction().commit();
+        first.getTransaction().commit();
+
+        assertEquals(6, firstCount);
+        assertEquals(4, secondCount);
+        List<StateChangeNotify> firstClaimed = firstRepo.findClaimed("node1/1", StateChangeNotify.STATUS_SENDING);
+        List<StateChangeNotify> secondClaimed = secondRepo.findClaimed("node2/1", StateChangeNotify.STATUS_SENDING);
+        Set<String> ids = new HashSet<String>();
+        for (StateChangeNotify notify : firstClaimed) {
+            ids.add(notify.getTriggerId());
+        }
+        for (StateChangeNotify notify : secondClaimed) {
+            assertTrue(ids.add(notify.getTriggerId()));
+        }
+        assertEquals(ROWS, ids.size());
+    }
+
+    @Test
+    public void testExpiredLeaseIsClaimedAgain() {
+        StateChangeNotifyRepository firstRepo = new JpaRepositoryFactory(first)
+                .getRepository(StateChangeNotifyRepository.class);
+        StateChangeNotifyRepository secondRepo = new JpaRepositoryFactory(second)
+                .getRepository(StateChangeNotifyRepository.class);
+        Date now = new Date();
+
+        first.getTransaction().begin();
+        assertEquals(ROWS, firstRepo.claim("node1/1", now, new Date(now.getTime() + 1000), ROWS));
+        first.getTransaction().commit();
+
+        // the lease is not expired yet
+        second.getTransaction().begin();
+        assertEquals(0, secondRepo.claim("node2/1", now, new Date(now.getTime() + 60000), ROWS));
+        second.getTransaction().commit();
+
+        // node1 stopped without an answer, its rows are claimed after the lease
+        Date later = new Date(now.getTime() + 2000);
+        second.getTransaction().begin();
+        assertEquals(ROWS, secondRepo.claim("node2/2", later, new Date(later.getTime() + 60000), ROWS));
+        second.getTransaction().commit();
+        assertEquals(ROWS, secondRepo.findClaimed("node2/2", StateChangeNotify.STATUS_SENDING).size());
+        assertEquals(0, secondRepo.findClaimed("node1/1", StateChangeNotify.STATUS_SENDING).size());
+    }
+
+    @Test
+    public void testResultOfLostLeaseIsNotWritten() {
+        StateChangeNotifyRepository firstRepo = new JpaRepositoryFactory(first)
+                .getRepository(StateChangeNotifyRepository.class);
+        StateChangeNotifyRepository secondRepo = new JpaRepositoryFactory(second)
+                .getRepository(StateChangeNotifyRepository.class);
+        Date now = new Date();
+        first.getTransaction().begin();
+        firstRepo.claim("node1/1", now, new Date(now.getTime() + 1000), ROWS);
+        first.getTransaction().commit();
+        String triggerId = firstRepo.findClaimed("node1/1", StateChangeNotify.STATUS_SENDING).get(0).getTriggerId();
+
+        // node1 was too slow, node2 claimed its rows after the lease
+        Date later = new Date(now.getTime() + 2000);
+        second.getTransaction().begin();
+        secondRepo.claim("node2/1", later, new Date(later.getTime() + 60000), ROWS);
+        second.getTransaction().commit();
+
+        first.getTransaction().begin();
+        assertEquals(0, firstRepo.extendLeases("node1/%", StateChangeNotify.STATUS_SENDING,
+                new Date(later.getTime() + 60000)));
+        assertEquals(0, firstRepo.updateLeased(triggerId, "node1/1", StateChangeNotify.STATUS_SENDING,
+                StateChangeNotify.STATUS_SENT, 1, null, 200, null));
+        first.getTransaction().commit();
+        second.getTransaction().begin();
+        assertEquals(ROWS, secondRepo.extendLeases("node2/%", StateChangeNotify.STATUS_SENDING,
+                new Date(later.getTime() + 60000)));
+        assertEquals(1, secondRepo.updateLeased(triggerId, "node2/1", StateChangeNotify.STATUS_SENDING,
+                StateChangeNotify.STATUS_SENT, 1, null, 200, null));
+        second.getTransaction().commit();
+    }
+
+    @Test
+    public void testClaimDueIds() {
+        StateChangeNotifyRepository firstRepo = new JpaRepositoryFactory(first)
+                .getRepository(StateChangeNotifyRepository.class);
+        Date now = new Date();
+        Date leaseUntil = new Date(now.getTime() + 60000);
+        List<String> ids = new ArrayList<String>();
+        for (StateChangeNotify notify : firstRepo.findAll()) {
+            if (USER_ID.equals(notify.getUserId())) {
+                ids.add(notify.getTriggerId());
+            }
+        }
+
+        first.getTransaction().begin();
+        assertEquals(2, firstRepo.claimIds("node1/1", ids.subList(0, 2), now, leaseUntil));
+        first.getTransaction().commit();
+        assertEquals(2, firstRepo.findClaimed("node1/1", StateChangeNotify.STATUS_SENDING).size());
+
+        // the claimed ids are skipped, the others are not claimed
+        first.getTransaction().begin();
+        assertEquals(1, firstRepo.claimIds("node1/2", ids.subList(1, 3), now, leaseUntil));
+        first.getTransaction().commit();
+        assertEquals(1, firstRepo.findClaimed("node1/2", StateChangeNotify.STATUS_SENDING).size());
+    }
+
+    @Test
+    public void testFailedNotificationNotOvertaken() {
+        StateChangeNotifyRepository firstRepo = new JpaRepositoryFactory(first)
+                .getRepository(StateChangeNotifyRepository.class);
+        Date now = new Date();
+        Date leaseUntil = new Date(now.getTime() + 60000);
+        // the notification N failed and waits for its retry, N + 1 is due
+        first.getTransaction().begin();
+        StateChangeNotify failed = createRow(ORDERED_CALLBACK, 100L, 1, new Date(now.getTime() + 1000));
+        StateChangeNotify next = createRow(ORDERED_CALLBACK, 101L, 0, new Date(now.getTime() - 1000));
+        first.getTransaction().commit();
+        first.clear();
+
+        first.getTransaction().begin();
+        assertEquals(ROWS, firstRepo.claim("node1/1", now, leaseUntil, ROWS + 2));
+        first.getTransaction().commit();
+        assertFalse(isClaimed(firstRepo, "node1/1", next.getTriggerId()));
+
+        // the retry of N is due, N + 1 still waits for its result
+        Date later = new Date(now.getTime() + 2000);
+        first.getTransaction().begin();
+        assertEquals(1, firstRepo.claim("node1/2", later, leaseUntil, ROWS + 2));
+        first.getTransaction().commit();
+        assertTrue(isClaimed(firstRepo, "node1/2", failed.getTriggerId()));
+
+        first.getTransaction().begin();
+        assertEquals(1, firstRepo.updateLeased(failed.getTriggerId(), "node1/2", StateChangeNotify.STATUS_SENDING,
+                StateChangeNotify.STATUS_SENT, 2, null, 200, null));
+        assertEquals(1, firstRepo.claim("node1/3", later, leaseUntil, ROWS + 2));
+        first.getTransaction().commit();
+        assertTrue(isClaimed(firstRepo, "node1/3", next.getTriggerId()));
+    }
+
+    private static boolean isClaimed(StateChangeNotifyRepository repo, String owner, String triggerId) {
+        for (StateChangeNotify notify : repo.findClaimed(owner, StateChangeNotify.STATUS_SENDING)) {
+            if (notify.getTriggerId().equals(triggerId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isReachable(Properties properties) {
+        try (Connection connection = DriverManager.getConnection(
+                properties.getProperty("hibernate.connection.url"),
+                properties.getProperty("hibernate.connection.username"),
+                properties.getProperty("hibernate.connection.password"))) {
+            return connection.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void executeSql(Properties properties, String sql) {
+        try (Connection connection = DriverManager.getConnection(
+                properties.getProperty("hibernate.connection.url"),
+                properties.getProperty("hibernate.connection.username"),
+                properties.getProperty("hibernate.connection.password"));
+                Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Gets the url of the database with the test schema as the current schema. */
+    private static String getSchemaUrl(Properties properties) {
+        String url = properties.getProperty("hibernate.connection.url");
+        return url + (url.contains("?") ? "&" : "?") + "currentSchema=" + SCHEMA;
+    }
+
+    private void createRows() {
+        Date past = new Date(System.currentTimeMillis() - 1000);
+        first.getTransaction().begin();
+        orderData = new OrderData();
+        orderData.setState(OrderData.STATE_PROCESSING);
+        orderData.setOrderDate("2017-01-01 10:00:00");
+        first.persist(orderData);
+        for (int i = 0; i < ROWS; i++) {
+            createRow("http://localhost:8081/listener" + i, (long) i, 0, past);
+        }
+        first.getTransaction().commit();
+        first.clear();
+    }
+
+    private StateChangeNotify createRow(String callback, Long sequence, int attempts, Date nextAttemptTime) {
+        StateChangeNotify row = new StateChangeNotify();
+        row.setTriggerTime(new Date(nextAttemptTime.getTime() - 1000));
+        row.setTriggerType(StateChangeNotify.TYPE_STATE_CHANGE_NOTIFY);
+        row.setTriggerData(orderData);
+        row.setUserId(USER_ID);
+        row.setCallback(callback);
+        row.setStatus(StateChangeNotify.STATUS_PENDING);
+        row.setAttempts(attempts);
+        row.setNextAttemptTime(nextAttemptTime);
+        row.setSequence(sequence);
+        first.persist(row);
+        return row;
+    }
+}
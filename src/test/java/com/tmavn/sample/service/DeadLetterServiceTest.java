@@ -0,0 +1,186 @@
+package com.tmavn.sample.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.tmavn.sample.entity.DeadLetter;
+import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.model.DeadLetterFilter;
+import com.tmavn.sample.model.ReplayJob;
+import com.tmavn.sample.repository.DeadLetterRepository;
+import com.tmavn.sample.repository.StateChangeNotifyRepository;
+import com.tmavn.sample.service.impl.DeadLetterServiceImpl;
+
+public class DeadLetterServiceTest {
+
+    @Mock
+    private DeadLetterRepository deadLetterRepository;
+
+    @Mock
+    private StateChangeNotifyRepository stateChangeNotifyRepository;
+
+    @Mock
+    private StateChangeDispatcher stateChangeDispatcher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private DeadLetterServiceImpl deadLetterService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        Mockito.when(stateChangeDispatcher.getReplayRate()).thenReturn(10);
+        deadLetterService.start();
+    }
+
+    @After
+    public void tearDown() {
+        deadLetterService.stop();
+    }
+
+    @Test
+    public void testReplayResetNotificationsAtReplayRate() {
+        List<DeadLetter> deadLetters = Arrays.asList(createDeadLetter("trigger0"), createDeadLetter("trigger1"));
+        Mockito.when(deadLetterRepository.findFiltered(eq("userA"), isNull(), isNull(), any(Date.class),
+                any(Date.class), any(Pageable.class))).thenReturn(deadLetters);
+        List<StateChangeNotify> notifies = new ArrayList<StateChangeNotify>();
+        for (int i = 0; i < 2; i++) {
+            StateChangeNotify notify = new StateChangeNotify();
+            notify.setTriggerId("trigger" + i);
+            notify.setStatus(StateChangeNotify.STATUS_FAILED);
+            notify.setAttempts(5);
+            notify.setLastError("Status 503");
+            notify.setLastStatus(503);
+            notifies.add(notify);
+        }
+        Mockito.when(stateChangeNotifyRepository.findAll(Arrays.asList("trigger0", "trigger1"))).thenReturn(notifies);
+        DeadLetterFilter filter = new DeadLetterFilter();
+        filter.setUserId("userA");
+
+        long now = System.currentTimeMillis();
+        ReplayJob job = replay(filter);
+
+        assertEquals(ReplayJob.STATUS_DONE, job.getStatus());
+        assertEquals(2, job.getReplayed());
+        assertEquals(0, job.getSkipped());
+        for (StateChangeNotify notify : notifies) {
+            assertEquals(StateChangeNotify.STATUS_PENDING, notify.getStatus());
+            assertEquals(Integer.valueOf(0), notify.getAttempts());
+            assertNull(notify.getLastError());
+            assertNull(notify.getLastStatus());
+        }
+        // 10 per second
+        long spacing = notifies.get(1).getNextAttemptTime().getTime() - notifies.get(0).getNextAttemptTime().getTime();
+        assertEquals(100, spacing);
+        assertTrue(notifies.get(0).getNextAttemptTime().getTime() >= now);
+        verify(stateChangeNotifyRepository, times(1)).save(notifies);
+        verify(deadLetterRepository, times(1)).delete(deadLetters);
+        verify(stateChangeDispatcher, timeout(5000).times(1)).wakeUp();
+        // the page is replayed in one transaction
+        verify(transactionManager, times(1)).getTransaction(any());
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    public void testReplayCountDeletedNotificationsSkipped() {
+        List<DeadLetter> deadLetters = Arrays.asList(createDeadLetter("trigger0"), createDeadLetter("trigger1"));
+        Mockito.when(deadLetterRepository.findFiltered(any(), any(), any(), any(Date.class), any(Date.class),
+                any(Pageable.class))).thenReturn(deadLetters);
+        StateChangeNotify notify = new StateChangeNotify();
+        notify.setTriggerId("trigger1");
+        Mockito.when(stateChangeNotifyRepository.findAll(Arrays.asList("trigger0", "trigger1")))
+                .thenReturn(Collections.singletonList(notify));
+
+        ReplayJob job = replay(new DeadLetterFilter());
+
+        assertEquals(1, job.getReplayed());
+        assertEquals(1, job.getSkipped());
+        verify(deadLetterRepository, times(1)).delete(deadLetters);
+    }
+
+    @Test
+    public void testStartReplayRunInBackground() {
+        Mockito.when(deadLetterRepository.findFiltered(any(), any(), any(), any(Date.class), any(Date.class),
+                any(Pageable.class))).thenReturn(new ArrayList<DeadLetter>());
+        ReplayJob job = deadLetterService.startReplay(new DeadLetterFilter());
+
+        assertSame(job, deadLetterService.findReplay(job.getId()));
+        verify(deadLetterRepository, timeout(5000).times(1)).findFiltered(any(), any(), any(),
+                any(Date.class), any(Date.class), any(Pageable.class));
+        assertEquals(ReplayJob.STATUS_DONE, awaitReplay(job.getId()).getStatus());
+        assertNull(deadLetterService.findReplay("job2"));
+    }
+
+    @Test
+    public void testReplayNothingToReplay() {
+        Mockito.when(deadLetterRepository.findFiltered(any(), any(), any(), any(Date.class), any(Date.class),
+                any(Pageable.class))).thenReturn(new ArrayList<DeadLetter>());
+
+        ReplayJob job = replay(new DeadLetterFilter());
+
+        assertEquals(0, job.getReplayed());
+        verify(stateChangeNotifyRepository, never()).save(anyIterable());
+        verify(stateChangeDispatcher, never()).wakeUp();
+    }
+
+    @Test
+    public void testFindUseLimit() {
+        List<DeadLetter> deadLetters = Arrays.asList(createDeadLetter("trigger0"));
+        Mockito.when(deadLetterRepository.findFiltered(isNull(), isNull(), eq("localhost:8080"), eq(new Date(0)),
+                any(Date.class), eq(new PageRequest(0, 5)))).thenReturn(deadLetters);
+        DeadLetterFilter filter = new DeadLetterFilter();
+        filter.setHost("localhost:8080");
+
+        assertEquals(deadLetters, deadLetterService.find(filter, 5));
+    }
+
+    /** Start a replay job and wait for its end. */
+    private ReplayJob replay(DeadLetterFilter filter) {
+        return awaitReplay(deadLetterService.startReplay(filter).getId());
+    }
+
+    private ReplayJob awaitReplay(String id) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ReplayJob.STATUS_RUNNING.equals(deadLetterService.findReplay(id).getStatus())
+                && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        return deadLetterService.findReplay(id);
+    }
+
+    private DeadLetter createDeadLetter(String triggerId) {
+        DeadLetter deadLetter = new DeadLetter();
+        deadLetter.setTriggerId(triggerId);
+        deadLetter.setUserId("userA");
+        return deadLetter;
+    }
+}
@@ -0,0 +1,121 @@
+package com.tmavn.sample.service;
+
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.tmavn.sample.common.InvalidationSettings;
+import com.tmavn.sample.common.InvalidationTransport;
+import com.tmavn.sample.common.MemoryInvalidationTransport;
+import com.tmavn.sample.service.impl.InvalidationBusImpl;
+
+/**
+ * Two buses on the memory transport stand for two nodes.
+ */
+public class InvalidationBusTest {
+
+    private InvalidationBusImpl first;
+
+    private InvalidationBusImpl second;
+
+    private InvalidationBus.Listener firstListener;
+
+    private InvalidationBus.Listener secondListener;
+
+    @Before
+    public void init() {
+        InvalidationSettings settings = new InvalidationSettings();
+        settings.setFlushInterval(20);
+        InvalidationBusImpl.configure(settings);
+        first = new InvalidationBusImpl();
+        second = new InvalidationBusImpl();
+        first.start();
+        second.start();
+        firstListener = mock(InvalidationBus.Listener.class);
+        secondListener = mock(InvalidationBus.Listener.class);
+        first.subscribe(InvalidationBus.LISTENER_INFO, firstListener);
+        second.subscribe(InvalidationBus.LISTENER_INFO, secondListener);
+    }
+
+    @After
+    public void tearDown() {
+        first.stop();
+        second.stop();
+        InvalidationBusImpl.configure(new InvalidationSettings());
+    }
+
+    @Test
+    public void testInvalidateOtherNodeOnly() {
+        first.invalidate(InvalidationBus.LISTENER_INFO, "1");
+
+        verify(secondListener, timeout(1000)).invalidate("1");
+        verify(firstListener, after(100).never()).invalidate("1");
+    }
+
+    @Test
+    public void testInvalidateCoalescePerKey() {
+        first.invalidate(InvalidationBus.LISTENER_INFO, "1");
+        first.invalidate(InvalidationBus.LISTENER_INFO, "1");
+        first.invalidate(InvalidationBus.LISTENER_INFO, "2");
+        first.invalidate(InvalidationBus.LISTENER_INFO, "1");
+        first.invalidate(InvalidationBus.ORDER_DATA, "1");
+
+        verify(secondListener, timeout(1000)).invalidate("2");
+        verify(secondListener, after(100).times(1)).invalidate("1");
+    }
+
+    @Test
+    public void testReceiveLateInvalidationIgnored() throws Exception {
+        InvalidationTransport other = new MemoryInvalidationTransport();
+        other.start(mock(InvalidationTransport.Receiver.class));
+        try {
+            other.send("other 5\nL 1\nL 2");
+            // version 4 was taken before, its message is late
+            other.send("other 4\nL 1");
+            other.send("other 6\nL 2");
+        } finally {
+            other.stop();
+        }
+
+        verify(secondListener, times(1)).invalidate("1");
+        verify(secondListener, times(2)).invalidate("2");
+    }
+
+    @Test
+    public void testInvalidateInTransactionSentAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            first.invalidate(InvalidationBus.LISTENER_INFO, "1");
+            verify(secondListener, after(100).never()).invalidate("1");
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager
+                    .getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(secondListener, timeout(1000)).invalidate("1");
+    }
+
+    @Test
+    public void testInvalidateRolledBackNotSent() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            first.invalidate(InvalidationBus.LISTENER_INFO, "1");
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(secondListener, after(100).never()).invalidate("1");
+    }
+}
@@ -37,6 +37,12 @@ public class ListenerInfoServiceTest {
     @Mock
     private SimpleDateFormat dateFormat;
 
+    @Mock
+    private ListenerRegistry listenerRegistry;
+
+    @Mock
+    private InvalidationBus invalidationBus;
+
     @Before
     public void init() {
         listenerInfoService = new ListenerInfoServiceImpl();
@@ -108,11 +114,25 @@ public class ListenerInfoServiceTest {
         result.add(info1);
         result.add(info2);
 
-        when(listenerInfoRepository.findByUserId("userA")).thenReturn(result);
+        when(listenerRegistry.findByUserId("userA")).thenReturn(result);
 
         Iterable<ListenerInfo> actual = listenerInfoService.findByUserId("userA");
         assertEquals(2, ((Collection<?>) actual).size());
-        verify(listenerInfoRepository, times(1)).findByUserId("userA");
+        verify(listenerRegistry, times(1)).findByUserId("userA");
+
+        verifyNoMoreInteractions(listenerInfoRepository);
+    }
+
+    @Test
+    public void testFindByUserIdAndStateSuccessful() {
+        List<ListenerInfo> result = new ArrayList<ListenerInfo>();
+        result.add(new ListenerInfo());
+
+        when(listenerRegistry.findByUserIdAndState("userA", "Processing")).thenReturn(result);
+
+        Iterable<ListenerInfo> actual = listenerInfoService.findByUserIdAndState("userA", "Processing");
+        assertEquals(1, ((Collection<?>) actual).size());
+        verify(listenerRegistry, times(1)).findByUserIdAndState("userA", "Processing");
 
         verifyNoMoreInteractions(listenerInfoRepository);
     }
@@ -122,6 +142,8 @@ public class ListenerInfoServiceTest {
         listenerInfoService.delete(1L);
 
         verify(listenerInfoRepository, times(1)).delete(1L);
+        verify(listenerRegistry, times(1)).remove(1L);
+        verify(invalidationBus, times(1)).invalidate(InvalidationBus.LISTENER_INFO, "1");
         verifyNoMoreInteractions(listenerInfoRepository);
     }
 
@@ -143,6 +165,8 @@ public class ListenerInfoServiceTest {
         }).when(listenerInfoRepository).save(any(ListenerInfo.class));
 
         ListenerInfo createdListenerData = listenerInfoService.addNewListenerInfo(testAddInfo);
+        verify(listenerRegistry, times(1)).put(createdListenerData);
+        verify(invalidationBus, times(1)).invalidate(InvalidationBus.LISTENER_INFO, "1");
 
         assertEquals(testAddInfo.getQuery(), createdListenerData.getQuery());
         assertEquals(testAddInfo.getCallback(), createdListenerData.getCallback());
@@ -168,6 +192,8 @@ public class ListenerInfoServiceTest {
         }).when(listenerInfoRepository).save(any(ListenerInfo.class));
 
         ListenerInfo updatedInfo = listenerInfoService.updateListenerInfo(testUpdateInfo);
+        verify(listenerRegistry, times(1)).put(updatedInfo);
+        verify(invalidationBus, times(1)).invalidate(InvalidationBus.LISTENER_INFO, "1");
 
         assertEquals(testUpdateInfo.getCallback(), updatedInfo.getCallback());
         assertEquals(testUpdateInfo.getQuery(), updatedInfo.getQuery());
@@ -198,6 +224,7 @@ public class ListenerInfoServiceTest {
         }).when(listenerInfoRepository).save(any(ListenerInfo.class));
 
         ListenerInfo patchedInfo = listenerInfoService.patchListenerInfo(1L, testPatchInfo);
+        verify(listenerRegistry, times(1)).put(patchedInfo);
 
         assertEquals(testPatchInfo.getCallback(), patchedInfo.getCallback());
         assertEquals(testPatchInfo.getQuery(), patchedInfo.getQuery());
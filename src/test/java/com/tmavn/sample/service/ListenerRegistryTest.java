@@ -0,0 +1,337 @@
+package com.tmavn.sample.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.reflect.Whitebox;
+
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.repository.ListenerInfoRepository;
+import com.tmavn.sample.service.impl.ListenerRegistryImpl;
+
+public class ListenerRegistryTest {
+
+    @InjectMocks
+    private ListenerRegistryImpl listenerRegistry;
+
+    @Mock
+    private ListenerInfoRepository listenerInfoRepository;
+
+    @Mock
+    private InvalidationBus invalidationBus;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void testLoadFindByUserIdSuccessful() {
+        List<ListenerInfo> listenerInfos = new ArrayList<ListenerInfo>();
+        listenerInfos.add(createListener(1L, "userA"));
+        listenerInfos.add(createListener(2L, "userA"));
+        listenerInfos.add(createListener(3L, "userB"));
+        when(listenerInfoRepository.findAll()).thenReturn(listenerInfos);
+
+        listenerRegistry.load();
+
+        assertEquals(2, listenerRegistry.findByUserId("userA").size());
+        assertEquals(1, listenerRegistry.findByUserId("userB").size());
+        assertTrue(listenerRegistry.findByUserId("userC").isEmpty());
+        assertTrue(listenerRegistry.findByUserId(null).isEmpty());
+        assertEquals(3, listenerRegistry.size());
+        assertEquals(4, listenerRegistry.getHits());
+        assertEquals(0, listenerRegistry.getMisses());
+        verify(listenerInfoRepository, times(0)).findByUserId("userA");
+    }
+
+    @Test
+    public void testFindByUserIdNotLoadedReadDatabase() {
+        List<ListenerInfo> listenerInfos = new ArrayList<ListenerInfo>();
+        listenerInfos.add(createListener(1L, "userA"));
+        when(listenerInfoRepository.findAll()).thenThrow(new IllegalStateException("No database"));
+        when(listenerInfoRepository.findByUserId("userA")).thenReturn(listenerInfos);
+
+        listenerRegistry.load();
+
+        assertEquals(1, listenerRegistry.findByUserId("userA").size());
+        assertEquals(0, listenerRegistry.getHits());
+        assertEquals(1, listenerRegistry.getMisses());
+    }
+
+    @Test
+    public void testPutUpdateAndRemoveSuccessful() {
+        when(listenerInfoRepository.findAll()).thenReturn(new ArrayList<ListenerInfo>());
+        listenerRegistry.load();
+
+        listenerRegistry.put(createListener(1L, "userA"));
+        listenerRegistry.put(createListener(2L, "userA"));
+        // the listener 1 is moved to another user
+        ListenerInfo moved = createListener(1L, "userB");
+        listenerRegistry.put(moved);
+
+        assertEquals(1, listenerRegistry.findByUserId("userA").size());
+        assertEquals(Long.valueOf(2L), listenerRegistry.findByUserId("userA").get(0).getId());
+        assertEquals(Long.valueOf(1L), listenerRegistry.findByUserId("userB").get(0).getId());
+        assertEquals(2, listenerRegistry.size());
+
+        listenerRegistry.remove(2L);
+        listenerRegistry.remove(5L);
+
+        assertTrue(listenerRegistry.findByUserId("userA").isEmpty());
+        assertEquals(1, listenerRegistry.size());
+    }
+
+    @Test
+    public void testFindByUserIdAndStateSuccessful() {
+        List<ListenerInfo> listenerInfos = new ArrayList<ListenerInfo>();
+        listenerInfos.add(createListener(1L, "userA"));
+        ListenerInfo processing = createListener(2L, "userA");
+        processing.setQuery("state=Processing,Completed");
+        listenerInfos.add(processing);
+        ListenerInfo invalid = createListener(3L, "userA");
+        invalid.setQuery("state=Process");
+        listenerInfos.add(invalid);
+        when(listenerInfoRepository.findAll()).thenReturn(listenerInfos);
+
+        listenerRegistry.load();
+
+        assertEquals(2, listenerRegistry.findByUserIdAndState("userA", "Processing").size());
+        assertEquals(1, listenerRegistry.findByUserIdAndState("userA", "Scheduled").size());
+        assertTrue(listenerRegistry.findByUserIdAndState("userA", "Process").isEmpty());
+        assertTrue(listenerRegistry.findByUserIdAndState("userB", "Processing").isEmpty());
+
+        // the index is rebuilt when a query changes
+        processing = createListener(2L, "userA");
+        processing.setQuery("state=Scheduled");
+        listenerRegistry.put(processing);
+
+        assertEquals(1, listenerRegistry.findByUserIdAndState("userA", "Processing").size());
+        assertEquals(2, listenerRegistry.findByUserIdAndState("userA", "Scheduled").size());
+        assertEquals(3, listenerRegistry.findByUserId("userA").size());
+    }
+
+    @Test
+    public void testFindByUserIdAndStateNotLoadedReadDatabase() {
+        List<ListenerInfo> listenerInfos = new ArrayList<ListenerInfo>();
+        listenerInfos.add(createListener(1L, "userA"));
+        ListenerInfo completed = createListener(2L, "userA");
+        completed.setQuery("state=Completed");
+        listenerInfos.add(completed);
+        when(listenerInfoRepository.findAll()).thenThrow(new IllegalStateException("No database"));
+        when(listenerInfoRepository.findByUserId("userA")).thenReturn(listenerInfos);
+
+        listenerRegistry.load();
+
+        assertEquals(1, listenerRegistry.findByUserIdAndState("userA", "Failed").size());
+        assertEquals(2, listenerRegistry.findByUserIdAndState("userA", "Completed").size());
+        assertEquals(2, listenerRegistry.getMisses());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testFindByUserIdReadOnly() {
+        when(listenerInfoRepository.findAll()).thenReturn(new ArrayList<ListenerInfo>());
+        listenerRegistry.load();
+        listenerRegistry.put(createListener(1L, "userA"));
+
+        listenerRegistry.findByUserId("userA").clear();
+    }
+
+    @Test
+    public void testFindByUserIdReturnCopies() {
+        when(listenerInfoRepository.findAll()).thenReturn(new ArrayList<ListenerInfo>());
+        listenerRegistry.load();
+        ListenerInfo saved = createListener(1L, "userA");
+        listenerRegistry.put(saved);
+
+        // neither the saved listener nor the found one are registered
+        saved.setCallback("http://localhost:8080/saved");
+        listenerRegistry.findByUserId("userA").get(0).setCallback("http://localhost:8080/found");
+        listenerRegistry.findByUserIdAndState("userA", "Processing").get(0).setQuery("state=Completed");
+
+        ListenerInfo found = listenerRegistry.findByUserId("userA").get(0);
+        assertNotSame(saved, found);
+        assertEquals("http://localhost:8080/listener1", found.getCallback());
+        assertEquals("state=", found.getQuery());
+        assertEquals(1, listenerRegistry.findByUserIdAndState("userA", "Processing").size());
+    }
+
+    @Test
+    public void testLoadFailedLoadAgain() {
+        List<ListenerInfo> listenerInfos = new ArrayList<ListenerInfo>();
+        listenerInfos.add(createListener(1L, "userA"));
+        when(listenerInfoRepository.findAll()).thenThrow(new IllegalStateException("No database"))
+                .thenThrow(new IllegalStateException("No database")).thenReturn(listenerInfos);
+        Whitebox.setInternalState(listenerRegistry, "reloadDelay", 10L);
+
+        try {
+            listenerRegistry.load();
+
+            verify(listenerInfoRepository, timeout(5000).times(3)).findAll();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (listenerRegistry.size() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+            assertEquals(1, listenerRegistry.findByUserId("userA").size());
+            assertEquals(1, listenerRegistry.getHits());
+        } finally {
+            listenerRegistry.destroy();
+        }
+    }
+
+    @Test
+    public void testRefreshFailedLoadAgain() {
+        List<ListenerInfo> listenerInfos = new ArrayList<ListenerInfo>();
+        listenerInfos.add(createListener(1L, "userA"));
+        when(listenerInfoRepository.findAll()).thenReturn(new ArrayList<ListenerInfo>()).thenReturn(listenerInfos);
+        when(listenerInfoRepository.findOne(1L)).thenThrow(new IllegalStateException("No database"));
+        listenerRegistry.load();
+        Whitebox.setInternalState(listenerRegistry, "reloadDelay", 10L);
+
+        try {
+            listenerRegistry.refresh(1L);
+
+            verify(listenerInfoRepository, timeout(5000).times(2)).findAll();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (listenerRegistry.size() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+            assertEquals(1, listenerRegistry.findByUserId("userA").size());
+        } finally {
+            listenerRegistry.destroy();
+        }
+    }
+
+    @Test
+    public void testPutConcurrentSuccessful() throws Exception {
+        when(listenerInfoRepository.findAll()).thenReturn(new ArrayList<ListenerInfo>());
+        listenerRegistry.load();
+
+        final int threads = 8;
+        final int perThread = 200;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            final long base = t * perThread;
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (long i = 0; i < perThread; i++) {
+                        listenerRegistry.put(createListener(base + i, "userA"));
+                        listenerRegistry.findByUserId("userA");
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(threads * perThread, listenerRegistry.findByUserId("userA").size());
+        assertEquals(threads * perThread, listenerRegistry.size());
+    }
+
+    @Test
+    public void testInvalidateReadListenerAgain() {
+        List<ListenerInfo> listenerInfos = new ArrayList<ListenerInfo>();
+        listenerInfos.add(createListener(1L, "userA"));
+        listenerInfos.add(createListener(2L, "userA"));
+        when(listenerInfoRepository.findAll()).thenReturn(listenerInfos);
+        listenerRegistry.init();
+        ArgumentCaptor<InvalidationBus.Listener> captor = ArgumentCaptor.forClass(InvalidationBus.Listener.class);
+        verify(invalidationBus).subscribe(eq(InvalidationBus.LISTENER_INFO), captor.capture());
+
+        // another node moved the listener 1 and deleted the listener 2
+        ListenerInfo moved = createListener(1L, "userB");
+        when(listenerInfoRepository.findOne(1L)).thenReturn(moved);
+        captor.getValue().invalidate("1");
+        captor.getValue().invalidate("2");
+        captor.getValue().invalidate("abc");
+
+        assertTrue(listenerRegistry.findByUserId("userA").isEmpty());
+        assertEquals(Long.valueOf(1L), listenerRegistry.findByUserId("userB").get(0).getId());
+        assertEquals(1, listenerRegistry.size());
+
+        captor.getValue().invalidateAll();
+
+        assertEquals(2, listenerRegistry.findByUserId("userA").size());
+        verify(listenerInfoRepository, times(2)).findAll();
+    }
+
+    @Test
+    public void testLoadKeepOldListenersUntilLoaded() {
+        List<ListenerInfo> listenerInfos = new ArrayList<ListenerInfo>();
+        listenerInfos.add(createListener(1L, "userA"));
+        when(listenerInfoRepository.findAll()).thenReturn(listenerInfos);
+        listenerRegistry.load();
+
+        // the lookups done while the next load compiles the listeners
+        final List<Integer> found = new ArrayList<Integer>();
+        ListenerInfo reloaded = new ListenerInfo() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getQuery() {
+                found.add(listenerRegistry.findByUserId("userA").size());
+                return "state=";
+            }
+        };
+        reloaded.setId(2L);
+        reloaded.setUserId("userA");
+        listenerInfos.add(0, reloaded);
+        listenerRegistry.load();
+
+        assertTrue(found.size() > 0);
+        for (Integer size : found) {
+            assertEquals(Integer.valueOf(1), size);
+        }
+        assertEquals(2, listenerRegistry.findByUserId("userA").size());
+    }
+
+    @Test
+    public void testRefreshDatabaseErrorReadDatabase() {
+        when(listenerInfoRepository.findAll()).thenReturn(new ArrayList<ListenerInfo>());
+        listenerRegistry.load();
+        when(listenerInfoRepository.findOne(1L)).thenThrow(new IllegalStateException("No database"));
+
+        listenerRegistry.refresh(1L);
+        listenerRegistry.findByUserId("userA");
+
+        assertEquals(1, listenerRegistry.getMisses());
+    }
+
+    private static ListenerInfo createListener(long id, String userId) {
+        ListenerInfo listenerInfo = new ListenerInfo();
+        listenerInfo.setId(id);
+        listenerInfo.setUserId(userId);
+        listenerInfo.setCallback("http://localhost:8080/listener" + id);
+        listenerInfo.setQuery("state=");
+        return listenerInfo;
+    }
+}
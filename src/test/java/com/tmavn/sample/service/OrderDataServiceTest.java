@@ -3,6 +3,8 @@ package com.tmavn.sample.service;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -17,6 +19,7 @@ import java.util.List;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -58,6 +61,12 @@ public class OrderDataServiceTest {
     @Mock
     private OrderDataRepository orderDataRepository;
 
+    @Mock
+    private InvalidationBus invalidationBus;
+
+    @Mock
+    private StateChangeService stateChangeService;
+
     @Mock
     private SimpleDateFormat dateFormat;
 
@@ -127,17 +136,20 @@ public class OrderDataServiceTest {
     @Test
     public void testDeleteSuccessful() {
         OrderData testOrder = new OrderData();
+        testOrder.setId("1");
         testOrder.setState("Scheduled");
-        OrderData deletedOrder = testOrder;
-        deletedOrder.setState("Failed");
         when(orderDataRepository.findOne("1")).thenReturn(testOrder);
-        when(orderDataRepository.save(testOrder)).thenReturn(deletedOrder);
-        OrderData result = orderDataService.delete("1");
+        when(orderDataRepository.save(testOrder)).thenReturn(testOrder);
+        OrderData result = orderDataService.delete("user1", "1");
 
         assertEquals("Failed", result.getState());
+        ArgumentCaptor<OrderData> oldData = ArgumentCaptor.forClass(OrderData.class);
+        verify(stateChangeService, times(1)).notifyStateChange(eq("user1"), eq(result), oldData.capture());
+        assertEquals("Scheduled", oldData.getValue().getState());
         verify(orderDataRepository, times(1)).findOne("1");
         verify(orderDataRepository, times(1)).save(any(OrderData.class));
         verifyNoMoreInteractions(orderDataRepository);
+        verify(invalidationBus, times(1)).invalidate(InvalidationBus.ORDER_DATA, "1");
     }
 
     @Test
@@ -179,12 +191,15 @@ public class OrderDataServiceTest {
             }
         }).when(orderDataRepository).save(any(OrderData.class));
 
-        OrderData createdOrderData = orderDataService.addNewOrderData(testAddOrder);
+        OrderData preparedOrderData = orderDataService.prepareNewOrderData(testAddOrder);
+        verifyNoMoreInteractions(orderDataRepository, stateChangeService);
+        OrderData createdOrderData = orderDataService.addNewOrderData("user1", preparedOrderData);
 
         assertNotNull(createdOrderData.getOrderDate());
         assertNotNull(createdOrderData.getModifyDate());
 
         verify(orderDataRepository, times(1)).save(any(OrderData.class));
+        verify(stateChangeService, times(1)).notifyStateChange(eq("user1"), eq(createdOrderData), isNull());
         verifyNoMoreInteractions(orderDataRepository);
     }
 
@@ -211,9 +226,11 @@ public class OrderDataServiceTest {
             }
         }).when(orderDataRepository).save(any(OrderData.class));
 
-        OrderData updatedOrderData = orderDataService.putOrderData("1", testUpdateOrder);
+        OrderData updatedOrderData = orderDataService.putOrderData("user1", "1", testUpdateOrder);
 
         assertEquals(now, updatedOrderData.getModifyDate());
+        verify(stateChangeService, times(1)).notifyStateChange(eq("user1"), eq(updatedOrderData),
+                any(OrderData.class));
 
         verify(orderDataRepository, times(1)).findOne("1");
         verify(orderDataRepository, times(1)).save(any(OrderData.class));
@@ -245,10 +262,13 @@ public class OrderDataServiceTest {
             }
         }).when(orderDataRepository).save(any(OrderData.class));
 
-        OrderData patchedOrderData = orderDataService.patchOrderData("1", testPatchOrder);
+        OrderData patchedOrderData = orderDataService.patchOrderData("user1", "1", testPatchOrder);
 
         assertEquals(now, patchedOrderData.getModifyDate());
         assertEquals("Processing", patchedOrderData.getState());
+        ArgumentCaptor<OrderData> oldData = ArgumentCaptor.forClass(OrderData.class);
+        verify(stateChangeService, times(1)).notifyStateChange(eq("user1"), eq(patchedOrderData), oldData.capture());
+        assertEquals("Scheduled", oldData.getValue().getState());
         verify(orderDataRepository, times(1)).findOne("1");
         verify(orderDataRepository, times(1)).save(any(OrderData.class));
         verifyNoMoreInteractions(orderDataRepository);
@@ -0,0 +1,922 @@
+package com.tmavn.sample.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.mockito.verification.VerificationMode;
+import org.powermock.reflect.Whitebox;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import org.springframework.web.client.HttpServerErrorException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.tmavn.sample.common.AsyncRestClient;
+import com.tmavn.sample.common.JsonMapper;
+import com.tmavn.sample.common.NotifySettings;
+import com.tmavn.sample.entity.DeadLetter;
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.enums.OverflowPolicy;
+import com.tmavn.sample.repository.DeadLetterRepository;
+import com.tmavn.sample.repository.StateChangeNotifyRepository;
+import com.tmavn.sample.service.impl.StateChangeDispatcherImpl;
+
+public class StateChangeDispatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private StateChangeNotifyRepository stateChangeNotifyRepository;
+
+    @Mock
+    private DeadLetterRepository deadLetterRepository;
+
+    @Mock
+    private AsyncRestClient instance;
+
+    @InjectMocks
+    private StateChangeDispatcherImpl stateChangeDispatcher;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        Whitebox.setInternalState(AsyncRestClient.class, "instance", instance);
+        StateChangeDispatcherImpl.configure(new NotifySettings());
+        Mockito.when(stateChangeNotifyRepository.claim(any(), any(), any(), anyInt())).thenReturn(1);
+        Mockito.when(stateChangeNotifyRepository.updateLeased(any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(1);
+    }
+
+    @After
+    public void tearDown() {
+        stateChangeDispatcher.stop();
+        Whitebox.setInternalState(AsyncRestClient.class, "instance", (AsyncRestClient) null);
+    }
+
+    @Test
+    public void testDispatchNoPendingReturnZero() {
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(new ArrayList<StateChangeNotify>());
+
+        int count = stateChangeDispatcher.dispatch();
+
+        assertEquals(0, count);
+        verify(stateChangeNotifyRepository, never()).save(anyList());
+        verify(instance, never()).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void testDispatchRequestSuccess() {
+        List<StateChangeNotify> notifies = createNotifies(2);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies);
+
+        SettableListenableFuture<ResponseEntity<?>> successFuture = new SettableListenableFuture<>();
+        successFuture.set(ResponseEntity.status(HttpStatus.CREATED).build());
+        Mockito.doReturn(successFuture).when(instance).sendPostRequestOutside(eq("http://localhost:8080/successUrl"),
+                any(), any(), any(), any(), any());
+
+        int count = stateChangeDispatcher.dispatch();
+
+        assertEquals(2, count);
+        ArgumentCaptor<String> owner = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Date> now = ArgumentCaptor.forClass(Date.class);
+        ArgumentCaptor<Date> leaseUntil = ArgumentCaptor.forClass(Date.class);
+        verify(stateChangeNotifyRepository, times(1)).claim(owner.capture(), now.capture(), leaseUntil.capture(),
+                eq(100));
+        verify(stateChangeNotifyRepository, times(1)).findClaimed(owner.getValue(),
+                StateChangeNotify.STATUS_SENDING);
+        assertEquals(300000, leaseUntil.getValue().getTime() - now.getValue().getTime());
+        // the claim wrote the status, the batch is not saved again
+        verify(stateChangeNotifyRepository, never()).save(notifies);
+        verify(instance, times(2)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        for (StateChangeNotify notify : notifies) {
+            assertEquals(StateChangeNotify.STATUS_SENT, notify.getStatus());
+            assertEquals(Integer.valueOf(1), notify.getAttempts());
+            assertNull(notify.getNextAttemptTime());
+            verifyRecorded(notify, times(1));
+        }
+    }
+
+    @Test
+    public void testDispatchSendRenderedPayload() throws Exception {
+        List<StateChangeNotify> notifies = createNotifies(2);
+        OrderData orderData = new OrderData();
+        orderData.setId("order1");
+        orderData.setState(OrderData.STATE_PROCESSING);
+        Date triggerTime = new Date();
+        for (StateChangeNotify notify : notifies) {
+            notify.setTriggerData(orderData);
+            notify.setTriggerTime(triggerTime);
+        }
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies);
+
+        SettableListenableFuture<ResponseEntity<?>> successFuture = new SettableListenableFuture<>();
+        successFuture.set(ResponseEntity.status(HttpStatus.OK).build());
+        Mockito.doReturn(successFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
+                any());
+
+        stateChangeDispatcher.dispatch();
+
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(instance, times(2)).sendPostRequestOutside(any(), any(), any(), any(), captor.capture(), any());
+        for (int i = 0; i < 2; i++) {
+            JsonNode body = JsonMapper.getMapper().readTree((byte[]) captor.getAllValues().get(i));
+            assertEquals("trigger" + i, body.get("triggerId").asText());
+            assertEquals("order1", body.get("triggerData").get("id").asText());
+        }
+    }
+
+    @Test
+    public void testDispatchSendPayloadOfListener() throws Exception {
+        List<StateChangeNotify> notifies = createNotifies(2);
+        OrderData orderData = new OrderData();
+        orderData.setId("order1");
+        orderData.setDescription("Order 1");
+        orderData.setState(OrderData.STATE_PROCESSING);
+        Date triggerTime = new Date();
+        for (StateChangeNotify notify : notifies) {
+            notify.setTriggerData(orderData);
+            notify.setTriggerTime(triggerTime);
+        }
+        notifies.get(1).setPayload(ListenerInfo.PAYLOAD_THIN);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies);
+
+        SettableListenableFuture<ResponseEntity<?>> successFuture = new SettableListenableFuture<>();
+        successFuture.set(ResponseEntity.status(HttpStatus.OK).build());
+        Mockito.doReturn(successFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
+                any());
+
+        stateChangeDispatcher.dispatch();
+
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(instance, times(2)).sendPostRequestOutside(any(), any(), any(), any(), captor.capture(), any());
+        for (Object value : captor.getAllValues()) {
+            JsonNode body = JsonMapper.getMapper().readTree((byte[]) value);
+            boolean thin = "trigger1".equals(body.get("triggerId").asText());
+            assertEquals("order1", body.get("triggerData").get("id").asText());
+            assertEquals(OrderData.STATE_PROCESSING, body.get("triggerData").get("state").asText());
+            assertEquals(!thin, body.get("triggerData").has("description"));
+        }
+    }
+
+    @Test
+    public void testDispatchCoalesceSameOrderAndListener() throws Exception {
+        NotifySettings settings = new NotifySettings();
+        settings.setCoalesceWindow(200);
+        StateChangeDispatcherImpl.configure(settings);
+        List<StateChangeNotify> notifies = createNotifies(4);
+        OrderData orderData = new OrderData();
+        orderData.setId("order1");
+        String[] states = { OrderData.STATE_SCHEDULED, OrderData.STATE_PROCESSING, OrderData.STATE_COMPLETED,
+                OrderData.STATE_COMPLETED };
+        for (int i = 0; i < notifies.size(); i++) {
+            notifies.get(i).setTriggerData(orderData);
+            notifies.get(i).setSequence(i + 1L);
+            notifies.get(i).setState(states[i]);
+        }
+        // the last one is sent to another listener
+        notifies.get(3).setCallback("http://localhost:8080/otherUrl");
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies);
+
+        SettableListenableFuture<ResponseEntity<?>> successFuture = new SettableListenableFuture<>();
+        successFuture.set(ResponseEntity.status(HttpStatus.OK).build());
+        Mockito.doReturn(successFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
+                any());
+
+        int count = stateChangeDispatcher.dispatch();
+
+        assertEquals(4, count);
+        verify(stateChangeNotifyRepository, times(1)).save(notifies);
+        assertEquals(StateChangeNotify.STATUS_COALESCED, notifies.get(0).getStatus());
+        assertEquals(StateChangeNotify.STATUS_COALESCED, notifies.get(1).getStatus());
+        assertEquals(StateChangeNotify.STATUS_SENT, notifies.get(2).getStatus());
+        assertEquals(StateChangeNotify.STATUS_SENT, notifies.get(3).getStatus());
+
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(instance, times(1)).sendPostRequestOutside(eq("http://localhost:8080/successUrl"), any(), any(),
+                any(), captor.capture(), any());
+        JsonNode body = JsonMapper.getMapper().readTree((byte[]) captor.getValue());
+        assertEquals(3, body.get("sequence").asLong());
+        assertEquals("Scheduled", body.get("intermediateStates").get(0).asText());
+        assertEquals("Processing", body.get("intermediateStates").get(1).asText());
+        verify(instance, times(1)).sendPostRequestOutside(eq("http://localhost:8080/otherUrl"), any(), any(), any(),
+                captor.capture(), any());
+        assertNull(JsonMapper.getMapper().readTree((byte[]) captor.getValue()).get("intermediateStates"));
+    }
+
+    @Test
+    public void testDispatchBatchDeliverySendOneArray() throws Exception {
+        List<StateChangeNotify> notifies = createNotifies(4);
+        for (int i = 0; i < 3; i++) {
+            notifies.get(i).setDelivery(ListenerInfo.DELIVERY_BATCH);
+        }
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies);
+
+        SettableListenableFuture<ResponseEntity<?>> successFuture = new SettableListenableFuture<>();
+        successFuture.set(ResponseEntity.status(HttpStatus.OK).build());
+        Mockito.doReturn(successFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
+                any());
+
+        int count = stateChangeDispatcher.dispatch();
+
+        assertEquals(4, count);
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(instance, times(2)).sendPostRequestOutside(eq("http://localhost:8080/successUrl"), any(), any(),
+                any(), captor.capture(), any());
+        JsonNode single = JsonMapper.getMapper().readTree((byte[]) captor.getAllValues().get(0));
+        assertEquals("trigger3", single.get("triggerId").asText());
+        JsonNode batch = JsonMapper.getMapper().readTree((byte[]) captor.getAllValues().get(1));
+        assertTrue(batch.isArray());
+        assertEquals(3, batch.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("trigger" + i, batch.get(i).get("triggerId").asText());
+        }
+        for (StateChangeNotify notify : notifies) {
+            assertEquals(StateChangeNotify.STATUS_SENT, notify.getStatus());
+            assertEquals(Integer.valueOf(1), notify.getAttempts());
+        }
+    }
+
+    @Test
+    public void testDispatchBatchDeliveryErrorStatusRetryAll() {
+        List<StateChangeNotify> notifies = createNotifies(2);
+        for (StateChangeNotify notify : notifies) {
+            notify.setDelivery(ListenerInfo.DELIVERY_BATCH);
+        }
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies);
+
+        SettableListenableFuture<ResponseEntity<?>> errorFuture = new SettableListenableFuture<>();
+        errorFuture.set(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        Mockito.doReturn(errorFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
+                any());
+
+        stateChangeDispatcher.dispatch();
+
+        verify(instance, times(1)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        for (StateChangeNotify notify : notifies) {
+            assertEquals(StateChangeNotify.STATUS_PENDING, notify.getStatus());
+            assertEquals("Status 503", notify.getLastError());
+        }
+    }
+
+    @Test
+    public void testDispatchRequestFailureRetryLater() {
+        List<StateChangeNotify> notifies = createNotifies(1);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies);
+
+        SettableListenableFuture<ResponseEntity<?>> failureFuture = new SettableListenableFuture<>();
+        failureFuture.setException(new Exception("Internal server exception"));
+        Mockito.doReturn(failureFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
+                any());
+
+        long now = System.currentTimeMillis();
+        stateChangeDispatcher.dispatch();
+
+        StateChangeNotify notify = notifies.get(0);
+        assertEquals(StateChangeNotify.STATUS_PENDING, notify.getStatus());
+        assertEquals(Integer.valueOf(1), notify.getAttempts());
+        assertEquals("Internal server exception", notify.getLastError());
+        assertNull(notify.getLastStatus());
+        assertTrue(notify.getNextAttemptTime().getTime() >= now + 5000);
+    }
+
+    @Test
+    public void testDispatchErrorResponseExceptionKeepStatus() {
+        StateChangeNotify notify = createNotifies(1).get(0);
+        notify.setAttempts(4);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(Collections.singletonList(notify));
+
+        // the rest template throws the error responses
+        SettableListenableFuture<ResponseEntity<?>> failureFuture = new SettableListenableFuture<>();
+        failureFuture.setException(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE));
+        Mockito.doReturn(failureFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
+                any());
+
+        stateChangeDispatcher.dispatch();
+
+        assertEquals(StateChangeNotify.STATUS_FAILED, notify.getStatus());
+        assertEquals(Integer.valueOf(503), notify.getLastStatus());
+        ArgumentCaptor<DeadLetter> captor = ArgumentCaptor.forClass(DeadLetter.class);
+        verify(deadLetterRepository, times(1)).save(captor.capture());
+        assertEquals(Integer.valueOf(503), captor.getValue().getHttpStatus());
+    }
+
+    @Test
+    public void testDispatchErrorStatusRetryLater() {
+        List<StateChangeNotify> notifies = createNotifies(1);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies);
+
+        SettableListenableFuture<ResponseEntity<?>> errorFuture = new SettableListenableFuture<>();
+        errorFuture.set(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        Mockito.doReturn(errorFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
+                any());
+
+        stateChangeDispatcher.dispatch();
+
+        StateChangeNotify notify = notifies.get(0);
+        assertEquals(StateChangeNotify.STATUS_PENDING, notify.getStatus());
+        assertEquals("Status 503", notify.getLastError());
+        assertEquals(Integer.valueOf(503), notify.getLastStatus());
+        assertNotNull(notify.getNextAttemptTime());
+        verify(deadLetterRepository, never()).save(any(DeadLetter.class));
+    }
+
+    @Test
+    public void testOnDeliveredLastAttemptFailed() {
+        StateChangeNotify notify = createNotifies(1).get(0);
+        notify.setAttempts(4);
+
+        notify.setLastStatus(500);
+
+        stateChangeDispatcher.onDelivered(notify, "Status 500");
+
+        assertEquals(StateChangeNotify.STATUS_FAILED, notify.getStatus());
+        assertEquals(Integer.valueOf(5), notify.getAttempts());
+        assertNull(notify.getNextAttemptTime());
+        verifyRecorded(notify, times(1));
+        ArgumentCaptor<DeadLetter> captor = ArgumentCaptor.forClass(DeadLetter.class);
+        verify(deadLetterRepository, times(1)).save(captor.capture());
+        DeadLetter deadLetter = captor.getValue();
+        assertEquals("trigger0", deadLetter.getTriggerId());
+        assertEquals("userA", deadLetter.getUserId());
+        assertEquals("localhost:8080", deadLetter.getHost());
+        assertEquals(Integer.valueOf(5), deadLetter.getAttempts());
+        assertEquals("Status 500", deadLetter.getLastError());
+        assertEquals(Integer.valueOf(500), deadLetter.getHttpStatus());
+        assertNotNull(deadLetter.getFailedTime());
+    }
+
+    @Test
+    public void testOnDeliveredLeaseLostNotWritten() {
+        StateChangeNotify notify = createNotifies(1).get(0);
+        notify.setAttempts(4);
+        notify.setLeaseOwner("node1/1");
+        Mockito.when(stateChangeNotifyRepository.updateLeased(any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(0);
+
+        stateChangeDispatcher.onDelivered(notify, "Status 500");
+
+        // another node claimed the notification again, it records the result
+        verify(stateChangeNotifyRepository, times(1)).updateLeased(eq("trigger0"), eq("node1/1"),
+                eq(StateChangeNotify.STATUS_SENDING), eq(StateChangeNotify.STATUS_FAILED), eq(5), eq("Status 500"),
+                any(), any());
+        verify(stateChangeNotifyRepository, never()).save(notify);
+        verify(deadLetterRepository, never()).save(any(DeadLetter.class));
+    }
+
+    @Test
+    public void testOnDeliveredLeaseLostNotRetried() throws Exception {
+        NotifySettings settings = new NotifySettings();
+        settings.setPollInterval(60000);
+        settings.setRetryDelay(50);
+        StateChangeDispatcherImpl.configure(settings);
+        Mockito.when(stateChangeNotifyRepository.claim(any(), any(), any(), anyInt())).thenReturn(0);
+        Mockito.when(stateChangeNotifyRepository.updateLeased(any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(0);
+        stateChangeDispatcher.start();
+        verify(stateChangeNotifyRepository, timeout(5000).times(1)).claim(any(), any(Date.class), any(), anyInt());
+        StateChangeNotify failed = createNotifies(1).get(0);
+        failed.setLeaseOwner("node1/1");
+        StateChangeNotify sent = createNotifies(1).get(0);
+        sent.setLeaseOwner("node1/1");
+
+        stateChangeDispatcher.onDelivered(failed, "Status 503");
+        stateChangeDispatcher.onDelivered(sent, null);
+
+        // the claim of another node owns them: no retry on the wheel, no wake up
+        verify(stateChangeNotifyRepository, times(2)).updateLeased(any(), eq("node1/1"),
+                eq(StateChangeNotify.STATUS_SENDING), any(), any(), any(), any(), any());
+        Thread.sleep(500);
+        verify(stateChangeNotifyRepository, never()).claimIds(any(), any(), any(), any());
+        verify(stateChangeNotifyRepository, times(1)).claim(any(), any(Date.class), any(), anyInt());
+    }
+
+    @Test
+    public void testOnDeliveredLeaseLostThroughRecorder() {
+        NotifySettings settings = new NotifySettings();
+        settings.setPollInterval(60000);
+        StateChangeDispatcherImpl.configure(settings);
+        List<StateChangeNotify> notifies = createNotifies(1);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies).thenReturn(new ArrayList<StateChangeNotify>());
+        Mockito.when(stateChangeNotifyRepository.updateLeased(any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(0);
+        SettableListenableFuture<ResponseEntity<?>> failureFuture = new SettableListenableFuture<>();
+        failureFuture.set(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        Mockito.doReturn(failureFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
+                any());
+
+        stateChangeDispatcher.start();
+
+        // the result is written once under the lease, the lost lease is not written again
+        verify(stateChangeNotifyRepository, timeout(5000).times(1)).updateLeased(eq("trigger0"), any(),
+                eq(StateChangeNotify.STATUS_SENDING), eq(StateChangeNotify.STATUS_PENDING), eq(1), any(), eq(503),
+                any());
+        verify(stateChangeNotifyRepository, never()).save(notifies.get(0));
+        verify(deadLetterRepository, never()).save(any(DeadLetter.class));
+    }
+
+    @Test
+    public void testOnDeliveredSentWakeUpNextNotification() throws Exception {
+        NotifySettings settings = new NotifySettings();
+        settings.setPollInterval(60000);
+        StateChangeDispatcherImpl.configure(settings);
+        Mockito.when(stateChangeNotifyRepository.claim(any(), any(), any(), anyInt())).thenReturn(0);
+        stateChangeDispatcher.start();
+        verify(stateChangeNotifyRepository, timeout(5000).times(1)).claim(any(), any(Date.class), any(), anyInt());
+
+        // the next notification of the order waits in the outbox until the failed one is sent
+        StateChangeNotify failed = createNotifies(1).get(0);
+        stateChangeDispatcher.onDelivered(failed, "Status 500");
+        Thread.sleep(200);
+        verify(stateChangeNotifyRepository, times(1)).claim(any(), any(Date.class), any(), anyInt());
+
+        stateChangeDispatcher.onDelivered(failed, null);
+
+        verify(stateChangeNotifyRepository, timeout(5000).times(2)).claim(any(), any(Date.class), any(), anyInt());
+    }
+
+    @Test
+    public void testStartExtendLeases() {
+        NotifySettings settings = new NotifySettings();
+        settings.setLeaseTimeout(300);
+        StateChangeDispatcherImpl.configure(settings);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(new ArrayList<StateChangeNotify>());
+
+        stateChangeDispatcher.start();
+
+        ArgumentCaptor<Date> leaseUntil = ArgumentCaptor.forClass(Date.class);
+        verify(stateChangeNotifyRepository, timeout(5000).atLeast(2)).extendLeases(endsWith("/%"),
+                eq(StateChangeNotify.STATUS_SENDING), leaseUntil.capture());
+        assertTrue(leaseUntil.getValue().getTime() > System.currentTimeMillis());
+    }
+
+    @Test
+    public void testStartClaimNoMoreThanLaneRoom() {
+        NotifySettings settings = new NotifySettings();
+        settings.setLanes(2);
+        settings.setLaneQueueSize(3);
+        StateChangeDispatcherImpl.configure(settings);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(new ArrayList<StateChangeNotify>());
+
+        stateChangeDispatcher.start();
+
+        verify(stateChangeNotifyRepository, timeout(5000).atLeastOnce()).claim(any(), any(Date.class),
+                any(Date.class), eq(6));
+    }
+
+    @Test
+    public void testStartSendAgainInterruptedNotifications() {
+        stateChangeDispatcher.start();
+
+        verify(stateChangeNotifyRepository, times(1)).releaseLeases(endsWith("/%"),
+                eq(StateChangeNotify.STATUS_SENDING), eq(StateChangeNotify.STATUS_PENDING));
+        verify(stateChangeNotifyRepository, timeout(5000).atLeastOnce()).claim(any(), any(Date.class),
+                any(Date.class), eq(100));
+    }
+
+    @Test
+    public void testStartSendOnLanes() {
+        List<StateChangeNotify> notifies = createNotifies(3);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies).thenReturn(new ArrayList<StateChangeNotify>());
+
+        final List<String> threadNames = new CopyOnWriteArrayList<String>();
+        Mockito.doAnswer(new Answer<ListenableFuture<?>>() {
+            @Override
+            public ListenableFuture<?> answer(InvocationOnMock invocation) throws Throwable {
+                threadNames.add(Thread.currentThread().getName());
+                SettableListenableFuture<ResponseEntity<?>> future = new SettableListenableFuture<>();
+                future.set(ResponseEntity.status(HttpStatus.OK).build());
+                return future;
+            }
+        }).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+
+        stateChangeDispatcher.start();
+
+        for (StateChangeNotify notify : notifies) {
+            verifyRecorded(notify, timeout(5000).times(1));
+            assertEquals(StateChangeNotify.STATUS_SENT, notify.getStatus());
+        }
+        assertEquals(3, threadNames.size());
+        for (String threadName : threadNames) {
+            assertTrue(threadName.startsWith("notify-lane-"));
+        }
+    }
+
+    @Test
+    public void testStartLaneSendExceptionRetryLater() {
+        List<StateChangeNotify> notifies = createNotifies(1);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies).thenReturn(new ArrayList<StateChangeNotify>());
+        Mockito.doThrow(new IllegalStateException("No connection")).when(instance).sendPostRequestOutside(any(),
+                any(), any(), any(), any(), any());
+
+        stateChangeDispatcher.start();
+
+        StateChangeNotify notify = notifies.get(0);
+        verifyRecorded(notify, timeout(5000).times(1));
+        assertEquals(StateChangeNotify.STATUS_PENDING, notify.getStatus());
+        assertEquals("No connection", notify.getLastError());
+    }
+
+    @Test
+    public void testStartLaneSendOrderInOrder() throws Exception {
+        List<StateChangeNotify> notifies = createNotifies(2);
+        OrderData orderData = new OrderData();
+        orderData.setId("order1");
+        for (int i = 0; i < notifies.size(); i++) {
+            notifies.get(i).setTriggerData(orderData);
+            notifies.get(i).setSequence(i + 1L);
+        }
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies).thenReturn(new ArrayList<StateChangeNotify>());
+
+        final List<SettableListenableFuture<ResponseEntity<?>>> futures = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(new Answer<ListenableFuture<?>>() {
+            @Override
+            public ListenableFuture<?> answer(InvocationOnMock invocation) throws Throwable {
+                SettableListenableFuture<ResponseEntity<?>> future = new SettableListenableFuture<>();
+                futures.add(future);
+                return future;
+            }
+        }).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+
+        stateChangeDispatcher.start();
+
+        // the second state change waits for the response of the first one
+        verify(instance, timeout(5000).times(1)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        Thread.sleep(200);
+        verify(instance, times(1)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+
+        futures.get(0).set(ResponseEntity.status(HttpStatus.OK).build());
+
+        verify(instance, timeout(5000).times(2)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        futures.get(1).set(ResponseEntity.status(HttpStatus.OK).build());
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(instance, times(2)).sendPostRequestOutside(any(), any(), any(), any(), captor.capture(), any());
+        assertEquals(1, JsonMapper.getMapper().readTree((byte[]) captor.getAllValues().get(0)).get("sequence")
+                .asLong());
+        assertEquals(2, JsonMapper.getMapper().readTree((byte[]) captor.getAllValues().get(1)).get("sequence")
+                .asLong());
+    }
+
+    @Test
+    public void testStartHostQueueFullBlockUntilResponse() {
+        NotifySettings settings = new NotifySettings();
+        settings.setLanes(2);
+        settings.setHostQueueSize(1);
+        StateChangeDispatcherImpl.configure(settings);
+        List<StateChangeNotify> notifies = createNotifies(2);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies).thenReturn(new ArrayList<StateChangeNotify>());
+        final List<SettableListenableFuture<ResponseEntity<?>>> futures = mockPendingResponses();
+
+        stateChangeDispatcher.start();
+
+        // the notifications are on two lanes, the second one waits for room in the queue of the host
+        verify(instance, timeout(5000).times(1)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        assertEquals(Integer.valueOf(1), stateChangeDispatcher.getQueueDepths().get("localhost:8080"));
+        // it waits on its lane, the dispatcher still claims
+        stateChangeDispatcher.wakeUp();
+        verify(stateChangeNotifyRepository, timeout(5000).times(2)).claim(any(), any(Date.class), any(), anyInt());
+
+        futures.get(0).set(ResponseEntity.status(HttpStatus.OK).build());
+
+        verify(instance, timeout(5000).times(2)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        assertEquals(0, stateChangeDispatcher.getSpilled());
+        assertEquals(0, stateChangeDispatcher.getDropped());
+    }
+
+    @Test
+    public void testStartHostQueueFullSpill() {
+        NotifySettings settings = new NotifySettings();
+        settings.setHostQueueSize(1);
+        settings.setOverflowPolicy(OverflowPolicy.SPILL);
+        StateChangeDispatcherImpl.configure(settings);
+        List<StateChangeNotify> notifies = createNotifies(2);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies).thenReturn(new ArrayList<StateChangeNotify>());
+        mockPendingResponses();
+
+        stateChangeDispatcher.start();
+
+        StateChangeNotify spilled = notifies.get(1);
+        verify(stateChangeNotifyRepository, timeout(5000).times(1)).save(Collections.singletonList(spilled));
+        assertEquals(StateChangeNotify.STATUS_PENDING, spilled.getStatus());
+        assertEquals(Integer.valueOf(0), spilled.getAttempts());
+        assertTrue(spilled.getNextAttemptTime().after(new Date()));
+        assertEquals(1, stateChangeDispatcher.getSpilled());
+        verify(instance, timeout(5000).times(1)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        assertEquals(StateChangeNotify.STATUS_SENDING, notifies.get(0).getStatus());
+    }
+
+    @Test
+    public void testStartHostQueueFullDropOldest() {
+        NotifySettings settings = new NotifySettings();
+        settings.setLanes(1);
+        settings.setHostQueueSize(2);
+        settings.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+        StateChangeDispatcherImpl.configure(settings);
+        List<StateChangeNotify> notifies = createNotifies(3);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(notifies.subList(0, 1)).thenReturn(notifies.subList(1, 3))
+                .thenReturn(new ArrayList<StateChangeNotify>());
+        mockPendingResponses();
+
+        stateChangeDispatcher.start();
+        verify(instance, timeout(5000).times(1)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        stateChangeDispatcher.wakeUp();
+
+        // the first one is in flight, the second one waits in the lane and is dropped for the third one
+        StateChangeNotify dropped = notifies.get(1);
+        verify(stateChangeNotifyRepository, timeout(5000).times(1)).save(Collections.singletonList(dropped));
+        assertEquals(StateChangeNotify.STATUS_PENDING, dropped.getStatus());
+        assertTrue(dropped.getNextAttemptTime().after(new Date()));
+        // it was not sent, the drop is not an attempt
+        verifyRecorded(dropped, never());
+        assertEquals(Integer.valueOf(0), dropped.getAttempts());
+        assertEquals(StateChangeDispatcherImpl.ERROR_DROPPED, dropped.getLastError());
+        assertEquals(1, stateChangeDispatcher.getDropped());
+        assertEquals(Integer.valueOf(2), stateChangeDispatcher.getQueueDepths().get("localhost:8080"));
+    }
+
+    @Test
+    public void testStartRebuildRetriesDispatchWhenDue() {
+        NotifySettings settings = new NotifySettings();
+        settings.setPollInterval(60000);
+        StateChangeDispatcherImpl.configure(settings);
+        List<StateChangeNotify> notifies = createNotifies(1);
+        Mockito.when(stateChangeNotifyRepository.findScheduled(eq(StateChangeNotify.STATUS_PENDING),
+                any(Date.class), any(Date.class))).thenReturn(Collections.singletonList(
+                        new Object[] { "trigger0", new Date(System.currentTimeMillis() + 300) }));
+        Mockito.when(stateChangeNotifyRepository.claimIds(any(), any(), any(), any())).thenReturn(1);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(new ArrayList<StateChangeNotify>()).thenReturn(notifies)
+                .thenReturn(new ArrayList<StateChangeNotify>());
+        SettableListenableFuture<ResponseEntity<?>> successFuture = new SettableListenableFuture<>();
+        successFuture.set(ResponseEntity.status(HttpStatus.OK).build());
+        Mockito.doReturn(successFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
+                any());
+
+        stateChangeDispatcher.start();
+
+        // the retry is claimed by its id when it is due, long before the next poll interval
+        verify(instance, timeout(5000).times(1)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        verifyRecorded(notifies.get(0), timeout(5000).times(1));
+        assertEquals(StateChangeNotify.STATUS_SENT, notifies.get(0).getStatus());
+        verify(stateChangeNotifyRepository).claimIds(any(), eq(Collections.singletonList("trigger0")),
+                any(Date.class), any(Date.class));
+
+        // only the retries of one revolution of the wheel are loaded, the polls claim the later ones
+        ArgumentCaptor<Date> now = ArgumentCaptor.forClass(Date.class);
+        ArgumentCaptor<Date> horizon = ArgumentCaptor.forClass(Date.class);
+        verify(stateChangeNotifyRepository).findScheduled(eq(StateChangeNotify.STATUS_PENDING), now.capture(),
+                horizon.capture());
+        assertEquals((long) settings.getRetryTick() * settings.getRetryWheelSize(),
+                horizon.getValue().getTime() - now.getValue().getTime());
+    }
+
+    @Test
+    public void testOnDeliveredFailureRetryOnWheel() {
+        NotifySettings settings = new NotifySettings();
+        settings.setPollInterval(60000);
+        settings.setRetryDelay(200);
+        StateChangeDispatcherImpl.configure(settings);
+        List<StateChangeNotify> notifies = createNotifies(1);
+        Mockito.when(stateChangeNotifyRepository.claimIds(any(), any(), any(), any())).thenReturn(1);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenReturn(new ArrayList<StateChangeNotify>()).thenReturn(notifies)
+                .thenReturn(new ArrayList<StateChangeNotify>());
+        SettableListenableFuture<ResponseEntity<?>> successFuture = new SettableListenableFuture<>();
+        successFuture.set(ResponseEntity.status(HttpStatus.OK).build());
+        Mockito.doReturn(successFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
+                any());
+        stateChangeDispatcher.start();
+        verify(stateChangeNotifyRepository, timeout(5000).times(1)).findClaimed(any(), any());
+
+        StateChangeNotify notify = notifies.get(0);
+        long now = System.currentTimeMillis();
+        stateChangeDispatcher.onDelivered(notify, "Status 503");
+
+        // the delay of the first retry plus at most 20 percent
+        assertTrue(notify.getNextAttemptTime().getTime() >= now + 200);
+        assertTrue(notify.getNextAttemptTime().getTime() <= System.currentTimeMillis() + 240);
+        verify(instance, timeout(5000).times(1)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        verifyRecorded(notify, timeout(5000).times(2));
+        assertEquals(StateChangeNotify.STATUS_SENT, notify.getStatus());
+        assertEquals(Integer.valueOf(2), notify.getAttempts());
+        verify(stateChangeNotifyRepository).claimIds(any(), eq(Collections.singletonList("trigger0")),
+                any(Date.class), any(Date.class));
+    }
+
+    private List<SettableListenableFuture<ResponseEntity<?>>> mockPendingResponses() {
+        final List<SettableListenableFuture<ResponseEntity<?>>> futures = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(new Answer<ListenableFuture<?>>() {
+            @Override
+            public ListenableFuture<?> answer(InvocationOnMock invocation) throws Throwable {
+                SettableListenableFuture<ResponseEntity<?>> future = new SettableListenableFuture<>();
+                futures.add(future);
+                return future;
+            }
+        }).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        return futures;
+    }
+
+    @Test
+    public void testJournalWriteToTableAndSend() {
+        NotifySettings settings = new NotifySettings();
+        settings.setJournalDir(folder.getRoot().getPath());
+        StateChangeDispatcherImpl.configure(settings);
+        final List<StateChangeNotify> saved = new CopyOnWriteArrayList<StateChangeNotify>();
+        Mockito.when(stateChangeNotifyRepository.save(anyList())).thenAnswer(new Answer<List<StateChangeNotify>>() {
+            @Override
+            public List<StateChangeNotify> answer(InvocationOnMock invocation) throws Throwable {
+                List<StateChangeNotify> rows = invocation.getArgument(0);
+                saved.addAll(rows);
+                return rows;
+            }
+        });
+        // the journaled rows are inserted Pending and taken by the claim
+        Answer<Integer> claimSaved = new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                Date now = invocation.getArgument(1);
+                int claimed = 0;
+                for (StateChangeNotify notify : saved) {
+                    if (StateChangeNotify.STATUS_PENDING.equals(notify.getStatus())
+                            && !notify.getNextAttemptTime().after(now)) {
+                        notify.setStatus(StateChangeNotify.STATUS_SENDING);
+                        notify.setLeaseOwner(invocation.getArgument(0));
+                        notify.setLeaseUntil(invocation.getArgument(2));
+                        claimed++;
+                    }
+                }
+                return claimed;
+            }
+        };
+        Mockito.when(stateChangeNotifyRepository.claim(any(), any(), any(), anyInt())).thenAnswer(claimSaved);
+        Mockito.when(stateChangeNotifyRepository.findClaimed(any(), eq(StateChangeNotify.STATUS_SENDING)))
+                .thenAnswer(new Answer<List<StateChangeNotify>>() {
+                    @Override
+                    public List<StateChangeNotify> answer(InvocationOnMock invocation) throws Throwable {
+                        List<StateChangeNotify> claimed = new ArrayList<StateChangeNotify>();
+                        for (StateChangeNotify notify : saved) {
+                            if (invocation.getArgument(0).equals(notify.getLeaseOwner())) {
+                                claimed.add(notify);
+                            }
+                        }
+                        return claimed;
+                    }
+                });
+        SettableListenableFuture<ResponseEntity<?>> successFuture = new SettableListenableFuture<>();
+        successFuture.set(ResponseEntity.status(HttpStatus.OK).build());
+        Mockito.doReturn(successFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
+                any());
+        OrderData orderData = new OrderData();
+        orderData.setId("order1");
+        List<StateChangeNotify> notifies = createNotifies(2);
+        for (StateChangeNotify notify : notifies) {
+            notify.setTriggerData(orderData);
+            notify.setSequence(1L);
+        }
+
+        stateChangeDispatcher.start();
+        assertTrue(stateChangeDispatcher.isJournalEnabled());
+        assertTrue(stateChangeDispatcher.journal(notifies));
+        // the next state changes of the order join the windows of the journaled notifications
+        assertTrue(stateChangeDispatcher.getJournaledWindows("order1", new Date(0))
+                .containsKey("http://localhost:8080/successUrl"));
+        stateChangeDispatcher.wakeUp();
+
+        verify(instance, timeout(5000).times(2)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        assertEquals(2, saved.size());
+        for (StateChangeNotify notify : saved) {
+            assertEquals("order1", notify.getTriggerData().getId());
+            assertEquals(Long.valueOf(1), notify.getSequence());
+            assertNotNull(notify.getLeaseUntil());
+        }
+
+        // the sequence of the next state change is kept as numbered by the order
+        List<StateChangeNotify> next = createNotifies(1);
+        next.get(0).setTriggerData(orderData);
+        next.get(0).setSequence(2L);
+        assertTrue(stateChangeDispatcher.journal(next));
+        stateChangeDispatcher.wakeUp();
+
+        verify(instance, timeout(5000).times(3)).sendPostRequestOutside(any(), any(), any(), any(), any(), any());
+        assertEquals(Long.valueOf(2), saved.get(2).getSequence());
+    }
+
+    @Test
+    public void testWakeUpBurstRunsOnePoll() throws Exception {
+        NotifySettings settings = new NotifySettings();
+        settings.setPollInterval(60000);
+        StateChangeDispatcherImpl.configure(settings);
+        final CountDownLatch polling = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Answer<Integer> blockFirstPoll = new Answer<Integer>() {
+
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Exception {
+                polling.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return 0;
+            }
+        };
+        Mockito.when(stateChangeNotifyRepository.claim(any(), any(), any(), anyInt())).thenAnswer(blockFirstPoll);
+
+        stateChangeDispatcher.start();
+        assertTrue(polling.await(5, TimeUnit.SECONDS));
+        // the commits of a burst wake up the dispatcher while it polls
+        for (int i = 0; i < 10; i++) {
+            stateChangeDispatcher.wakeUp();
+        }
+        release.countDown();
+
+        verify(stateChangeNotifyRepository, timeout(5000).times(2)).claim(any(), any(Date.class), any(), anyInt());
+        Thread.sleep(200);
+        verify(stateChangeNotifyRepository, times(2)).claim(any(), any(Date.class), any(), anyInt());
+
+        // a later state change wakes it up again
+        stateChangeDispatcher.wakeUp();
+        verify(stateChangeNotifyRepository, timeout(5000).times(3)).claim(any(), any(Date.class), any(), anyInt());
+    }
+
+    @Test
+    public void testJournalDisabledReturnFalse() {
+        assertFalse(stateChangeDispatcher.isJournalEnabled());
+        assertFalse(stateChangeDispatcher.journal(createNotifies(1)));
+    }
+
+    /** Verify the writes of the result of a notification. */
+    private void verifyRecorded(StateChangeNotify notify, VerificationMode mode) {
+        verify(stateChangeNotifyRepository, mode).updateLeased(eq(notify.getTriggerId()), any(),
+                eq(StateChangeNotify.STATUS_SENDING), any(), any(), any(), any(), any());
+    }
+
+    /** The notifications as returned by a claim. */
+    private List<StateChangeNotify> createNotifies(int count) {
+        List<StateChangeNotify> notifies = new ArrayList<StateChangeNotify>();
+        for (int i = 0; i < count; i++) {
+            StateChangeNotify notify = new StateChangeNotify();
+            notify.setTriggerId("trigger" + i);
+            notify.setTriggerType(StateChangeNotify.TYPE_STATE_CHANGE_NOTIFY);
+            notify.setTriggerData(new OrderData());
+            notify.setUserId("userA");
+            notify.setCallback("http://localhost:8080/successUrl");
+            notify.setStatus(StateChangeNotify.STATUS_SENDING);
+            notify.setAttempts(0);
+            notify.setNextAttemptTime(new Date());
+            notifies.add(notify);
+        }
+        return notifies;
+    }
+}
@@ -1,18 +1,26 @@
 package com.tmavn.sample.service;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.verifyPrivate;
-import static org.powermock.api.mockito.PowerMockito.when;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -23,21 +31,21 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.agent.PowerMockAgent;
 import org.powermock.modules.junit4.rule.PowerMockRule;
-import org.powermock.reflect.Whitebox;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.util.concurrent.ListenableFuture;
-import org.springframework.util.concurrent.SettableListenableFuture;
+import org.springframework.transaction.PlatformTransactionManager;
 
-import com.tmavn.sample.common.AsyncRestClient;
+import com.tmavn.sample.common.ListenerQuery;
 import com.tmavn.sample.entity.ListenerInfo;
 import com.tmavn.sample.entity.OrderData;
 import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.enums.OrderState;
+import com.tmavn.sample.repository.OrderDataRepository;
 import com.tmavn.sample.repository.StateChangeNotifyRepository;
 import com.tmavn.sample.service.ListenerInfoService;
+import com.tmavn.sample.service.StateChangeDispatcher;
+import com.tmavn.sample.service.StateChangeStream;
 import com.tmavn.sample.service.impl.StateChangeServiceImpl;
 
-@PrepareForTest({ StateChangeServiceImpl.class, AsyncRestClient.class })
+@PrepareForTest({ StateChangeServiceImpl.class })
 public class StateChangeServiceTest {
 
     static {
@@ -56,7 +64,16 @@ public class StateChangeServiceTest {
     private StateChangeNotifyRepository stateChangeNotifyRepository;
 
     @Mock
-    private AsyncRestClient instance;
+    private OrderDataRepository orderDataRepository;
+
+    @Mock
+    private StateChangeDispatcher stateChangeDispatcher;
+
+    @Mock
+    private StateChangeStream stateChangeStream;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
 
     @InjectMocks
     private StateChangeServiceImpl mockStateChangeService;
@@ -65,7 +82,47 @@ public class StateChangeServiceTest {
     public void init() {
         mockStateChangeService = PowerMockito.spy(stateChangeService);
         MockitoAnnotations.initMocks(this);
-        Whitebox.setInternalState(AsyncRestClient.class, "instance", instance);
+    }
+
+    /**
+     * Mock the listeners of userA, filtered by their query like the registry.
+     *
+     * @param listenerList the listeners of userA
+     */
+    private void mockFindListeners(final List<ListenerInfo> listenerList) {
+        Mockito.doAnswer(new Answer<Iterable<ListenerInfo>>() {
+            @Override
+            public Iterable<ListenerInfo> answer(InvocationOnMock invocation) throws Throwable {
+                String state = invocation.getArgument(1);
+                List<ListenerInfo> result = new ArrayList<ListenerInfo>();
+                for (ListenerInfo listenerInfo : listenerList) {
+                    if (ListenerQuery.compile(listenerInfo.getQuery()).matches(OrderState.fromValue(state))) {
+                        result.add(listenerInfo);
+                    }
+                }
+                return result;
+            }
+        }).when(listenerInfoService).findByUserIdAndState(eq("userA"), anyString());
+    }
+
+    /**
+     * Verify that the notifications are saved in one batch, or not saved.
+     *
+     * @param rows the number of saved notifications
+     * @return the saved notifications
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private List<StateChangeNotify> verifySaved(int rows) {
+        verify(stateChangeNotifyRepository, times(0)).save(any(StateChangeNotify.class));
+        if (rows == 0) {
+            verify(stateChangeNotifyRepository, times(0)).save(ArgumentMatchers.<StateChangeNotify>anyIterable());
+            return new ArrayList<StateChangeNotify>();
+        }
+        ArgumentCaptor<Iterable> captor = ArgumentCaptor.forClass(Iterable.class);
+        verify(stateChangeNotifyRepository, times(1)).save(captor.capture());
+        List<StateChangeNotify> saved = (List<StateChangeNotify>) captor.getValue();
+        assertEquals(rows, saved.size());
+        return saved;
     }
 
     @Test
@@ -88,38 +145,76 @@ public class StateChangeServiceTest {
         listenerList.add(info1);
         listenerList.add(info2);
 
-        // mock repository
-        Mockito.doAnswer(new Answer<StateChangeNotify>() {
-            @Override
-            public StateChangeNotify answer(InvocationOnMock invocation) throws Throwable {
-                return invocation.getArgument(0);
-            }
-        }).when(stateChangeNotifyRepository).save(any(StateChangeNotify.class));
-
         // mock state change = true to notify
         PowerMockito.doReturn(true).when(mockStateChangeService, "isStateChanged", any(OrderData.class),
                 any(OrderData.class));
 
         // mock find listener by user id
-        Mockito.when(listenerInfoService.findByUserId("userA")).thenReturn(listenerList);
+        mockFindListeners(listenerList);
 
-        // mock check valid = true to notify
-        PowerMockito.doReturn(true).when(mockStateChangeService, "isValidForNotifyStateChange", any(ListenerInfo.class),
+        mockStateChangeService.notifyStateChange("userA", newData, oldData);
+
+        verifyPrivate(mockStateChangeService, times(1)).invoke("isStateChanged", any(OrderData.class),
                 any(OrderData.class));
+        verify(listenerInfoService, times(1)).findByUserIdAndState(eq("userA"), any());
+        verifySaved(2);
+        verify(stateChangeDispatcher, times(1)).wakeUp();
+        ArgumentCaptor<StateChangeNotify> event = ArgumentCaptor.forClass(StateChangeNotify.class);
+        verify(stateChangeStream, times(1)).publish(event.capture());
+        assertEquals("userA", event.getValue().getUserId());
+        assertEquals("Processing", event.getValue().getState());
+        assertSame(newData, event.getValue().getTriggerData());
+    }
 
-        // mock notify to server
-        PowerMockito.doNothing().when(mockStateChangeService, "sendNotify", any(), any());
+    @Test
+    public void testNotifyStateChangeJournalEnabledAppendToJournal() throws Exception {
+        OrderData newData = new OrderData();
+        newData.setState("Processing");
+        OrderData oldData = new OrderData();
+        oldData.setState("Scheduled");
+        List<ListenerInfo> listenerList = new ArrayList<ListenerInfo>();
+        ListenerInfo info1 = new ListenerInfo();
+        info1.setCallback("http://localhost:8080/ListenerProject/api/v1/listener");
+        info1.setQuery("state=Processing");
+        listenerList.add(info1);
+        mockFindListeners(listenerList);
+        Mockito.when(stateChangeDispatcher.isJournalEnabled()).thenReturn(true);
+        Mockito.when(stateChangeDispatcher.journal(ArgumentMatchers.<StateChangeNotify>anyList())).thenReturn(true);
 
         mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
-        verifyPrivate(mockStateChangeService, times(1)).invoke("isStateChanged", any(OrderData.class),
-                any(OrderData.class));
-        verify(listenerInfoService, times(1)).findByUserId("userA");
-        verifyPrivate(mockStateChangeService, times(2)).invoke("isValidForNotifyStateChange", any(ListenerInfo.class),
-                any(OrderData.class));
-        verify(stateChangeNotifyRepository, times(2)).save(any(StateChangeNotify.class));
-        verifyPrivate(mockStateChangeService, times(2)).invoke("sendNotify", any(ListenerInfo.class),
-                any(StateChangeNotify.class));
+        verifySaved(0);
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        ArgumentCaptor<List<StateChangeNotify>> captor = ArgumentCaptor.forClass((Class) List.class);
+        verify(stateChangeDispatcher, times(1)).journal(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals(StateChangeNotify.STATUS_PENDING, captor.getValue().get(0).getStatus());
+        verify(stateChangeDispatcher, times(1)).wakeUp();
+    }
+
+    @Test
+    public void testNotifyStateChangeJournalFailedInsertNotifications() throws Exception {
+        OrderData newData = new OrderData();
+        newData.setId("order1");
+        newData.setState("Processing");
+        OrderData oldData = new OrderData();
+        oldData.setState("Scheduled");
+        List<ListenerInfo> listenerList = new ArrayList<ListenerInfo>();
+        ListenerInfo info1 = new ListenerInfo();
+        info1.setCallback("http://localhost:8080/ListenerProject/api/v1/listener");
+        info1.setQuery("state=Processing");
+        listenerList.add(info1);
+        mockFindListeners(listenerList);
+        Mockito.when(stateChangeDispatcher.isJournalEnabled()).thenReturn(true);
+        Mockito.when(stateChangeDispatcher.journal(ArgumentMatchers.<StateChangeNotify>anyList())).thenReturn(false);
+
+        mockStateChangeService.notifyStateChange("userA", newData, oldData);
+
+        // the notifications are not lost, they are inserted in their own transaction
+        verifySaved(1);
+        verify(transactionManager, times(1)).getTransaction(any());
+        verify(transactionManager, times(1)).commit(any());
+        verify(stateChangeDispatcher, times(1)).wakeUp();
     }
 
     @Test
@@ -147,25 +242,15 @@ public class StateChangeServiceTest {
                 any(OrderData.class));
 
         // mock find listener by user id
-        Mockito.when(listenerInfoService.findByUserId("userA")).thenReturn(listenerList);
-
-        // mock check valid = true to notify
-        PowerMockito.doReturn(true).when(mockStateChangeService, "isValidForNotifyStateChange", any(ListenerInfo.class),
-                any(OrderData.class));
-
-        // mock notify to server
-        PowerMockito.doNothing().when(mockStateChangeService, "sendNotify", any(), any());
+        mockFindListeners(listenerList);
 
         mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
         verifyPrivate(mockStateChangeService, times(1)).invoke("isStateChanged", any(OrderData.class),
                 any(OrderData.class));
-        verify(listenerInfoService, times(0)).findByUserId("userA");
-        verifyPrivate(mockStateChangeService, times(0)).invoke("isValidForNotifyStateChange", any(ListenerInfo.class),
-                any(OrderData.class));
-        verify(stateChangeNotifyRepository, times(0)).save(any(StateChangeNotify.class));
-        verifyPrivate(mockStateChangeService, times(0)).invoke("sendNotify", any(ListenerInfo.class),
-                any(StateChangeNotify.class));
+        verify(listenerInfoService, times(0)).findByUserIdAndState(eq("userA"), any());
+        verifySaved(0);
+        verify(stateChangeDispatcher, times(0)).wakeUp();
     }
 
     @Test
@@ -180,10 +265,10 @@ public class StateChangeServiceTest {
         List<ListenerInfo> listenerList = new ArrayList<ListenerInfo>();
         ListenerInfo info1 = new ListenerInfo();
         info1.setCallback("http://localhost:8080/ListenerProject/api/v1/listener");
-        info1.setQuery("state=Processing");
+        info1.setQuery("state=Completed");
         ListenerInfo info2 = new ListenerInfo();
         info2.setCallback("http://localhost:8090/ListenerProject/api/v1/listener");
-        info2.setQuery("state=Processing");
+        info2.setQuery("state=Scheduled");
 
         listenerList.add(info1);
         listenerList.add(info2);
@@ -193,25 +278,15 @@ public class StateChangeServiceTest {
                 any(OrderData.class));
 
         // mock find listener by user id
-        Mockito.when(listenerInfoService.findByUserId("userA")).thenReturn(listenerList);
-
-        // mock check valid = false to avoid notify
-        PowerMockito.doReturn(false).when(mockStateChangeService, "isValidForNotifyStateChange",
-                any(ListenerInfo.class), any(OrderData.class));
-
-        // mock notify to server
-        PowerMockito.doNothing().when(mockStateChangeService, "sendNotify", any(), any());
+        mockFindListeners(listenerList);
 
         mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
         verifyPrivate(mockStateChangeService, times(1)).invoke("isStateChanged", any(OrderData.class),
                 any(OrderData.class));
-        verify(listenerInfoService, times(1)).findByUserId("userA");
-        verifyPrivate(mockStateChangeService, times(2)).invoke("isValidForNotifyStateChange", any(ListenerInfo.class),
-                any(OrderData.class));
-        verify(stateChangeNotifyRepository, times(0)).save(any(StateChangeNotify.class));
-        verifyPrivate(mockStateChangeService, times(0)).invoke("sendNotify", any(ListenerInfo.class),
-                any(StateChangeNotify.class));
+        verify(listenerInfoService, times(1)).findByUserIdAndState(eq("userA"), any());
+        verifySaved(0);
+        verify(stateChangeDispatcher, times(0)).wakeUp();
     }
 
     @Test
@@ -236,13 +311,13 @@ public class StateChangeServiceTest {
         listenerList.add(info2);
 
         // mock find listener by user id
-        when(listenerInfoService.findByUserId("userA")).thenReturn(listenerList);
+        mockFindListeners(listenerList);
 
         mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
         // because no change, verify that below method is not called
-        verify(listenerInfoService, times(0)).findByUserId("userA");
-        verify(stateChangeNotifyRepository, times(0)).save(any(StateChangeNotify.class));
+        verify(listenerInfoService, times(0)).findByUserIdAndState(eq("userA"), any());
+        verifySaved(0);
     }
 
     @Test
@@ -267,16 +342,13 @@ public class StateChangeServiceTest {
         listenerList.add(info2);
 
         // mock find listener by user id
-        when(listenerInfoService.findByUserId("userA")).thenReturn(listenerList);
-
-        // mock send notify do nothing
-        PowerMockito.doNothing().when(mockStateChangeService, "sendNotify", any(), any());
+        mockFindListeners(listenerList);
 
         mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
         // because no change, verify that below method is not called
-        verify(listenerInfoService, times(1)).findByUserId("userA");
-        verify(stateChangeNotifyRepository, times(1)).save(any(StateChangeNotify.class));
+        verify(listenerInfoService, times(1)).findByUserIdAndState(eq("userA"), any());
+        verifySaved(1);
     }
 
     @Test
@@ -300,16 +372,13 @@ public class StateChangeServiceTest {
         listenerList.add(info2);
 
         // mock find listener by user id
-        when(listenerInfoService.findByUserId("userA")).thenReturn(listenerList);
-
-        // mock send notify do nothing
-        PowerMockito.doNothing().when(mockStateChangeService, "sendNotify", any(), any());
+        mockFindListeners(listenerList);
 
         mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
         // because no change, verify that below method is not called
-        verify(listenerInfoService, times(1)).findByUserId("userA");
-        verify(stateChangeNotifyRepository, times(1)).save(any(StateChangeNotify.class));
+        verify(listenerInfoService, times(1)).findByUserIdAndState(eq("userA"), any());
+        verifySaved(1);
     }
 
     @Test
@@ -336,18 +405,15 @@ public class StateChangeServiceTest {
         // mock state change true
         PowerMockito.doReturn(true).when(mockStateChangeService, "isStateChanged", any(), any());
 
-        // mock send notify do nothing
-        PowerMockito.doNothing().when(mockStateChangeService, "sendNotify", any(), any());
-
         // mock find listener by user id
-        when(listenerInfoService.findByUserId("userA")).thenReturn(listenerList);
+        mockFindListeners(listenerList);
 
         mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
-        verify(listenerInfoService, times(1)).findByUserId("userA");
+        verify(listenerInfoService, times(1)).findByUserIdAndState(eq("userA"), any());
         verifyPrivate(mockStateChangeService, times(1)).invoke("isStateChanged", any(), any());
-        verify(stateChangeNotifyRepository, times(2)).save(any(StateChangeNotify.class));
-        verifyPrivate(mockStateChangeService, times(2)).invoke("sendNotify", any(), any());
+        verifySaved(2);
+        verify(stateChangeDispatcher, times(1)).wakeUp();
     }
 
     @Test
@@ -374,18 +440,15 @@ public class StateChangeServiceTest {
         // mock state change true
         PowerMockito.doReturn(true).when(mockStateChangeService, "isStateChanged", any(), any());
 
-        // mock send notify do nothing
-        PowerMockito.doNothing().when(mockStateChangeService, "sendNotify", any(), any());
-
         // mock find listener by user id
-        when(listenerInfoService.findByUserId("userA")).thenReturn(listenerList);
+        mockFindListeners(listenerList);
 
         mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
         verifyPrivate(mockStateChangeService, times(1)).invoke("isStateChanged", any(), any());
-        verify(listenerInfoService, times(1)).findByUserId("userA");
-        verify(stateChangeNotifyRepository, times(2)).save(any(StateChangeNotify.class));
-        verifyPrivate(mockStateChangeService, times(2)).invoke("sendNotify", any(), any());
+        verify(listenerInfoService, times(1)).findByUserIdAndState(eq("userA"), any());
+        verifySaved(2);
+        verify(stateChangeDispatcher, times(1)).wakeUp();
     }
 
     @Test
@@ -412,18 +475,15 @@ public class StateChangeServiceTest {
         // mock state change true
         PowerMockito.doReturn(true).when(mockStateChangeService, "isStateChanged", any(), any());
 
-        // mock send notify do nothing
-        PowerMockito.doNothing().when(mockStateChangeService, "sendNotify", any(), any());
-
         // mock find listener by user id
-        when(listenerInfoService.findByUserId("userA")).thenReturn(listenerList);
+        mockFindListeners(listenerList);
 
         mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
         verifyPrivate(mockStateChangeService, times(1)).invoke("isStateChanged", any(), any());
-        verify(listenerInfoService, times(1)).findByUserId("userA");
-        verify(stateChangeNotifyRepository, times(2)).save(any(StateChangeNotify.class));
-        verifyPrivate(mockStateChangeService, times(2)).invoke("sendNotify", any(), any());
+        verify(listenerInfoService, times(1)).findByUserIdAndState(eq("userA"), any());
+        verifySaved(2);
+        verify(stateChangeDispatcher, times(1)).wakeUp();
     }
 
     @Test
@@ -450,24 +510,19 @@ public class StateChangeServiceTest {
         // mock state change true
         PowerMockito.doReturn(true).when(mockStateChangeService, "isStateChanged", any(), any());
 
-        // mock send notify do nothing
-        PowerMockito.doNothing().when(mockStateChangeService, "sendNotify", any(), any());
-
         // mock find listener by user id
-        when(listenerInfoService.findByUserId("userA")).thenReturn(listenerList);
+        mockFindListeners(listenerList);
 
         mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
         verifyPrivate(mockStateChangeService, times(1)).invoke("isStateChanged", any(), any());
-        verify(listenerInfoService, times(1)).findByUserId("userA");
-        verify(stateChangeNotifyRepository, times(0)).save(any(StateChangeNotify.class));
-        verifyPrivate(mockStateChangeService, times(0)).invoke("sendNotify", any(), any());
+        verify(listenerInfoService, times(1)).findByUserIdAndState(eq("userA"), any());
+        verifySaved(0);
+        verify(stateChangeDispatcher, times(0)).wakeUp();
     }
 
-    @SuppressWarnings("unused")
     @Test
-    public void testSendNotifyRequestFailure() throws Exception {
-
+    public void testNotifyStateChangeWriteOutboxRow() throws Exception {
         // mock new and old data
         OrderData newData = new OrderData();
         newData.setState("Processing");
@@ -477,93 +532,148 @@ public class StateChangeServiceTest {
         // mock listener
         List<ListenerInfo> listenerList = new ArrayList<ListenerInfo>();
         ListenerInfo info1 = new ListenerInfo();
-        info1.setCallback("http://localhost:8080/timeOutURL");
+        info1.setUserId("userA");
+        info1.setCallback("http://localhost:8080/successUrl");
         info1.setQuery("state=");
-
         listenerList.add(info1);
 
-        // mock state change true
-        PowerMockito.doReturn(true).when(mockStateChangeService, "isStateChanged", any(), any());
-
-        // mock check valid = true to notify
-        PowerMockito.doReturn(true).when(mockStateChangeService, "isValidForNotifyStateChange", any(ListenerInfo.class),
-                any(OrderData.class));
-
         // mock find listener by user id
-        Mockito.when(listenerInfoService.findByUserId("userA")).thenReturn(listenerList);
-
-        Mockito.doAnswer(new Answer<StateChangeNotify>() {
-            @Override
-            public StateChangeNotify answer(InvocationOnMock invocation) throws Throwable {
-                return invocation.getArgument(0);
-            }
-        }).when(stateChangeNotifyRepository).save(any(StateChangeNotify.class));
-        // mock server with 500 internal server error for cause request failure
-
-        // mock request failure
-        ListenableFuture<ResponseEntity<?>> successFuture = new SettableListenableFuture<>();
-        ResponseEntity<?> respResult = ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        ((SettableListenableFuture<ResponseEntity<?>>) successFuture)
-                .setException(new Exception("Internal server exception"));
-
-        PowerMockito.doReturn(successFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
-                any());
+        mockFindListeners(listenerList);
 
         mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
-        verify(listenerInfoService, times(1)).findByUserId("userA");
-        verifyPrivate(mockStateChangeService, times(1)).invoke("isStateChanged", any(), any());
-        verify(stateChangeNotifyRepository, times(1)).save(any(StateChangeNotify.class));
+        StateChangeNotify saved = verifySaved(1).get(0);
+        assertEquals(StateChangeNotify.STATUS_PENDING, saved.getStatus());
+        assertEquals("userA", saved.getUserId());
+        assertEquals("http://localhost:8080/successUrl", saved.getCallback());
+        assertEquals(Integer.valueOf(0), saved.getAttempts());
+        assertSame(newData, saved.getTriggerData());
+        assertEquals(Long.valueOf(1L), saved.getSequence());
+        verify(stateChangeDispatcher, times(1)).wakeUp();
     }
 
     @Test
-    public void testSendNotifyRequestSuccess() throws Exception {
-
+    public void testNotifyStateChangeNextSequence() throws Exception {
         // mock new and old data
         OrderData newData = new OrderData();
-        newData.setState("Processing");
+        newData.setId("order1");
+        newData.setState("Completed");
         OrderData oldData = new OrderData();
-        oldData.setState("Scheduled");
+        oldData.setState("Processing");
 
-        // mock listener
+        // mock listeners
         List<ListenerInfo> listenerList = new ArrayList<ListenerInfo>();
-        ListenerInfo info1 = new ListenerInfo();
-        info1.setCallback("http://localhost:8080/successUrl");
-        info1.setQuery("state=");
+        for (int i = 0; i < 2; i++) {
+            ListenerInfo info = new ListenerInfo();
+            info.setUserId("userA");
+            info.setCallback("http://localhost:8080/listener" + i);
+            info.setQuery("");
+            listenerList.add(info);
+        }
+        mockFindListeners(listenerList);
+        Mockito.when(orderDataRepository.incrementStateSequence("order1")).thenReturn(1);
+        Mockito.when(orderDataRepository.findStateSequence("order1")).thenReturn(5L);
 
-        listenerList.add(info1);
+        mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
-        // mock state change true
-        PowerMockito.doReturn(true).when(mockStateChangeService, "isStateChanged", any(), any());
+        // one sequence number per state change, shared by the listeners
+        for (StateChangeNotify saved : verifySaved(2)) {
+            assertEquals(Long.valueOf(5L), saved.getSequence());
+        }
+        verify(orderDataRepository, times(1)).incrementStateSequence("order1");
+        verify(stateChangeNotifyRepository, times(0)).findWaiting(any(), any(), any());
+    }
 
-        // mock check valid = true to notify
-        PowerMockito.doReturn(true).when(mockStateChangeService, "isValidForNotifyStateChange", any(ListenerInfo.class),
-                any(OrderData.class));
+    @Test
+    public void testNotifyStateChangeNoListenerNextSequence() throws Exception {
+        // mock new and old data
+        OrderData newData = new OrderData();
+        newData.setId("order1");
+        newData.setState("Completed");
+        OrderData oldData = new OrderData();
+        oldData.setState("Processing");
+        mockFindListeners(new ArrayList<ListenerInfo>());
+        Mockito.when(orderDataRepository.incrementStateSequence("order1")).thenReturn(1);
+        Mockito.when(orderDataRepository.findStateSequence("order1")).thenReturn(7L);
 
-        // mock find listener by user id
-        Mockito.when(listenerInfoService.findByUserId("userA")).thenReturn(listenerList);
+        mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
-        Mockito.doAnswer(new Answer<StateChangeNotify>() {
-            @Override
-            public StateChangeNotify answer(InvocationOnMock invocation) throws Throwable {
-                return invocation.getArgument(0);
-            }
-        }).when(stateChangeNotifyRepository).save(any(StateChangeNotify.class));
-        // mock server with 500 internal server error for cause request failure
+        // the state change is numbered for the stream without a notification
+        verifySaved(0);
+        verify(orderDataRepository, times(1)).incrementStateSequence("order1");
+        ArgumentCaptor<StateChangeNotify> event = ArgumentCaptor.forClass(StateChangeNotify.class);
+        verify(stateChangeStream, times(1)).publish(event.capture());
+        assertEquals(Long.valueOf(7L), event.getValue().getSequence());
+    }
+
+    @Test
+    public void testNotifyStateChangeCoalesceJoinWindow() throws Exception {
+        // mock new and old data
+        OrderData newData = new OrderData();
+        newData.setId("order1");
+        newData.setState("Completed");
+        OrderData oldData = new OrderData();
+        oldData.setState("Processing");
 
-        ListenableFuture<ResponseEntity<?>> successFuture = new SettableListenableFuture<>();
-        ResponseEntity<?> respResult = ResponseEntity.status(HttpStatus.CREATED).build();
-        ((SettableListenableFuture<ResponseEntity<?>>) successFuture).set(respResult);
+        // mock listeners
+        List<ListenerInfo> listenerList = new ArrayList<ListenerInfo>();
+        for (int i = 0; i < 2; i++) {
+            ListenerInfo info = new ListenerInfo();
+            info.setUserId("userA");
+            info.setCallback("http://localhost:8080/listener" + i);
+            info.setQuery("");
+            listenerList.add(info);
+        }
+        mockFindListeners(listenerList);
+
+        // the first listener has a notification waiting in its window
+        Date windowEnd = new Date(System.currentTimeMillis() + 100);
+        StateChangeNotify waiting = new StateChangeNotify();
+        waiting.setCallback("http://localhost:8080/listener0");
+        waiting.setNextAttemptTime(windowEnd);
+        List<StateChangeNotify> waitingList = new ArrayList<StateChangeNotify>();
+        waitingList.add(waiting);
+        Mockito.when(stateChangeDispatcher.getCoalesceWindow()).thenReturn(60000L);
+        Mockito.when(stateChangeNotifyRepository.findWaiting(eq("order1"), eq(StateChangeNotify.STATUS_PENDING),
+                any(Date.class))).thenReturn(waitingList);
+
+        long now = System.currentTimeMillis();
+        mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
-        PowerMockito.doReturn(successFuture).when(instance).sendPostRequestOutside(any(), any(), any(), any(), any(),
-                any());
-//        PowerMockito.doReturn(successFuture).when(instance, "sendRequestWithDataNonUTF8", any(), any(), any(), any(), any(),
-//                any(), any());
+        List<StateChangeNotify> saved = verifySaved(2);
+        assertEquals(windowEnd, saved.get(0).getNextAttemptTime());
+        assertTrue(saved.get(1).getNextAttemptTime().getTime() >= now + 60000);
+        assertEquals("Completed", saved.get(1).getState());
+    }
+
+    @Test
+    public void testNotifyStateChangeCoalesceJoinJournaledWindow() throws Exception {
+        OrderData newData = new OrderData();
+        newData.setId("order1");
+        newData.setState("Completed");
+        OrderData oldData = new OrderData();
+        oldData.setState("Processing");
+        List<ListenerInfo> listenerList = new ArrayList<ListenerInfo>();
+        ListenerInfo info = new ListenerInfo();
+        info.setUserId("userA");
+        info.setCallback("http://localhost:8080/listener0");
+        info.setQuery("");
+        listenerList.add(info);
+        mockFindListeners(listenerList);
+
+        // the window of the listener is in the journal, not in the table yet
+        Date windowEnd = new Date(System.currentTimeMillis() + 100);
+        Mockito.when(stateChangeDispatcher.getCoalesceWindow()).thenReturn(60000L);
+        Mockito.when(stateChangeDispatcher.isJournalEnabled()).thenReturn(true);
+        Mockito.when(stateChangeDispatcher.journal(ArgumentMatchers.<StateChangeNotify>anyList())).thenReturn(true);
+        Mockito.when(stateChangeDispatcher.getJournaledWindows(eq("order1"), any(Date.class)))
+                .thenReturn(Collections.singletonMap("http://localhost:8080/listener0", windowEnd));
 
         mockStateChangeService.notifyStateChange("userA", newData, oldData);
 
-        verify(listenerInfoService, times(1)).findByUserId("userA");
-        verifyPrivate(mockStateChangeService, times(1)).invoke("isStateChanged", any(), any());
-        verify(stateChangeNotifyRepository, times(1)).save(any(StateChangeNotify.class));
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        ArgumentCaptor<List<StateChangeNotify>> captor = ArgumentCaptor.forClass((Class) List.class);
+        verify(stateChangeDispatcher, times(1)).journal(captor.capture());
+        assertEquals(windowEnd, captor.getValue().get(0).getNextAttemptTime());
     }
 }
@@ -0,0 +1,188 @@
+package com.tmavn.sample.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.tmavn.sample.common.NotifySettings;
+import com.tmavn.sample.controller.ListenerInfoController;
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.service.impl.StateChangeStreamImpl;
+
+public class StateChangeStreamTest {
+
+    private static final String NODE_ID = "node1";
+
+    private static final Pattern EVENT_ID = Pattern.compile("id:" + NODE_ID + ":(\\d+)");
+
+    private StateChangeStreamImpl stateChangeStream;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void init() {
+        init(new NotifySettings());
+    }
+
+    private void init(NotifySettings settings) {
+        settings.setNodeId(NODE_ID);
+        StateChangeStreamImpl.configure(settings);
+        stateChangeStream = new StateChangeStreamImpl();
+        stateChangeStream.start();
+        ListenerInfoController controller = new ListenerInfoController();
+        Whitebox.setInternalState(controller, "stateChangeStream", stateChangeStream);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @After
+    public void tearDown() {
+        stateChangeStream.stop();
+        StateChangeStreamImpl.configure(new NotifySettings());
+    }
+
+    @Test
+    public void testPublishSendSelectedEvents() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/v1/listener/stream").header("UserID", "userA")
+                .param("query", "state=Completed")).andExpect(request().asyncStarted()).andReturn();
+        assertEquals(1, stateChangeStream.getConnectionCount());
+
+        stateChangeStream.publish(createEvent("userA", "order1", OrderData.STATE_PROCESSING));
+        stateChangeStream.publish(createEvent("userB", "order2", OrderData.STATE_COMPLETED));
+        stateChangeStream.publish(createEvent("userA", "order3", OrderData.STATE_COMPLETED));
+
+        String content = awaitEvents(result, 1);
+        assertTrue(content.contains("event:stateChange\n"));
+        assertTrue(content.contains("\"id\":\"order3\""));
+        assertFalse(content.contains("order1"));
+        assertFalse(content.contains("order2"));
+        assertTrue(result.getResponse().getContentType().startsWith("text/event-stream"));
+    }
+
+    @Test
+    public void testSubscribeResumeAfterLastEventId() throws Exception {
+        MvcResult first = mockMvc.perform(get("/api/v1/listener/stream").header("UserID", "userA"))
+                .andExpect(request().asyncStarted()).andReturn();
+        stateChangeStream.publish(createEvent("userA", "order1", OrderData.STATE_PROCESSING));
+        List<Long> ids = getEventIds(awaitEvents(first, 1));
+
+        // the client was disconnected, two events were published meanwhile
+        stateChangeStream.publish(createEvent("userA", "order2", OrderData.STATE_PROCESSING));
+        stateChangeStream.publish(createEvent("userA", "order3", OrderData.STATE_COMPLETED));
+        MvcResult second = mockMvc.perform(get("/api/v1/listener/stream").header("UserID", "userA")
+                .header("Last-Event-ID", NODE_ID + ":" + ids.get(0))).andExpect(request().asyncStarted())
+                .andReturn();
+
+        String content = awaitEvents(second, 2);
+        assertFalse(content.contains("event:reset"));
+        assertFalse(content.contains("order1"));
+        assertTrue(content.indexOf("order2") < content.indexOf("order3"));
+        List<Long> resumed = getEventIds(content);
+        assertEquals(ids.get(0) + 1, resumed.get(0).longValue());
+        assertEquals(ids.get(0) + 2, resumed.get(1).longValue());
+    }
+
+    @Test
+    public void testSubscribeUnknownLastEventIdReset() throws Exception {
+        stateChangeStream.publish(createEvent("userA", "order1", OrderData.STATE_PROCESSING));
+        MvcResult result = mockMvc.perform(get("/api/v1/listener/stream").header("UserID", "userA")
+                .header("Last-Event-ID", "abc")).andExpect(request().asyncStarted()).andReturn();
+        stateChangeStream.publish(createEvent("userA", "order2", OrderData.STATE_PROCESSING));
+
+        String content = awaitEvents(result, 1);
+        assertTrue(content.contains("event:reset\n"));
+        assertTrue(content.contains("unknownId"));
+        assertFalse(content.contains("order1"));
+        assertTrue(content.indexOf("event:reset") < content.indexOf("order2"));
+    }
+
+    @Test
+    public void testSubscribeEventIdOfOtherNodeReset() throws Exception {
+        stateChangeStream.publish(createEvent("userA", "order1", OrderData.STATE_PROCESSING));
+        // the events of the other nodes are not in the history of this node
+        MvcResult result = mockMvc.perform(get("/api/v1/listener/stream").header("UserID", "userA")
+                .header("Last-Event-ID", "node2:1")).andExpect(request().asyncStarted()).andReturn();
+        stateChangeStream.publish(createEvent("userA", "order2", OrderData.STATE_PROCESSING));
+
+        String content = awaitEvents(result, 1);
+        assertTrue(content.contains("event:reset\n"));
+        assertTrue(content.contains("unknownId"));
+        assertFalse(content.contains("order1"));
+        assertTrue(content.contains("order2"));
+    }
+
+    @Test
+    public void testSubscribeEventIdOlderThanHistoryReset() throws Exception {
+        stateChangeStream.stop();
+        NotifySettings settings = new NotifySettings();
+        settings.setStreamHistorySize(1);
+        init(settings);
+        MvcResult first = mockMvc.perform(get("/api/v1/listener/stream").header("UserID", "userA"))
+                .andExpect(request().asyncStarted()).andReturn();
+        stateChangeStream.publish(createEvent("userA", "order1", OrderData.STATE_PROCESSING));
+        List<Long> ids = getEventIds(awaitEvents(first, 1));
+
+        // order2 is dropped from the history
+        stateChangeStream.publish(createEvent("userA", "order2", OrderData.STATE_PROCESSING));
+        stateChangeStream.publish(createEvent("userA", "order3", OrderData.STATE_COMPLETED));
+        MvcResult second = mockMvc.perform(get("/api/v1/listener/stream").header("UserID", "userA")
+                .header("Last-Event-ID", NODE_ID + ":" + ids.get(0))).andExpect(request().asyncStarted())
+                .andReturn();
+        stateChangeStream.publish(createEvent("userA", "order4", OrderData.STATE_PROCESSING));
+
+        String content = awaitEvents(second, 1);
+        assertTrue(content.contains("event:reset\n"));
+        assertTrue(content.contains("expiredId"));
+        assertFalse(content.contains("order3"));
+        assertTrue(content.contains("order4"));
+    }
+
+    private static StateChangeNotify createEvent(String userId, String orderId, String state) {
+        OrderData orderData = new OrderData();
+        orderData.setId(orderId);
+        orderData.setState(state);
+        StateChangeNotify event = new StateChangeNotify();
+        event.setTriggerType(StateChangeNotify.TYPE_STATE_CHANGE_NOTIFY);
+        event.setOrderSnapshot(orderData);
+        event.setUserId(userId);
+        return event;
+    }
+
+    /**
+     * Wait until the stream threads wrote the events to the response.
+     */
+    private static String awaitEvents(MvcResult result, int count) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String content = result.getResponse().getContentAsString();
+        while (getEventIds(content).size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            content = result.getResponse().getContentAsString();
+        }
+        assertEquals(count, getEventIds(content).size());
+        return content;
+    }
+
+    private static List<Long> getEventIds(String content) {
+        List<Long> ids = new ArrayList<Long>();
+        Matcher matcher = EVENT_ID.matcher(content);
+        while (matcher.find()) {
+            ids.add(Long.valueOf(matcher.group(1)));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,71 @@
+package com.tmavn.sample.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.tmavn.sample.entity.StateChangeNotify;
+
+public class CallbackBatchTest {
+
+    @Test
+    public void testTakeReturnJsonArray() {
+        CallbackBatch batch = new CallbackBatch("userA", "http://localhost:8080/successUrl", 100);
+        StateChangeNotify first = new StateChangeNotify();
+        StateChangeNotify second = new StateChangeNotify();
+        batch.add(first, "{\"a\":1}".getBytes(StandardCharsets.UTF_8));
+        batch.add(second, "{\"b\":2}".getBytes(StandardCharsets.UTF_8));
+
+        List<StateChangeNotify> taken = new ArrayList<StateChangeNotify>();
+        byte[] body = batch.take(taken);
+
+        assertEquals("[{\"a\":1},{\"b\":2}]", new String(body, StandardCharsets.UTF_8));
+        assertEquals(2, taken.size());
+        assertEquals(first, taken.get(0));
+        assertEquals(second, taken.get(1));
+        assertTrue(batch.isEmpty());
+        assertEquals("[]", new String(batch.take(taken), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testIsFullAtSize() {
+        CallbackBatch batch = new CallbackBatch("userA", "http://localhost:8080/successUrl", 2);
+        assertEquals(2, batch.getSize());
+        batch.add(new StateChangeNotify(), new byte[] { '{', '}' });
+        assertFalse(batch.isFull());
+        batch.add(new StateChangeNotify(), new byte[] { '{', '}' });
+        assertTrue(batch.isFull());
+    }
+
+    @Test
+    public void testOnResponseAdaptSize() {
+        CallbackBatch batch = new CallbackBatch("userA", "http://localhost:8080/successUrl", 20);
+        assertEquals(CallbackBatch.INITIAL_SIZE, batch.getSize());
+
+        // a fast full batch doubles the size, up to the maximum
+        batch.onResponse(8, 10, true, 500, 20);
+        assertEquals(16, batch.getSize());
+        batch.onResponse(16, 10, true, 500, 20);
+        assertEquals(20, batch.getSize());
+
+        // a fast batch which is not full keeps the size
+        batch.onResponse(3, 10, true, 500, 20);
+        assertEquals(20, batch.getSize());
+
+        // a slow or failed batch halves the size, down to one
+        batch.onResponse(20, 900, true, 500, 20);
+        assertEquals(10, batch.getSize());
+        batch.onResponse(10, 10, false, 500, 20);
+        assertEquals(5, batch.getSize());
+        for (int i = 0; i < 5; i++) {
+            batch.onResponse(1, 900, true, 500, 20);
+        }
+        assertEquals(1, batch.getSize());
+    }
+}
@@ -0,0 +1,71 @@
+package com.tmavn.sample.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.tmavn.sample.entity.StateChangeNotify;
+
+public class HostQueueTest {
+
+    @Test
+    public void testGetHost() {
+        assertEquals("localhost:8080", HostQueue.getHost("http://localhost:8080/successUrl"));
+        assertEquals("example.com", HostQueue.getHost("https://example.com/callback?id=1"));
+        assertEquals("not a url", HostQueue.getHost("not a url"));
+        assertEquals("null", HostQueue.getHost(null));
+    }
+
+    @Test
+    public void testCountWaitingAndInFlight() throws Exception {
+        HostQueue hostQueue = new HostQueue("localhost:8080", 2, null);
+        HostQueue.Entry first = hostQueue.add(Collections.singletonList(new StateChangeNotify()));
+        assertTrue(hostQueue.hasRoom());
+        hostQueue.add(Collections.singletonList(new StateChangeNotify()));
+        assertFalse(hostQueue.hasRoom());
+        assertEquals(2, hostQueue.getDepth());
+
+        assertTrue(hostQueue.start(first));
+        assertEquals(2, hostQueue.getDepth());
+        assertFalse(hostQueue.awaitRoom(10));
+
+        hostQueue.done();
+        assertEquals(1, hostQueue.getDepth());
+        assertTrue(hostQueue.awaitRoom(10));
+    }
+
+    @Test
+    public void testAwaitStartWhenRoom() throws Exception {
+        HostQueue hostQueue = new HostQueue("localhost:8080", 1, null);
+        assertTrue(hostQueue.awaitStart(10));
+        assertEquals(1, hostQueue.getDepth());
+
+        // the queue is full until the response of the first delivery
+        assertFalse(hostQueue.awaitStart(10));
+        assertEquals(1, hostQueue.getDepth());
+
+        hostQueue.done();
+        assertTrue(hostQueue.awaitStart(10));
+        assertEquals(1, hostQueue.getDepth());
+    }
+
+    @Test
+    public void testEvictOldestNotStarted() {
+        HostQueue hostQueue = new HostQueue("localhost:8080", 2, null);
+        HostQueue.Entry first = hostQueue.add(Collections.singletonList(new StateChangeNotify()));
+        HostQueue.Entry second = hostQueue.add(Collections.singletonList(new StateChangeNotify()));
+        assertTrue(hostQueue.start(first));
+
+        assertEquals(second, hostQueue.evictOldest());
+        assertEquals(1, hostQueue.getDropped());
+        assertFalse(hostQueue.start(second));
+        assertEquals(1, hostQueue.getDepth());
+        // the started delivery is not dropped
+        assertNull(hostQueue.evictOldest());
+    }
+}
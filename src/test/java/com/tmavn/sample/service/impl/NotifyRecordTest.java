@@ -0,0 +1,61 @@
+package com.tmavn.sample.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.tmavn.sample.entity.ListenerInfo;
+import com.tmavn.sample.entity.OrderData;
+import com.tmavn.sample.entity.StateChangeNotify;
+
+public class NotifyRecordTest {
+
+    @Test
+    public void testEncodeDecodeKeepFields() throws IOException {
+        OrderData orderData = new OrderData();
+        orderData.setId("order1");
+        orderData.setDescription("Order ñ");
+        orderData.setState(OrderData.STATE_COMPLETED);
+        orderData.setOrderDate("2017-01-01 10:00:00");
+        StateChangeNotify notify = new StateChangeNotify();
+        notify.setTriggerTime(new Date(1000));
+        notify.setTriggerType(StateChangeNotify.TYPE_STATE_CHANGE_NOTIFY);
+        notify.setOrderSnapshot(orderData);
+        // the order changed after the state change
+        orderData.setState(OrderData.STATE_FAILED);
+        notify.setSequence(3L);
+        notify.setUserId("userA");
+        notify.setCallback("http://localhost:8080/successUrl");
+        notify.setDelivery(ListenerInfo.DELIVERY_BATCH);
+        notify.setPayload(ListenerInfo.PAYLOAD_THIN);
+        notify.setNextAttemptTime(new Date(2000));
+
+        StateChangeNotify decoded = NotifyRecord.decode(NotifyRecord.encode(notify));
+
+        assertNull(decoded.getTriggerId());
+        assertEquals(new Date(1000), decoded.getTriggerTime());
+        assertEquals(StateChangeNotify.TYPE_STATE_CHANGE_NOTIFY, decoded.getTriggerType());
+        assertEquals("order1", decoded.getTriggerData().getId());
+        assertEquals("Order ñ", decoded.getOrderDescription());
+        assertEquals("2017-01-01 10:00:00", decoded.getOrderDate());
+        assertNull(decoded.getModifyDate());
+        assertEquals(Long.valueOf(3), decoded.getSequence());
+        assertEquals("userA", decoded.getUserId());
+        assertEquals("http://localhost:8080/successUrl", decoded.getCallback());
+        assertEquals(ListenerInfo.DELIVERY_BATCH, decoded.getDelivery());
+        assertEquals(ListenerInfo.PAYLOAD_THIN, decoded.getPayload());
+        assertEquals(OrderData.STATE_COMPLETED, decoded.getState());
+        assertEquals(new Date(2000), decoded.getNextAttemptTime());
+        assertEquals(StateChangeNotify.STATUS_PENDING, decoded.getStatus());
+        assertEquals(Integer.valueOf(0), decoded.getAttempts());
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodeUnknownVersionThrowException() throws IOException {
+        NotifyRecord.decode(new byte[] { 9 });
+    }
+}
@@ -0,0 +1,115 @@
+package com.tmavn.sample.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.tmavn.sample.common.NotifySettings;
+import com.tmavn.sample.entity.StateChangeNotify;
+import com.tmavn.sample.service.StateChangeDispatcher;
+
+public class NotifyRecorderTest {
+
+    private NotifyRecorder recorder;
+
+    @After
+    public void tearDown() {
+        if (recorder != null) {
+            recorder.stop();
+        }
+    }
+
+    @Test
+    public void testRecordOnRecorderThread() throws Exception {
+        final List<String> threads = new ArrayList<String>();
+        StateChangeDispatcher dispatcher = mock(StateChangeDispatcher.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                synchronized (threads) {
+                    threads.add(Thread.currentThread().getName());
+                }
+                return null;
+            }
+        }).when(dispatcher).onDelivered(any(), any());
+        recorder = new NotifyRecorder(dispatcher);
+        recorder.start(new NotifySettings());
+        StateChangeNotify notify = new StateChangeNotify();
+
+        recorder.record(notify, null);
+
+        verify(dispatcher, timeout(5000).times(1)).onDelivered(notify, null);
+        synchronized (threads) {
+            assertEquals(1, threads.size());
+            assertTrue(threads.get(0).startsWith("notify-record-"));
+        }
+    }
+
+    @Test
+    public void testRecordFailedWrittenAgainWithSameAttempts() throws Exception {
+        final List<Integer> attempts = new ArrayList<Integer>();
+        StateChangeDispatcher dispatcher = mock(StateChangeDispatcher.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                StateChangeNotify notify = invocation.getArgument(0);
+                synchronized (attempts) {
+                    attempts.add(notify.getAttempts());
+                }
+                // counted by onDelivered before the write fails
+                notify.setAttempts(notify.getAttempts() + 1);
+                if (attempts.size() == 1) {
+                    throw new IllegalStateException("Database is down");
+                }
+                return null;
+            }
+        }).when(dispatcher).onDelivered(any(), any());
+        NotifySettings settings = new NotifySettings();
+        settings.setRetryDelay(10);
+        recorder = new NotifyRecorder(dispatcher);
+        recorder.start(settings);
+        StateChangeNotify notify = new StateChangeNotify();
+        notify.setAttempts(2);
+
+        recorder.record(notify, "Status 500");
+
+        verify(dispatcher, timeout(5000).times(2)).onDelivered(notify, "Status 500");
+        synchronized (attempts) {
+            assertEquals(2, attempts.get(0).intValue());
+            assertEquals(2, attempts.get(1).intValue());
+        }
+    }
+
+    @Test
+    public void testRecordStoppedWrittenByCaller() {
+        StateChangeDispatcher dispatcher = mock(StateChangeDispatcher.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                throw new IllegalStateException("Database is down");
+            }
+        }).when(dispatcher).onDelivered(any(), any());
+        recorder = new NotifyRecorder(dispatcher);
+        StateChangeNotify notify = new StateChangeNotify();
+
+        // the failure is logged, not thrown to the http client
+        recorder.record(notify, null);
+
+        verify(dispatcher).onDelivered(notify, null);
+    }
+}
@@ -0,0 +1,78 @@
+package com.tmavn.sample.service.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.tmavn.sample.common.ListenerQuery;
+import com.tmavn.sample.entity.OrderData;
+
+public class StreamConnectionTest {
+
+    @Test
+    public void testMatchesUserAndQuery() {
+        StreamConnection connection = new StreamConnection("node1:", "userA", ListenerQuery.compile("state=Completed"),
+                mock(SseEmitter.class), 10, Collections.<StreamConnection.Event>emptyList());
+
+        assertTrue(connection.matches(new StreamConnection.Event(1, "userA", OrderData.STATE_COMPLETED, "{}")));
+        assertFalse(connection.matches(new StreamConnection.Event(2, "userA", OrderData.STATE_FAILED, "{}")));
+        assertFalse(connection.matches(new StreamConnection.Event(3, "userB", OrderData.STATE_COMPLETED, "{}")));
+    }
+
+    @Test
+    public void testOfferFullBufferReturnFalse() throws IOException {
+        SseEmitter emitter = mock(SseEmitter.class);
+        StreamConnection connection = new StreamConnection("node1:", "userA", ListenerQuery.ALL, emitter, 2,
+                Collections.<StreamConnection.Event>emptyList());
+
+        assertTrue(connection.offer(new StreamConnection.Event(1, "userA", OrderData.STATE_COMPLETED, "{}")));
+        assertTrue(connection.offer(new StreamConnection.Event(2, "userA", OrderData.STATE_COMPLETED, "{}")));
+        assertFalse(connection.offer(new StreamConnection.Event(3, "userA", OrderData.STATE_COMPLETED, "{}")));
+
+        // the buffer has room again once it is written
+        assertTrue(connection.startWrite());
+        assertFalse(connection.startWrite());
+        assertTrue(connection.write());
+        verify(emitter, times(2)).send(any(SseEmitter.SseEventBuilder.class));
+        assertTrue(connection.offer(new StreamConnection.Event(3, "userA", OrderData.STATE_COMPLETED, "{}")));
+    }
+
+    @Test
+    public void testReplayIgnoreCapacity() throws IOException {
+        SseEmitter emitter = mock(SseEmitter.class);
+        StreamConnection connection = new StreamConnection("node1:", "userA", ListenerQuery.ALL, emitter, 1,
+                Arrays.asList(new StreamConnection.Event(1, "userA", OrderData.STATE_COMPLETED, "{}"),
+                        new StreamConnection.Event(2, "userA", OrderData.STATE_COMPLETED, "{}")));
+
+        assertTrue(connection.startWrite());
+        assertTrue(connection.write());
+        verify(emitter, times(2)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    public void testWriteClientGoneClose() throws IOException {
+        SseEmitter emitter = mock(SseEmitter.class);
+        doThrow(new IOException("Broken pipe")).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        StreamConnection connection = new StreamConnection("node1:", "userA", ListenerQuery.ALL, emitter, 10,
+                Collections.<StreamConnection.Event>emptyList());
+        connection.offer(new StreamConnection.Event(1, "userA", OrderData.STATE_COMPLETED, "{}"));
+        connection.offer(new StreamConnection.Event(2, "userA", OrderData.STATE_COMPLETED, "{}"));
+
+        assertTrue(connection.startWrite());
+        assertFalse(connection.write());
+        assertTrue(connection.isClosed());
+        verify(emitter, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+        assertFalse(connection.offer(new StreamConnection.Event(3, "userA", OrderData.STATE_COMPLETED, "{}")));
+    }
+}